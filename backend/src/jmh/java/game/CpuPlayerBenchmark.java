@@ -0,0 +1,59 @@
+package game;
+
+import game.datastructures.Player;
+import game.util.GameRandom;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@code CpuPlayer.chooseRandomPlayerWeighted()}, which CpuPlayers use
+ * to pick who to nominate, investigate, execute or elect.
+ *
+ * Run with {@code ./gradlew jmh -PjmhArgs=CpuPlayerBenchmark}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CpuPlayerBenchmark {
+
+    @Param({ "5", "7", "10" })
+    public int players;
+
+    private CpuPlayer cpu;
+    private List<Player> candidates;
+
+    @Setup
+    public void setUp() {
+        List<String> names = new ArrayList<>();
+        for (int i = 1; i <= players; i++) {
+            names.add("Bot " + i);
+        }
+        SecretHitlerGame game = new SecretHitlerGame(names, 1);
+        cpu = new CpuPlayer(names.get(0), new GameRandom(1));
+        cpu.initialize(game);
+        // Every player except the CpuPlayer itself, as for a nomination.
+        candidates = new ArrayList<>(game.getPlayerList());
+        candidates.remove(cpu.myPlayerData);
+    }
+
+    @Benchmark
+    public String chooseRandomPlayerWeighted() {
+        return cpu.chooseRandomPlayerWeighted(candidates, 0.5f, 0.5f, 1f, 0.75f);
+    }
+}
@@ -0,0 +1,87 @@
+package game;
+
+import game.datastructures.Player;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import server.util.LobbyCodec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of copying a game in progress, as bot search does for
+ * every hypothetical future it tries.
+ *
+ * Compares {@code SecretHitlerGame.fork()} against a round trip through the
+ * binary snapshot format, and the cost of playing a forked game to the end.
+ *
+ * Run with {@code ./gradlew jmh -PjmhArgs=ForkBenchmark}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ForkBenchmark {
+    private static final int NUM_PLAYERS = 7;
+    // A game that takes more moves than this is assumed to be stuck.
+    private static final int MAX_MOVES = 10000;
+
+    private SecretHitlerGame game;
+
+    @Setup
+    public void setUp() {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < NUM_PLAYERS; i++) {
+            names.add("Player " + i);
+        }
+        game = new SecretHitlerGame(names, 1);
+        game.nominateChancellor("Player 1");
+    }
+
+    @Benchmark
+    public SecretHitlerGame fork() {
+        return game.fork();
+    }
+
+    @Benchmark
+    public SecretHitlerGame snapshotRoundTrip() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            game.writeSnapshot(out);
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        return SecretHitlerGame.readSnapshot(in, LobbyCodec.SCHEMA_ID);
+    }
+
+    @Benchmark
+    public GameState forkAndPlayOut() {
+        SecretHitlerGame fork = game.fork();
+        List<CpuPlayer> cpus = new ArrayList<>();
+        for (Player player : fork.getPlayerList()) {
+            CpuPlayer cpu = new CpuPlayer(player.getUsername());
+            cpu.initialize(fork);
+            cpus.add(cpu);
+        }
+        CpuPlayer.playOut(fork, cpus, MAX_MOVES);
+        if (!fork.hasGameFinished()) {
+            throw new IllegalStateException("The CpuPlayers stopped in state " + fork.getState() + ".");
+        }
+        return fork.getState();
+    }
+}
@@ -0,0 +1,41 @@
+package game;
+
+import game.simulation.GameSimulator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how many complete games CpuPlayers can play per second, as in
+ * {@code GameSimulator}. Each game is played from a new seed, so the result is
+ * an average over many different games.
+ *
+ * Run with {@code ./gradlew jmh -PjmhArgs=FullGameBenchmark}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FullGameBenchmark {
+
+    @Param({ "5", "7", "10" })
+    public int players;
+
+    private long seed;
+
+    @Benchmark
+    public GameSimulator.GameResult playGame() {
+        return GameSimulator.playGame(players, seed++);
+    }
+}
@@ -0,0 +1,86 @@
+package game;
+
+import game.datastructures.Identity;
+import game.datastructures.Policy;
+import game.util.GameRandom;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of updating and reading a RoleBelief for a 10 player
+ * game, the largest supported, as every CpuPlayer does after each election.
+ *
+ * Run with {@code ./gradlew jmh -PjmhArgs=RoleBeliefBenchmark}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoleBeliefBenchmark {
+    private static final int NUM_PLAYERS = SecretHitlerGame.MAX_PLAYERS;
+    private static final int ALL_SEATS = (1 << NUM_PLAYERS) - 1;
+
+    private RoleBelief belief;
+    private GameRandom random;
+    // Rotates the seats observed, as over the rounds of a game.
+    private int round;
+
+    // The observations narrow the belief down, so start each iteration over.
+    @Setup(Level.Iteration)
+    public void setUp() {
+        belief = new RoleBelief(NUM_PLAYERS);
+        random = new GameRandom(1);
+        round = 0;
+    }
+
+    @Benchmark
+    public RoleBelief observeVotes() {
+        int seat = round++ % NUM_PLAYERS;
+        belief.observeVotes(ALL_SEATS, random.nextInt(1 << NUM_PLAYERS), seat, (seat + 1) % NUM_PLAYERS);
+        return belief;
+    }
+
+    @Benchmark
+    public RoleBelief observePolicy() {
+        int seat = round++ % NUM_PLAYERS;
+        Policy.Type type = (seat & 1) == 0 ? Policy.Type.FASCIST : Policy.Type.LIBERAL;
+        belief.observePolicy(seat, (seat + 3) % NUM_PLAYERS, type, 8, 4);
+        return belief;
+    }
+
+    @Benchmark
+    public RoleBelief weigh() {
+        belief.weigh(round++ % NUM_PLAYERS, 0.5f, 0.6f);
+        return belief;
+    }
+
+    @Benchmark
+    public float weighAndGetFascistProbability() {
+        int seat = round++ % NUM_PLAYERS;
+        belief.weigh(seat, 0.5f, 0.6f);
+        return belief.getFascistProbability(seat);
+    }
+
+    @Benchmark
+    public RoleBelief copy() {
+        return belief.copy();
+    }
+
+    @Benchmark
+    public Identity[] sample() {
+        return belief.sample(random);
+    }
+}
@@ -0,0 +1,75 @@
+package server.util;
+
+import game.SecretHitlerGame;
+import game.datastructures.Player;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of serializing the game state sent to every player in a
+ * single broadcast, for games of different sizes.
+ *
+ * Compares converting the whole game once per player
+ * ({@code GameToJSONConverter.convert()}) against preparing the shared state
+ * once ({@code GameToJSONConverter.prepare()}).
+ *
+ * Run with {@code ./gradlew jmh -PjmhArgs=GameToJSONConverterBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameToJSONConverterBenchmark {
+
+    @Param({ "5", "7", "10" })
+    public int players;
+
+    private SecretHitlerGame game;
+    private List<String> names;
+
+    @Setup
+    public void setUp() {
+        List<String> playerNames = new ArrayList<>();
+        for (int i = 0; i < players; i++) {
+            playerNames.add("Player " + i);
+        }
+        game = new SecretHitlerGame(playerNames, 1);
+        names = new ArrayList<>();
+        for (Player player : game.getPlayerList()) {
+            names.add(player.getUsername());
+        }
+    }
+
+    @Benchmark
+    public void convertPerUser(Blackhole blackhole) {
+        for (String name : names) {
+            blackhole.consume(GameToJSONConverter.convert(game, name).toString());
+        }
+    }
+
+    @Benchmark
+    public void prepareOncePerBroadcast(Blackhole blackhole) {
+        GameToJSONConverter.SharedGameState sharedState = GameToJSONConverter.prepare(game);
+        for (String name : names) {
+            Map<String, String> fields = sharedState.getFields(name);
+            blackhole.consume(new PacketSnapshot(fields).toJSON(null, null));
+        }
+    }
+}
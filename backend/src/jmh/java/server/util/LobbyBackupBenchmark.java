@@ -0,0 +1,138 @@
+package server.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures saving and restoring every lobby for a database backup, as
+ * {@code LobbyStore} does for each changed lobby when the server stores its
+ * backup ({@code SecretHitlerServer.storeDatabaseBackup()}). The database
+ * write itself is not included.
+ *
+ * Compares the binary snapshot format ({@code LobbyCodec}) against Java
+ * serialization ({@code ObjectOutputStream}), and prints the size of the
+ * backup in each format during setup.
+ *
+ * The lobbies range from 1 to 10 users, with CPU players filling games with
+ * fewer than 5, and all have a game in progress. Scores are per lobby.
+ *
+ * Run with {@code ./gradlew jmh -PjmhArgs=LobbyBackupBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LobbyBackupBenchmark {
+    private static final int NUM_LOBBIES = 1000;
+
+    private Map<String, Lobby> lobbies;
+    // The lobbies in each format, for the restore benchmarks.
+    private List<byte[]> snapshots;
+    private List<byte[]> serialized;
+
+    @Setup
+    public void setUp() throws IOException {
+        lobbies = new LinkedHashMap<>();
+        for (int i = 0; i < NUM_LOBBIES; i++) {
+            Lobby lobby = new Lobby();
+            int users = 1 + i % 10;
+            for (int j = 0; j < users; j++) {
+                StubWsContext ctx = StubWsContext.create("session-" + i + "-" + j);
+                lobby.addUser(ctx, "Player " + j);
+                lobby.trySetUserIcon("p" + (j + 1), ctx);
+            }
+            lobby.startNewGame(i);
+            lobbies.put(String.format("%04d", i), lobby);
+        }
+
+        snapshots = new ArrayList<>();
+        serialized = new ArrayList<>();
+        long snapshotBytes = 0;
+        long serializedBytes = 0;
+        for (Lobby lobby : lobbies.values()) {
+            byte[] snapshot = LobbyCodec.encode(lobby);
+            byte[] bytes = serialize(lobby);
+            snapshots.add(snapshot);
+            serialized.add(bytes);
+            snapshotBytes += snapshot.length;
+            serializedBytes += bytes.length;
+        }
+        System.out.printf("%nLobbyCodec backup size:         %10d bytes (%d bytes/lobby)%n",
+                snapshotBytes, snapshotBytes / NUM_LOBBIES);
+        System.out.printf("ObjectOutputStream backup size: %10d bytes (%d bytes/lobby)%n",
+                serializedBytes, serializedBytes / NUM_LOBBIES);
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (Lobby lobby : lobbies.values()) {
+            lobby.cancelScheduledTasks();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_LOBBIES)
+    public void encodeAllLobbies(Blackhole blackhole) throws IOException {
+        for (Lobby lobby : lobbies.values()) {
+            blackhole.consume(LobbyCodec.encode(lobby));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_LOBBIES)
+    public void decodeAllLobbies(Blackhole blackhole) throws IOException {
+        for (byte[] snapshot : snapshots) {
+            blackhole.consume(LobbyCodec.decode(snapshot));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_LOBBIES)
+    public void serializeAllLobbies(Blackhole blackhole) throws IOException {
+        for (Lobby lobby : lobbies.values()) {
+            blackhole.consume(serialize(lobby));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_LOBBIES)
+    public void deserializeAllLobbies(Blackhole blackhole) throws IOException, ClassNotFoundException {
+        for (byte[] bytes : serialized) {
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                blackhole.consume(in.readObject());
+            }
+        }
+    }
+
+    private static byte[] serialize(Lobby lobby) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(lobby);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,60 @@
+package server.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@code Lobby.updateAllUsers()} end to end for a game in progress,
+ * with every player connected through a stub websocket that discards what it
+ * is sent.
+ *
+ * Every player is a user, so no CPU turns are started by the broadcasts.
+ *
+ * Run with {@code ./gradlew jmh -PjmhArgs=LobbyBroadcastBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LobbyBroadcastBenchmark {
+
+    @Param({ "5", "7", "10" })
+    public int players;
+
+    private Lobby lobby;
+
+    @Setup
+    public void setUp() {
+        lobby = new Lobby();
+        for (int i = 0; i < players; i++) {
+            StubWsContext ctx = StubWsContext.create("session-" + i);
+            lobby.addUser(ctx, "Player " + i);
+            lobby.trySetUserIcon("p" + (i + 1), ctx);
+        }
+        lobby.startNewGame(1);
+    }
+
+    @TearDown
+    public void tearDown() {
+        lobby.cancelScheduledTasks();
+    }
+
+    @Benchmark
+    public void updateAllUsers() {
+        lobby.updateAllUsers();
+    }
+}
@@ -4,111 +4,373 @@
 
 package game;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.Random;
 
 import game.datastructures.Identity;
 import game.datastructures.Player;
 import game.datastructures.Policy;
+import game.util.GameRandom;
 
 public class CpuPlayer implements Serializable, Comparable<CpuPlayer> {
 
-  private static int MAX_REPUTATION = 5;
+  static final int MAX_REPUTATION = 5;
+  private static final byte UNKNOWN_ROLE = -1;
 
   private List<Policy.Type> chancellorChoices;
-  private transient Random random;
+  private GameRandom random;
   private int lastUpdatedRound = 1;
 
   /**
-   * Tracks the current level of reputation in a range from [-5, 5]
-   * for each other player (both other CPUs and players) in the game, starting
-   * at neutral (0). The lower the reputation value is, the more
+   * The players in the current game, in seat order. The CpuPlayer refers to
+   * players by their seat (index in this list) rather than by name, so that
+   * decisions don't need to look up or copy anything.
+   */
+  private List<Player> seats;
+  private int mySeat = -1;
+
+  /**
+   * The probability of each possible assignment of roles, updated as
+   * policies are enacted, votes are cast and players are investigated or
+   * executed. A player's reputation in the range [-5, 5] is derived from the
+   * probability that they are Fascist/Hitler: 0 is as likely as any player
+   * before the game starts, and the lower the reputation value is, the more
    * likely the CpuPlayer will act as though the player is Fascist/Hitler.
-   * 
-   * Note that this tracks the general reputation a player has, regardless of
-   * whether their role is known by this CpuPlayer.
+   *
+   * Null until the CpuPlayer is initialized.
    */
-  public final HashMap<String, Integer> playerReputation;
+  private RoleBelief belief;
+
+  /** The last round whose election votes were observed. */
+  private int lastObservedVoteRound;
+
+  /** Bit mask of the dead seats already observed to not be Hitler. */
+  private int observedDeadSeats;
+
+  /**
+   * Whether the role of every player is known, so there is nothing left to
+   * learn. Only Fascists and Hitler in small games know every role, and they
+   * do from the start.
+   */
+  private boolean knowsAllRoles;
+
+  /**
+   * The known role (Identity ordinal) of each seat, or UNKNOWN_ROLE. This is
+   * modified at the beginning of the game, and by the Investigate presidential
+   * power.
+   */
+  private byte[] knownRoles;
+
+  /** Scratch space for chooseRandomSeatWeighted(), reused between calls. */
+  private transient float[] thresholds;
 
   /**
-   * A map of player names to known roles. This is modified at the beginning of
-   * the game, and by the Peek presidential power.
+   * If set, nominations and votes are chosen by searching over possible
+   * futures rather than by the heuristics alone (see DeterminizedSearch).
    */
-  public final HashMap<String, Identity> knownPlayerRoles;
+  private transient DeterminizedSearch search;
 
   /** The name of this CpuPlayer. */
   public final String myName;
   public Player myPlayerData;
 
   public CpuPlayer(String name) {
+    this(name, new GameRandom());
+  }
+
+  /**
+   * Creates a CpuPlayer whose decisions are drawn from the given generator, so
+   * that a CpuPlayer with a generator in the same state makes the same choices.
+   * 
+   * @param name   the name of this CpuPlayer.
+   * @param random the generator to make random choices with. Should not be
+   *               shared with anything else.
+   */
+  public CpuPlayer(String name, GameRandom random) {
     this.myName = name;
-    playerReputation = new HashMap<>();
-    knownPlayerRoles = new HashMap<>();
-    random = new Random();
+    seats = Collections.emptyList();
+    knownRoles = new byte[0];
+    this.random = random;
   }
 
   public void initialize(SecretHitlerGame game) {
-    List<Player> playerList = game.getPlayerList();
+    seats = game.getPlayerList();
 
-    // Set player suspicion to neutral (5) by default
-    playerReputation.clear();
-    for (Player player : playerList) {
-      playerReputation.put(player.getUsername(), 0);
-    }
+    lastObservedVoteRound = 0;
+    observedDeadSeats = 0;
+    thresholds = new float[seats.size()];
 
     // Get a reference to our current player data
-    myPlayerData = null;
-    for (Player playerData : playerList) {
-      if (playerData.getUsername().equals(myName)) {
-        myPlayerData = playerData;
-        break;
-      }
-    }
-    if (myPlayerData == null) {
+    mySeat = seatOf(myName);
+    if (mySeat < 0) {
+      myPlayerData = null;
       throw new IllegalStateException(
           "Could not find a matching Player username in the current game while initializing this CpuPlayer.");
     }
+    myPlayerData = seats.get(mySeat);
 
     // Mark ourselves as a CPU Player in the game
     myPlayerData.markAsCpu();
 
     // Update known identities, based on identity, according to rules
-    knownPlayerRoles.clear();
+    knownRoles = new byte[seats.size()];
+    Arrays.fill(knownRoles, UNKNOWN_ROLE);
     if (myPlayerData.getIdentity() == Identity.FASCIST ||
-        (myPlayerData.getIdentity() == Identity.HITLER && game.getPlayerList().size() <= 6)) {
+        (myPlayerData.getIdentity() == Identity.HITLER && seats.size() <= 6)) {
       // Mark players as known if (1) player is fascist or (2) if player is
       // hitler AND there are only 5-6 players in the game.
-      for (Player player : playerList) {
-        if (!player.getUsername().equals(myName)) {
-          // Add to known identities
-          knownPlayerRoles.put(player.getUsername(), player.getIdentity());
-        }
+      for (int seat = 0; seat < seats.size(); seat++) {
+        knownRoles[seat] = (byte) seats.get(seat).getIdentity().ordinal();
       }
     }
 
     // Add our own identity to the list of known roles
-    knownPlayerRoles.put(myName, myPlayerData.getIdentity());
+    knownRoles[mySeat] = (byte) myPlayerData.getIdentity().ordinal();
 
+    resetBelief();
   } // end initialize()
 
-  private void updateReputation(String name, int repModifier) {
-    int newRep = playerReputation.get(name) + repModifier;
-    newRep = Math.max(newRep, -MAX_REPUTATION);
-    newRep = Math.min(newRep, MAX_REPUTATION);
-    playerReputation.put(name, newRep);
+  /**
+   * Resets the belief about everyone's roles to only what is known for
+   * certain: every assignment consistent with the known roles is equally
+   * likely.
+   */
+  private void resetBelief() {
+    belief = new RoleBelief(seats.size());
+    boolean exact = myPlayerData.getIdentity() != Identity.LIBERAL;
+    int fascistSeats = 0;
+    int liberalSeats = 0;
+    int notHitlerSeats = 0;
+    for (int seat = 0; seat < seats.size(); seat++) {
+      if (knownRoles[seat] == Identity.LIBERAL.ordinal()) {
+        liberalSeats |= 1 << seat;
+      } else if (knownRoles[seat] == Identity.HITLER.ordinal()) {
+        fascistSeats |= 1 << seat;
+      } else if (knownRoles[seat] == Identity.FASCIST.ordinal()) {
+        fascistSeats |= 1 << seat;
+        // Investigations only reveal the party, so a liberal does not know
+        // whether an investigated fascist is Hitler.
+        if (exact) {
+          notHitlerSeats |= 1 << seat;
+        }
+      }
+    }
+    belief.observeKnown(fascistSeats, liberalSeats, notHitlerSeats);
+    knowsAllRoles = Integer.bitCount(fascistSeats | liberalSeats) == seats.size();
   }
 
   /**
-   * Allows the CpuPlayer to update assumptions after legislation is passed.
+   * Gets the seat of a player in the current game.
    * 
+   * @return the index of the player named {@code username} in the player list,
+   *         or -1 if {@code username} is null or not in the game.
+   */
+  private int seatOf(String username) {
+    if (username == null) {
+      return -1;
+    }
+    for (int seat = 0; seat < seats.size(); seat++) {
+      if (seats.get(seat).getUsername().equals(username)) {
+        return seat;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Gets this CpuPlayer's reputation for a player.
+   * 
+   * @param username the name of the player.
+   * @return the reputation in the range [-5, 5], or null if the player is not
+   *         in the current game.
+   */
+  public Integer getReputation(String username) {
+    int seat = seatOf(username);
+    return seat < 0 || belief == null ? null : getReputation(seat);
+  }
+
+  /**
+   * Gets the role of a player, if known to this CpuPlayer.
+   * 
+   * @param username the name of the player.
+   * @return the player's Identity, or null if it is not known.
+   */
+  public Identity getKnownRole(String username) {
+    int seat = seatOf(username);
+    if (seat < 0 || seat >= knownRoles.length || knownRoles[seat] == UNKNOWN_ROLE) {
+      return null;
+    }
+    return Identity.values()[knownRoles[seat]];
+  }
+
+  /**
+   * Gets this CpuPlayer's reputation for the player in a seat, rounded to
+   * the nearest integer.
+   */
+  int getReputation(int seat) {
+    return Math.round(getExactReputation(seat));
+  }
+
+  /**
+   * Gets this CpuPlayer's reputation for the player in a seat, in the range
+   * [-5, 5]. Interpolates between 0 at the prior probability of being
+   * Fascist/Hitler and -5 or 5 at certainty.
+   */
+  private float getExactReputation(int seat) {
+    float prior = belief.getPriorFascistProbability();
+    float fascist = belief.getFascistProbability(seat);
+    if (fascist >= prior) {
+      return -MAX_REPUTATION * (fascist - prior) / (1 - prior);
+    }
+    return MAX_REPUTATION * (prior - fascist) / prior;
+  }
+
+  /**
+   * Gets the probability this CpuPlayer gives to a player being
+   * Fascist/Hitler.
+   *
+   * @param username the name of a player in the current game.
+   */
+  public float getFascistProbability(String username) {
+    return belief.getFascistProbability(seatOf(username));
+  }
+
+  /**
+   * Gets a copy of this CpuPlayer's belief about the roles of every player.
+   */
+  RoleBelief copyBelief() {
+    return belief.copy();
+  }
+
+  /**
+   * Creates an independent copy of this CpuPlayer, linked to the players of
+   * the given game, so that it can update and act on a fork of the game
+   * without changing this one.
+   *
+   * @param game a game with the same players as the one this CpuPlayer was
+   *             initialized with, such as a {@code fork()} of it.
+   * @return a CpuPlayer with the same beliefs, known roles, search and random
+   *         state as this one. Giving both the same games makes them take the
+   *         same actions.
+   */
+  public CpuPlayer fork(SecretHitlerGame game) {
+    CpuPlayer cpu = new CpuPlayer(myName, new GameRandom(random.getState()));
+    cpu.lastUpdatedRound = lastUpdatedRound;
+    cpu.chancellorChoices = chancellorChoices == null ? null : new ArrayList<>(chancellorChoices);
+    cpu.seats = game.getPlayerList();
+    cpu.mySeat = mySeat;
+    cpu.myPlayerData = mySeat >= 0 ? cpu.seats.get(mySeat) : null;
+    cpu.belief = belief == null ? null : belief.copy();
+    cpu.lastObservedVoteRound = lastObservedVoteRound;
+    cpu.observedDeadSeats = observedDeadSeats;
+    cpu.knowsAllRoles = knowsAllRoles;
+    cpu.knownRoles = knownRoles.clone();
+    cpu.search = search;
+    return cpu;
+  }
+
+  /**
+   * Plays a single move: updates every CpuPlayer, then lets them act in order
+   * until one of them changes the game.
+   *
+   * @param game the game to play on.
+   * @param cpus the CpuPlayers of {@code game}, each initialized with it.
+   * @modifies game, cpus
+   * @return the CpuPlayer that moved, or null if none could.
+   */
+  public static CpuPlayer playMove(SecretHitlerGame game, List<CpuPlayer> cpus) {
+    for (CpuPlayer cpu : cpus) {
+      cpu.update(game);
+    }
+    for (CpuPlayer cpu : cpus) {
+      if (cpu.act(game)) {
+        return cpu;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Plays moves ({@code playMove()}) until the game ends.
+   *
+   * @param game     the game to play on.
+   * @param cpus     the CpuPlayers of {@code game}, each initialized with it.
+   * @param maxMoves the most moves to play.
+   * @modifies game, cpus
+   * @return the number of moves played. If {@code game} has not finished, the
+   *         CpuPlayers either reached {@code maxMoves} or could not move.
+   */
+  public static int playOut(SecretHitlerGame game, List<CpuPlayer> cpus, int maxMoves) {
+    int moves = 0;
+    // act() checks for victories through getState(), so the game can end
+    // without anyone moving.
+    while (!game.hasGameFinished() && moves < maxMoves && playMove(game, cpus) != null) {
+      moves++;
+    }
+    return moves;
+  }
+
+  /**
+   * Makes this CpuPlayer search for its nominations and votes, falling back
+   * to its heuristics when the search cannot run.
+   * 
+   * @param search the search to use, or null to only use heuristics.
+   */
+  public void setSearch(DeterminizedSearch search) {
+    this.search = search;
+  }
+
+  /**
+   * Draws a seed for a search from this CpuPlayer's generator, so that
+   * searches are driven by the same randomness as its other choices.
+   */
+  long nextSearchSeed() {
+    return random.nextLong();
+  }
+
+  /**
+   * Changes this CpuPlayer's reputation for a player.
+   *
+   * @param username    the name of the player.
+   * @param repModifier the strength of the evidence. Positive values are
+   *                    evidence that the player is liberal, and negative
+   *                    values that they are Fascist/Hitler.
+   * @modifies this
+   * @effects each point of repModifier doubles (or halves) the odds of the
+   *          player being liberal, without ruling out either party.
+   */
+  public void updateReputation(String username, int repModifier) {
+    updateReputation(seatOf(username), repModifier);
+  }
+
+  private void updateReputation(int seat, int repModifier) {
+    float ratio = (float) Math.pow(2, -Math.abs(repModifier));
+    if (repModifier > 0) {
+      belief.weigh(seat, ratio, 1);
+    } else {
+      belief.weigh(seat, 1, ratio);
+    }
+  }
+
+  /**
+   * Allows the CpuPlayer to update assumptions after votes are cast,
+   * players are executed and legislation is passed.
+   *
    * @param game
    */
   public void update(SecretHitlerGame game) {
+    if (knowsAllRoles) {
+      return;
+    }
+    observeVotes(game);
+    observeDeaths(game);
+
     if (game.getRound() > lastUpdatedRound && game.getState() == GameState.POST_LEGISLATIVE) {
       Policy.Type lastPolicy = game.getLastEnactedPolicy();
 
@@ -116,34 +378,112 @@ public class CpuPlayer implements Serializable, Comparable<CpuPlayer> {
         return;
       }
 
-      String lastPresident = game.getCurrentPresident();
-      String lastChancellor = game.getCurrentChancellor();
+      int lastPresident = game.getCurrentPresidentSeat();
+      int lastChancellor = game.getCurrentChancellorSeat();
 
-      if (myName.equals(lastPresident)) {
-        if (chancellorChoices.get(0) != chancellorChoices.get(1)) {
-          // We tested the chancellor. Did they pass?
+      if (lastPresident == mySeat) {
+        // The choices are unknown if this player's own move was not recorded
+        // (such as when recovering from a crash).
+        if (chancellorChoices != null && chancellorChoices.get(0) != chancellorChoices.get(1)) {
+          // We tested the chancellor. Did they pass? Liberals always enact
+          // the liberal policy, while Hitler sometimes does to gain trust.
           if (game.getLastEnactedPolicy() == Policy.Type.FASCIST) {
-            updateReputation(lastChancellor, -3);
+            belief.weigh(lastChancellor, 0.6f, 0);
           } else {
-            updateReputation(lastChancellor, 3);
+            belief.weigh(lastChancellor, 0.4f, 1);
           }
         }
-      } else if (myName.equals(lastChancellor)) {
+      } else if (lastChancellor == mySeat) {
       } else {
-        // Update reputation for the chancellor and president based on what policy
-        // was passed.
-        int repModifier = lastPolicy == Policy.Type.LIBERAL ? 1 : -1;
-        if (lastPresident == null || lastChancellor == null) {
+        // Update beliefs about the chancellor and president based on what
+        // policy was passed. The policies they could have drawn are the ones
+        // not yet enacted, including the one just enacted.
+        if (lastPresident == SecretHitlerGame.NO_SEAT || lastChancellor == SecretHitlerGame.NO_SEAT) {
           return;
         }
-        updateReputation(lastPresident, repModifier);
-        updateReputation(lastChancellor, repModifier);
+        int fascistsUndrawn = SecretHitlerGame.NUM_FASCIST_POLICIES - game.getNumFascistPolicies();
+        int liberalsUndrawn = SecretHitlerGame.NUM_LIBERAL_POLICIES - game.getNumLiberalPolicies();
+        if (lastPolicy == Policy.Type.FASCIST) {
+          fascistsUndrawn++;
+        } else {
+          liberalsUndrawn++;
+        }
+        belief.observePolicy(lastPresident, lastChancellor, lastPolicy, fascistsUndrawn, liberalsUndrawn);
       }
 
       lastUpdatedRound = game.getRound();
     }
   }
 
+  /**
+   * Learns what this CpuPlayer would have learned from making a move, when
+   * the move is replayed on the game instead of played by this CpuPlayer
+   * (such as when recovering a game from its journal). The moves of other
+   * players are observed through {@code update()}.
+   *
+   * @param game  the game, after {@code event} was applied to it.
+   * @param event the replayed event.
+   * @modifies this
+   * @effects if this CpuPlayer is president, records the policies it passed
+   *          to the chancellor, or the party of the player it investigated.
+   */
+  public void replay(SecretHitlerGame game, GameEvent event) {
+    if (game.getCurrentPresidentSeat() != mySeat) {
+      return;
+    }
+    if (event.type() == GameEvent.Type.PRESIDENT_DISCARD_POLICY) {
+      chancellorChoices = new ArrayList<>();
+      for (Policy policy : game.getChancellorLegislativeChoices()) {
+        chancellorChoices.add(policy.getType());
+      }
+    } else if (event.type() == GameEvent.Type.INVESTIGATE_PLAYER) {
+      observeInvestigation(event.seat(), seats.get(event.seat()).isFascist() ? Identity.FASCIST : Identity.LIBERAL);
+    }
+  }
+
+  /**
+   * Updates beliefs with the votes of the last election, once the votes are
+   * all in. If Hitler could have won by being elected, the elected chancellor
+   * is also not Hitler.
+   */
+  private void observeVotes(SecretHitlerGame game) {
+    GameState state = game.getState();
+    if (game.getRound() <= lastObservedVoteRound || state == GameState.SETUP
+        || state == GameState.CHANCELLOR_NOMINATION || state == GameState.CHANCELLOR_VOTING
+        || game.hasGameFinished()) {
+      return;
+    }
+    int votedSeats = game.getVotedSeats() & ~(1 << mySeat);
+    int president = game.getCurrentPresidentSeat();
+    int chancellor = game.getCurrentChancellorSeat();
+    lastObservedVoteRound = game.getRound();
+    if (votedSeats == 0 || president == SecretHitlerGame.NO_SEAT || chancellor == SecretHitlerGame.NO_SEAT) {
+      return;
+    }
+    belief.observeVotes(votedSeats, game.getYesSeats(), president, chancellor);
+    if (state == GameState.LEGISLATIVE_PRESIDENT && canHitlerWinByElection(game)) {
+      belief.observeNotHitler(chancellor);
+    }
+  }
+
+  /**
+   * Updates beliefs with the players executed since the last update. The
+   * game ends when Hitler is executed, so none of them are Hitler.
+   */
+  private void observeDeaths(SecretHitlerGame game) {
+    if (Integer.bitCount(observedDeadSeats) == seats.size() - game.getLivingPlayerCount()) {
+      return;
+    }
+    for (int seat = 0; seat < seats.size(); seat++) {
+      if (!seats.get(seat).isAlive() && (observedDeadSeats & (1 << seat)) == 0) {
+        observedDeadSeats |= 1 << seat;
+        if (!game.hasGameFinished()) {
+          belief.observeNotHitler(seat);
+        }
+      }
+    }
+  }
+
   /**
    * Allows CpuPlayers to take an action, potentially updating the game state.
    * 
@@ -195,74 +535,74 @@ public class CpuPlayer implements Serializable, Comparable<CpuPlayer> {
     return game.getNumFascistPolicies() >= 3;
   }
 
-  private List<Player> removePlayerFromList(String username, List<Player> playerList) {
-    if (username == null) {
-      return playerList;
-    }
-
-    List<Player> ret = new ArrayList<Player>(playerList);
-    Iterator<Player> itr = ret.iterator();
-    while (itr.hasNext()) {
-      if (itr.next().getUsername().equals(username)) {
-        itr.remove();
-      }
-    }
-    return ret;
+  /**
+   * Gets a bit mask of a seat, for excluding it from
+   * chooseRandomSeatWeighted(). Returns 0 for NO_SEAT.
+   */
+  private int seatMask(int seat) {
+    return seat == SecretHitlerGame.NO_SEAT ? 0 : 1 << seat;
   }
 
-  private List<Player> removeDeadPlayersAndSelf(List<Player> playerList) {
-    List<Player> ret = new ArrayList<Player>(playerList);
-    Iterator<Player> itr = ret.iterator();
-    while (itr.hasNext()) {
-      Player curr = itr.next();
-      if (curr.getUsername().equals(myName) || !curr.isAlive()) {
-        itr.remove();
+  /**
+   * Gets a bit mask of the seats of dead players and this CpuPlayer.
+   */
+  private int getDeadSeatsAndSelf() {
+    int mask = 1 << mySeat;
+    for (int seat = 0; seat < seats.size(); seat++) {
+      if (!seats.get(seat).isAlive()) {
+        mask |= 1 << seat;
       }
     }
-    return ret;
+    return mask;
   }
 
   private boolean handleChancellorNomination(SecretHitlerGame game) {
     // No action required if we are not president
-    if (!game.getCurrentPresident().equals(myName)) {
+    if (game.getCurrentPresidentSeat() != mySeat) {
       return false;
     }
 
-    List<Player> playerList = game.getPlayerList();
-
     // Remove the chancellor and optionally the president
-    playerList = removePlayerFromList(game.getLastChancellor(), playerList);
+    int excludedSeats = seatMask(game.getLastChancellorSeat());
     if (game.getLivingPlayerCount() > 5) {
-      playerList = removePlayerFromList(game.getLastPresident(), playerList);
+      excludedSeats |= seatMask(game.getLastPresidentSeat());
+    }
+    excludedSeats |= getDeadSeatsAndSelf();
+
+    if (search != null) {
+      int chancellor = search.chooseChancellor(game, this, excludedSeats);
+      if (chancellor != SecretHitlerGame.NO_SEAT) {
+        game.nominateChancellor(seats.get(chancellor).getUsername());
+        return true;
+      }
     }
-    playerList = removeDeadPlayersAndSelf(playerList);
 
     // Nominate a chancellor using a weighted random, based on our role and the
     // current game state. Keep trying until game state has advanced past
     // nomination.
-    String chancellorName = null;
+    int chancellor;
 
     // Choose chancellor nominee using weighted random
     if (myPlayerData.getIdentity() == Identity.FASCIST) {
       if (canHitlerWinByElection(game)) { // Increase likelihood of choosing hitler
-        chancellorName = chooseRandomPlayerWeighted(playerList, 0.35f, 1.5f, 0.15f, 0.05f);
+        chancellor = chooseRandomSeatWeighted(excludedSeats, 0.35f, 1.5f, 0.15f, 0.05f);
       } else {
-        chancellorName = chooseRandomPlayerWeighted(playerList, 1f, 0.25f, 0.5f, 0.25f);
+        chancellor = chooseRandomSeatWeighted(excludedSeats, 1f, 0.25f, 0.5f, 0.25f);
       }
     } else if (myPlayerData.getIdentity() == Identity.HITLER) {
       // Target liberal players to increase trust
-      chancellorName = chooseRandomPlayerWeighted(playerList, 0.5f, 0, 1, 0.25f);
+      chancellor = chooseRandomSeatWeighted(excludedSeats, 0.5f, 0, 1, 0.25f);
     } else { // Liberal
       if (canHitlerWinByElection(game)) { // Avoid hitler or fascist players.
         // TODO: Add a way to check for "safe" players
         // TODO: Add filters for certain players (ie, players ineligible for reelection)
-        chancellorName = chooseRandomPlayerWeighted(playerList, 0.01f, 0, 1, 0.05f);
+        chancellor = chooseRandomSeatWeighted(excludedSeats, 0.01f, 0, 1, 0.05f);
       } else { // Less drastic avoidance of F/H players
-        chancellorName = chooseRandomPlayerWeighted(playerList, 0.01f, 0, 1, 0.1f);
+        chancellor = chooseRandomSeatWeighted(excludedSeats, 0.01f, 0, 1, 0.1f);
       }
     }
 
-    game.nominateChancellor(chancellorName);
+    game.nominateChancellor(seats.get(chancellor).getUsername());
     return true;
 
     // Handle checks for whether the player is eligible
@@ -277,17 +617,15 @@ public class CpuPlayer implements Serializable, Comparable<CpuPlayer> {
   /**
    * Gets the player reputation, setting to min/max value if identity is known.
    */
-  private int getPlayerReputationWithIdentity(String playerName) {
-    int reputation = playerReputation.get(playerName);
-    if (knownPlayerRoles.containsKey(playerName)) {
-      Identity id = knownPlayerRoles.get(playerName);
-      if (id == Identity.FASCIST || id == Identity.HITLER) {
-        reputation = -1 * MAX_REPUTATION;
-      } else {
-        reputation = MAX_REPUTATION;
-      }
+  private int getPlayerReputationWithIdentity(int seat) {
+    byte role = knownRoles[seat];
+    if (role == UNKNOWN_ROLE) {
+      return getReputation(seat);
+    } else if (role == Identity.FASCIST.ordinal() || role == Identity.HITLER.ordinal()) {
+      return -1 * MAX_REPUTATION;
+    } else {
+      return MAX_REPUTATION;
     }
-    return reputation;
   }
 
   private boolean handleChancellorVoting(SecretHitlerGame game) {
@@ -296,9 +634,17 @@ public class CpuPlayer implements Serializable, Comparable<CpuPlayer> {
       return false;
     }
 
+    if (search != null) {
+      Boolean vote = search.chooseVote(game, this);
+      if (vote != null) {
+        game.registerVote(myName, vote);
+        return true;
+      }
+    }
+
     Identity myId = myPlayerData.getIdentity();
-    String chancellor = game.getCurrentChancellor();
-    String president = game.getCurrentPresident();
+    int chancellor = game.getCurrentChancellorSeat();
+    int president = game.getCurrentPresidentSeat();
     // Determine reputation level for the nominated players.
     int presidentRep = getPlayerReputationWithIdentity(president);
     int chancellorRep = getPlayerReputationWithIdentity(chancellor);
@@ -306,9 +652,9 @@ public class CpuPlayer implements Serializable, Comparable<CpuPlayer> {
     // Modify reputation if we're hitler and part of the legislation.
     // (basically, treat ourselves as though we're liberal.)
     if (myId == Identity.HITLER) {
-      if (myName.equals(president)) {
+      if (president == mySeat) {
         presidentRep = MAX_REPUTATION;
-      } else if (myName.equals(chancellor)) {
+      } else if (chancellor == mySeat) {
         chancellorRep = MAX_REPUTATION;
       }
     }
@@ -320,7 +666,7 @@ public class CpuPlayer implements Serializable, Comparable<CpuPlayer> {
 
     // Fascists should vote for win condition almost always
     if (myPlayerData.isFascist() && canHitlerWinByElection(game)
-        && game.getPlayer(chancellor).isHitler()) {
+        && seats.get(chancellor).isHitler()) {
       voteWithProbability(game, 0.99f);
       return true;
     }
@@ -384,7 +730,7 @@ public class CpuPlayer implements Serializable, Comparable<CpuPlayer> {
   }
 
   private boolean handleLegislativePresident(SecretHitlerGame game) {
-    if (!game.getCurrentPresident().equals(myName)) {
+    if (game.getCurrentPresidentSeat() != mySeat) {
       return false; // We are not president, no action required
     }
 
@@ -462,7 +808,7 @@ public class CpuPlayer implements Serializable, Comparable<CpuPlayer> {
   }
 
   private boolean handleLegislativeChancellor(SecretHitlerGame game) {
-    if (!myName.equals(game.getCurrentChancellor())) {
+    if (game.getCurrentChancellorSeat() != mySeat) {
       return false;
     }
 
@@ -481,13 +827,10 @@ public class CpuPlayer implements Serializable, Comparable<CpuPlayer> {
       } else if (canVeto && policyType == Policy.Type.LIBERAL && myPlayerData.isFascist()) {
         // Check if our president is a known fascist/hitler. If so, we can pull
         // off a veto with them.
-        String president = game.getCurrentPresident();
-        if (knownPlayerRoles.containsKey(president)) {
-          Identity presidentId = knownPlayerRoles.get(president);
-          if (presidentId == Identity.HITLER || presidentId == Identity.FASCIST) {
-            game.chancellorVeto();
-            return true;
-          }
+        byte presidentRole = knownRoles[game.getCurrentPresidentSeat()];
+        if (presidentRole == Identity.HITLER.ordinal() || presidentRole == Identity.FASCIST.ordinal()) {
+          game.chancellorVeto();
+          return true;
         }
       }
       // Otherwise, enact one of them because the order doesn't matter
@@ -513,7 +856,7 @@ public class CpuPlayer implements Serializable, Comparable<CpuPlayer> {
   }
 
   private boolean handlePresidentVeto(SecretHitlerGame game) {
-    if (!game.getCurrentPresident().equals(myName)) {
+    if (game.getCurrentPresidentSeat() != mySeat) {
       return false; // We are not president, no action required
     }
 
@@ -527,20 +870,20 @@ public class CpuPlayer implements Serializable, Comparable<CpuPlayer> {
         boolean shouldAllowVeto = policyType == Policy.Type.FASCIST;
         // Allow veto for fascist policies, deny for liberal policies
         game.presidentialVeto(shouldAllowVeto);
-        updateReputation(game.getCurrentChancellor(), shouldAllowVeto ? 4 : -4);
+        updateReputation(game.getCurrentChancellorSeat(), shouldAllowVeto ? 4 : -4);
       } else { // Fascists and hitler should do the inverse
         game.presidentialVeto(policyType == Policy.Type.LIBERAL);
       }
     } else { // 1 F, 1 L
       // No reason to veto since chancellor has a choice
       game.presidentialVeto(false);
-      updateReputation(game.getCurrentChancellor(), -1);
+      updateReputation(game.getCurrentChancellorSeat(), -1);
     }
     return true;
   }
 
   private boolean handlePresidentialPowerPeek(SecretHitlerGame game) {
-    if (!game.getCurrentPresident().equals(myName)) {
+    if (game.getCurrentPresidentSeat() != mySeat) {
       return false;
     }
     // Currently does nothing for peek results
@@ -550,68 +893,82 @@ public class CpuPlayer implements Serializable, Comparable<CpuPlayer> {
   }
 
   private boolean handlePresidentialPowerInvestigate(SecretHitlerGame game) {
-    if (!game.getCurrentPresident().equals(myName)) {
+    if (game.getCurrentPresidentSeat() != mySeat) {
       return false;
     }
-    List<Player> playerList = removeDeadPlayersAndSelf(game.getPlayerList());
-    String selectedPlayer = null;
-    while (selectedPlayer == null || game.getPlayer(selectedPlayer).hasBeenInvestigated()) {
-      if (myPlayerData.getIdentity() == Identity.LIBERAL) {
-        selectedPlayer = chooseRandomPlayerWeighted(playerList, 1f, 0, -0.4f, 0.5f);
-      } else {
-        // Totally randomize selection
-        selectedPlayer = chooseRandomPlayerWeighted(playerList, 1f, 1f, 1f, 0.5f);
+    // Players cannot be investigated twice.
+    int excludedSeats = getDeadSeatsAndSelf();
+    for (int seat = 0; seat < seats.size(); seat++) {
+      if (seats.get(seat).hasBeenInvestigated()) {
+        excludedSeats |= 1 << seat;
       }
     }
+    int selectedSeat;
+    if (myPlayerData.getIdentity() == Identity.LIBERAL) {
+      selectedSeat = chooseRandomSeatWeighted(excludedSeats, 1f, 0, -0.4f, 0.5f);
+    } else {
+      // Totally randomize selection
+      selectedSeat = chooseRandomSeatWeighted(excludedSeats, 1f, 1f, 1f, 0.5f);
+    }
     // Update known roles using the investigated role
-    knownPlayerRoles.put(selectedPlayer, game.investigatePlayer(selectedPlayer));
+    Identity role = game.investigatePlayer(seats.get(selectedSeat).getUsername());
+    observeInvestigation(selectedSeat, role);
     return true;
   }
 
+  private void observeInvestigation(int seat, Identity role) {
+    knownRoles[seat] = (byte) role.ordinal();
+    belief.observeParty(seat, role == Identity.FASCIST);
+  }
+
   private boolean handlePresidentialPowerElection(SecretHitlerGame game) {
-    if (!game.getCurrentPresident().equals(myName)) {
+    if (game.getCurrentPresidentSeat() != mySeat) {
       return false;
     }
-    String selectedPlayer = "";
+    int selectedSeat;
     // Liberals should avoid suspicious players, while fascists should
     // slightly avoid liberals. For both, preferentially choose players.
-    List<Player> playerList = removeDeadPlayersAndSelf(game.getPlayerList());
+    int excludedSeats = getDeadSeatsAndSelf();
     if (myPlayerData.getIdentity() == Identity.LIBERAL) {
-      selectedPlayer = chooseRandomPlayerWeighted(playerList, -0.8f, 0, 1f, 0.5f);
+      selectedSeat = chooseRandomSeatWeighted(excludedSeats, -0.8f, 0, 1f, 0.5f);
     } else {
-      selectedPlayer = chooseRandomPlayerWeighted(playerList, 1f, 1f, 0.5f, 0.5f);
+      selectedSeat = chooseRandomSeatWeighted(excludedSeats, 1f, 1f, 0.5f, 0.5f);
     }
-    game.electNextPresident(selectedPlayer);
+    game.electNextPresident(seats.get(selectedSeat).getUsername());
     return true;
   }
 
   private boolean handlePresidentialPowerExecution(SecretHitlerGame game) {
-    if (!game.getCurrentPresident().equals(myName)) {
+    if (game.getCurrentPresidentSeat() != mySeat) {
       return false;
     }
 
-    String selectedPlayer = null;
-    List<Player> playerList = removeDeadPlayersAndSelf(game.getPlayerList());
-    // Keep going until a valid player is selected
-    while (selectedPlayer == null || !game.getPlayer(selectedPlayer).isAlive()) {
-      if (myPlayerData.getIdentity() == Identity.LIBERAL) {
-        // Aim for fascist or suspicious players
-        // TODO: Keep a pool of players that are tested/untested for hitler role?
-        selectedPlayer = chooseRandomPlayerWeighted(playerList, 1f, 1f, -0.4f, 0);
-      } else {
-        selectedPlayer = chooseRandomPlayerWeighted(playerList, 0.5f, 0, 1f, 0);
-        // Do not assassinate hitler
-        if (knownPlayerRoles.get(selectedPlayer) == Identity.HITLER) {
-          selectedPlayer = null;
+    int selectedSeat;
+    int excludedSeats = getDeadSeatsAndSelf();
+    if (myPlayerData.getIdentity() == Identity.LIBERAL) {
+      // Aim for fascist or suspicious players
+      // TODO: Keep a pool of players that are tested/untested for hitler role?
+      selectedSeat = chooseRandomSeatWeighted(excludedSeats, 1f, 1f, -0.4f, 0);
+    } else {
+      // Do not assassinate hitler, unless there is no one else to choose.
+      int hitlerSeats = 0;
+      for (int seat = 0; seat < seats.size(); seat++) {
+        if (knownRoles[seat] == Identity.HITLER.ordinal()) {
+          hitlerSeats |= 1 << seat;
         }
       }
+      int allSeats = (1 << seats.size()) - 1;
+      if ((excludedSeats | hitlerSeats) != allSeats) {
+        excludedSeats |= hitlerSeats;
+      }
+      selectedSeat = chooseRandomSeatWeighted(excludedSeats, 0.5f, 0, 1f, 0);
     }
-    game.executePlayer(selectedPlayer);
+    game.executePlayer(seats.get(selectedSeat).getUsername());
     return true;
   }
 
   private boolean handlePostLegislative(SecretHitlerGame game) {
-    if (game.getCurrentPresident().equals(myName)) {
+    if (game.getCurrentPresidentSeat() == mySeat) {
       game.endPresidentialTerm();
       return true;
     }
@@ -629,7 +986,8 @@ public class CpuPlayer implements Serializable, Comparable<CpuPlayer> {
    * 
    * Ignores dead players and self (this CPU).
    * 
-   * @param playerList    : List of players to traverse.
+   * @param playerList    : List of players to traverse. Must be players in
+   *                      the game this CpuPlayer was initialized with.
    * @param fascistWeight : Relative weight assigned to known or suspected
    *                      fascist players. Higher values mean the player is
    *                      more likely to be chosen.
@@ -645,35 +1003,62 @@ public class CpuPlayer implements Serializable, Comparable<CpuPlayer> {
   public String chooseRandomPlayerWeighted(List<Player> playerList,
       float fascistWeight, float hitlerWeight, float liberalWeight,
       float userBias) {
+    // Exclude any seats that are not in the list.
+    int excludedSeats = 0;
+    for (int seat = 0; seat < seats.size(); seat++) {
+      if (!playerList.contains(seats.get(seat))) {
+        excludedSeats |= 1 << seat;
+      }
+    }
+    int seat = chooseRandomSeatWeighted(excludedSeats, fascistWeight, hitlerWeight, liberalWeight, userBias);
+    return seats.get(seat).getUsername();
+  } // end chooseRandomPlayerWeighted()
 
-    // Make a copy of the player list so we can modify, then remove this
-    // CpuPlayer from it for traversal
-    playerList = new ArrayList<Player>(playerList);
+  /**
+   * Returns the seat of a player, chosen by weighted random. Equivalent to
+   * {@code chooseRandomPlayerWeighted()} on the players whose seats are not in
+   * {@code excludedSeats}, but does not allocate.
+   * 
+   * @param excludedSeats : Bit mask of seats that cannot be chosen.
+   * @return The seat of a player, chosen by weighted random.
+   */
+  private int chooseRandomSeatWeighted(int excludedSeats,
+      float fascistWeight, float hitlerWeight, float liberalWeight,
+      float userBias) {
+    if (thresholds == null || thresholds.length != seats.size()) {
+      thresholds = new float[seats.size()];
+    }
 
-    // Traverse player list, calculating weight for each player based on known
+    // Traverse the seats, calculating weight for each player based on known
     // or suspected roles
     float totalWeight = 0f;
-    float[] playerMinThreshold = new float[playerList.size()];
+    int firstIncludedSeat = -1;
 
-    for (int i = 0; i < playerList.size(); i++) {
-      Player currPlayer = playerList.get(i);
-      String currPlayerName = currPlayer.getUsername();
+    for (int seat = 0; seat < seats.size(); seat++) {
+      if ((excludedSeats & (1 << seat)) != 0) {
+        thresholds[seat] = -1f;
+        continue;
+      }
+      if (firstIncludedSeat < 0) {
+        firstIncludedSeat = seat;
+      }
+
+      Player currPlayer = seats.get(seat);
       float currWeight = 0f;
 
-      if (!myName.equals(currPlayerName) && currPlayer.isAlive()) {
-        if (knownPlayerRoles.containsKey(currPlayerName)) { // Role is known
-          Identity currId = knownPlayerRoles.get(currPlayerName);
-          if (currId == Identity.FASCIST) {
+      if (seat != mySeat && currPlayer.isAlive()) {
+        byte currRole = knownRoles[seat];
+        if (currRole != UNKNOWN_ROLE) { // Role is known
+          if (currRole == Identity.FASCIST.ordinal()) {
             currWeight = fascistWeight;
-          } else if (currId == Identity.HITLER) {
+          } else if (currRole == Identity.HITLER.ordinal()) {
             currWeight = hitlerWeight;
           } else {
             currWeight = liberalWeight;
           }
         } else { // Role unknown
           // Normalize suspicion value to [0, 1] range, where 0 is fascist.
-          int reputation = playerReputation.get(currPlayerName);
-          float t = (reputation + MAX_REPUTATION) / (2f * MAX_REPUTATION);
+          float t = (getExactReputation(seat) + MAX_REPUTATION) / (2f * MAX_REPUTATION);
           // Interpolate between fascist and liberal weights.
           currWeight = t * liberalWeight + (1f - t) * fascistWeight;
         }
@@ -689,22 +1074,20 @@ public class CpuPlayer implements Serializable, Comparable<CpuPlayer> {
 
       // If weight is 0, set threshold to a negative number.
       if (currWeight < 0.000001f) {
-        currWeight = 0f;
-        playerMinThreshold[i] = -1f;
+        thresholds[seat] = -1f;
       } else {
         totalWeight += currWeight;
-        playerMinThreshold[i] = totalWeight;
+        thresholds[seat] = totalWeight;
       }
 
     } // end for
 
     // Calculate a random value based on the total weight, then traverse the
     // thresholds until we find and return the matching player.
-    int index = getWeightedRandomIndex(playerMinThreshold);
-    return playerList.get(index).getUsername();
-  } // end chooseRandomPlayerWeighted()
+    return getWeightedRandomIndex(thresholds, firstIncludedSeat);
+  } // end chooseRandomSeatWeighted()
 
-  private int getWeightedRandomIndex(float[] weights) {
+  private int getWeightedRandomIndex(float[] weights, int defaultIndex) {
     // Calculate total weight
     float totalWeight = 0;
     for (int i = 0; i < weights.length; i++) {
@@ -714,7 +1097,7 @@ public class CpuPlayer implements Serializable, Comparable<CpuPlayer> {
     }
 
     float t = (float) (totalWeight * random.nextDouble());
-    int lastValidIndex = 0;
+    int lastValidIndex = defaultIndex;
 
     for (int i = 0; i < weights.length; i++) {
       if (weights[i] > 0f) {
@@ -734,7 +1117,119 @@ public class CpuPlayer implements Serializable, Comparable<CpuPlayer> {
 
   private void readObject(java.io.ObjectInputStream in) throws IOException, ClassNotFoundException {
     in.defaultReadObject();
-    random = new Random();
+    if (random == null) {
+      // Written before the generator was stored.
+      random = new GameRandom();
+    }
+    if (belief == null && myPlayerData != null) {
+      // Written before beliefs replaced reputations.
+      resetBelief();
+    }
+  }
+
+  /**
+   * Writes the CpuPlayer in the compact binary snapshot format.
+   * 
+   * @param out   the stream to write to.
+   * @param seats the players in the current game, in seat order. Empty if
+   *              there is no game.
+   * @effects writes the name, round and chancellor choices, then the known
+   *          role of each player as one byte per seat (-1 if not known), then
+   *          the belief about everyone's roles (if initialized) and the last
+   *          events observed, then the state of the random number generator.
+   */
+  public void writeSnapshot(DataOutput out, List<Player> seats) throws IOException {
+    out.writeUTF(myName);
+    out.writeInt(lastUpdatedRound);
+    if (chancellorChoices == null) {
+      out.writeByte(-1);
+    } else {
+      out.writeByte(chancellorChoices.size());
+      for (Policy.Type type : chancellorChoices) {
+        out.writeByte(type.ordinal());
+      }
+    }
+
+    byte[] roles = new byte[seats.size()];
+    for (int i = 0; i < seats.size(); i++) {
+      roles[i] = i < knownRoles.length ? knownRoles[i] : UNKNOWN_ROLE;
+    }
+    out.write(roles);
+    out.writeBoolean(belief != null);
+    if (belief != null) {
+      belief.writeSnapshot(out);
+    }
+    out.writeInt(lastObservedVoteRound);
+    out.writeInt(observedDeadSeats);
+    out.writeLong(random.getState());
+  }
+
+  /**
+   * Reads a CpuPlayer written by {@code writeSnapshot()}.
+   * 
+   * @param in    the stream to read from.
+   * @param seats    the players in the restored game, in seat order. Must
+   *                 match the seats given when the CpuPlayer was written.
+   * @param schemaId the LobbyCodec schema the snapshot was written with.
+   * @return a new CpuPlayer with the same beliefs, known roles and random
+   *         state, linked to its Player in {@code seats} (if any).
+   */
+  public static CpuPlayer readSnapshot(DataInput in, List<Player> seats, int schemaId) throws IOException {
+    CpuPlayer cpu = new CpuPlayer(in.readUTF());
+    cpu.lastUpdatedRound = in.readInt();
+    int choiceCount = in.readByte();
+    if (choiceCount >= 0) {
+      cpu.chancellorChoices = new ArrayList<>(choiceCount);
+      for (int i = 0; i < choiceCount; i++) {
+        int type = in.readByte();
+        if (type < 0 || type >= Policy.Type.values().length) {
+          throw new IOException("Invalid policy type " + type + ".");
+        }
+        cpu.chancellorChoices.add(Policy.Type.values()[type]);
+      }
+    }
+
+    byte[] reputationBytes = null;
+    if (schemaId < 4) {
+      reputationBytes = new byte[seats.size()];
+      in.readFully(reputationBytes);
+    }
+    cpu.knownRoles = new byte[seats.size()];
+    in.readFully(cpu.knownRoles);
+    for (int i = 0; i < seats.size(); i++) {
+      if (cpu.knownRoles[i] < UNKNOWN_ROLE || cpu.knownRoles[i] >= Identity.values().length) {
+        throw new IOException("Invalid role " + cpu.knownRoles[i] + ".");
+      }
+    }
+    cpu.seats = seats;
+    cpu.mySeat = cpu.seatOf(cpu.myName);
+    if (cpu.mySeat >= 0) {
+      cpu.myPlayerData = seats.get(cpu.mySeat);
+    }
+
+    if (schemaId >= 4) {
+      if (in.readBoolean()) {
+        cpu.belief = RoleBelief.readSnapshot(in, seats.size());
+      }
+      cpu.lastObservedVoteRound = in.readInt();
+      cpu.observedDeadSeats = in.readInt();
+      cpu.knowsAllRoles = seats.size() > 0;
+      for (byte role : cpu.knownRoles) {
+        cpu.knowsAllRoles &= role != UNKNOWN_ROLE;
+      }
+    } else if (cpu.myPlayerData != null) {
+      // Convert the old reputations into evidence about each player.
+      cpu.resetBelief();
+      for (int i = 0; i < seats.size(); i++) {
+        if (reputationBytes[i] != Byte.MIN_VALUE && reputationBytes[i] != 0) {
+          cpu.updateReputation(i, reputationBytes[i]);
+        }
+      }
+    }
+    if (schemaId >= 3) {
+      cpu.random.setSeed(in.readLong());
+    }
+    return cpu;
   }
 
 } // end CpuPlayer
@@ -0,0 +1,245 @@
+package game;
+
+import game.datastructures.Identity;
+import game.datastructures.Player;
+import game.util.GameRandom;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Chooses CpuPlayer actions by Monte Carlo search over determinizations of the
+ * game.
+ *
+ * To evaluate the candidate actions of a decision, the search repeatedly:
+ * samples an assignment of hidden roles from the CpuPlayer's belief about
+ * everyone's roles (see RoleBelief); forks the game with
+ * those roles and a reshuffled deck; applies one candidate; and plays the fork
+ * to the end with heuristic CpuPlayers. The candidate whose rollouts were won
+ * most often by the CpuPlayer's team is chosen.
+ *
+ * Rollouts run on a shared, bounded ExecutorService, and each decision is
+ * limited to a fixed time budget. If the pool is too busy to accept the
+ * decision's rollouts, the search gives up immediately and the CpuPlayer falls
+ * back to its heuristics, so bot lobbies cannot take over the server.
+ *
+ * A DeterminizedSearch is thread-safe and is shared by every strong
+ * CpuPlayer.
+ */
+public class DeterminizedSearch {
+
+    // A rollout that takes more moves than this is counted as a loss.
+    private static final int MAX_ROLLOUT_MOVES = 2000;
+    // Time allowed past the budget for workers to finish their last rollout.
+    private static final long GRACE_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+
+    private final ExecutorService pool;
+    private final int parallelism;
+    private final long budgetNanos;
+
+    /**
+     * Applies a candidate action to a forked game.
+     */
+    interface Action {
+        void apply(SecretHitlerGame game, int candidate);
+    }
+
+    /**
+     * Creates a search that runs its rollouts on the given pool.
+     *
+     * @param pool        the pool to run rollouts on. Should be bounded, and
+     *                    reject tasks when it is saturated.
+     * @param parallelism the number of rollout workers per decision.
+     * @param budgetMs    the time allowed for each decision, in milliseconds.
+     */
+    public DeterminizedSearch(ExecutorService pool, int parallelism, long budgetMs) {
+        this.pool = pool;
+        this.parallelism = Math.max(1, parallelism);
+        this.budgetNanos = TimeUnit.MILLISECONDS.toNanos(budgetMs);
+    }
+
+    /**
+     * Chooses a chancellor to nominate.
+     *
+     * @param game          the game, in CHANCELLOR_NOMINATION with the
+     *                      CpuPlayer as president.
+     * @param cpu           the CpuPlayer to decide for.
+     * @param excludedSeats bit mask of the seats that cannot be nominated.
+     * @return the seat with the best win rate, or NO_SEAT if the search could
+     *         not run.
+     */
+    public int chooseChancellor(SecretHitlerGame game, CpuPlayer cpu, int excludedSeats) {
+        int playerCount = game.getPlayerList().size();
+        int[] candidates = new int[Integer.bitCount(~excludedSeats & ((1 << playerCount) - 1))];
+        int count = 0;
+        for (int seat = 0; seat < playerCount; seat++) {
+            if ((excludedSeats & (1 << seat)) == 0) {
+                candidates[count++] = seat;
+            }
+        }
+        if (candidates.length <= 1) {
+            return candidates.length == 1 ? candidates[0] : SecretHitlerGame.NO_SEAT;
+        }
+        int best = search(game, cpu, candidates.length,
+                (fork, i) -> fork.nominateChancellor(fork.getPlayerList().get(candidates[i]).getUsername()));
+        return best < 0 ? SecretHitlerGame.NO_SEAT : candidates[best];
+    }
+
+    /**
+     * Chooses how to vote on the current nomination.
+     *
+     * @param game the game, in CHANCELLOR_VOTING.
+     * @param cpu  the CpuPlayer to decide for. Must not have voted yet.
+     * @return true for yes, false for no, or null if the search could not run.
+     */
+    public Boolean chooseVote(SecretHitlerGame game, CpuPlayer cpu) {
+        String name = cpu.myName;
+        int best = search(game, cpu, 2, (fork, i) -> fork.registerVote(name, i == 1));
+        return best < 0 ? null : best == 1;
+    }
+
+    /**
+     * Evaluates candidate actions by rolling out determinized games.
+     *
+     * @param game           the game to decide in. Not modified.
+     * @param cpu            the CpuPlayer to decide for.
+     * @param candidateCount the number of candidate actions.
+     * @param action         applies candidate {@code i} to a forked game.
+     * @return the index of the candidate with the best win rate, or -1 if the
+     *         pool rejected the rollouts or no rollout finished in time.
+     */
+    int search(SecretHitlerGame game, CpuPlayer cpu, int candidateCount, Action action) {
+        long deadline = System.nanoTime() + budgetNanos;
+        // Copy everything the workers need on this thread, so they never read
+        // the live game or CpuPlayer.
+        Position position = new Position(game.fork(), cpu);
+        GameRandom seeds = new GameRandom(cpu.nextSearchSeed());
+
+        List<Future<int[]>> workers = new ArrayList<>(parallelism);
+        try {
+            for (int i = 0; i < parallelism; i++) {
+                GameRandom random = seeds.split();
+                int offset = i;
+                workers.add(pool.submit(
+                        () -> runRollouts(position, candidateCount, action, offset, random, deadline)));
+            }
+        } catch (RejectedExecutionException e) {
+            for (Future<int[]> worker : workers) {
+                worker.cancel(true);
+            }
+            return -1;
+        }
+
+        // wins[i] and plays[i] for each candidate, laid out as [wins..., plays...].
+        int[] totals = new int[2 * candidateCount];
+        for (Future<int[]> worker : workers) {
+            try {
+                long remaining = deadline + GRACE_NANOS - System.nanoTime();
+                int[] counts = worker.get(Math.max(remaining, 0), TimeUnit.NANOSECONDS);
+                for (int i = 0; i < totals.length; i++) {
+                    totals[i] += counts[i];
+                }
+            } catch (TimeoutException | ExecutionException e) {
+                // A worker that is late or failed contributes nothing.
+                worker.cancel(true);
+            } catch (InterruptedException e) {
+                worker.cancel(true);
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        int best = -1;
+        double bestRate = -1;
+        for (int i = 0; i < candidateCount; i++) {
+            int plays = totals[candidateCount + i];
+            if (plays > 0 && (double) totals[i] / plays > bestRate) {
+                best = i;
+                bestRate = (double) totals[i] / plays;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Runs rollouts until the deadline, cycling through the candidates.
+     *
+     * @return the wins of each candidate followed by its number of rollouts.
+     */
+    private static int[] runRollouts(Position position, int candidateCount, Action action, int offset,
+            GameRandom random, long deadline) {
+        int[] counts = new int[2 * candidateCount];
+        for (int i = offset; System.nanoTime() < deadline && !Thread.currentThread().isInterrupted(); i++) {
+            int candidate = i % candidateCount;
+            if (rollout(position, candidate, action, random)) {
+                counts[candidate]++;
+            }
+            counts[candidateCount + candidate]++;
+        }
+        return counts;
+    }
+
+    /**
+     * Plays one determinized game after applying a candidate action.
+     *
+     * @return true if the CpuPlayer's team won.
+     */
+    private static boolean rollout(Position position, int candidate, Action action, GameRandom random) {
+        SecretHitlerGame game = position.root.fork();
+        Identity[] roles = position.belief.sample(random);
+        List<Player> players = game.getPlayerList();
+        for (int seat = 0; seat < players.size(); seat++) {
+            players.get(seat).setIdentity(roles[seat]);
+        }
+        game.redealHiddenCards(random.nextLong());
+        action.apply(game, candidate);
+
+        List<CpuPlayer> cpus = new ArrayList<>(players.size());
+        for (Player player : players) {
+            CpuPlayer cpu = new CpuPlayer(player.getUsername(), random.split());
+            cpu.initialize(game);
+            cpus.add(cpu);
+        }
+        CpuPlayer.playOut(game, cpus, MAX_ROLLOUT_MOVES);
+        if (!game.hasGameFinished()) {
+            return false;
+        }
+
+        switch (game.getState()) {
+            case LIBERAL_VICTORY_POLICY:
+            case LIBERAL_VICTORY_EXECUTION:
+                return position.liberal;
+            default:
+                return !position.liberal;
+        }
+    }
+
+    /**
+     * The state a decision is made from, copied from the game and CpuPlayer
+     * before any rollouts start.
+     */
+    private static class Position {
+        final SecretHitlerGame root;
+        final RoleBelief belief;
+        final boolean liberal;
+
+        Position(SecretHitlerGame root, CpuPlayer cpu) {
+            this.root = root;
+            belief = cpu.copyBelief();
+            // Hitler is always alive, since the game ends when Hitler is
+            // executed, even if the CpuPlayer has not observed the execution.
+            List<Player> players = root.getPlayerList();
+            for (int seat = 0; seat < players.size(); seat++) {
+                if (!players.get(seat).isAlive()) {
+                    belief.observeNotHitler(seat);
+                }
+            }
+            liberal = cpu.myPlayerData.getIdentity() == Identity.LIBERAL;
+        }
+    }
+}
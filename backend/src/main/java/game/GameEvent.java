@@ -0,0 +1,43 @@
+package game;
+
+/**
+ * An accepted change to a SecretHitlerGame, as reported to its
+ * {@code GameEvent.Listener}. Applying the same events, in order, to a copy of
+ * the game ({@code SecretHitlerGame.apply()}) puts the copy in the same state.
+ *
+ * Players are identified by their seat (their index in
+ * {@code SecretHitlerGame.getPlayerList()}).
+ *
+ * @param type  the kind of change.
+ * @param seat  the player targeted by the change, or -1 if none.
+ * @param value the policy index or yes/no answer (1 or 0) given with the
+ *              change, or 0 if none.
+ */
+public record GameEvent(Type type, int seat, int value) {
+
+    public enum Type {
+        NOMINATE_CHANCELLOR, // seat of the nominee
+        REGISTER_VOTE, // seat of the voter, value is the vote
+        PRESIDENT_DISCARD_POLICY, // value is the policy index
+        CHANCELLOR_ENACT_POLICY, // value is the policy index
+        CHANCELLOR_VETO,
+        PRESIDENTIAL_VETO, // value is the response
+        END_PEEK,
+        INVESTIGATE_PLAYER, // seat of the target
+        EXECUTE_PLAYER, // seat of the target
+        ELECT_NEXT_PRESIDENT, // seat of the target
+        END_PRESIDENTIAL_TERM
+    }
+
+    /**
+     * Receives the events of a game.
+     */
+    public interface Listener {
+        /**
+         * Called after a change to the game has been accepted.
+         *
+         * @param event the change.
+         */
+        void onGameEvent(GameEvent event);
+    }
+}
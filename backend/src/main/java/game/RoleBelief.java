@@ -0,0 +1,550 @@
+package game;
+
+import game.datastructures.Identity;
+import game.datastructures.Policy;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A probability distribution over the possible role assignments of a game,
+ * as believed by one CpuPlayer.
+ *
+ * Every assignment of the fascist team (the fascists and Hitler), and of
+ * Hitler within it, is enumerated up front: at most 10 * C(9, 3) = 840
+ * assignments for 10 players. Each assignment is a bit mask of the fascist
+ * team, the seat of Hitler and a weight. Observing an event multiplies each
+ * weight by the likelihood of the event under that assignment, which is a
+ * single pass over primitive arrays.
+ *
+ * The probability of each seat being fascist or Hitler is recomputed lazily,
+ * the first time it is read after an observation.
+ */
+public class RoleBelief implements Serializable {
+
+    // Likelihood of a fascist team member in government enacting a fascist
+    // policy when they could enact either.
+    private static final float FASCIST_PLAY_RATE = 0.75f;
+    // Likelihood of a yes vote, by the voter's team and whether the
+    // government includes a member of the fascist team.
+    private static final float LIBERAL_YES_FOR_LIBERALS = 0.7f;
+    private static final float LIBERAL_YES_FOR_FASCISTS = 0.5f;
+    private static final float FASCIST_YES_FOR_LIBERALS = 0.55f;
+    private static final float FASCIST_YES_FOR_FASCISTS = 0.85f;
+    // Soft evidence never rules out an assignment completely, so that players
+    // acting against their team cannot contradict hard evidence.
+    private static final float MIN_LIKELIHOOD = 0.02f;
+    // Weights are rescaled when their total drops below this.
+    private static final float MIN_TOTAL_WEIGHT = 1e-20f;
+
+    // The fascist team masks and Hitler seats of every assignment, by player
+    // count. These never change, so they are shared by every RoleBelief.
+    private static final int[][] TEAMS = new int[SecretHitlerGame.MAX_PLAYERS + 1][];
+    private static final byte[][] HITLERS = new byte[SecretHitlerGame.MAX_PLAYERS + 1][];
+
+    static {
+        for (int players = SecretHitlerGame.MIN_PLAYERS; players <= SecretHitlerGame.MAX_PLAYERS; players++) {
+            int teamSize = SecretHitlerGame.NUM_FASCISTS_FOR_PLAYERS[players] + 1;
+            int count = 0;
+            for (int team = 0; team < 1 << players; team++) {
+                if (Integer.bitCount(team) == teamSize) {
+                    count += teamSize;
+                }
+            }
+            int[] teams = new int[count];
+            byte[] hitlers = new byte[count];
+            int index = 0;
+            for (int team = 0; team < 1 << players; team++) {
+                if (Integer.bitCount(team) != teamSize) {
+                    continue;
+                }
+                for (int seat = 0; seat < players; seat++) {
+                    if ((team & (1 << seat)) != 0) {
+                        teams[index] = team;
+                        hitlers[index] = (byte) seat;
+                        index++;
+                    }
+                }
+            }
+            TEAMS[players] = teams;
+            HITLERS[players] = hitlers;
+        }
+    }
+
+    private final int playerCount;
+    private final transient int[] teams;
+    private final transient byte[] hitlers;
+    // The relative probability of each assignment. Only rescaled to sum to 1
+    // when the total could be getting small, so most observations are a
+    // single pass that only multiplies.
+    private final float[] weights;
+    // A lower bound on the sum of the weights.
+    private float minTotalWeight;
+
+    // The probability of each seat being on the fascist team, and of being
+    // Hitler. Only valid if marginalsValid is set.
+    private final float[] fascistProbabilities;
+    private final float[] hitlerProbabilities;
+    private boolean marginalsValid;
+
+    /**
+     * Creates a belief where every role assignment is equally likely.
+     *
+     * @param playerCount the number of players in the game.
+     * @throws IllegalArgumentException if playerCount is not between
+     *                                  MIN_PLAYERS and MAX_PLAYERS.
+     */
+    public RoleBelief(int playerCount) {
+        if (playerCount < SecretHitlerGame.MIN_PLAYERS || playerCount > SecretHitlerGame.MAX_PLAYERS) {
+            throw new IllegalArgumentException("Cannot track roles for " + playerCount + " players.");
+        }
+        this.playerCount = playerCount;
+        teams = TEAMS[playerCount];
+        hitlers = HITLERS[playerCount];
+        weights = new float[teams.length];
+        fascistProbabilities = new float[playerCount];
+        hitlerProbabilities = new float[playerCount];
+        reset();
+    }
+
+    private RoleBelief(RoleBelief other) {
+        playerCount = other.playerCount;
+        teams = other.teams;
+        hitlers = other.hitlers;
+        weights = other.weights.clone();
+        minTotalWeight = other.minTotalWeight;
+        fascistProbabilities = other.fascistProbabilities.clone();
+        hitlerProbabilities = other.hitlerProbabilities.clone();
+        marginalsValid = other.marginalsValid;
+    }
+
+    /**
+     * Creates an independent copy of this belief.
+     */
+    public RoleBelief copy() {
+        return new RoleBelief(this);
+    }
+
+    /**
+     * Gets the number of role assignments considered.
+     */
+    public int getAssignmentCount() {
+        return weights.length;
+    }
+
+    /**
+     * Gets the probability that the player in a seat is a fascist or Hitler.
+     */
+    public float getFascistProbability(int seat) {
+        updateMarginals();
+        return fascistProbabilities[seat];
+    }
+
+    /**
+     * Gets the probability that the player in a seat is Hitler.
+     */
+    public float getHitlerProbability(int seat) {
+        updateMarginals();
+        return hitlerProbabilities[seat];
+    }
+
+    /**
+     * Gets the probability that a player is a fascist or Hitler before
+     * anything is observed.
+     */
+    public float getPriorFascistProbability() {
+        return (SecretHitlerGame.NUM_FASCISTS_FOR_PLAYERS[playerCount] + 1) / (float) playerCount;
+    }
+
+    /**
+     * Observes what is known for certain about several players at once.
+     *
+     * @param fascistSeats   bit mask of the seats known to be a fascist or
+     *                       Hitler.
+     * @param liberalSeats   bit mask of the seats known to be liberal.
+     * @param notHitlerSeats bit mask of the seats known not to be Hitler.
+     * @modifies this
+     * @effects rules out every assignment that contradicts what is known.
+     */
+    public void observeKnown(int fascistSeats, int liberalSeats, int notHitlerSeats) {
+        float total = 0;
+        for (int i = 0; i < weights.length; i++) {
+            int team = teams[i];
+            boolean consistent = (team & fascistSeats) == fascistSeats && (team & liberalSeats) == 0
+                    && (notHitlerSeats & (1 << hitlers[i])) == 0;
+            weights[i] = consistent ? weights[i] : 0;
+            total += weights[i];
+        }
+        update(total);
+    }
+
+    /**
+     * Observes the exact role of a player.
+     *
+     * @modifies this
+     * @effects rules out every assignment where the player has another role.
+     */
+    public void observeRole(int seat, Identity role) {
+        int mask = 1 << seat;
+        if (role == Identity.LIBERAL) {
+            observeKnown(0, mask, mask);
+        } else if (role == Identity.FASCIST) {
+            observeKnown(mask, 0, mask);
+        } else {
+            // Everyone else is not Hitler.
+            observeKnown(mask, 0, ~mask);
+        }
+    }
+
+    /**
+     * Observes the party membership of a player, as an investigation reveals
+     * it. Hitler is a member of the fascist party.
+     *
+     * @modifies this
+     * @effects rules out every assignment where the player is in the other
+     *          party.
+     */
+    public void observeParty(int seat, boolean fascist) {
+        int mask = 1 << seat;
+        if (fascist) {
+            observeKnown(mask, 0, 0);
+        } else {
+            observeKnown(0, mask, 0);
+        }
+    }
+
+    /**
+     * Observes that a player is not Hitler, such as when a player is executed
+     * without the game ending.
+     *
+     * @modifies this
+     * @effects rules out every assignment where the player is Hitler.
+     */
+    public void observeNotHitler(int seat) {
+        observeKnown(0, 0, 1 << seat);
+    }
+
+    /**
+     * Observes soft evidence about a single player.
+     *
+     * @param seat      the player the evidence is about.
+     * @param ifFascist the likelihood of the evidence if the player is a
+     *                  fascist or Hitler.
+     * @param ifLiberal the likelihood of the evidence if the player is liberal.
+     * @requires both likelihoods are at most 1.
+     * @modifies this
+     */
+    public void weigh(int seat, float ifFascist, float ifLiberal) {
+        ifLiberal = Math.max(ifLiberal, MIN_LIKELIHOOD);
+        ifFascist = Math.max(ifFascist, MIN_LIKELIHOOD);
+        float delta = ifFascist - ifLiberal;
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] *= ifLiberal + delta * ((teams[i] >>> seat) & 1);
+        }
+        scaledBy(Math.min(ifFascist, ifLiberal));
+    }
+
+    /**
+     * Observes the policy enacted by a government. A liberal government only
+     * enacts a fascist policy when all three cards drawn are fascist, while a
+     * government with a fascist in it usually does if any were drawn.
+     *
+     * @param president       the seat of the president.
+     * @param chancellor      the seat of the chancellor.
+     * @param enacted         the type of the enacted policy.
+     * @param fascistsUndrawn the number of fascist policies that could have
+     *                        been drawn.
+     * @param liberalsUndrawn the number of liberal policies that could have
+     *                        been drawn.
+     * @modifies this
+     */
+    public void observePolicy(int president, int chancellor, Policy.Type enacted, int fascistsUndrawn,
+            int liberalsUndrawn) {
+        float allFascist = drawProbability(fascistsUndrawn, liberalsUndrawn);
+        float allLiberal = drawProbability(liberalsUndrawn, fascistsUndrawn);
+        float ifLiberal = allFascist;
+        float ifFascist = allFascist + (1 - allFascist - allLiberal) * FASCIST_PLAY_RATE;
+        if (enacted == Policy.Type.LIBERAL) {
+            ifLiberal = 1 - ifLiberal;
+            ifFascist = 1 - ifFascist;
+        }
+        ifLiberal = Math.max(ifLiberal, MIN_LIKELIHOOD);
+        ifFascist = Math.max(ifFascist, MIN_LIKELIHOOD);
+        float delta = ifFascist - ifLiberal;
+
+        int government = (1 << president) | (1 << chancellor);
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] *= ifLiberal + delta * includes(teams[i], government);
+        }
+        scaledBy(Math.min(ifFascist, ifLiberal));
+    }
+
+    /**
+     * Observes the votes on a government. Fascists are more likely to vote for
+     * governments that include a fascist, and liberals are less likely to.
+     *
+     * @param votedSeats bit mask of the seats to observe the votes of.
+     * @param yesSeats   bit mask of the seats that voted yes.
+     * @param president  the seat of the president.
+     * @param chancellor the seat of the chancellor.
+     * @modifies this
+     */
+    public void observeVotes(int votedSeats, int yesSeats, int president, int chancellor) {
+        int yesVoters = votedSeats & yesSeats;
+        int noVoters = votedSeats & ~yesSeats;
+        int yesCount = Integer.bitCount(yesVoters);
+        int noCount = Integer.bitCount(noVoters);
+
+        // The likelihood of all the votes only depends on whether the
+        // government includes a fascist, and on how many of the yes and no
+        // voters are fascists, so it is looked up rather than multiplied out
+        // voter by voter. Indexed by [governmentFascist][fascistYes][fascistNo].
+        int teamSize = SecretHitlerGame.NUM_FASCISTS_FOR_PLAYERS[playerCount] + 1;
+        // The number of fascists among the yes (or no) voters is 0 to teamSize.
+        int counts = teamSize + 1;
+        float[] likelihoods = new float[2 * counts * counts];
+        float minLikelihood = 1;
+        for (int government = 0; government < 2; government++) {
+            float[] liberalYes = powers(government == 0 ? LIBERAL_YES_FOR_LIBERALS : LIBERAL_YES_FOR_FASCISTS);
+            float[] liberalNo = powers(1 - (government == 0 ? LIBERAL_YES_FOR_LIBERALS : LIBERAL_YES_FOR_FASCISTS));
+            float[] fascistYes = powers(government == 0 ? FASCIST_YES_FOR_LIBERALS : FASCIST_YES_FOR_FASCISTS);
+            float[] fascistNo = powers(1 - (government == 0 ? FASCIST_YES_FOR_LIBERALS : FASCIST_YES_FOR_FASCISTS));
+            for (int fascistYesCount = 0; fascistYesCount < counts && fascistYesCount <= yesCount;
+                    fascistYesCount++) {
+                for (int fascistNoCount = 0; fascistNoCount < counts && fascistNoCount <= noCount;
+                        fascistNoCount++) {
+                    float likelihood = liberalYes[yesCount - fascistYesCount] * liberalNo[noCount - fascistNoCount]
+                            * fascistYes[fascistYesCount] * fascistNo[fascistNoCount];
+                    likelihoods[(government * counts + fascistYesCount) * counts + fascistNoCount] = likelihood;
+                    minLikelihood = Math.min(minLikelihood, likelihood);
+                }
+            }
+        }
+
+        // The likelihood does not depend on who Hitler is, so it is looked up
+        // once for each team and applied to all of the team's assignments.
+        int government = (1 << president) | (1 << chancellor);
+        for (int i = 0; i < weights.length; i += teamSize) {
+            int team = teams[i];
+            float likelihood = likelihoods[(includes(team, government) * counts
+                    + Integer.bitCount(team & yesVoters)) * counts + Integer.bitCount(team & noVoters)];
+            for (int j = i; j < i + teamSize; j++) {
+                weights[j] *= likelihood;
+            }
+        }
+        scaledBy(minLikelihood);
+    }
+
+    /**
+     * Samples a role assignment from this belief.
+     *
+     * @param random the generator to sample with.
+     * @return the Identity of each seat.
+     */
+    public Identity[] sample(Random random) {
+        float total = 0;
+        for (float weight : weights) {
+            total += weight;
+        }
+        float t = random.nextFloat() * total;
+        int chosen = -1;
+        for (int i = 0; i < weights.length; i++) {
+            if (weights[i] > 0) {
+                chosen = i;
+                t -= weights[i];
+                if (t < 0) {
+                    break;
+                }
+            }
+        }
+
+        Identity[] roles = new Identity[playerCount];
+        for (int seat = 0; seat < playerCount; seat++) {
+            if (hitlers[chosen] == seat) {
+                roles[seat] = Identity.HITLER;
+            } else if ((teams[chosen] & (1 << seat)) != 0) {
+                roles[seat] = Identity.FASCIST;
+            } else {
+                roles[seat] = Identity.LIBERAL;
+            }
+        }
+        return roles;
+    }
+
+    /**
+     * Gets the powers of a likelihood, from 0 up to one per player.
+     */
+    private float[] powers(float likelihood) {
+        float[] powers = new float[playerCount + 1];
+        powers[0] = 1;
+        for (int i = 1; i < powers.length; i++) {
+            powers[i] = powers[i - 1] * likelihood;
+        }
+        return powers;
+    }
+
+    /**
+     * Returns 1 if a team includes any of the given seats, and 0 otherwise.
+     */
+    private static int includes(int team, int seats) {
+        int overlap = team & seats;
+        return (overlap | -overlap) >>> 31;
+    }
+
+    /**
+     * Gets the probability of drawing three cards of a type.
+     *
+     * @param wanted the number of cards of the type.
+     * @param other  the number of other cards.
+     */
+    private static float drawProbability(int wanted, int other) {
+        if (wanted < SecretHitlerGame.PRESIDENT_DRAW_SIZE) {
+            return 0;
+        }
+        float total = wanted + other;
+        return wanted * (wanted - 1f) * (wanted - 2f) / (total * (total - 1) * (total - 2));
+    }
+
+    /**
+     * Records the total weight after a hard observation.
+     *
+     * If the observation ruled out every assignment, the observations
+     * contradicted each other, and the belief starts over from uniform.
+     */
+    private void update(float total) {
+        if (!(total > 0)) {
+            reset();
+            return;
+        }
+        minTotalWeight = total;
+        if (total < MIN_TOTAL_WEIGHT) {
+            normalize();
+        }
+        marginalsValid = false;
+    }
+
+    /**
+     * Records that every weight was multiplied by at least the given amount,
+     * rescaling the weights if they might be about to underflow.
+     */
+    private void scaledBy(float minLikelihood) {
+        minTotalWeight *= minLikelihood;
+        if (minTotalWeight < MIN_TOTAL_WEIGHT) {
+            normalize();
+        }
+        marginalsValid = false;
+    }
+
+    /**
+     * Rescales the weights to sum to 1.
+     */
+    private void normalize() {
+        float total = 0;
+        for (float weight : weights) {
+            total += weight;
+        }
+        if (!(total > 0)) {
+            reset();
+            return;
+        }
+        float scale = 1 / total;
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] *= scale;
+        }
+        minTotalWeight = 1;
+    }
+
+    private void reset() {
+        Arrays.fill(weights, 1f / weights.length);
+        minTotalWeight = 1;
+        marginalsValid = false;
+    }
+
+    private void updateMarginals() {
+        if (marginalsValid) {
+            return;
+        }
+        Arrays.fill(fascistProbabilities, 0);
+        Arrays.fill(hitlerProbabilities, 0);
+        // The assignments of each team are next to each other, one for each
+        // choice of Hitler, so each team's weight is added to its members once.
+        int teamSize = SecretHitlerGame.NUM_FASCISTS_FOR_PLAYERS[playerCount] + 1;
+        for (int i = 0; i < weights.length; i += teamSize) {
+            float teamWeight = 0;
+            for (int j = i; j < i + teamSize; j++) {
+                teamWeight += weights[j];
+                hitlerProbabilities[hitlers[j]] += weights[j];
+            }
+            for (int team = teams[i]; team != 0; team &= team - 1) {
+                fascistProbabilities[Integer.numberOfTrailingZeros(team)] += teamWeight;
+            }
+        }
+        float total = 0;
+        for (float hitler : hitlerProbabilities) {
+            total += hitler;
+        }
+        float scale = 1 / total;
+        for (int seat = 0; seat < playerCount; seat++) {
+            fascistProbabilities[seat] *= scale;
+            hitlerProbabilities[seat] *= scale;
+        }
+        marginalsValid = true;
+    }
+
+    private Object readResolve() {
+        // The shared assignment tables are not serialized.
+        RoleBelief belief = new RoleBelief(playerCount);
+        System.arraycopy(weights, 0, belief.weights, 0, weights.length);
+        belief.minTotalWeight = minTotalWeight;
+        return belief;
+    }
+
+    /**
+     * Writes the belief in the compact binary snapshot format.
+     *
+     * @param out the stream to write to.
+     * @throws IOException if the stream cannot be written to.
+     * @effects writes the number of assignments and the weight of each. The
+     *          assignments themselves only depend on the number of players.
+     */
+    public void writeSnapshot(DataOutput out) throws IOException {
+        out.writeShort(weights.length);
+        for (float weight : weights) {
+            out.writeFloat(weight);
+        }
+    }
+
+    /**
+     * Reads a belief written by {@code writeSnapshot()}.
+     *
+     * @param in          the stream to read from.
+     * @param playerCount the number of players in the game.
+     * @throws IOException if the stream cannot be read or is malformed.
+     * @return a new RoleBelief with the same weights.
+     */
+    public static RoleBelief readSnapshot(DataInput in, int playerCount) throws IOException {
+        if (playerCount < SecretHitlerGame.MIN_PLAYERS || playerCount > SecretHitlerGame.MAX_PLAYERS) {
+            throw new IOException("Invalid player count " + playerCount + ".");
+        }
+        RoleBelief belief = new RoleBelief(playerCount);
+        int count = in.readUnsignedShort();
+        if (count != belief.weights.length) {
+            throw new IOException("Invalid assignment count " + count + " for " + playerCount + " players.");
+        }
+        float total = 0;
+        for (int i = 0; i < count; i++) {
+            float weight = in.readFloat();
+            if (!(weight >= 0) || Float.isInfinite(weight)) {
+                throw new IOException("Invalid weight " + weight + ".");
+            }
+            belief.weights[i] = weight;
+            total += weight;
+        }
+        belief.update(total);
+        return belief;
+    }
+}
@@ -5,10 +5,11 @@ import game.datastructures.Identity;
 import game.datastructures.Player;
 import game.datastructures.Policy;
 import game.datastructures.board.Board;
-import game.datastructures.board.FiveToSixPlayerBoard;
-import game.datastructures.board.NineToTenPlayerBoard;
-import game.datastructures.board.SevenToEightPlayerBoard;
+import game.util.GameRandom;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.*;
 
@@ -40,18 +41,24 @@ public class SecretHitlerGame implements Serializable {
     public static final int MAX_PLAYERS = 10;
 
     public static final int MAX_FAILED_ELECTIONS = 3;
-    private static final float VOTING_CUTOFF = 0.5000001f;
     private static final int MIN_DRAW_DECK_SIZE = 3;
 
     public static final int PRESIDENT_DRAW_SIZE = 3;
     public static final int CHANCELLOR_DRAW_SIZE = 2;
 
+    // The seat of no player (see getSeat()).
+    public static final int NO_SEAT = -1;
+
     // </editor-fold>
 
     /////////////////// Private Fields
     // <editor-fold desc="Private Fields">
 
+    // Players never join or leave a game, so they are referred to internally by
+    // their seat (index in playerList). Names are only used at the public API.
+    // Both fields are unmodifiable.
     private List<Player> playerList;
+    private Map<String, Integer> seatsByName;
     private Board board;
     private Deck discard;
     private Deck draw;
@@ -62,26 +69,31 @@ public class SecretHitlerGame implements Serializable {
     private GameState lastState = GameState.SETUP;
     private int round;
 
-    private Random random;
+    // Used for role assignment and shuffling. Its state is saved in snapshots,
+    // so that replaying a game's events gives the same result.
+    private GameRandom random;
+
+    // Notified of every accepted change to the game (see GameEvent).
+    transient private GameEvent.Listener eventListener;
 
     // The last president and chancellor that were successfully voted into office.
-    private String lastPresident;
-    private String lastChancellor;
+    private int lastPresident = NO_SEAT;
+    private int lastChancellor = NO_SEAT;
     private Policy.Type lastEnactedPolicy = Policy.Type.FASCIST;
 
-    private String currentPresident;
-    private String currentChancellor;
+    private int currentPresident = NO_SEAT;
+    private int currentChancellor = NO_SEAT;
 
     // Used during a session with the PRESIDENTIAL_POWER_ELECTION power active to
     // remember the next president.
-    // The default state should be null.
-    private String nextPresident;
+    // The default state should be NO_SEAT.
+    private int nextPresident = NO_SEAT;
     // The president that was elected to take power next (due to the
     // PRESIDENTIAL_POWER_ELECTION power being active).
-    private String electedPresident;
+    private int electedPresident = NO_SEAT;
 
     // The player that was targeted with the last presidential power.
-    private String target;
+    private int target = NO_SEAT;
 
     // The options available to either the President or the Chancellor during the
     // legislative session
@@ -90,7 +102,13 @@ public class SecretHitlerGame implements Serializable {
     private boolean didElectionTrackerAdvance = false;
     private boolean didVetoOccurThisTurn = false;
 
-    private HashMap<String, Boolean> voteMap;
+    // Bit masks of the seats that have voted in the current election, and of
+    // the seats that voted yes.
+    private int votedSeats;
+    private int yesSeats;
+
+    // Bit mask of the seats of living players. Only living players' votes count.
+    private int livingSeats;
 
     // </editor-fold>
 
@@ -102,22 +120,38 @@ public class SecretHitlerGame implements Serializable {
     }
 
     public String getTarget() {
-        return target;
+        return nameOf(target);
     }
 
     public String getCurrentPresident() {
-        return currentPresident;
+        return nameOf(currentPresident);
     }
 
     public String getCurrentChancellor() {
-        return currentChancellor;
+        return nameOf(currentChancellor);
     }
 
     public String getLastPresident() {
-        return lastPresident;
+        return nameOf(lastPresident);
     }
 
     public String getLastChancellor() {
+        return nameOf(lastChancellor);
+    }
+
+    public int getCurrentPresidentSeat() {
+        return currentPresident;
+    }
+
+    public int getCurrentChancellorSeat() {
+        return currentChancellor;
+    }
+
+    public int getLastPresidentSeat() {
+        return lastPresident;
+    }
+
+    public int getLastChancellorSeat() {
         return lastChancellor;
     }
 
@@ -172,6 +206,21 @@ public class SecretHitlerGame implements Serializable {
      *          chancellor nomination process.
      */
     public SecretHitlerGame(Collection<String> players) {
+        this(players, new GameRandom().getState());
+    }
+
+    /**
+     * Constructs a new game of Secret Hitler with the given players, using a
+     * fixed random seed.
+     * 
+     * @param players the names of the players to add to the game.
+     * @param seed    the seed used to assign roles and shuffle the deck. Games
+     *                with the same players and seed start identically.
+     * @requires see {@code SecretHitlerGame(players)}.
+     * @modifies this
+     * @effects see {@code SecretHitlerGame(players)}.
+     */
+    public SecretHitlerGame(Collection<String> players, long seed) {
         if (players.size() < MIN_PLAYERS) {
             throw new IllegalArgumentException("There must be at least " + MIN_PLAYERS + " to start the game (only "
                     + players.size() + " provided).");
@@ -181,37 +230,38 @@ public class SecretHitlerGame implements Serializable {
         }
 
         // Set up the list of players.
-        playerList = new ArrayList<>();
+        List<Player> newPlayers = new ArrayList<>(players.size());
         for (String name : players) {
-            playerList.add(new Player(name));
+            newPlayers.add(new Player(name));
         }
+        setPlayers(newPlayers);
 
-        random = new Random();
+        random = new GameRandom(seed);
         electionTracker = 0;
-        voteMap = new HashMap<>();
 
         resetDeck();
         assignRoles();
         electionTracker = 0;
 
         // Assign a new board based on the number of players.
-        if (playerList.size() <= 6) {
-            board = new FiveToSixPlayerBoard();
-        } else if (playerList.size() <= 8) {
-            board = new SevenToEightPlayerBoard();
-        } else {
-            board = new NineToTenPlayerBoard();
-        }
+        board = Board.forPlayerCount(playerList.size());
 
-        currentPresident = playerList.get(0).getUsername();
-        currentChancellor = null;
-        lastChancellor = null;
-        lastPresident = null;
+        currentPresident = 0;
+        currentChancellor = NO_SEAT;
+        lastChancellor = NO_SEAT;
+        lastPresident = NO_SEAT;
 
         state = GameState.CHANCELLOR_NOMINATION;
         round = 1;
     }
 
+    /**
+     * Constructs an empty game to be filled in by {@code readSnapshot()} or
+     * {@code fork()}.
+     */
+    private SecretHitlerGame() {
+    }
+
     // </editor-fold>
 
     /////////////////// Player Management
@@ -224,44 +274,70 @@ public class SecretHitlerGame implements Serializable {
      * @return true iff the player is in the game.
      */
     public boolean hasPlayer(String username) {
-        if (username == null) {
-            return false;
-        }
-        for (Player p : playerList) {
-            if (p.getUsername().equals(username)) {
-                return true;
-            }
-        }
-        return false;
+        return username != null && seatsByName.containsKey(username);
     }
 
     /**
-     * Gets the list of active players.
+     * Gets the list of players.
      * 
-     * @return a copy of the list of Players.
+     * @return an unmodifiable list of the Players, in seat order.
      */
     public List<Player> getPlayerList() {
-        return new ArrayList<>(playerList);
+        return playerList;
     }
 
     /**
-     * Gets the index of a player in the list.
+     * Gets the seat of a player (their index in the player list).
      * 
      * @param username the username to search for.
-     * @return the index of the given player in the list. Returns -1 if the player
-     *         was not found.
+     * @return the seat of the given player. Returns NO_SEAT if the player was not
+     *         found.
      */
-    private int indexOfPlayer(String username) {
-        for (int i = 0; i < playerList.size(); i++) {
-            if (playerList.get(i).getUsername().equals(username)) {
-                return i;
+    public int getSeat(String username) {
+        Integer seat = username == null ? null : seatsByName.get(username);
+        return seat == null ? NO_SEAT : seat;
+    }
+
+    public Player getPlayer(String username) {
+        return playerList.get(getSeat(username));
+    }
+
+    /**
+     * Sets the players of the game and builds the seat index.
+     * 
+     * @requires there are no repeat names in {@code players}.
+     */
+    private void setPlayers(List<Player> players) {
+        Map<String, Integer> seats = new HashMap<>();
+        livingSeats = 0;
+        for (int seat = 0; seat < players.size(); seat++) {
+            seats.put(players.get(seat).getUsername(), seat);
+            if (players.get(seat).isAlive()) {
+                livingSeats |= 1 << seat;
             }
         }
-        return -1;
+        playerList = Collections.unmodifiableList(players);
+        seatsByName = Collections.unmodifiableMap(seats);
     }
 
-    public Player getPlayer(String username) {
-        return playerList.get(indexOfPlayer(username));
+    /**
+     * Gets the name of the player in a seat, or null for NO_SEAT.
+     */
+    private String nameOf(int seat) {
+        return seat == NO_SEAT ? null : playerList.get(seat).getUsername();
+    }
+
+    /**
+     * Gets the seat of a player who must be in the game.
+     * 
+     * @throws IllegalArgumentException if the player is not in the game.
+     */
+    private int requireSeat(String username) {
+        int seat = getSeat(username);
+        if (seat == NO_SEAT) {
+            throw new IllegalArgumentException("Player " + username + " does not exist.");
+        }
+        return seat;
     }
 
     // </editor-fold>
@@ -280,13 +356,13 @@ public class SecretHitlerGame implements Serializable {
         discard = new Deck();
 
         for (int i = 0; i < NUM_FASCIST_POLICIES; i++) {
-            draw.add(new Policy(Policy.Type.FASCIST));
+            draw.add(Policy.of(Policy.Type.FASCIST));
         }
         for (int i = 0; i < NUM_LIBERAL_POLICIES; i++) {
-            draw.add(new Policy(Policy.Type.LIBERAL));
+            draw.add(Policy.of(Policy.Type.LIBERAL));
         }
 
-        draw.shuffle();
+        draw.shuffle(random);
     }
 
     /**
@@ -390,10 +466,8 @@ public class SecretHitlerGame implements Serializable {
      * @effects Empties the discard pile into the draw pile and shuffles.
      */
     private void shuffleDiscardIntoDraw() {
-        while (!discard.isEmpty()) {
-            draw.add(discard.remove());
-        }
-        draw.shuffle();
+        draw.addAll(discard);
+        draw.shuffle(random);
     }
 
     // </editor-fold>
@@ -402,12 +476,7 @@ public class SecretHitlerGame implements Serializable {
     // <editor-fold desc="Nomination and Voting">
 
     public int getLivingPlayerCount() {
-        int numLivingPlayers = 0;
-        for (Player player : playerList) {
-            if (player.isAlive())
-                numLivingPlayers++;
-        }
-        return numLivingPlayers;
+        return Integer.bitCount(livingSeats);
     }
 
     /**
@@ -428,24 +497,27 @@ public class SecretHitlerGame implements Serializable {
      */
     public void nominateChancellor(String username) {
         int numLivingPlayers = getLivingPlayerCount();
+        int seat = getSeat(username);
 
         if (getState() != GameState.CHANCELLOR_NOMINATION) {
             throw new IllegalStateException("Cannot elect a chancellor now (invalid state).");
-        } else if (username.equals(lastChancellor) || (username.equals(lastPresident) && numLivingPlayers > 5)) {
-            throw new IllegalArgumentException("Cannot elect chancellor that was previously in office.");
-        } else if (!hasPlayer(username)) {
+        } else if (seat == NO_SEAT) {
             throw new IllegalArgumentException("Player " + username + " does not exist.");
-        } else if (!getPlayer(username).isAlive()) {
+        } else if (seat == lastChancellor || (seat == lastPresident && numLivingPlayers > 5)) {
+            throw new IllegalArgumentException("Cannot elect chancellor that was previously in office.");
+        } else if (!playerList.get(seat).isAlive()) {
             throw new IllegalArgumentException("Player " + username + " is dead and cannot be elected for chancellor.");
-        } else if (username.equals(currentPresident)) {
+        } else if (seat == currentPresident) {
             throw new IllegalArgumentException("President cannot choose themselves as chancellor.");
         }
 
         didElectionTrackerAdvance = false; // reset the election tracker
-        currentChancellor = username;
+        currentChancellor = seat;
         this.lastState = this.state;
         state = GameState.CHANCELLOR_VOTING; // exits the previous state.
-        voteMap = new HashMap<>(); // initializes a new map for voting.
+        votedSeats = 0; // clears the votes from the last election.
+        yesSeats = 0;
+        recordEvent(GameEvent.Type.NOMINATE_CHANCELLOR, seat, 0);
     }
 
     /**
@@ -453,7 +525,8 @@ public class SecretHitlerGame implements Serializable {
      * open voting round.
      */
     public boolean hasPlayerVoted(String username) {
-        return voteMap.containsKey(username);
+        int seat = getSeat(username);
+        return seat != NO_SEAT && (votedSeats & (1 << seat)) != 0;
     }
 
     /**
@@ -480,41 +553,29 @@ public class SecretHitlerGame implements Serializable {
      *          progression.
      */
     public void registerVote(String username, boolean vote) {
-        if (!hasPlayer(username)) {
+        int seat = getSeat(username);
+        if (seat == NO_SEAT) {
             throw new IllegalArgumentException("Player " + username + " is not in the game and cannot vote.");
-        } else if (voteMap.containsKey(username)) {
+        } else if ((votedSeats & (1 << seat)) != 0) {
             throw new IllegalStateException("Player " + username + " cannot vote twice.");
         } else if (state != GameState.CHANCELLOR_VOTING) {
             throw new IllegalStateException("Player " + username + " cannot vote when a vote is not taking place.");
         }
 
-        voteMap.put(username, vote);
-
-        // Count up votes and check if all votes have been submitted.
-        boolean allPlayersHaveVoted = true;
-        int totalVotes = 0;
-        int totalYesVotes = 0;
-
-        for (Player player : playerList) {
-            String playerName = player.getUsername();
-
-            if (player.isAlive()) { // only account for
-                if (voteMap.containsKey(playerName)) {
-                    totalVotes += 1;
-                    if (voteMap.get(playerName)) { // player voted yes
-                        totalYesVotes += 1;
-                    }
-                } else {
-                    allPlayersHaveVoted = false; // Player vote not accounted for
-                }
-            }
+        votedSeats |= 1 << seat;
+        if (vote) {
+            yesSeats |= 1 << seat;
         }
 
-        if (allPlayersHaveVoted) {
-            if (((float) totalYesVotes / (float) totalVotes) > VOTING_CUTOFF) { // vote passed successfully
+        // The vote is over once every living player has voted, and passes with a
+        // strict majority of yes votes.
+        if ((votedSeats & livingSeats) == livingSeats) {
+            int totalVotes = Integer.bitCount(livingSeats);
+            int totalYesVotes = Integer.bitCount(yesSeats & livingSeats);
+            if (2 * totalYesVotes > totalVotes) { // vote passed successfully
                 lastChancellor = currentChancellor;
                 lastPresident = currentPresident;
-                if (getPlayer(currentChancellor).isHitler() && board.fascistsCanWinByElection()) {
+                if (playerList.get(currentChancellor).isHitler() && board.fascistsCanWinByElection()) {
                     this.lastState = this.state;
                     state = GameState.FASCIST_VICTORY_ELECTION; // Fascists won by electing Hitler: game ends.
                 } else {
@@ -524,16 +585,27 @@ public class SecretHitlerGame implements Serializable {
                 advanceElectionTracker();
             }
         }
+        recordEvent(GameEvent.Type.REGISTER_VOTE, seat, vote ? 1 : 0);
+    }
+
+    /**
+     * Gets the seats that have voted in the current election.
+     * 
+     * @return a bit mask where bit {@code i} is set if the player in seat
+     *         {@code i} has voted.
+     */
+    public int getVotedSeats() {
+        return votedSeats;
     }
 
     /**
-     * Returns a map representing what each player voted.
+     * Gets the seats that voted yes in the current election.
      * 
-     * @return a map, where the keys are the usernames and the booleans are the vote
-     *         (yes/no) of the player.
+     * @return a bit mask where bit {@code i} is set if the player in seat
+     *         {@code i} voted yes. Always a subset of {@code getVotedSeats()}.
      */
-    public Map<String, Boolean> getVotes() {
-        return new HashMap<>(voteMap); // making a copy of the votes so that they cannot be externally modified
+    public int getYesSeats() {
+        return yesSeats;
     }
 
     /**
@@ -596,45 +668,44 @@ public class SecretHitlerGame implements Serializable {
             throw new IllegalStateException();
         }
 
-        if (electedPresident != null) { // If the PRESIDENTIAL_POWER_ELECTION was active, chooses the elected president.
+        if (electedPresident != NO_SEAT) { // If the PRESIDENTIAL_POWER_ELECTION was active, chooses the elected
+                                           // president.
             currentPresident = electedPresident;
-            electedPresident = null;
-        } else if (nextPresident != null) { // Once the PRESIDENTIAL_POWER_ELECTION round concludes, returns to the
-                                            // normal order.
+            electedPresident = NO_SEAT;
+        } else if (nextPresident != NO_SEAT) { // Once the PRESIDENTIAL_POWER_ELECTION round concludes, returns to
+                                               // the normal order.
             currentPresident = nextPresident;
-            while (!getPlayer(currentPresident).isAlive()) {
+            while (!playerList.get(currentPresident).isAlive()) {
                 // Advance to the next president
-                int presIndex = indexOfPlayer(currentPresident);
-                List<Player> playerList = getPlayerList();
-                int nextPresIndex = (presIndex + 1) % playerList.size(); // Loops to 0 if last president killed
-                currentPresident = playerList.get(nextPresIndex).getUsername();
+                currentPresident = (currentPresident + 1) % playerList.size(); // Loops to 0 if last president killed
             }
-            nextPresident = null;
+            nextPresident = NO_SEAT;
         } else { // advance the presidency
             // Advance presidency:
-            currentPresident = getNextActivePlayer(currentPresident);
+            currentPresident = getNextActiveSeat(currentPresident);
         }
-        currentChancellor = null;
+        currentChancellor = NO_SEAT;
         this.lastState = this.state;
         this.state = GameState.CHANCELLOR_NOMINATION;
         this.round++;
+        recordEvent(GameEvent.Type.END_PRESIDENTIAL_TERM, NO_SEAT, 0);
     }
 
     /**
      * Finds the next active, living player in order.
      * 
-     * @param player the player to find the next active player from.
-     * @return the username of the next player in order. Returns null if no player
+     * @param seat the seat to find the next active player from.
+     * @return the seat of the next player in order. Returns NO_SEAT if no player
      *         was found.
      */
-    private String getNextActivePlayer(String player) {
+    private int getNextActiveSeat(int seat) {
         for (int i = 1; i < playerList.size(); i++) {
-            int index = (i + indexOfPlayer(player)) % playerList.size();
+            int index = (i + seat) % playerList.size();
             if (playerList.get(index).isAlive()) {
-                return playerList.get(index).getUsername();
+                return index;
             }
         }
-        return null;
+        return NO_SEAT;
     }
 
     // </editor-fold>
@@ -705,6 +776,7 @@ public class SecretHitlerGame implements Serializable {
         discard.add(legislativePolicies.remove(index));
         this.lastState = this.state;
         state = GameState.LEGISLATIVE_CHANCELLOR;
+        recordEvent(GameEvent.Type.PRESIDENT_DISCARD_POLICY, NO_SEAT, index);
     }
 
     /**
@@ -756,6 +828,7 @@ public class SecretHitlerGame implements Serializable {
         discard.add(legislativePolicies.remove(0)); // Discard last remaining Policy
         didVetoOccurThisTurn = false; // Reset because we have moved past chancellor stage
         onEnactPolicy(newPolicy.getType());
+        recordEvent(GameEvent.Type.CHANCELLOR_ENACT_POLICY, NO_SEAT, index);
     }
 
     /**
@@ -779,6 +852,7 @@ public class SecretHitlerGame implements Serializable {
         }
         didVetoOccurThisTurn = true;
         state = GameState.LEGISLATIVE_PRESIDENT_VETO;
+        recordEvent(GameEvent.Type.CHANCELLOR_VETO, NO_SEAT, 0);
     }
 
     /**
@@ -814,6 +888,7 @@ public class SecretHitlerGame implements Serializable {
             this.lastState = this.state;
             state = GameState.LEGISLATIVE_CHANCELLOR;
         }
+        recordEvent(GameEvent.Type.PRESIDENTIAL_VETO, NO_SEAT, response ? 1 : 0);
     }
 
     /**
@@ -839,8 +914,8 @@ public class SecretHitlerGame implements Serializable {
             // Ignore any presidential powers and skip to the post-legislative state.
             state = GameState.POST_LEGISLATIVE;
             // Reset the term limits (last chancellor and president)
-            lastChancellor = null;
-            lastPresident = null;
+            lastChancellor = NO_SEAT;
+            lastPresident = NO_SEAT;
             return;
         }
 
@@ -899,6 +974,7 @@ public class SecretHitlerGame implements Serializable {
      */
     public void endPeek() {
         concludePresidentialActions();
+        recordEvent(GameEvent.Type.END_PEEK, NO_SEAT, 0);
     }
 
     /**
@@ -917,19 +993,21 @@ public class SecretHitlerGame implements Serializable {
     public Identity investigatePlayer(String username) {
         if (state != GameState.PRESIDENTIAL_POWER_INVESTIGATE) {
             throw new IllegalStateException("Cannot investigate a player when the power is not active.");
-        } else if (!hasPlayer(username)) {
-            throw new IllegalArgumentException("Player " + username + " does not exist.");
-        } else if (!getPlayer(username).isAlive()) {
+        }
+        int seat = requireSeat(username);
+        Player player = playerList.get(seat);
+        if (!player.isAlive()) {
             throw new IllegalArgumentException("Cannot investigate a dead player (" + username + ").");
-        } else if (getPlayer(username).hasBeenInvestigated()) {
+        } else if (player.hasBeenInvestigated()) {
             throw new IllegalArgumentException("Cannot investigate a player twice (" + username + ").");
         }
 
-        target = username;
-        getPlayer(username).investigate(); // sets a flag that this player has been investigated.
+        target = seat;
+        player.investigate(); // sets a flag that this player has been investigated.
         concludePresidentialActions();
+        recordEvent(GameEvent.Type.INVESTIGATE_PLAYER, seat, 0);
 
-        if (getPlayer(username).isFascist()) {
+        if (player.isFascist()) {
             return Identity.FASCIST;
         } else {
             return Identity.LIBERAL;
@@ -954,23 +1032,24 @@ public class SecretHitlerGame implements Serializable {
     public void executePlayer(String username) {
         if (state != GameState.PRESIDENTIAL_POWER_EXECUTION) {
             throw new IllegalStateException("Cannot execute a player when the power is not active.");
-        } else if (!hasPlayer(username)) {
-            throw new IllegalArgumentException("Player " + username + " does not exist.");
         }
 
-        Player playerToKill = getPlayer(username);
-        target = username;
+        int seat = requireSeat(username);
+        Player playerToKill = playerList.get(seat);
+        target = seat;
         if (!playerToKill.isAlive()) {
             throw new IllegalArgumentException("Cannot execute " + username + " because they are not alive.");
         }
 
         playerToKill.kill();
+        livingSeats &= ~(1 << seat);
         if (playerToKill.isHitler()) { // game ends and liberals win.
             this.lastState = this.state;
             state = GameState.LIBERAL_VICTORY_EXECUTION;
         } else {
             concludePresidentialActions();
         }
+        recordEvent(GameEvent.Type.EXECUTE_PLAYER, seat, 0);
     }
 
     /**
@@ -990,21 +1069,327 @@ public class SecretHitlerGame implements Serializable {
     public void electNextPresident(String username) {
         if (state != GameState.PRESIDENTIAL_POWER_ELECTION) {
             throw new IllegalStateException("Cannot elect a player president when the power is not active.");
-        } else if (!hasPlayer(username)) {
-            throw new IllegalArgumentException("Player " + username + " does not exist.");
-        } else if (!getPlayer(username).isAlive()) {
+        }
+        int seat = requireSeat(username);
+        if (!playerList.get(seat).isAlive()) {
             throw new IllegalArgumentException("Cannot elect " + username + " because they are not alive.");
         }
 
-        target = username;
-        nextPresident = getNextActivePlayer(currentPresident);
+        target = seat;
+        nextPresident = getNextActiveSeat(currentPresident);
 
-        if (this.currentPresident.equals(target)) {
+        if (currentPresident == target) {
             throw new IllegalArgumentException("President cannot elect themselves during a special election.");
         }
 
-        electedPresident = username;
+        electedPresident = seat;
         concludePresidentialActions();
+        recordEvent(GameEvent.Type.ELECT_NEXT_PRESIDENT, seat, 0);
+    }
+
+    // </editor-fold>
+
+    /////////////////// Events
+    // <editor-fold desc="Events">
+
+    /**
+     * Sets the listener notified of every accepted change to the game.
+     * 
+     * @param listener the listener, or null to stop notifying.
+     */
+    public void setEventListener(GameEvent.Listener listener) {
+        this.eventListener = listener;
+    }
+
+    /**
+     * Applies an event recorded from a game with the same players and random
+     * state.
+     * 
+     * @param event the event to apply.
+     * @throws IllegalStateException    if the event cannot be applied in the
+     *                                  current state.
+     * @throws IllegalArgumentException if the event is invalid for this game.
+     * @modifies this
+     * @effects calls the method that produced the event, with the same
+     *          arguments. The event listener is notified again.
+     */
+    public void apply(GameEvent event) {
+        String username = null;
+        if (event.seat() >= 0) {
+            if (event.seat() >= playerList.size()) {
+                throw new IllegalArgumentException("Invalid seat " + event.seat() + ".");
+            }
+            username = playerList.get(event.seat()).getUsername();
+        }
+        switch (event.type()) {
+            case NOMINATE_CHANCELLOR:
+                nominateChancellor(username);
+                break;
+            case REGISTER_VOTE:
+                registerVote(username, event.value() == 1);
+                break;
+            case PRESIDENT_DISCARD_POLICY:
+                presidentDiscardPolicy(event.value());
+                break;
+            case CHANCELLOR_ENACT_POLICY:
+                chancellorEnactPolicy(event.value());
+                break;
+            case CHANCELLOR_VETO:
+                chancellorVeto();
+                break;
+            case PRESIDENTIAL_VETO:
+                presidentialVeto(event.value() == 1);
+                break;
+            case END_PEEK:
+                endPeek();
+                break;
+            case INVESTIGATE_PLAYER:
+                investigatePlayer(username);
+                break;
+            case EXECUTE_PLAYER:
+                executePlayer(username);
+                break;
+            case ELECT_NEXT_PRESIDENT:
+                electNextPresident(username);
+                break;
+            case END_PRESIDENTIAL_TERM:
+                endPresidentialTerm();
+                break;
+        }
+    }
+
+    /**
+     * Notifies the event listener (if any) of an accepted change.
+     * 
+     * @param type  the kind of change.
+     * @param seat  the player targeted by the change, or NO_SEAT.
+     * @param value the value given with the change.
+     */
+    private void recordEvent(GameEvent.Type type, int seat, int value) {
+        if (eventListener != null) {
+            eventListener.onGameEvent(new GameEvent(type, seat, value));
+        }
+    }
+
+    // </editor-fold>
+
+    /////////////////// Snapshots
+    // <editor-fold desc="Snapshots">
+
+    /**
+     * Creates an independent copy of this game, to try out moves without
+     * changing this one.
+     *
+     * The fork shares the parts of the game that never change (player names,
+     * the seat index and policies) and copies the rest: the players' mutable
+     * state, the board, both decks and the random number generator. This is
+     * much cheaper than a snapshot round trip, since nothing is encoded.
+     *
+     * @return a game in the same state as this one. Making the same moves in
+     *         both games gives the same results, including any shuffles. The
+     *         fork has no event listener, so its moves are not journaled.
+     */
+    public SecretHitlerGame fork() {
+        SecretHitlerGame game = new SecretHitlerGame();
+        List<Player> players = new ArrayList<>(playerList.size());
+        for (Player player : playerList) {
+            players.add(player.fork());
+        }
+        game.playerList = Collections.unmodifiableList(players);
+        game.seatsByName = seatsByName;
+        game.livingSeats = livingSeats;
+        game.board = board.fork();
+        game.draw = draw.fork();
+        game.discard = discard.fork();
+
+        game.electionTracker = electionTracker;
+        game.state = state;
+        game.lastState = lastState;
+        game.round = round;
+        game.random = new GameRandom(random.getState());
+
+        game.lastPresident = lastPresident;
+        game.lastChancellor = lastChancellor;
+        game.lastEnactedPolicy = lastEnactedPolicy;
+        game.currentPresident = currentPresident;
+        game.currentChancellor = currentChancellor;
+        game.nextPresident = nextPresident;
+        game.electedPresident = electedPresident;
+        game.target = target;
+        game.legislativePolicies = legislativePolicies == null ? null : new ArrayList<>(legislativePolicies);
+        game.didElectionTrackerAdvance = didElectionTrackerAdvance;
+        game.didVetoOccurThisTurn = didVetoOccurThisTurn;
+        game.votedSeats = votedSeats;
+        game.yesSeats = yesSeats;
+        return game;
+    }
+
+    /**
+     * Replaces the cards that no player has seen with a random arrangement of
+     * the same cards, for searching over what the hidden state might be. Only
+     * meant to be used on a fork.
+     *
+     * @param seed the seed to reshuffle with.
+     * @modifies this
+     * @effects the draw and discard piles are shuffled together and dealt back
+     *          out with their previous sizes, and the random number generator
+     *          is reseeded, so later shuffles differ from the original game's.
+     *          Policies shown by a peek are not kept in place.
+     */
+    void redealHiddenCards(long seed) {
+        random = new GameRandom(seed);
+        int discardSize = discard.getSize();
+        draw.addAll(discard);
+        draw.shuffle(random);
+        for (int i = 0; i < discardSize; i++) {
+            discard.add(draw.remove());
+        }
+    }
+
+    /**
+     * Writes the game in the compact binary snapshot format.
+     *
+     * @param out the stream to write to.
+     * @throws IOException if the stream cannot be written to.
+     * @effects writes the players in seat order, followed by the board, decks
+     *          and game state. Players are referred to by their seat index
+     *          rather than by name, and policies are packed as bits (see
+     *          {@code Deck.writePolicies()}). The state of the random number
+     *          generator is written last.
+     */
+    public void writeSnapshot(DataOutput out) throws IOException {
+        out.writeByte(playerList.size());
+        for (Player player : playerList) {
+            player.writeSnapshot(out);
+        }
+        board.writeSnapshot(out);
+        draw.writeSnapshot(out);
+        discard.writeSnapshot(out);
+
+        out.writeByte(electionTracker);
+        out.writeByte(state.ordinal());
+        out.writeByte(lastState.ordinal());
+        out.writeInt(round);
+
+        writeSeat(out, lastPresident);
+        writeSeat(out, lastChancellor);
+        writeSeat(out, currentPresident);
+        writeSeat(out, currentChancellor);
+        writeSeat(out, nextPresident);
+        writeSeat(out, electedPresident);
+        writeSeat(out, target);
+        out.writeByte(lastEnactedPolicy == null ? -1 : lastEnactedPolicy.ordinal());
+        Deck.writePolicies(out, legislativePolicies);
+        out.writeBoolean(didElectionTrackerAdvance);
+        out.writeBoolean(didVetoOccurThisTurn);
+
+        // One byte per seat: -1 if the player has not voted, else 0 or 1.
+        for (int seat = 0; seat < playerList.size(); seat++) {
+            if ((votedSeats & (1 << seat)) == 0) {
+                out.writeByte(-1);
+            } else {
+                out.writeByte((yesSeats & (1 << seat)) != 0 ? 1 : 0);
+            }
+        }
+        out.writeLong(random.getState());
+    }
+
+    /**
+     * Reads a game written by {@code writeSnapshot()}.
+     *
+     * @param in       the stream to read from.
+     * @param schemaId the schema ID of the snapshot (see
+     *                 {@code server.util.LobbyCodec}). Snapshots before schema 2
+     *                 did not include the random state.
+     * @throws IOException if the stream cannot be read or is malformed.
+     * @return a new SecretHitlerGame in the same state as the one written. If
+     *         the random state was not written, the game gets a new random
+     *         number generator.
+     */
+    public static SecretHitlerGame readSnapshot(DataInput in, int schemaId) throws IOException {
+        SecretHitlerGame game = new SecretHitlerGame();
+        int playerCount = in.readByte();
+        if (playerCount < MIN_PLAYERS || playerCount > MAX_PLAYERS) {
+            throw new IOException("Invalid player count " + playerCount + ".");
+        }
+        List<Player> players = new ArrayList<>(playerCount);
+        for (int i = 0; i < playerCount; i++) {
+            players.add(Player.readSnapshot(in));
+        }
+        game.setPlayers(players);
+        game.board = Board.readSnapshot(in, playerCount);
+        game.draw = Deck.readSnapshot(in);
+        game.discard = Deck.readSnapshot(in);
+
+        game.electionTracker = in.readByte();
+        game.state = readState(in);
+        game.lastState = readState(in);
+        game.round = in.readInt();
+
+        game.lastPresident = game.readSeat(in);
+        game.lastChancellor = game.readSeat(in);
+        game.currentPresident = game.readSeat(in);
+        game.currentChancellor = game.readSeat(in);
+        game.nextPresident = game.readSeat(in);
+        game.electedPresident = game.readSeat(in);
+        game.target = game.readSeat(in);
+        int lastEnactedPolicy = in.readByte();
+        if (lastEnactedPolicy >= Policy.Type.values().length) {
+            throw new IOException("Invalid policy type " + lastEnactedPolicy + ".");
+        }
+        game.lastEnactedPolicy = lastEnactedPolicy < 0 ? null : Policy.Type.values()[lastEnactedPolicy];
+        game.legislativePolicies = Deck.readPolicies(in);
+        game.didElectionTrackerAdvance = in.readBoolean();
+        game.didVetoOccurThisTurn = in.readBoolean();
+
+        for (int seat = 0; seat < playerCount; seat++) {
+            int vote = in.readByte();
+            if (vote >= 0) {
+                game.votedSeats |= 1 << seat;
+                if (vote == 1) {
+                    game.yesSeats |= 1 << seat;
+                }
+            }
+        }
+        game.random = schemaId >= 2 ? new GameRandom(in.readLong()) : new GameRandom();
+        return game;
+    }
+
+    /**
+     * Writes a seat index, or -1 for NO_SEAT.
+     */
+    private void writeSeat(DataOutput out, int seat) throws IOException {
+        out.writeByte(seat);
+    }
+
+    /**
+     * Reads a seat index written by {@code writeSeat()}.
+     *
+     * @throws IOException if the seat is not in the game.
+     * @return the seat, or NO_SEAT.
+     */
+    private int readSeat(DataInput in) throws IOException {
+        int seat = in.readByte();
+        if (seat < 0) {
+            return NO_SEAT;
+        } else if (seat >= playerList.size()) {
+            throw new IOException("Invalid seat " + seat + ".");
+        }
+        return seat;
+    }
+
+    /**
+     * Reads a game state written as its ordinal.
+     *
+     * @throws IOException if the ordinal is not a GameState.
+     * @return the state.
+     */
+    private static GameState readState(DataInput in) throws IOException {
+        int state = in.readByte();
+        if (state < 0 || state >= GameState.values().length) {
+            throw new IOException("Invalid game state " + state + ".");
+        }
+        return GameState.values()[state];
     }
 
     // </editor-fold>
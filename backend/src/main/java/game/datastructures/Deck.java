@@ -1,18 +1,27 @@
 package game.datastructures;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 
 /**
  * A deck holds an ordered list of Policies and can be shuffled, added to, or removed from.
  * The Deck can be represented by a list of policies, where index i = 0 is the top of the deck.
+ *
+ * The policies are packed into the bits of an int (see {@code writePolicies()}), so a deck
+ * holds at most MAX_SIZE policies, and drawing, adding, peeking and counting are constant time.
  */
 public class Deck implements Serializable {
 
-    // The front of the list is the "top" of the deck.
-    final private List<Policy> deck;
+    public static final int MAX_SIZE = Integer.SIZE;
+
+    // Bit i is set if the policy at index i is liberal. Bit 0 is the "top" of the deck.
+    private int liberalBits;
+    private int size;
 
     /**
      * Constructs a new empty deck.
@@ -20,7 +29,24 @@ public class Deck implements Serializable {
      * @effects this is a new deck with no Policies.
      */
     public Deck() {
-        deck = new ArrayList<>();
+    }
+
+    /**
+     * Constructs a copy of a deck.
+     * @param other the deck to copy.
+     * @effects this is a new deck with the same Policies as {@code other}, in the same order.
+     */
+    public Deck(Deck other) {
+        liberalBits = other.liberalBits;
+        size = other.size;
+    }
+
+    /**
+     * Creates a copy of this deck.
+     * @return a new deck with the same Policies, in the same order.
+     */
+    public Deck fork() {
+        return new Deck(this);
     }
 
     /**
@@ -34,17 +60,50 @@ public class Deck implements Serializable {
         if (isEmpty()) {
             throw new IndexOutOfBoundsException("Cannot remove a card from an empty deck.");
         }
-        return deck.remove(0);
+        Policy top = policyAt(0);
+        liberalBits >>>= 1;
+        size--;
+        return top;
     }
 
     /**
      * Adds the given Policy to the top of the deck.
      * @param newPolicy the Policy to add to the deck.
+     * @throws IllegalStateException if the deck already has MAX_SIZE policies.
      * @modifies this
      * @effects adds the given Policy to the deck at index 0.
      */
     public void add(Policy newPolicy) {
-        deck.add(0, newPolicy);
+        if (size == MAX_SIZE) {
+            throw new IllegalStateException("Cannot add more than " + MAX_SIZE + " cards to a deck.");
+        }
+        liberalBits <<= 1;
+        if (newPolicy.getType() == Policy.Type.LIBERAL) {
+            liberalBits |= 1;
+        }
+        size++;
+    }
+
+    /**
+     * Moves every Policy in another deck onto the top of this deck.
+     * @param other the deck to empty into this one.
+     * @throws IllegalStateException if the combined deck would have more than MAX_SIZE policies.
+     * @modifies this, other
+     * @effects the result is the same as removing each Policy from {@code other} and adding
+     *          it to this deck in turn, so the policies of {@code other} end up on top in
+     *          reverse order. {@code other} is left empty.
+     */
+    public void addAll(Deck other) {
+        if (other.isEmpty()) {
+            return;
+        } else if (size + other.size > MAX_SIZE) {
+            throw new IllegalStateException("Cannot add more than " + MAX_SIZE + " cards to a deck.");
+        }
+        int reversed = Integer.reverse(other.liberalBits) >>> (Integer.SIZE - other.size);
+        liberalBits = size == 0 ? reversed : (liberalBits << other.size) | reversed;
+        size += other.size;
+        other.liberalBits = 0;
+        other.size = 0;
     }
 
     /**
@@ -54,11 +113,18 @@ public class Deck implements Serializable {
      * @return the Policy at the given index.
      */
     public Policy peek(int index) {
-        return deck.get(index);
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for deck of size " + size + ".");
+        }
+        return policyAt(index);
+    }
+
+    private Policy policyAt(int index) {
+        return Policy.of((liberalBits & (1 << index)) != 0 ? Policy.Type.LIBERAL : Policy.Type.FASCIST);
     }
 
     public boolean isEmpty() {
-        return getSize() == 0;
+        return size == 0;
     }
 
     /**
@@ -66,14 +132,118 @@ public class Deck implements Serializable {
      * @return the size of the deck.
      */
     public int getSize() {
-        return deck.size();
+        return size;
     }
 
     /**
-     * Shuffles the deck.
-     * @effects Randomizes the ordering of the policy cards in this Deck.
+     * Gets the number of liberal Policy cards in the deck.
      */
-    public void shuffle() {
-        Collections.shuffle(deck);
+    public int getLiberalCount() {
+        return Integer.bitCount(liberalBits);
+    }
+
+    /**
+     * Gets the number of fascist Policy cards in the deck.
+     */
+    public int getFascistCount() {
+        return size - getLiberalCount();
+    }
+
+    /**
+     * Shuffles the deck using the given source of randomness.
+     * @param random the random number generator to shuffle with.
+     * @effects Randomizes the ordering of the policy cards in this Deck. The
+     *          order only depends on the current order and the state of
+     *          {@code random}. The cards are permuted exactly as
+     *          {@code Collections.shuffle()} would permute a list of them.
+     */
+    public void shuffle(Random random) {
+        for (int i = size; i > 1; i--) {
+            int j = random.nextInt(i);
+            // Swap the bits at i - 1 and j if they differ.
+            int difference = ((liberalBits >>> (i - 1)) ^ (liberalBits >>> j)) & 1;
+            liberalBits ^= (difference << (i - 1)) | (difference << j);
+        }
+    }
+
+    /**
+     * Writes the deck in the compact binary snapshot format.
+     * @param out the stream to write to.
+     * @throws IOException if the stream cannot be written to.
+     * @effects writes the number of policies, followed by the policies packed as
+     *          bits (see {@code writePolicies()}).
+     */
+    public void writeSnapshot(DataOutput out) throws IOException {
+        out.writeByte(size);
+        out.writeInt(liberalBits);
+    }
+
+    /**
+     * Reads a deck written by {@code writeSnapshot()}.
+     * @param in the stream to read from.
+     * @throws IOException if the stream cannot be read or is malformed.
+     * @return a new Deck with the same policies, in the same order.
+     */
+    public static Deck readSnapshot(DataInput in) throws IOException {
+        int size = in.readByte();
+        if (size < 0 || size > MAX_SIZE) {
+            throw new IOException("Invalid policy count " + size + ".");
+        }
+        Deck deck = new Deck();
+        deck.size = size;
+        deck.liberalBits = in.readInt();
+        if (size < MAX_SIZE) {
+            deck.liberalBits &= (1 << size) - 1;
+        }
+        return deck;
+    }
+
+    /**
+     * Writes a list of policies packed as bits.
+     * @param out      the stream to write to.
+     * @param policies the policies to write. May be null.
+     * @throws IllegalArgumentException if there are more than 32 policies.
+     * @throws IOException if the stream cannot be written to.
+     * @effects writes the number of policies as a byte (-1 if {@code policies} is
+     *          null), then an int where bit i is set if policy i is liberal.
+     */
+    public static void writePolicies(DataOutput out, List<Policy> policies) throws IOException {
+        if (policies == null) {
+            out.writeByte(-1);
+            return;
+        }
+        if (policies.size() > Integer.SIZE) {
+            throw new IllegalArgumentException("Cannot pack more than " + Integer.SIZE + " policies.");
+        }
+        int bits = 0;
+        for (int i = 0; i < policies.size(); i++) {
+            if (policies.get(i).getType() == Policy.Type.LIBERAL) {
+                bits |= 1 << i;
+            }
+        }
+        out.writeByte(policies.size());
+        out.writeInt(bits);
+    }
+
+    /**
+     * Reads a list of policies written by {@code writePolicies()}.
+     * @param in the stream to read from.
+     * @throws IOException if the stream cannot be read or is malformed.
+     * @return a new list of policies, or null if a null list was written.
+     */
+    public static List<Policy> readPolicies(DataInput in) throws IOException {
+        int size = in.readByte();
+        if (size < 0) {
+            return null;
+        } else if (size > Integer.SIZE) {
+            throw new IOException("Invalid policy count " + size + ".");
+        }
+        int bits = in.readInt();
+        List<Policy> policies = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            boolean liberal = (bits & (1 << i)) != 0;
+            policies.add(Policy.of(liberal ? Policy.Type.LIBERAL : Policy.Type.FASCIST));
+        }
+        return policies;
     }
 }
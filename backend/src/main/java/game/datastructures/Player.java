@@ -1,5 +1,8 @@
 package game.datastructures;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
 
 /**
@@ -29,6 +32,19 @@ public class Player implements Serializable {
         investigated = false;
     }
 
+    /**
+     * Creates a copy of this player.
+     * @return a new Player with the same username, identity and flags.
+     */
+    public Player fork() {
+        Player player = new Player(username);
+        player.id = id;
+        player.isAlive = isAlive;
+        player.investigated = investigated;
+        player.isCPU = isCPU;
+        return player;
+    }
+
     public String getUsername() {
         return this.username;
     }
@@ -76,4 +92,53 @@ public class Player implements Serializable {
     public boolean isFascist() {
         return this.id.equals(Identity.HITLER) || this.id.equals(Identity.FASCIST);
     }
+
+    // Flags used by the binary snapshot format. The two lowest bits hold the
+    // ordinal of the player's Identity.
+    private static final int IDENTITY_MASK = 0b11;
+    private static final int FLAG_ALIVE = 1 << 2;
+    private static final int FLAG_INVESTIGATED = 1 << 3;
+    private static final int FLAG_CPU = 1 << 4;
+
+    /**
+     * Writes the player in the compact binary snapshot format.
+     * @param out the stream to write to.
+     * @throws IOException if the stream cannot be written to.
+     * @effects writes the username, followed by a single byte holding the
+     *          identity and the alive, investigated and CPU flags.
+     */
+    public void writeSnapshot(DataOutput out) throws IOException {
+        int flags = id.ordinal();
+        if (isAlive) {
+            flags |= FLAG_ALIVE;
+        }
+        if (investigated) {
+            flags |= FLAG_INVESTIGATED;
+        }
+        if (isCPU) {
+            flags |= FLAG_CPU;
+        }
+        out.writeUTF(username);
+        out.writeByte(flags);
+    }
+
+    /**
+     * Reads a player written by {@code writeSnapshot()}.
+     * @param in the stream to read from.
+     * @throws IOException if the stream cannot be read or is malformed.
+     * @return a new Player with the same username, identity and flags.
+     */
+    public static Player readSnapshot(DataInput in) throws IOException {
+        Player player = new Player(in.readUTF());
+        int flags = in.readUnsignedByte();
+        int identity = flags & IDENTITY_MASK;
+        if (identity >= Identity.values().length) {
+            throw new IOException("Invalid identity " + identity + ".");
+        }
+        player.id = Identity.values()[identity];
+        player.isAlive = (flags & FLAG_ALIVE) != 0;
+        player.investigated = (flags & FLAG_INVESTIGATED) != 0;
+        player.isCPU = (flags & FLAG_CPU) != 0;
+        return player;
+    }
 }
@@ -10,12 +10,25 @@ public class Policy implements Serializable {
         FASCIST,
         LIBERAL
     }
+    private static final Policy FASCIST_POLICY = new Policy(Type.FASCIST);
+    private static final Policy LIBERAL_POLICY = new Policy(Type.LIBERAL);
+
     private final Type type;
 
     public Policy(Type type) {
         this.type = type;
     }
 
+    /**
+     * Gets the shared Policy of the given type. Policies are immutable, so they
+     * do not need to be allocated per card.
+     * @param type the type of the policy.
+     * @return a Policy of the given type.
+     */
+    public static Policy of(Type type) {
+        return type == Type.LIBERAL ? LIBERAL_POLICY : FASCIST_POLICY;
+    }
+
     public Type getType() {
         return this.type;
     }
@@ -2,9 +2,12 @@ package game.datastructures.board;
 
 import game.datastructures.Policy;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
 
-public abstract class Board implements Serializable {
+public abstract class Board implements Serializable, Cloneable {
 
     final int FASCIST_POLICIES_TO_WIN = 6;
     final int LIBERAL_POLICIES_TO_WIN = 5;
@@ -28,6 +31,36 @@ public abstract class Board implements Serializable {
         numLiberalPolicies = 0;
     }
 
+    /**
+     * Creates an empty board for a game with the given number of players.
+     * @param playerCount the number of players in the game.
+     * @return a FiveToSixPlayerBoard, SevenToEightPlayerBoard or
+     *         NineToTenPlayerBoard, depending on {@code playerCount}.
+     */
+    public static Board forPlayerCount(int playerCount) {
+        if (playerCount <= 6) {
+            return new FiveToSixPlayerBoard();
+        } else if (playerCount <= 8) {
+            return new SevenToEightPlayerBoard();
+        } else {
+            return new NineToTenPlayerBoard();
+        }
+    }
+
+    /**
+     * Creates a copy of this board.
+     * @return a new Board of the same type with the same policies enacted.
+     */
+    public Board fork() {
+        try {
+            // Every field is a primitive or an immutable Policy, so a shallow
+            // copy is independent of this board.
+            return (Board) clone();
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
     /**
      * Enacts the given policy.
      * @param policy the Policy to enact.
@@ -121,4 +154,39 @@ public abstract class Board implements Serializable {
         return (getNumFascistPolicies() >= MIN_POLICIES_FOR_CHANCELLOR_VICTORY);
     }
 
+    /**
+     * Writes the board in the compact binary snapshot format. The type of board
+     * is not written, since it depends only on the number of players.
+     * @param out the stream to write to.
+     * @throws IOException if the stream cannot be written to.
+     * @effects writes the number of fascist and liberal policies and the type of
+     *          the last enacted policy (-1 if none).
+     */
+    public void writeSnapshot(DataOutput out) throws IOException {
+        out.writeByte(numFascistPolicies);
+        out.writeByte(numLiberalPolicies);
+        out.writeByte(lastEnacted == null ? -1 : lastEnacted.getType().ordinal());
+    }
+
+    /**
+     * Reads a board written by {@code writeSnapshot()}.
+     * @param in          the stream to read from.
+     * @param playerCount the number of players in the game.
+     * @throws IOException if the stream cannot be read or is malformed.
+     * @return a new Board (see {@code forPlayerCount()}) with the same policies
+     *         enacted.
+     */
+    public static Board readSnapshot(DataInput in, int playerCount) throws IOException {
+        Board board = forPlayerCount(playerCount);
+        board.numFascistPolicies = in.readByte();
+        board.numLiberalPolicies = in.readByte();
+        int lastEnacted = in.readByte();
+        if (lastEnacted >= Policy.Type.values().length) {
+            throw new IOException("Invalid policy type " + lastEnacted + ".");
+        }
+        if (lastEnacted >= 0) {
+            board.lastEnacted = Policy.of(Policy.Type.values()[lastEnacted]);
+        }
+        return board;
+    }
 }
@@ -0,0 +1,164 @@
+package game.simulation;
+
+import game.CpuPlayer;
+import game.GameState;
+import game.SecretHitlerGame;
+import game.util.GameRandom;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Plays complete games between CpuPlayers, without a Lobby, websockets or
+ * action delays, and collects the results in a SimulationReport.
+ *
+ * Games are split across a ForkJoinPool. Game {@code i} of a simulation only
+ * depends on the seed and {@code i}, so a simulation gives the same report
+ * regardless of the number of threads.
+ *
+ * Run with {@code ./gradlew simulate --args="[games] [seed] [threads]"}.
+ */
+public class GameSimulator {
+
+    // Number of games played by a single task before it stops splitting.
+    private static final int GAMES_PER_TASK = 64;
+    // A game that takes more moves than this is assumed to be stuck.
+    private static final int MAX_MOVES = 10000;
+
+    private static final int DEFAULT_GAMES = 100000;
+
+    /**
+     * The result of one simulated game.
+     *
+     * @param playerCount the number of players.
+     * @param outcome     the victory state the game ended in.
+     * @param rounds      the number of presidential terms played.
+     * @param moves       the number of actions taken by the CpuPlayers.
+     */
+    public record GameResult(int playerCount, GameState outcome, int rounds, int moves) {
+    }
+
+    /**
+     * Plays a single game between CpuPlayers.
+     *
+     * @param playerCount the number of players.
+     * @param seed        the seed for the game and every CpuPlayer. The same
+     *                    seed always produces the same game.
+     * @requires MIN_PLAYERS <= playerCount <= MAX_PLAYERS
+     * @throws IllegalStateException if the CpuPlayers stop making progress.
+     * @return the result of the game.
+     */
+    public static GameResult playGame(int playerCount, long seed) {
+        GameRandom random = new GameRandom(seed);
+        List<String> names = new ArrayList<>(playerCount);
+        for (int i = 1; i <= playerCount; i++) {
+            names.add("Bot " + i);
+        }
+        SecretHitlerGame game = new SecretHitlerGame(names, random.nextLong());
+
+        List<CpuPlayer> cpus = new ArrayList<>(playerCount);
+        for (String name : names) {
+            CpuPlayer cpu = new CpuPlayer(name, random.split());
+            cpu.initialize(game);
+            cpus.add(cpu);
+        }
+
+        int moves = CpuPlayer.playOut(game, cpus, MAX_MOVES);
+        if (!game.hasGameFinished()) {
+            if (moves >= MAX_MOVES) {
+                throw new IllegalStateException("The game did not end after " + MAX_MOVES + " moves.");
+            }
+            throw new IllegalStateException("No CpuPlayer could act in state " + game.getState() + ".");
+        }
+        return new GameResult(playerCount, game.getState(), game.getRound(), moves);
+    }
+
+    /**
+     * Plays many games between CpuPlayers in parallel.
+     *
+     * @param pool       the pool to run the games in.
+     * @param games      the number of games to play.
+     * @param minPlayers the smallest number of players in a game.
+     * @param maxPlayers the largest number of players in a game.
+     * @param seed       the seed for the whole simulation.
+     * @requires MIN_PLAYERS <= minPlayers <= maxPlayers <= MAX_PLAYERS
+     * @return the combined results. Game {@code i} has
+     *         {@code minPlayers + i % (maxPlayers - minPlayers + 1)} players,
+     *         so every board size is played equally often.
+     */
+    public static SimulationReport simulate(ForkJoinPool pool, int games, int minPlayers, int maxPlayers,
+            long seed) {
+        if (minPlayers < SecretHitlerGame.MIN_PLAYERS || maxPlayers > SecretHitlerGame.MAX_PLAYERS
+                || minPlayers > maxPlayers) {
+            throw new IllegalArgumentException("Invalid player range " + minPlayers + "-" + maxPlayers + ".");
+        }
+        return pool.invoke(new SimulationTask(0, games, minPlayers, maxPlayers, seed));
+    }
+
+    /**
+     * Plays the games in [from, to), splitting the range in half until it is
+     * small enough to play on one thread.
+     */
+    private static class SimulationTask extends RecursiveTask<SimulationReport> {
+        private final int from;
+        private final int to;
+        private final int minPlayers;
+        private final int maxPlayers;
+        private final long seed;
+
+        SimulationTask(int from, int to, int minPlayers, int maxPlayers, long seed) {
+            this.from = from;
+            this.to = to;
+            this.minPlayers = minPlayers;
+            this.maxPlayers = maxPlayers;
+            this.seed = seed;
+        }
+
+        @Override
+        protected SimulationReport compute() {
+            if (to - from <= GAMES_PER_TASK) {
+                SimulationReport report = new SimulationReport();
+                int boardSizes = maxPlayers - minPlayers + 1;
+                for (int i = from; i < to; i++) {
+                    long gameSeed = new GameRandom(seed + i).nextLong();
+                    report.add(playGame(minPlayers + i % boardSizes, gameSeed));
+                }
+                return report;
+            }
+            int middle = (from + to) >>> 1;
+            SimulationTask left = new SimulationTask(from, middle, minPlayers, maxPlayers, seed);
+            SimulationTask right = new SimulationTask(middle, to, minPlayers, maxPlayers, seed);
+            left.fork();
+            SimulationReport report = right.compute();
+            report.merge(left.join());
+            return report;
+        }
+    }
+
+    public static void main(String[] args) {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_GAMES;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : new GameRandom().nextLong();
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            // Warm up the JIT so that the timed run measures steady-state
+            // throughput.
+            simulate(pool, Math.min(games, 10000), SecretHitlerGame.MIN_PLAYERS, SecretHitlerGame.MAX_PLAYERS,
+                    seed);
+
+            long start = System.nanoTime();
+            SimulationReport report = simulate(pool, games, SecretHitlerGame.MIN_PLAYERS,
+                    SecretHitlerGame.MAX_PLAYERS, seed);
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            System.out.printf("Simulated %d games on %d threads (seed %d) in %.2f s: %.0f games/s%n%n",
+                    games, threads, seed, seconds, games / seconds);
+            report.print(System.out);
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
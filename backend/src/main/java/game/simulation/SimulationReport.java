@@ -0,0 +1,176 @@
+package game.simulation;
+
+import game.GameState;
+import game.SecretHitlerGame;
+
+import java.io.PrintStream;
+
+/**
+ * Aggregated results of simulated games: outcomes by board size, and the
+ * distribution of game lengths.
+ *
+ * A SimulationReport is not thread-safe. Each simulation task fills its own
+ * report, and reports are combined with {@code merge()}.
+ */
+public class SimulationReport {
+
+    // Games of this many rounds or more share the last histogram bucket.
+    static final int MAX_ROUNDS = 32;
+
+    private final long[] games = new long[SecretHitlerGame.MAX_PLAYERS + 1];
+    private final long[][] outcomes = new long[SecretHitlerGame.MAX_PLAYERS + 1][GameState.values().length];
+    private final long[] rounds = new long[MAX_ROUNDS + 1];
+    private long totalMoves;
+    private long totalRounds;
+
+    /**
+     * Adds the result of a game to this report.
+     *
+     * @param result the result to add.
+     * @modifies this
+     */
+    public void add(GameSimulator.GameResult result) {
+        games[result.playerCount()]++;
+        outcomes[result.playerCount()][result.outcome().ordinal()]++;
+        rounds[Math.min(result.rounds(), MAX_ROUNDS)]++;
+        totalMoves += result.moves();
+        totalRounds += result.rounds();
+    }
+
+    /**
+     * Adds all results from another report to this one.
+     *
+     * @param other the report to add.
+     * @modifies this
+     */
+    public void merge(SimulationReport other) {
+        for (int i = 0; i < games.length; i++) {
+            games[i] += other.games[i];
+            for (int j = 0; j < outcomes[i].length; j++) {
+                outcomes[i][j] += other.outcomes[i][j];
+            }
+        }
+        for (int i = 0; i < rounds.length; i++) {
+            rounds[i] += other.rounds[i];
+        }
+        totalMoves += other.totalMoves;
+        totalRounds += other.totalRounds;
+    }
+
+    /**
+     * Gets the total number of games in this report.
+     */
+    public long getGameCount() {
+        long count = 0;
+        for (long boardGames : games) {
+            count += boardGames;
+        }
+        return count;
+    }
+
+    /**
+     * Gets the number of games played with the given number of players.
+     */
+    public long getGameCount(int playerCount) {
+        return games[playerCount];
+    }
+
+    /**
+     * Gets the number of games with the given number of players that ended in
+     * the given state.
+     */
+    public long getOutcomeCount(int playerCount, GameState outcome) {
+        return outcomes[playerCount][outcome.ordinal()];
+    }
+
+    /**
+     * Gets the fraction of games with the given number of players won by the
+     * liberal party, or NaN if there were no such games.
+     */
+    public double getLiberalWinRate(int playerCount) {
+        long liberalWins = getOutcomeCount(playerCount, GameState.LIBERAL_VICTORY_POLICY)
+                + getOutcomeCount(playerCount, GameState.LIBERAL_VICTORY_EXECUTION);
+        return (double) liberalWins / games[playerCount];
+    }
+
+    /**
+     * Gets the number of games that lasted the given number of rounds.
+     *
+     * @param roundCount the number of rounds. Games of MAX_ROUNDS or more are
+     *                   counted together.
+     */
+    public long getRoundCount(int roundCount) {
+        return rounds[Math.min(roundCount, MAX_ROUNDS)];
+    }
+
+    /**
+     * Gets the smallest number of rounds that at least the given fraction of
+     * games finished within.
+     *
+     * @param fraction a fraction in (0, 1].
+     */
+    public int getRoundPercentile(double fraction) {
+        long target = (long) Math.ceil(fraction * getGameCount());
+        long seen = 0;
+        for (int i = 0; i < rounds.length; i++) {
+            seen += rounds[i];
+            if (seen >= target) {
+                return i;
+            }
+        }
+        return MAX_ROUNDS;
+    }
+
+    /**
+     * Gets the average number of CpuPlayer actions per game.
+     */
+    public double getMeanMoves() {
+        return (double) totalMoves / getGameCount();
+    }
+
+    /**
+     * Gets the average number of rounds per game.
+     */
+    public double getMeanRounds() {
+        return (double) totalRounds / getGameCount();
+    }
+
+    /**
+     * Prints the win rates by board size and the distribution of game lengths.
+     *
+     * @param out the stream to print to.
+     */
+    public void print(PrintStream out) {
+        out.printf("%-8s %8s %8s %8s %8s %8s %8s%n", "Players", "Games", "Liberal", "LibPol", "LibExec",
+                "FasPol", "FasElec");
+        for (int players = 0; players < games.length; players++) {
+            if (games[players] == 0) {
+                continue;
+            }
+            out.printf("%-8d %8d %7.1f%% %7.1f%% %7.1f%% %7.1f%% %7.1f%%%n", players, games[players],
+                    100 * getLiberalWinRate(players),
+                    percent(players, GameState.LIBERAL_VICTORY_POLICY),
+                    percent(players, GameState.LIBERAL_VICTORY_EXECUTION),
+                    percent(players, GameState.FASCIST_VICTORY_POLICY),
+                    percent(players, GameState.FASCIST_VICTORY_ELECTION));
+        }
+
+        out.printf("%nRounds per game: mean %.2f, p50 %d, p90 %d, p99 %d; moves per game: mean %.1f%n",
+                getMeanRounds(), getRoundPercentile(0.5), getRoundPercentile(0.9), getRoundPercentile(0.99),
+                getMeanMoves());
+        long maxCount = 1;
+        for (long count : rounds) {
+            maxCount = Math.max(maxCount, count);
+        }
+        for (int i = 0; i < rounds.length; i++) {
+            if (rounds[i] > 0) {
+                out.printf("%3d%s %8d %s%n", i, i == MAX_ROUNDS ? "+" : " ", rounds[i],
+                        "#".repeat((int) (40 * rounds[i] / maxCount)));
+            }
+        }
+    }
+
+    private double percent(int playerCount, GameState outcome) {
+        return 100.0 * getOutcomeCount(playerCount, outcome) / games[playerCount];
+    }
+}
@@ -0,0 +1,87 @@
+package game.util;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A random number generator whose entire state is a single long, so that it
+ * can be saved with a game and restored exactly.
+ *
+ * Uses the SplitMix64 algorithm. A game restored from a snapshot, or replayed
+ * from its event log, draws the same cards and makes the same random choices
+ * as the original. {@code split()} derives generators for other consumers
+ * (the seat order, each CpuPlayer) from one seed, so an entire lobby game is
+ * reproducible from a single value. Not suitable for cryptographic use.
+ */
+public class GameRandom extends Random {
+
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private long state;
+
+    /**
+     * Creates a new GameRandom with an unpredictable seed.
+     */
+    public GameRandom() {
+        this(ThreadLocalRandom.current().nextLong());
+    }
+
+    /**
+     * Creates a new GameRandom.
+     *
+     * @param seed the initial state. Two GameRandoms created with the same seed
+     *             return the same sequence of values.
+     */
+    public GameRandom(long seed) {
+        super(seed);
+        state = seed;
+    }
+
+    /**
+     * Gets the current state of the generator.
+     *
+     * @return a value that, passed to {@code setSeed()} or the constructor,
+     *         makes a generator continue with the same sequence as this one.
+     */
+    public synchronized long getState() {
+        return state;
+    }
+
+    /**
+     * Sets the state of the generator.
+     *
+     * @param seed the new state (see {@code getState()}).
+     */
+    @Override
+    public synchronized void setSeed(long seed) {
+        super.setSeed(seed); // clears any cached Gaussian value.
+        state = seed;
+    }
+
+    /**
+     * Creates a new generator for a separate consumer, such as a CpuPlayer.
+     *
+     * @modifies this
+     * @effects advances this generator by one value.
+     * @return a new GameRandom seeded from this one. Its sequence is
+     *         independent of this generator's later values, and is the same
+     *         whenever this generator is in the same state.
+     */
+    public GameRandom split() {
+        return new GameRandom(nextLong());
+    }
+
+    @Override
+    public synchronized long nextLong() {
+        state += GOLDEN_GAMMA;
+        long z = state;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    @Override
+    protected int next(int bits) {
+        return (int) (nextLong() >>> (64 - bits));
+    }
+}
@@ -3,7 +3,86 @@ package server;
 public class ApplicationConfig {
     private static final String ENV_DEBUG = "DEBUG_MODE";
     private static final String ENV_DATABASE_URL = "DATABASE_URL";
+    private static final String ENV_SCHEDULER_THREADS = "SCHEDULER_THREADS";
+    private static final String ENV_EXECUTION_MODE = "EXECUTION_MODE";
+    private static final String ENV_LOBBY_THREADS = "LOBBY_THREADS";
+    private static final String ENV_LOBBY_MAILBOX_SIZE = "LOBBY_MAILBOX_SIZE";
+    private static final String ENV_OUTBOX_HIGH_WATER_MARK = "OUTBOX_HIGH_WATER_MARK";
+    private static final String ENV_BROADCAST_INTERVAL_MS = "BROADCAST_INTERVAL_MS";
+    private static final String ENV_DATABASE_POOL_SIZE = "DATABASE_POOL_SIZE";
+    private static final String ENV_DATABASE_SHUTDOWN_TIMEOUT_MS = "DATABASE_SHUTDOWN_TIMEOUT_MS";
+    private static final String ENV_GAME_LOG_DIR = "GAME_LOG_DIR";
+    private static final String ENV_BOT_SEARCH_THREADS = "BOT_SEARCH_THREADS";
+    private static final String ENV_BOT_SEARCH_BUDGET_MS = "BOT_SEARCH_BUDGET_MS";
+    private static final String ENV_BOT_THREADS = "BOT_THREADS";
+
+    /**
+     * Where lobby work (websocket commands, updates and CPU ticks) runs. See
+     * {@code LobbyExecutors}.
+     */
+    public enum ExecutionMode {
+        DIRECT, // on the Jetty websocket threads
+        PLATFORM, // on a per-lobby serial executor backed by platform threads
+        // on a per-lobby serial executor backed by virtual threads. These need
+        // Java 21, so on the Java 17 runtime this falls back to PLATFORM (a
+        // warning is logged at startup).
+        VIRTUAL
+    }
 
     public static boolean DEBUG = System.getenv(ENV_DEBUG) != null;
     public static String DATABASE_URI = System.getenv(ENV_DATABASE_URL);
+    // Number of threads shared by all lobbies for timeouts and CPU ticks.
+    public static int SCHEDULER_THREADS = getIntEnv(ENV_SCHEDULER_THREADS, 2);
+    public static ExecutionMode EXECUTION_MODE = getExecutionMode();
+    // Size of the shared thread pool used in PLATFORM execution mode.
+    public static int LOBBY_THREADS = getIntEnv(ENV_LOBBY_THREADS,
+            Runtime.getRuntime().availableProcessors() * 4);
+    // Number of queued commands from users after which a lobby refuses new ones.
+    public static int LOBBY_MAILBOX_SIZE = getIntEnv(ENV_LOBBY_MAILBOX_SIZE, 256);
+    // Number of packets queued for a connection after which its pending state
+    // updates are merged into the latest one.
+    public static int OUTBOX_HIGH_WATER_MARK = getIntEnv(ENV_OUTBOX_HIGH_WATER_MARK, 8);
+    // Minimum time between state broadcasts from a lobby. Changes made within
+    // the interval are sent together. If 0, every change is sent immediately.
+    public static int BROADCAST_INTERVAL_MS = getIntEnv(ENV_BROADCAST_INTERVAL_MS, 40);
+    // Number of idle database connections kept open for reuse.
+    public static int DATABASE_POOL_SIZE = getIntEnv(ENV_DATABASE_POOL_SIZE, 2);
+    // Maximum time the server waits on shutdown for the last backup to be
+    // written to the database.
+    public static int DATABASE_SHUTDOWN_TIMEOUT_MS = getIntEnv(ENV_DATABASE_SHUTDOWN_TIMEOUT_MS, 10000);
+    // Directory on local disk for the per-lobby game journals used for crash
+    // recovery (see GameJournal). If null, no journals are written.
+    public static String GAME_LOG_DIR = System.getenv(ENV_GAME_LOG_DIR);
+    // Size of the thread pool shared by all lobbies for CPU player search (see
+    // DeterminizedSearch). If 0, CPU players only use their heuristics.
+    public static int BOT_SEARCH_THREADS = getIntEnv(ENV_BOT_SEARCH_THREADS, 0);
+    // Time a CPU player may spend searching for each nomination or vote.
+    public static int BOT_SEARCH_BUDGET_MS = getIntEnv(ENV_BOT_SEARCH_BUDGET_MS, 200);
+    // Size of the thread pool shared by all lobbies for choosing CPU player
+    // actions, outside of the lobbies' own executors (see BotScheduler).
+    public static int BOT_THREADS = getIntEnv(ENV_BOT_THREADS, Runtime.getRuntime().availableProcessors());
+
+    private static int getIntEnv(String name, int defaultValue) {
+        String value = System.getenv(name);
+        if (value != null) {
+            try {
+                return Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                // fall through to the default
+            }
+        }
+        return defaultValue;
+    }
+
+    private static ExecutionMode getExecutionMode() {
+        String value = System.getenv(ENV_EXECUTION_MODE);
+        if (value != null) {
+            try {
+                return ExecutionMode.valueOf(value.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                // fall through to the default
+            }
+        }
+        return ExecutionMode.DIRECT;
+    }
 }
@@ -0,0 +1,366 @@
+package server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import server.util.Lobby;
+import server.util.LobbyCodec;
+import server.util.LobbyScheduler;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Stores lobbies in the Postgres database, one row per lobby, in the binary
+ * snapshot format (see {@code LobbyCodec}).
+ *
+ * Each lobby has a version that increases whenever it changes
+ * ({@code Lobby.getVersion()}). A flush only writes the lobbies whose version
+ * is newer than the one last stored, and deletes the rows of lobbies that were
+ * removed. Rows are restored independently, so a lobby that cannot be read does
+ * not prevent the others from being restored.
+ *
+ * Flushes are write-behind: {@code requestFlush()} returns immediately, and
+ * the work is done by a single background worker with a bounded queue, using
+ * connections from a ConnectionPool. Repeated requests are coalesced while a
+ * flush is queued, and a lobby that changes again before its snapshot is
+ * written only has its newest snapshot written. If a write fails, the pending
+ * snapshots are kept and retried with exponential backoff.
+ *
+ * If no database is configured ({@code ApplicationConfig.DATABASE_URI} is
+ * null), the store is disabled: nothing is loaded or stored.
+ */
+public class LobbyStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(LobbyStore.class);
+
+    // How long to wait for a busy lobby to be serialized before skipping it
+    // until the next flush.
+    private static final long SERIALIZE_TIMEOUT_MS = 5000;
+    private static final long MIN_RETRY_DELAY_MS = 1000;
+    private static final long MAX_RETRY_DELAY_MS = 60 * 1000;
+    private static final int WORKER_QUEUE_SIZE = 16;
+
+    /**
+     * A serialized lobby waiting to be written.
+     */
+    private record PendingWrite(long version, byte[] bytes) {
+    }
+
+    // Null if the store is disabled.
+    private final ConnectionPool pool;
+    private final ThreadPoolExecutor worker;
+    // Set while a flush is queued but has not started, so that repeated
+    // requests are coalesced into it.
+    private final AtomicBoolean flushQueued;
+
+    // The version of each lobby that was last written to the database.
+    private final Map<String, Long> storedVersions;
+    // Codes of lobbies that were removed but are still in the database.
+    private final Set<String> deletedCodes;
+    // Only used by the worker.
+    private final Map<String, PendingWrite> pendingWrites;
+    private long retryDelayMs;
+    private long nextAttemptMs;
+
+    /**
+     * Constructs a new LobbyStore connected to {@code ApplicationConfig.DATABASE_URI}.
+     */
+    public LobbyStore() {
+        pool = ApplicationConfig.DATABASE_URI == null ? null
+                : new ConnectionPool(ApplicationConfig.DATABASE_URI, ApplicationConfig.DATABASE_POOL_SIZE);
+        worker = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(WORKER_QUEUE_SIZE), runnable -> {
+                    Thread thread = new Thread(runnable, "lobby-store");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        flushQueued = new AtomicBoolean();
+        storedVersions = new ConcurrentHashMap<>();
+        deletedCodes = ConcurrentHashMap.newKeySet();
+        pendingWrites = new HashMap<>();
+    }
+
+    /**
+     * Loads every stored lobby. Blocks until the lobbies have been read.
+     *
+     * @return a map from lobby codes to lobbies. Lobbies that could not be read
+     *         are logged and left out, and their rows are not modified. Empty if
+     *         the database is unavailable.
+     */
+    public ConcurrentHashMap<String, Lobby> load() {
+        ConcurrentHashMap<String, Lobby> lobbies = new ConcurrentHashMap<>();
+        if (pool == null) {
+            logger.info("No database is configured, so lobbies will not be restored or stored.");
+            return lobbies;
+        }
+        try {
+            pool.withConnection(c -> {
+                initializeDatabase(c);
+
+                int failed = 0;
+                try (Statement stmt = c.createStatement();
+                        ResultSet rs = stmt.executeQuery("SELECT code, version, lobby_bytes FROM lobbies;")) {
+                    while (rs.next()) {
+                        String code = rs.getString("code");
+                        try {
+                            Lobby lobby = deserialize(rs.getBytes("lobby_bytes"));
+                            lobbies.put(code, lobby);
+                            storedVersions.put(code, rs.getLong("version"));
+                        } catch (Exception e) {
+                            // Leave the row in place: it may have been written by a
+                            // newer schema (e.g. before a rollback), and a failed
+                            // read is not a reason to lose it.
+                            logger.error("Failed to restore lobby " + code + "; its row was left unchanged.", e);
+                            failed++;
+                        }
+                    }
+                }
+
+                logger.info("Restored " + lobbies.size() + " lobbies (" + failed + " failed).");
+                return null;
+            });
+        } catch (Exception e) {
+            logger.error("Failed to retrieve lobby backups from the database.", e);
+        }
+        return lobbies;
+    }
+
+    /**
+     * Marks a lobby as removed, so that its row is deleted on the next flush.
+     *
+     * @param code the code of the removed lobby.
+     */
+    public void markDeleted(String code) {
+        deletedCodes.add(code);
+    }
+
+    /**
+     * Requests that every changed lobby is written to the database, and that
+     * removed lobbies are deleted. Does not block.
+     *
+     * @param lobbies the current lobbies, by code. Read when the flush runs.
+     * @effects queues a flush on the background worker, unless one is already
+     *          queued. If the last write failed, the flush waits until the
+     *          retry delay has passed. Does nothing if the store is disabled.
+     */
+    public void requestFlush(Map<String, Lobby> lobbies) {
+        if (pool == null) {
+            return;
+        }
+        if (!flushQueued.compareAndSet(false, true)) {
+            return; // coalesced into the queued flush.
+        }
+        try {
+            worker.execute(() -> {
+                flushQueued.set(false);
+                flush(lobbies, false);
+            });
+        } catch (RejectedExecutionException e) {
+            flushQueued.set(false);
+            logger.warn("Could not queue a lobby backup; it will be retried on the next request.");
+        }
+    }
+
+    /**
+     * Writes every changed lobby and stops the background worker.
+     *
+     * @param lobbies   the current lobbies, by code.
+     * @param timeoutMs the maximum time to wait for the write, in
+     *                  milliseconds.
+     * @effects waits for any queued flush, then makes a final attempt to write
+     *          the lobbies (ignoring any retry delay) and closes the
+     *          connection pool. Returns after at most {@code timeoutMs}, even if
+     *          the database has not responded.
+     */
+    public void close(Map<String, Lobby> lobbies, long timeoutMs) {
+        if (pool == null) {
+            worker.shutdown();
+            return;
+        }
+        try {
+            worker.execute(() -> flush(lobbies, true));
+        } catch (RejectedExecutionException e) {
+            logger.warn("Could not queue the final lobby backup.");
+        }
+        worker.shutdown();
+        try {
+            if (!worker.awaitTermination(timeoutMs, TimeUnit.MILLISECONDS)) {
+                logger.warn("Timed out after " + timeoutMs + " ms waiting for the final lobby backup.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        pool.close();
+    }
+
+    /**
+     * Serializes the changed lobbies and writes them. Only run by the worker.
+     *
+     * @param force if true, writes even if the retry delay has not passed.
+     */
+    private void flush(Map<String, Lobby> lobbies, boolean force) {
+        collectChanges(lobbies);
+        Set<String> deleted = new HashSet<>(deletedCodes);
+        deleted.removeAll(lobbies.keySet());
+        if (pendingWrites.isEmpty() && deleted.isEmpty()) {
+            return;
+        }
+        if (!force && System.currentTimeMillis() < nextAttemptMs) {
+            return; // a retry is already scheduled.
+        }
+
+        try {
+            write(deleted);
+        } catch (Exception e) {
+            retryDelayMs = Math.min(Math.max(retryDelayMs * 2, MIN_RETRY_DELAY_MS), MAX_RETRY_DELAY_MS);
+            nextAttemptMs = System.currentTimeMillis() + retryDelayMs;
+            logger.error("Failed to store the Lobby data in the database. Retrying in " + retryDelayMs + " ms.", e);
+            if (!force) {
+                LobbyScheduler.schedule(() -> requestFlush(lobbies), retryDelayMs);
+            }
+            return;
+        }
+        retryDelayMs = 0;
+        nextAttemptMs = 0;
+    }
+
+    /**
+     * Serializes every lobby that changed since it was last stored or queued.
+     *
+     * @effects adds a PendingWrite for each changed lobby, replacing any older
+     *          pending snapshot of the same lobby.
+     */
+    private void collectChanges(Map<String, Lobby> lobbies) {
+        for (Map.Entry<String, Lobby> entry : lobbies.entrySet()) {
+            String code = entry.getKey();
+            Lobby lobby = entry.getValue();
+            PendingWrite pending = pendingWrites.get(code);
+            long knownVersion = pending != null ? pending.version() : storedVersions.getOrDefault(code, 0L);
+            if (lobby.getVersion() <= knownVersion) {
+                continue;
+            }
+            try {
+                pendingWrites.put(code, serializeOnLobby(lobby));
+            } catch (Exception e) {
+                logger.error("Failed to serialize lobby " + code + ".", e);
+            }
+        }
+        pendingWrites.keySet().removeIf(code -> !lobbies.containsKey(code));
+    }
+
+    /**
+     * Writes the pending snapshots and deletes the given lobbies in one
+     * transaction.
+     *
+     * @throws SQLException if the database could not be reached or the write
+     *                      failed. Nothing is marked as stored in that case.
+     */
+    private void write(Set<String> deleted) throws SQLException {
+        String timestamp = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss")
+                .format(new Timestamp(System.currentTimeMillis()));
+        Map<String, PendingWrite> written = new HashMap<>(pendingWrites);
+        pool.withConnection(c -> {
+            initializeDatabase(c);
+            c.setAutoCommit(false);
+            try (PreparedStatement upsert = c.prepareStatement(
+                    "INSERT INTO lobbies (code, version, timestamp, lobby_bytes) VALUES (?, ?, ?, ?) "
+                            + "ON CONFLICT (code) DO UPDATE "
+                            + "SET version = excluded.version, "
+                            + "timestamp = excluded.timestamp, "
+                            + "lobby_bytes = excluded.lobby_bytes;");
+                    PreparedStatement delete = c.prepareStatement("DELETE FROM lobbies WHERE code = ?;")) {
+                for (Map.Entry<String, PendingWrite> entry : written.entrySet()) {
+                    int i = 1;
+                    upsert.setString(i++, entry.getKey());
+                    upsert.setLong(i++, entry.getValue().version());
+                    upsert.setString(i++, timestamp);
+                    upsert.setBytes(i++, entry.getValue().bytes());
+                    upsert.addBatch();
+                }
+                for (String code : deleted) {
+                    delete.setString(1, code);
+                    delete.addBatch();
+                }
+                upsert.executeBatch();
+                delete.executeBatch();
+                c.commit();
+            } catch (SQLException e) {
+                c.rollback();
+                throw e;
+            }
+            return null;
+        });
+
+        for (Map.Entry<String, PendingWrite> entry : written.entrySet()) {
+            storedVersions.put(entry.getKey(), entry.getValue().version());
+            pendingWrites.remove(entry.getKey());
+        }
+        for (String code : deleted) {
+            storedVersions.remove(code);
+        }
+        deletedCodes.removeAll(deleted);
+        logger.debug("Stored " + written.size() + " lobbies and deleted " + deleted.size() + " in the database.");
+    }
+
+    /**
+     * Serializes a lobby from a task on its executor, so that it is not changed
+     * while being written.
+     *
+     * @param lobby the lobby to serialize.
+     * @return the serialized lobby and the version that was serialized.
+     */
+    private static PendingWrite serializeOnLobby(Lobby lobby) throws Exception {
+        CompletableFuture<PendingWrite> result = new CompletableFuture<>();
+        lobby.execute(() -> {
+            try {
+                result.complete(new PendingWrite(lobby.getVersion(), serialize(lobby)));
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result.get(SERIALIZE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private static byte[] serialize(Lobby lobby) throws IOException {
+        return LobbyCodec.encode(lobby);
+    }
+
+    /**
+     * Reads a stored lobby.
+     *
+     * @throws IOException if the row is not a snapshot (such as a
+     *                     Java-serialized lobby from an older version of the
+     *                     server), or cannot be decoded.
+     */
+    private static Lobby deserialize(byte[] bytes) throws IOException {
+        return LobbyCodec.decode(bytes);
+    }
+
+    /**
+     * Initializes the database by adding the lobbies table.
+     *
+     * @param c the connection to the database.
+     * @effects the database has a {@code lobbies} table, with one row per
+     *          lobby.
+     */
+    private static void initializeDatabase(Connection c) throws SQLException {
+        try (Statement stmt = c.createStatement()) {
+            stmt.executeUpdate("create table if not exists lobbies " +
+                    "(code TEXT PRIMARY KEY, version BIGINT NOT NULL, timestamp TEXT, lobby_bytes BYTEA NOT NULL);");
+        }
+    }
+}
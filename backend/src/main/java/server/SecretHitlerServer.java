@@ -9,16 +9,21 @@ import io.javalin.websocket.WsContext;
 import io.javalin.websocket.WsMessageContext;
 
 import org.eclipse.jetty.websocket.api.StatusCode;
-import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import server.util.Command;
+import server.util.CommandDecoder;
+import server.util.FanoutMetrics;
 import server.util.Lobby;
-
-import java.io.*;
-import java.net.URI;
-import java.sql.*;
-
-import java.text.SimpleDateFormat;
+import server.util.LobbyExecutors;
+import server.util.LobbyScheduler;
+import server.util.LobbySnapshot;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -39,6 +44,8 @@ public class SecretHitlerServer {
     public static final String PARAM_VETO = "veto";
     public static final String PARAM_CHOICE = "choice"; // the index of the chosen policy.
     public static final String PARAM_ICON = "icon";
+    // The packet protocol version supported by the client (see PROTOCOL_*).
+    public static final String PARAM_PROTOCOL = "protocol";
 
     // Passed to client
     // The type of the packet tells the client how to parse the contents.
@@ -48,6 +55,20 @@ public class SecretHitlerServer {
     public static final String PACKET_LOBBY = "lobby";
     public static final String PACKET_OK = "ok"; // general response packet sent after any successful command.
     public static final String PACKET_PONG = "pong"; // response to pings.
+    public static final String PACKET_DELTA = "delta"; // changes since the last game/lobby packet.
+
+    // Sequence number stamped on every game/lobby packet, and the contents of
+    // delta packets (see DeltaEncoder).
+    public static final String PARAM_SEQUENCE = "seq";
+    public static final String PARAM_DELTA_SET = "set";
+    public static final String PARAM_DELTA_UNSET = "unset";
+
+    // Protocol versions. Clients that do not specify a version are sent every
+    // update as a full snapshot.
+    public static final int PROTOCOL_LEGACY = 1;
+    public static final int PROTOCOL_DELTA = 2;
+    // Packets are sent as binary frames containing UTF-8 JSON.
+    public static final int PROTOCOL_BINARY = 3;
 
     public static final String PARAM_INVESTIGATION = "investigation";
     public static final String FASCIST = "FASCIST";
@@ -77,6 +98,7 @@ public class SecretHitlerServer {
     private static final int CODE_LENGTH = 4;
 
     private static final float UPDATE_FREQUENCY_SECONDS = 60;
+    private static final String JOURNAL_EXTENSION = ".log";
     // </editor-fold>
 
     ///// Private Fields
@@ -87,7 +109,8 @@ public class SecretHitlerServer {
 
     private static final Logger logger = LoggerFactory.getLogger(SecretHitlerServer.class);
 
-    transient private static boolean hasLobbyChanged;
+    // Stores each lobby in the database when it changes.
+    private static final LobbyStore lobbyStore = new LobbyStore();
 
     // </editor-fold>
 
@@ -99,12 +122,32 @@ public class SecretHitlerServer {
     private static void printLobbyStatus() {
         synchronized (codeToLobby) {
             logger.info("Lobbies (" + codeToLobby.mappingCount() + ") : " + codeToLobby.keySet());
+            logger.info("Outbound traffic: " + FanoutMetrics.describe());
             for (Map.Entry<String, Lobby> entry : codeToLobby.entrySet()) {
-                logger.debug("Lobby " + entry.getKey() + ": " + entry.getValue().getUserNames());
+                logger.debug("Lobby " + entry.getKey() + ": " + entry.getValue().getSnapshot().getUserNames());
             }
         }
     }
 
+    /**
+     * Gets the protocol version requested by a websocket connection.
+     *
+     * @param ctx the context of the websocket connection.
+     * @return the value of the {@code protocol} query parameter, or
+     *         {@code PROTOCOL_LEGACY} if it is missing or invalid.
+     */
+    private static int getProtocolVersion(WsConnectContext ctx) {
+        String protocol = ctx.queryParam(PARAM_PROTOCOL);
+        if (protocol != null) {
+            try {
+                return Integer.parseInt(protocol);
+            } catch (NumberFormatException e) {
+                logger.debug("Ignoring invalid protocol version '" + protocol + "'.");
+            }
+        }
+        return PROTOCOL_LEGACY;
+    }
+
     private static int getHerokuAssignedPort() {
         String herokuPort = System.getenv("PORT");
         if (herokuPort != null) {
@@ -114,9 +157,29 @@ public class SecretHitlerServer {
     }
 
     public static void main(String[] args) {
+        start(null, getHerokuAssignedPort());
+    }
+
+    /**
+     * Starts the server.
+     *
+     * @param host the address to listen on, or null to listen on every
+     *             interface.
+     * @param port the port to listen on, or 0 to use any free port.
+     * @return the running Javalin app. {@code port()} gives the port it is
+     *         listening on.
+     * @effects restores any stored lobbies and game journals, then starts
+     *          listening for HTTP requests and websocket connections and
+     *          schedules the periodic cleanup and backup of lobbies. Should
+     *          only be called once per JVM.
+     */
+    public static Javalin start(String host, int port) {
+        LobbyExecutors.start();
+
         // On load, check the connected database to see if there's a stored state from
         // the server.
         loadDatabaseBackup();
+        recoverGameJournals();
         removeInactiveLobbies(); // immediately clean in case of redundant lobbies.
 
         // Only initialize Javalin communication after the database has been queried.
@@ -132,7 +195,12 @@ public class SecretHitlerServer {
                     });
                 }
             });
-        }).start(getHerokuAssignedPort());
+        });
+        if (host == null) {
+            serverApp.start(port);
+        } else {
+            serverApp.start(host, port);
+        }
 
         serverApp.get("/check-login", SecretHitlerServer::checkLogin); // Checks if a login is valid.
         serverApp.get("/new-lobby", SecretHitlerServer::createNewLobby); // Creates and returns the code for a new lobby
@@ -148,29 +216,23 @@ public class SecretHitlerServer {
         Runtime.getRuntime().addShutdownHook(new Thread() {
             public void run() {
                 logger.info("Attempting to back up lobby data.");
-                storeDatabaseBackup();
+                lobbyStore.close(codeToLobby, ApplicationConfig.DATABASE_SHUTDOWN_TIMEOUT_MS);
                 printLobbyStatus();
             }
         });
 
-        // Add timer for periodic updates.
-        int delayMs = 0;
-        int periodMs = (int) (UPDATE_FREQUENCY_SECONDS * 1000.0f);
-        Timer timer = new Timer();
-        timer.schedule(new TimerTask() {
-            @Override
-            public void run() {
-                removeInactiveLobbies();
-                if (!codeToLobby.isEmpty()) {
-                    printLobbyStatus();
-                }
-                // If there are active lobbies, store a backup of the game.
-                if (!codeToLobby.isEmpty() && hasLobbyChanged) {
-                    storeDatabaseBackup();
-                    hasLobbyChanged = false;
-                }
+        // Add task for periodic updates.
+        long delayMs = 0;
+        long periodMs = (long) (UPDATE_FREQUENCY_SECONDS * 1000.0f);
+        LobbyScheduler.scheduleAtFixedRate(() -> {
+            removeInactiveLobbies();
+            if (!codeToLobby.isEmpty()) {
+                printLobbyStatus();
             }
+            // Store a backup of the lobbies that changed.
+            storeDatabaseBackup();
         }, delayMs, periodMs);
+        return serverApp;
     }
 
     /**
@@ -196,7 +258,12 @@ public class SecretHitlerServer {
                     ctx.session.close(StatusCode.NORMAL, "The lobby has timed out.");
                     userToLobby.remove(ctx);
                 }
+                lobby.execute(() -> {
+                    lobby.cancelScheduledTasks();
+                    lobby.closeJournal(true);
+                });
                 removedLobbyCodes.add(entry.getKey());
+                lobbyStore.markDeleted(entry.getKey());
                 removedCount++;
                 itr.remove();
             }
@@ -204,7 +271,6 @@ public class SecretHitlerServer {
         if (removedCount > 0) {
             logger.info(String.format("Removed %d inactive lobbies: %s", removedCount, removedLobbyCodes));
             printLobbyStatus();
-            hasLobbyChanged = true;
         }
     }
 
@@ -212,148 +278,98 @@ public class SecretHitlerServer {
     // <editor-fold desc="Database Handling">
 
     /**
-     * Attempts to get a connection to the PostGres database.
-     * 
-     * @return null if no connection could be made.
-     *         otherwise, returns a {@code java.sql.Connection} object.
+     * Loads lobby data stored in the database (intended to be run on server wake).
+     *
+     * @effects {@code codeToLobby} is set to the lobbies stored in the database,
+     *          if any could be read (see {@code LobbyStore.load()}).
      */
-    private static Connection getDatabaseConnection() {
-        // Get credentials from database or (if debug flag is set) via manual input.
-        Connection c;
-        try {
-            URI databaseUri;
-            String envUri = ApplicationConfig.DATABASE_URI;
-            if (envUri == null) {
-                logger.error("Could not connect to database: No ENV_DATABASE_URL environment variable provided.");
-                return null;
-            }
-            databaseUri = new URI(envUri);
-
-            String username = databaseUri.getUserInfo().split(":")[0];
-            String password = databaseUri.getUserInfo().split(":")[1];
-            String dbUrl = "jdbc:postgresql://" + databaseUri.getHost() + ':' + databaseUri.getPort()
-                    + databaseUri.getPath();
-
-            Class.forName("org.postgresql.Driver");
-            c = DriverManager.getConnection(dbUrl, username, password);
-            logger.info("Successfully connected to database.");
-            return c;
-        } catch (Exception e) {
-            // Print failures no matter what
-            logger.error("Failed to connect to database.", e);
-            return null;
+    private static void loadDatabaseBackup() {
+        ConcurrentHashMap<String, Lobby> storedLobbies = lobbyStore.load();
+        if (!storedLobbies.isEmpty()) {
+            codeToLobby = storedLobbies;
         }
+        printLobbyStatus();
     }
 
     /**
-     * Loads lobby data stored in the database (intended to be run on server wake).
-     * 
-     * @effects {@code codeToLobby} is set to the stored database
+     * Queues a backup of every lobby that changed since the last backup, and
+     * deletes the lobbies that were removed (see {@code LobbyStore.requestFlush()}).
+     * Does not wait for the database.
      */
-    @SuppressWarnings("unchecked")
-    private static void loadDatabaseBackup() {
-        // Get connection to the Postgres Database and select the backup data.
-        Connection c = getDatabaseConnection();
-        if (c == null) {
-            return;
-        }
-        Statement stmt = null;
-
-        try {
-            // Initialize table, just in case
-            initializeDatabase(c);
-
-            stmt = c.createStatement();
-            ResultSet rs = stmt.executeQuery("select * from backup;");
-            rs.next(); // Will fail if there are no entries in the table, which is fine.
-
-            String timestamp = rs.getString("timestamp");
-            int numAttempts = rs.getInt("attempts");
-            byte[] lobbyBytes = rs.getBytes("lobby_bytes");
-            logger.info("Loaded backup from " + timestamp + ".");
-            rs.close();
-            stmt.close();
-
-            // Update the number of attempts that have been made, for debugging.
-            stmt = c.createStatement();
-            stmt.executeUpdate("UPDATE backup SET attempts = '" + (numAttempts + 1) + "';");
-            stmt.close();
-            c.close();
-
-            // Deserialize the data and convert to lobbies.
-            // (Use try-with-resources to ensure streams are closed even if an error
-            // occurs.)
-            try (
-                    ByteArrayInputStream lobbyByteStream = new ByteArrayInputStream(lobbyBytes);
-                    ObjectInputStream objectStream = new ObjectInputStream(lobbyByteStream)) {
-                codeToLobby = (ConcurrentHashMap<String, Lobby>) objectStream.readObject();
-                objectStream.close();
-                logger.debug("Successfully parsed lobby data from the database.");
-            } catch (Exception e) {
-                logger.error("Failed to parse lobby data from stored backup.", e);
-            }
+    private static void storeDatabaseBackup() {
+        lobbyStore.requestFlush(codeToLobby);
+    }
 
-        } catch (Exception e) {
-            logger.error("Failed to retrieve lobby backups from the database.", e);
+    /**
+     * Gets the path of the game journal for a lobby.
+     *
+     * @param code the code of the lobby.
+     * @return the path of the journal file, or null if journals are disabled
+     *         ({@code ApplicationConfig.GAME_LOG_DIR} is not set).
+     */
+    private static Path getJournalFile(String code) {
+        if (ApplicationConfig.GAME_LOG_DIR == null) {
+            return null;
         }
-        printLobbyStatus();
+        return Paths.get(ApplicationConfig.GAME_LOG_DIR, code + JOURNAL_EXTENSION);
     }
 
-    private static void storeDatabaseBackup() {
-        ByteArrayOutputStream byteBuilder = new ByteArrayOutputStream();
-        try {
-            // Serialize the Lobby data.
-            ObjectOutputStream objectOutputStream = new ObjectOutputStream(byteBuilder);
-            objectOutputStream.writeObject(codeToLobby);
-            objectOutputStream.flush();
-            objectOutputStream.close();
-            byteBuilder.flush();
-            // No need to close bytebuilder (close has no effect)
-        } catch (Exception e) {
-            logger.error("Failed to serialize the Lobby data.", e);
-            return;
+    /**
+     * Starts recording a lobby's game events to its journal, if journals are
+     * enabled.
+     */
+    private static void openJournal(String code, Lobby lobby) {
+        Path file = getJournalFile(code);
+        if (file != null) {
+            lobby.execute(() -> lobby.openJournal(file));
         }
-        byte[] lobbyData = byteBuilder.toByteArray();
-        SimpleDateFormat formatter = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-        String timestamp = formatter.format(new Timestamp(System.currentTimeMillis()));
-        int attempts = 0;
+    }
 
-        Connection c = getDatabaseConnection();
-        if (c == null) {
+    /**
+     * Recovers lobbies from the game journals left by the previous run of the
+     * server (intended to be run on server wake, after the database backup is
+     * loaded).
+     *
+     * @effects each lobby in {@code codeToLobby} is replaced by the lobby
+     *          recovered from its journal, if the journal is newer. Journals
+     *          that cannot be read are deleted, and a new journal is started for
+     *          every lobby.
+     */
+    private static void recoverGameJournals() {
+        if (ApplicationConfig.GAME_LOG_DIR == null) {
             return;
         }
+        Path directory = Paths.get(ApplicationConfig.GAME_LOG_DIR);
+        List<Path> staleJournals = new ArrayList<>();
         try {
-            String queryStr = "INSERT INTO BACKUP (id, timestamp, attempts, lobby_bytes)" +
-                    "VALUES (0, ?, ?, ?) " +
-                    "ON CONFLICT (id) DO UPDATE " +
-                    "SET timestamp = excluded.timestamp, " +
-                    "attempts = excluded.attempts, " +
-                    "lobby_bytes = excluded.lobby_bytes; ";
-            PreparedStatement pstmt = c.prepareStatement(queryStr);
-            int i = 1;
-            pstmt.setString(i++, timestamp);
-            pstmt.setInt(i++, attempts);
-            pstmt.setBytes(i++, lobbyData);
-            pstmt.executeUpdate();
-            c.close();
-        } catch (Exception e) {
-            logger.error("Failed to store the Lobby data in the database.", e);
-            return;
+            Files.createDirectories(directory);
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + JOURNAL_EXTENSION)) {
+                for (Path file : files) {
+                    String fileName = file.getFileName().toString();
+                    String code = fileName.substring(0, fileName.length() - JOURNAL_EXTENSION.length());
+                    try {
+                        Lobby recovered = Lobby.recoverFromJournal(file);
+                        Lobby stored = codeToLobby.get(code);
+                        if (stored == null || recovered.getVersion() > stored.getVersion()) {
+                            codeToLobby.put(code, recovered);
+                            logger.info("Recovered lobby " + code + " from its game journal.");
+                        }
+                    } catch (IOException e) {
+                        logger.error("Failed to recover lobby " + code + " from " + file + ".", e);
+                        staleJournals.add(file);
+                    }
+                }
+            }
+            for (Path file : staleJournals) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            logger.error("Failed to read game journals from " + directory + ".", e);
         }
-        logger.debug("Successfully saved Lobby state to the database.");
-    }
 
-    /**
-     * Initializes the database by adding the BACKUP table.
-     * 
-     * @param c the connection to the database.
-     * @effects the Postgres SQL datbase has a new
-     */
-    private static void initializeDatabase(Connection c) throws SQLException {
-        Statement stmt = c.createStatement();
-        stmt.executeUpdate("create table if not exists backup " +
-                "(id INT UNIQUE, timestamp TEXT, attempts INT, lobby_bytes BYTEA);");
-        stmt.close();
+        for (Map.Entry<String, Lobby> entry : codeToLobby.entrySet()) {
+            openJournal(entry.getKey(), entry.getValue());
+        }
     }
 
     // </editor-fold>
@@ -411,7 +427,9 @@ public class SecretHitlerServer {
             ctx.status(404);
             ctx.result("No such lobby found.");
         } else { // the lobby exists
-            Lobby lobby = codeToLobby.get(lobbyCode);
+            // Read from the published snapshot, so login checks never wait on
+            // the lobby.
+            LobbySnapshot lobby = codeToLobby.get(lobbyCode).getSnapshot();
 
             if (lobby.isFull()) {
                 ctx.status(489);
@@ -441,7 +459,6 @@ public class SecretHitlerServer {
      */
     public static void createNewLobby(Context ctx) {
         removeInactiveLobbies();
-        hasLobbyChanged = true;
 
         String newCode = generateCode();
         while (codeToLobby.containsKey(newCode)) {
@@ -450,6 +467,7 @@ public class SecretHitlerServer {
 
         Lobby lobby = new Lobby();
         codeToLobby.put(newCode, lobby); // add a new lobby with the given code.
+        openJournal(newCode, lobby);
 
         ctx.status(200);
         ctx.result(newCode);
@@ -486,6 +504,8 @@ public class SecretHitlerServer {
      *           {@code lobby}: a String representing the lobby code.
      *           {@code name}: a String username. Cannot already exist in the given
      *           lobby.
+     *           {@code protocol}: (optional) the packet protocol version the
+     *           client supports.
      * @effects Closes the websocket session if:
      *          <p>
      *          - 400 if the {@code lobby} or {@code name} parameters are missing.
@@ -527,24 +547,36 @@ public class SecretHitlerServer {
         }
 
         Lobby lobby = codeToLobby.get(code);
-        if (lobby.hasUserWithName(name)) { // duplicate names not allowed
-            logger.debug("FAILED (Repeat username)");
-            ctx.session.close(StatusCode.PROTOCOL, "A user with the name " + name + " is already in the lobby.");
-            return;
-        } else if (lobby.isFull()) {
-            logger.debug("FAILED (Lobby is full)");
-            ctx.session.close(StatusCode.PROTOCOL, "The lobby " + code + " is currently full.");
-            return;
-        } else if (lobby.isInGame() && !lobby.canAddUserDuringGame(name)) {
-            logger.debug("FAILED (Lobby in game)");
-            ctx.session.close(StatusCode.PROTOCOL, "The lobby " + code + " is currently in a game..");
-            return;
+        // Track the connection now, so that a close event received before the
+        // connection is processed still reaches the lobby.
+        userToLobby.put(ctx, lobby);
+        int protocolVersion = getProtocolVersion(ctx);
+        boolean accepted = lobby.offer(() -> {
+            if (lobby.hasUserWithName(name)) { // duplicate names not allowed
+                logger.debug("FAILED (Repeat username)");
+                userToLobby.remove(ctx);
+                ctx.session.close(StatusCode.PROTOCOL, "A user with the name " + name + " is already in the lobby.");
+                return;
+            } else if (lobby.isFull()) {
+                logger.debug("FAILED (Lobby is full)");
+                userToLobby.remove(ctx);
+                ctx.session.close(StatusCode.PROTOCOL, "The lobby " + code + " is currently full.");
+                return;
+            } else if (lobby.isInGame() && !lobby.canAddUserDuringGame(name)) {
+                logger.debug("FAILED (Lobby in game)");
+                userToLobby.remove(ctx);
+                ctx.session.close(StatusCode.PROTOCOL, "The lobby " + code + " is currently in a game..");
+                return;
+            }
+            logger.debug("SUCCESS");
+            lobby.addUser(ctx, name, protocolVersion);
+            lobby.requestBroadcast();
+        });
+        if (!accepted) {
+            logger.warn("FAILED (Lobby '{}' is overloaded)", code);
+            userToLobby.remove(ctx);
+            ctx.session.close(StatusCode.TRY_AGAIN_LATER, "The lobby " + code + " is busy.");
         }
-        logger.debug("SUCCESS");
-        lobby.addUser(ctx, name);
-        userToLobby.put(ctx, lobby); // keep track of which lobby this connection is in.
-        lobby.updateAllUsers();
-        hasLobbyChanged = true;
     }
 
     /**
@@ -568,187 +600,151 @@ public class SecretHitlerServer {
      *          with the new state.
      */
     private static void onWebSocketMessage(WsMessageContext ctx) {
-        // Parse message to JSON object.
-        JSONObject message = new JSONObject(ctx.message());
-
-        if (message.getString(PARAM_LOBBY) == null
-                || message.getString(PARAM_NAME) == null
-                || message.getString(PARAM_COMMAND) == null) {
-            logger.warn("Message request failed: missing a parameter.");
-            ctx.session.close(StatusCode.PROTOCOL, "A required parameter is missing.");
+        // Decode the message into a typed command.
+        CommandDecoder.CommandMessage message;
+        try {
+            message = CommandDecoder.decode(ctx.message());
+        } catch (IllegalArgumentException e) {
+            logger.warn("Message request failed: {}", e.getMessage());
+            ctx.session.close(StatusCode.PROTOCOL, e.getMessage());
             return;
         }
 
-        String name = message.getString(PARAM_NAME);
-        String lobbyCode = message.getString(PARAM_LOBBY);
-
-        String logMessage = "Received a message from user '" + name + "' in lobby '" + lobbyCode + "' ("
-                + ctx.message() + "): ";
+        String name = message.name();
+        String lobbyCode = message.lobby();
+        Command command = message.command();
 
         if (!codeToLobby.containsKey(lobbyCode)) {
-            logger.debug(logMessage + " FAILED (Lobby requested does not exist)");
+            if (logger.isDebugEnabled()) {
+                logger.debug(getLogMessage(ctx, name, lobbyCode) + " FAILED (Lobby requested does not exist)");
+            }
             ctx.session.close(StatusCode.PROTOCOL, "The lobby does not exist.");
             return;
         }
 
         Lobby lobby = codeToLobby.get(lobbyCode);
+        if (!lobby.offer(() -> handleCommand(ctx, lobby, lobbyCode, name, command))) {
+            logger.warn("Dropped a message from user '{}': lobby '{}' is overloaded.", name, lobbyCode);
+            ctx.session.close(StatusCode.TRY_AGAIN_LATER, "The lobby " + lobbyCode + " is busy.");
+        }
+    }
 
-        synchronized (lobby) {
-            if (!lobby.hasUser(ctx, name)) {
-                logger.debug(logMessage + " FAILED (Lobby does not have the user)");
-                ctx.session.close(StatusCode.PROTOCOL, "The user is not in the lobby " + lobbyCode + ".");
-                return;
+    /**
+     * Executes a command sent by a user. Runs on the lobby's executor.
+     *
+     * @param ctx       the WsMessageContext of the websocket.
+     * @param lobby     the Lobby that the user is in.
+     * @param lobbyCode the code of {@code lobby}.
+     * @param name      the name of the user.
+     * @param command   the decoded command.
+     * @modifies this
+     * @effects see {@code onWebSocketMessage()}.
+     */
+    private static void handleCommand(WsMessageContext ctx, Lobby lobby, String lobbyCode, String name,
+            Command command) {
+        if (!lobby.hasUser(ctx, name)) {
+            if (logger.isDebugEnabled()) {
+                logger.debug(getLogMessage(ctx, name, lobbyCode) + " FAILED (Lobby does not have the user)");
             }
+            ctx.session.close(StatusCode.PROTOCOL, "The user is not in the lobby " + lobbyCode + ".");
+            return;
+        }
 
-            lobby.resetTimeout();
+        lobby.resetTimeout();
 
-            boolean updateUsers = true; // this flag can be disabled by certain commands.
-            boolean sendOKMessage = true;
-            try {
-                switch (message.getString(PARAM_COMMAND)) {
-                    case COMMAND_PING:
-                        sendOKMessage = false;
-                        updateUsers = false;
-                        JSONObject msg = new JSONObject();
-                        msg.put(PARAM_PACKET_TYPE, PACKET_PONG);
-                        ctx.send(msg.toString());
-                        break;
-
-                    case COMMAND_START_GAME: // Starts the game.
-                        lobby.startNewGame();
-                        break;
-
-                    case COMMAND_GET_STATE: // Requests the updated state of the game.
-                        lobby.updateUser(ctx, name);
-                        break;
-
-                    case COMMAND_NOMINATE_CHANCELLOR: // params: PARAM_TARGET (String)
-                        verifyIsPresident(name, lobby);
-                        lobby.game().nominateChancellor(message.getString(PARAM_TARGET));
-                        break;
-
-                    case COMMAND_REGISTER_VOTE: // params: PARAM_VOTE (boolean)
-                        boolean vote = message.getBoolean(PARAM_VOTE);
-                        lobby.game().registerVote(name, vote);
-                        break;
-
-                    case COMMAND_REGISTER_PRESIDENT_CHOICE: // params: PARAM_CHOICE (int)
-                        verifyIsPresident(name, lobby);
-                        int discard = message.getInt(PARAM_CHOICE);
-                        lobby.game().presidentDiscardPolicy(discard);
-                        break;
-
-                    case COMMAND_REGISTER_CHANCELLOR_CHOICE: // params: PARAM_CHOICE (int)
-                        verifyIsChancellor(name, lobby);
-                        int enact = message.getInt(PARAM_CHOICE);
-                        lobby.game().chancellorEnactPolicy(enact);
-                        break;
-
-                    case COMMAND_REGISTER_CHANCELLOR_VETO:
-                        verifyIsChancellor(name, lobby);
-                        lobby.game().chancellorVeto();
-                        break;
-
-                    case COMMAND_REGISTER_PRESIDENT_VETO: // params: PARAM_VETO (boolean)
-                        verifyIsPresident(name, lobby);
-                        boolean veto = message.getBoolean(PARAM_VETO);
-                        lobby.game().presidentialVeto(veto);
-                        break;
-
-                    case COMMAND_REGISTER_EXECUTION: // params: PARAM_TARGET (String)
-                        verifyIsPresident(name, lobby);
-                        lobby.game().executePlayer(message.getString(PARAM_TARGET));
-                        break;
-
-                    case COMMAND_REGISTER_SPECIAL_ELECTION: // params: PARAM_TARGET (String)
-                        verifyIsPresident(name, lobby);
-                        lobby.game().electNextPresident(message.getString(PARAM_TARGET));
-                        break;
-
-                    case COMMAND_GET_INVESTIGATION: // params: PARAM_TARGET (String)
-                        verifyIsPresident(name, lobby);
-                        Identity id = lobby.game().investigatePlayer(message.getString(PARAM_TARGET));
-                        // Construct and send a JSONObject.
-                        JSONObject obj = new JSONObject();
-                        obj.put(PARAM_PACKET_TYPE, PACKET_INVESTIGATION);
-                        if (id == Identity.FASCIST) {
-                            obj.put(PARAM_INVESTIGATION, FASCIST);
-                        } else {
-                            obj.put(PARAM_INVESTIGATION, LIBERAL);
-                        }
-                        obj.put(PARAM_TARGET, message.getString(PARAM_TARGET));
-                        ctx.send(obj.toString());
-                        break;
-
-                    case COMMAND_REGISTER_PEEK:
-                        verifyIsPresident(name, lobby);
-                        lobby.game().endPeek();
-                        break;
-
-                    case COMMAND_END_TERM:
-                        verifyIsPresident(name, lobby);
-                        lobby.game().endPresidentialTerm();
-                        break;
-
-                    case COMMAND_SELECT_ICON:
-                        String iconId = message.getString(PARAM_ICON);
-                        lobby.trySetUserIcon(iconId, ctx);
-                        break;
-
-                    default: // This is an invalid command.
-                        throw new RuntimeException("unrecognized command " + message.get(PARAM_COMMAND));
-                } // End switch
-
-                if (sendOKMessage) {
-                    logger.debug(logMessage + " SUCCESS");
-                    JSONObject msg = new JSONObject();
-                    msg.put(PARAM_PACKET_TYPE, PACKET_OK);
-                    ctx.send(msg.toString());
-                }
+        boolean updateUsers = true; // this flag can be disabled by certain commands.
+        boolean sendOKMessage = true;
+        try {
+            switch (command.type()) {
+                case PING:
+                    sendOKMessage = false;
+                    updateUsers = false;
+                    sendPacket(ctx, lobby, PACKET_PONG);
+                    break;
+
+                case START_GAME: // Starts the game.
+                    lobby.startNewGame();
+                    break;
+
+                case GET_STATE: // Requests the full state of the game (used to resync).
+                    lobby.resyncUser(ctx, name);
+                    break;
+
+                case NOMINATE_CHANCELLOR:
+                case REGISTER_VOTE:
+                case REGISTER_PRESIDENT_CHOICE:
+                case REGISTER_CHANCELLOR_CHOICE:
+                case REGISTER_CHANCELLOR_VETO:
+                case REGISTER_PRESIDENT_VETO:
+                case REGISTER_EXECUTION:
+                case REGISTER_SPECIAL_ELECTION:
+                case REGISTER_PEEK:
+                case END_TERM:
+                    lobby.applyCommand(name, command);
+                    break;
+
+                case GET_INVESTIGATION:
+                    String target = ((Command.GetInvestigation) command).target();
+                    Identity id = lobby.applyCommand(name, command);
+                    lobby.sendPacket(ctx, generator -> {
+                        generator.writeStartObject();
+                        generator.writeStringField(PARAM_PACKET_TYPE, PACKET_INVESTIGATION);
+                        generator.writeStringField(PARAM_INVESTIGATION, id == Identity.FASCIST ? FASCIST : LIBERAL);
+                        generator.writeStringField(PARAM_TARGET, target);
+                        generator.writeEndObject();
+                    });
+                    break;
 
-            } catch (NullPointerException e) {
-                // Show error messages by default, since they indicate API access
-                // issues.
-                logger.error(logMessage + " FAILED", e);
-                ctx.session.close(StatusCode.PROTOCOL, "NullPointerException:" + e.toString());
-            } catch (RuntimeException e) {
-                logger.error(logMessage + " FAILED", e);
-                ctx.session.close(StatusCode.PROTOCOL, "RuntimeException:" + e.toString());
-            }
-            if (updateUsers) {
-                lobby.updateAllUsers();
+                case SELECT_ICON:
+                    lobby.trySetUserIcon(((Command.SelectIcon) command).icon(), ctx);
+                    break;
+
+                default: // This is an invalid command.
+                    throw new RuntimeException("unrecognized command " + command.type().getCommandName());
+            } // End switch
+
+            if (sendOKMessage) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug(getLogMessage(ctx, name, lobbyCode) + " SUCCESS");
+                }
+                sendPacket(ctx, lobby, PACKET_OK);
             }
+
+        } catch (NullPointerException e) {
+            // Show error messages by default, since they indicate API access
+            // issues.
+            logger.error(getLogMessage(ctx, name, lobbyCode) + " FAILED", e);
+            ctx.session.close(StatusCode.PROTOCOL, "NullPointerException:" + e.toString());
+        } catch (RuntimeException e) {
+            logger.error(getLogMessage(ctx, name, lobbyCode) + " FAILED", e);
+            ctx.session.close(StatusCode.PROTOCOL, "RuntimeException:" + e.toString());
+        }
+        if (updateUsers) {
+            lobby.requestBroadcast();
         }
-        hasLobbyChanged = true;
     }
 
-    // TODO: This is bad. This is bad code practice. Exceptions should not be
-    // used for control flow.
-
     /**
-     * Verifies that the user is the president.
-     * 
-     * @param name  String name of the user.
-     * @param lobby the Lobby that the game is in.
-     * @throws RuntimeException if the user is not the president.
+     * Builds the prefix used when logging the result of a websocket message.
+     * Only called when the message will actually be logged.
      */
-    private static void verifyIsPresident(String name, Lobby lobby) {
-        if (!lobby.game().getCurrentPresident().equals(name)) {
-            throw new RuntimeException("The player '" + name + "' is not currently president.");
-        }
+    private static String getLogMessage(WsMessageContext ctx, String name, String lobbyCode) {
+        return "Received a message from user '" + name + "' in lobby '" + lobbyCode + "' (" + ctx.message() + "): ";
     }
 
     /**
-     * Verifies that the user is the chancellor.
-     * 
-     * @param name  String name of the user.
-     * @param lobby the Lobby that the game is in.
-     * @throws RuntimeException if the user is not the chancellor.
+     * Queues a packet that only has a type to be sent to a user.
+     *
+     * @param ctx        the WsContext of the user.
+     * @param lobby      the Lobby that the user is in.
+     * @param packetType the type of the packet (ex: {@code PACKET_OK}).
      */
-    private static void verifyIsChancellor(String name, Lobby lobby) {
-        if (!lobby.game().getCurrentChancellor().equals(name)) {
-            throw new RuntimeException("The player '" + name + "' is not currently chancellor.");
-        }
+    private static void sendPacket(WsContext ctx, Lobby lobby, String packetType) {
+        lobby.sendPacket(ctx, generator -> {
+            generator.writeStartObject();
+            generator.writeStringField(PARAM_PACKET_TYPE, packetType);
+            generator.writeEndObject();
+        });
     }
 
     /**
@@ -759,15 +755,15 @@ public class SecretHitlerServer {
      * @effects Removes the user from any connected lobbies.
      */
     private static void onWebSocketClose(WsCloseContext ctx) {
-        if (userToLobby.containsKey(ctx)) {
-            Lobby lobby = userToLobby.get(ctx);
-            synchronized (lobby) {
+        Lobby lobby = userToLobby.get(ctx);
+        if (lobby != null) {
+            lobby.execute(() -> {
                 if (lobby.hasUser(ctx)) {
                     lobby.removeUser(ctx);
-                    lobby.updateAllUsers();
+                    lobby.requestBroadcast();
                 }
-            }
-            userToLobby.remove(ctx);
+                userToLobby.remove(ctx);
+            });
         }
     }
 
@@ -0,0 +1,298 @@
+package server.util;
+
+import game.CpuPlayer;
+import game.GameEvent;
+import game.GameState;
+import game.SecretHitlerGame;
+import game.datastructures.Player;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chooses and applies the actions of a lobby's CPU players, one turn at a
+ * time.
+ *
+ * Each turn takes three steps:
+ * 1. On the lobby's executor, the game and the CpuPlayers are forked.
+ * 2. On the shared bot executor ({@code LobbyExecutors.getBotExecutor()}), the
+ * forked CpuPlayers update and act on the forked game. Their moves are
+ * recorded as Commands. The lobby keeps handling commands meanwhile.
+ * 3. After the lobby's delay, back on the lobby's executor, the Commands are
+ * applied with {@code Lobby.applyCommand()}, just like commands from users,
+ * and the forked CpuPlayers replace the lobby's. A single broadcast is
+ * requested for all of them. If the game changed since step 1, the turn is
+ * discarded and a new one is started instead. If no CPU player moved, the
+ * lobby keeps its CpuPlayers.
+ *
+ * If the CPU players fail to choose their moves, the turn is discarded and
+ * retried after a delay that doubles with each failure in a row, up to
+ * {@code MAX_RETRY_DELAY_MS}.
+ *
+ * Outside of a vote, a turn has at most one move. During a vote, every CPU
+ * player that has not voted yet votes in the same turn.
+ *
+ * Methods must be called from the lobby's executor, except where noted.
+ */
+class BotScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(BotScheduler.class);
+
+    /** Delay setting that waits only if the game has human players. */
+    static final long AUTOMATIC_DELAY = -1;
+
+    // Delays before retrying a failed turn.
+    static final long RETRY_DELAY_MS = 100;
+    static final long MAX_RETRY_DELAY_MS = 10000;
+
+    private final Lobby lobby;
+    private boolean turnInProgress;
+    // The number of turns in a row that have failed.
+    private int failures;
+    private volatile long delayMs = AUTOMATIC_DELAY;
+    private volatile boolean cancelled;
+    // The delayed end of the current turn, if it is waiting out the delay.
+    private volatile ScheduledFuture<?> pendingTask;
+
+    /**
+     * A move made by a CPU player during a turn.
+     *
+     * @param name    the name of the CPU player.
+     * @param command the move, as the command a user would have sent.
+     */
+    record Move(String name, Command command) {
+    }
+
+    /**
+     * Constructs a BotScheduler.
+     *
+     * @param lobby the lobby whose CPU players are scheduled.
+     */
+    BotScheduler(Lobby lobby) {
+        this.lobby = lobby;
+    }
+
+    /**
+     * Sets the time between the start of a turn and its moves being applied.
+     * Safe to call from any thread.
+     *
+     * @param delayMs the delay in milliseconds, or {@code AUTOMATIC_DELAY} to
+     *                wait {@code Lobby.CPU_ACTION_DELAY_IN_SEC} if the game has
+     *                human players and not at all otherwise.
+     * @effects applies to turns started after this call.
+     */
+    void setDelay(long delayMs) {
+        this.delayMs = delayMs;
+    }
+
+    private long getDelayMs() {
+        long delay = delayMs;
+        if (delay >= 0) {
+            return delay;
+        }
+        return lobby.hasHumanPlayers() ? (long) (Lobby.CPU_ACTION_DELAY_IN_SEC * 1000) : 0;
+    }
+
+    /**
+     * Starts a turn for the lobby's CPU players.
+     *
+     * @effects if the lobby is in a game with CPU players and no turn is in
+     *          progress, starts a turn. Otherwise does nothing: a turn in
+     *          progress is started again when it finishes if the game has
+     *          changed.
+     */
+    void requestTurn() {
+        if (turnInProgress || cancelled || !lobby.isInGame() || lobby.getCpuPlayers().isEmpty()) {
+            return;
+        }
+        SecretHitlerGame game = lobby.game();
+        if (game.hasGameFinished()) {
+            return;
+        }
+        SecretHitlerGame fork = game.fork();
+        List<CpuPlayer> cpus = new ArrayList<>();
+        for (CpuPlayer cpu : lobby.getCpuPlayers()) {
+            cpus.add(cpu.fork(fork));
+        }
+        Turn turn = new Turn(game, lobby.getMoveCount(), fork, cpus, getDelayMs());
+        turnInProgress = true;
+        LobbyExecutors.getBotExecutor().execute(() -> play(turn));
+    }
+
+    /**
+     * Cancels the turn in progress, if any. Safe to call from any thread.
+     *
+     * @effects no turn is applied or started after this call.
+     */
+    void cancel() {
+        cancelled = true;
+        LobbyScheduler.cancel(pendingTask);
+        pendingTask = null;
+    }
+
+    /**
+     * Plays a turn on the forked game, then hands it back to the lobby once
+     * its delay has passed. Runs on the bot executor.
+     */
+    private void play(Turn turn) {
+        try {
+            turn.play();
+        } catch (Throwable e) {
+            // Errors are caught too (e.g. a StackOverflowError in a search), so
+            // that the turn is always handed back to the lobby.
+            logger.error("CPU players failed to choose their actions.", e);
+            turn.failed = true;
+        }
+
+        long remainingMs = turn.delayMs - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - turn.startTime);
+        if (turn.failed || turn.moves.isEmpty() || remainingMs <= 0) {
+            lobby.execute(() -> finish(turn));
+        } else {
+            pendingTask = LobbyScheduler.schedule(() -> lobby.execute(() -> finish(turn)), remainingMs);
+            if (cancelled) {
+                LobbyScheduler.cancel(pendingTask);
+            }
+        }
+    }
+
+    /**
+     * Applies a played turn to the lobby, if the game has not changed since
+     * the turn started.
+     */
+    private void finish(Turn turn) {
+        turnInProgress = false;
+        pendingTask = null;
+        if (cancelled) {
+            return;
+        }
+        if (!lobby.isInGame() || lobby.game() != turn.game || lobby.getMoveCount() != turn.moveCount) {
+            // The moves were chosen for an earlier state, so choose again.
+            requestTurn();
+            return;
+        }
+        if (turn.failed) {
+            retryLater();
+            return;
+        }
+        failures = 0;
+        if (turn.moves.isEmpty()) {
+            // Keep the lobby's CpuPlayers. The forks only updated their
+            // beliefs, which is repeated on the next turn.
+            return;
+        }
+
+        List<CpuPlayer> cpus = new ArrayList<>(turn.cpus.size());
+        for (CpuPlayer cpu : turn.cpus) {
+            cpus.add(cpu.fork(turn.game));
+        }
+        lobby.setCpuPlayers(cpus);
+        for (Move move : turn.moves) {
+            try {
+                lobby.applyCommand(move.name(), move.command());
+            } catch (RuntimeException e) {
+                logger.error("Could not apply the move " + move + ".", e);
+                break;
+            }
+        }
+        lobby.requestBroadcast();
+    }
+
+    /**
+     * Requests a new turn after a delay, since the last one failed.
+     */
+    private void retryLater() {
+        long delay = Math.min(MAX_RETRY_DELAY_MS, RETRY_DELAY_MS << Math.min(failures, 20));
+        failures++;
+        logger.warn("Retrying the CPU players' turn in " + delay + " ms (" + failures + " failures in a row).");
+        pendingTask = LobbyScheduler.schedule(() -> lobby.execute(this::requestTurn), delay);
+        if (cancelled) {
+            LobbyScheduler.cancel(pendingTask);
+        }
+    }
+
+    /**
+     * Converts a game event into the command that causes it.
+     *
+     * @param event   an event recorded by a game.
+     * @param players the players of the game, in seat order.
+     * @return a command that makes the same change when applied by the player
+     *         that made the move.
+     */
+    static Command toCommand(GameEvent event, List<Player> players) {
+        String target = event.seat() >= 0 ? players.get(event.seat()).getUsername() : null;
+        switch (event.type()) {
+            case NOMINATE_CHANCELLOR:
+                return new Command.NominateChancellor(target);
+            case REGISTER_VOTE:
+                return new Command.RegisterVote(event.value() == 1);
+            case PRESIDENT_DISCARD_POLICY:
+                return new Command.RegisterPresidentChoice(event.value());
+            case CHANCELLOR_ENACT_POLICY:
+                return new Command.RegisterChancellorChoice(event.value());
+            case CHANCELLOR_VETO:
+                return new Command.RegisterChancellorVeto();
+            case PRESIDENTIAL_VETO:
+                return new Command.RegisterPresidentVeto(event.value() == 1);
+            case END_PEEK:
+                return new Command.RegisterPeek();
+            case INVESTIGATE_PLAYER:
+                return new Command.GetInvestigation(target);
+            case EXECUTE_PLAYER:
+                return new Command.RegisterExecution(target);
+            case ELECT_NEXT_PRESIDENT:
+                return new Command.RegisterSpecialElection(target);
+            case END_PRESIDENTIAL_TERM:
+                return new Command.EndTerm();
+            default:
+                throw new IllegalArgumentException("Unknown event type " + event.type() + ".");
+        }
+    }
+
+    /**
+     * The state of a single turn: the game it was started for, and the forks
+     * that the CPU players play on.
+     */
+    private static class Turn {
+        final SecretHitlerGame game;
+        final long moveCount;
+        final SecretHitlerGame fork;
+        final List<CpuPlayer> cpus;
+        final long delayMs;
+        final long startTime = System.nanoTime();
+        final List<Move> moves = new ArrayList<>();
+        boolean failed;
+
+        Turn(SecretHitlerGame game, long moveCount, SecretHitlerGame fork, List<CpuPlayer> cpus, long delayMs) {
+            this.game = game;
+            this.moveCount = moveCount;
+            this.fork = fork;
+            this.cpus = cpus;
+            this.delayMs = delayMs;
+        }
+
+        /**
+         * Plays a move ({@code CpuPlayer.playMove()}). During a vote, keeps
+         * playing moves until every CPU player has voted or the vote ends.
+         */
+        void play() {
+            List<GameEvent> events = new ArrayList<>();
+            fork.setEventListener(events::add);
+            boolean voting;
+            do {
+                voting = fork.getState() == GameState.CHANCELLOR_VOTING;
+                int firstEvent = events.size();
+                CpuPlayer cpu = CpuPlayer.playMove(fork, cpus);
+                if (cpu == null) {
+                    break;
+                }
+                for (int i = firstEvent; i < events.size(); i++) {
+                    moves.add(new Move(cpu.myName, toCommand(events.get(i), fork.getPlayerList())));
+                }
+            } while (voting && fork.getState() == GameState.CHANCELLOR_VOTING);
+        }
+    }
+}
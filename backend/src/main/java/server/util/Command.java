@@ -0,0 +1,106 @@
+package server.util;
+
+/**
+ * A decoded command sent by a user over a websocket connection.
+ *
+ * Each command is an immutable record holding the parameters it requires. Use
+ * {@code type()} to dispatch on the kind of command, then cast to the matching
+ * record to read its parameters.
+ */
+public sealed interface Command {
+
+    /**
+     * Gets the kind of this command.
+     */
+    CommandType type();
+
+    record Ping() implements Command {
+        public CommandType type() {
+            return CommandType.PING;
+        }
+    }
+
+    record StartGame() implements Command {
+        public CommandType type() {
+            return CommandType.START_GAME;
+        }
+    }
+
+    record GetState() implements Command {
+        public CommandType type() {
+            return CommandType.GET_STATE;
+        }
+    }
+
+    record SelectIcon(String icon) implements Command {
+        public CommandType type() {
+            return CommandType.SELECT_ICON;
+        }
+    }
+
+    record NominateChancellor(String target) implements Command {
+        public CommandType type() {
+            return CommandType.NOMINATE_CHANCELLOR;
+        }
+    }
+
+    record RegisterVote(boolean vote) implements Command {
+        public CommandType type() {
+            return CommandType.REGISTER_VOTE;
+        }
+    }
+
+    record RegisterPresidentChoice(int choice) implements Command {
+        public CommandType type() {
+            return CommandType.REGISTER_PRESIDENT_CHOICE;
+        }
+    }
+
+    record RegisterChancellorChoice(int choice) implements Command {
+        public CommandType type() {
+            return CommandType.REGISTER_CHANCELLOR_CHOICE;
+        }
+    }
+
+    record RegisterChancellorVeto() implements Command {
+        public CommandType type() {
+            return CommandType.REGISTER_CHANCELLOR_VETO;
+        }
+    }
+
+    record RegisterPresidentVeto(boolean veto) implements Command {
+        public CommandType type() {
+            return CommandType.REGISTER_PRESIDENT_VETO;
+        }
+    }
+
+    record RegisterExecution(String target) implements Command {
+        public CommandType type() {
+            return CommandType.REGISTER_EXECUTION;
+        }
+    }
+
+    record RegisterSpecialElection(String target) implements Command {
+        public CommandType type() {
+            return CommandType.REGISTER_SPECIAL_ELECTION;
+        }
+    }
+
+    record GetInvestigation(String target) implements Command {
+        public CommandType type() {
+            return CommandType.GET_INVESTIGATION;
+        }
+    }
+
+    record RegisterPeek() implements Command {
+        public CommandType type() {
+            return CommandType.REGISTER_PEEK;
+        }
+    }
+
+    record EndTerm() implements Command {
+        public CommandType type() {
+            return CommandType.END_TERM;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package server.util;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import server.SecretHitlerServer;
+
+import java.io.IOException;
+
+/**
+ * Decodes websocket messages into typed commands.
+ *
+ * Messages are read with a streaming parser in a single pass, and only the
+ * parameters the server understands are kept. Unknown parameters are skipped
+ * without being parsed into objects.
+ */
+public class CommandDecoder {
+
+    /**
+     * A decoded websocket message.
+     *
+     * @param lobby   the code of the lobby the user is in.
+     * @param name    the name of the user that sent the message.
+     * @param command the command to execute.
+     */
+    public record CommandMessage(String lobby, String name, Command command) {
+    }
+
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    // Commands without parameters are shared, since they are immutable.
+    private static final Command PING = new Command.Ping();
+    private static final Command START_GAME = new Command.StartGame();
+    private static final Command GET_STATE = new Command.GetState();
+    private static final Command REGISTER_CHANCELLOR_VETO = new Command.RegisterChancellorVeto();
+    private static final Command REGISTER_PEEK = new Command.RegisterPeek();
+    private static final Command END_TERM = new Command.EndTerm();
+
+    /**
+     * Decodes a websocket message.
+     *
+     * @param message the JSON text of the message. Must be an object with the
+     *                parameters {@code lobby}, {@code name}, and {@code command},
+     *                as well as any parameters required by the command.
+     * @throws IllegalArgumentException if the message is not valid JSON, if the
+     *                                  command is not recognized, or if a
+     *                                  required parameter is missing or has the
+     *                                  wrong type.
+     * @return the decoded message.
+     */
+    public static CommandMessage decode(String message) {
+        String lobby = null;
+        String name = null;
+        String commandName = null;
+        String target = null;
+        String icon = null;
+        Boolean vote = null;
+        Boolean veto = null;
+        Integer choice = null;
+
+        try (JsonParser parser = FACTORY.createParser(message)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalArgumentException("Message must be a JSON object.");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                switch (field) {
+                    case SecretHitlerServer.PARAM_LOBBY:
+                        lobby = readString(parser, token);
+                        break;
+                    case SecretHitlerServer.PARAM_NAME:
+                        name = readString(parser, token);
+                        break;
+                    case SecretHitlerServer.PARAM_COMMAND:
+                        commandName = readString(parser, token);
+                        break;
+                    case SecretHitlerServer.PARAM_TARGET:
+                        target = readString(parser, token);
+                        break;
+                    case SecretHitlerServer.PARAM_ICON:
+                        icon = readString(parser, token);
+                        break;
+                    case SecretHitlerServer.PARAM_VOTE:
+                        vote = readBoolean(parser, token);
+                        break;
+                    case SecretHitlerServer.PARAM_VETO:
+                        veto = readBoolean(parser, token);
+                        break;
+                    case SecretHitlerServer.PARAM_CHOICE:
+                        choice = readInt(parser, token);
+                        break;
+                    default:
+                        parser.skipChildren();
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Message is not valid JSON.", e);
+        }
+
+        if (lobby == null || name == null || commandName == null) {
+            throw new IllegalArgumentException("A required parameter is missing.");
+        }
+        CommandType type = CommandType.fromName(commandName);
+        if (type == null) {
+            throw new IllegalArgumentException("unrecognized command " + commandName);
+        }
+
+        Command command;
+        switch (type) {
+            case PING:
+                command = PING;
+                break;
+            case START_GAME:
+                command = START_GAME;
+                break;
+            case GET_STATE:
+                command = GET_STATE;
+                break;
+            case SELECT_ICON:
+                command = new Command.SelectIcon(require(icon, SecretHitlerServer.PARAM_ICON));
+                break;
+            case NOMINATE_CHANCELLOR:
+                command = new Command.NominateChancellor(require(target, SecretHitlerServer.PARAM_TARGET));
+                break;
+            case REGISTER_VOTE:
+                command = new Command.RegisterVote(require(vote, SecretHitlerServer.PARAM_VOTE));
+                break;
+            case REGISTER_PRESIDENT_CHOICE:
+                command = new Command.RegisterPresidentChoice(require(choice, SecretHitlerServer.PARAM_CHOICE));
+                break;
+            case REGISTER_CHANCELLOR_CHOICE:
+                command = new Command.RegisterChancellorChoice(require(choice, SecretHitlerServer.PARAM_CHOICE));
+                break;
+            case REGISTER_CHANCELLOR_VETO:
+                command = REGISTER_CHANCELLOR_VETO;
+                break;
+            case REGISTER_PRESIDENT_VETO:
+                command = new Command.RegisterPresidentVeto(require(veto, SecretHitlerServer.PARAM_VETO));
+                break;
+            case REGISTER_EXECUTION:
+                command = new Command.RegisterExecution(require(target, SecretHitlerServer.PARAM_TARGET));
+                break;
+            case REGISTER_SPECIAL_ELECTION:
+                command = new Command.RegisterSpecialElection(require(target, SecretHitlerServer.PARAM_TARGET));
+                break;
+            case GET_INVESTIGATION:
+                command = new Command.GetInvestigation(require(target, SecretHitlerServer.PARAM_TARGET));
+                break;
+            case REGISTER_PEEK:
+                command = REGISTER_PEEK;
+                break;
+            case END_TERM:
+                command = END_TERM;
+                break;
+            default:
+                throw new IllegalArgumentException("unrecognized command " + commandName);
+        }
+        return new CommandMessage(lobby, name, command);
+    }
+
+    private static <T> T require(T value, String param) {
+        if (value == null) {
+            throw new IllegalArgumentException("Missing or invalid parameter '" + param + "'.");
+        }
+        return value;
+    }
+
+    /**
+     * Reads a string value, or returns null if the value is not a string.
+     */
+    private static String readString(JsonParser parser, JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_STRING) {
+            return parser.getText();
+        }
+        parser.skipChildren();
+        return null;
+    }
+
+    /**
+     * Reads a boolean value. The strings "true" and "false" are also accepted.
+     * Returns null if the value is not a boolean.
+     */
+    private static Boolean readBoolean(JsonParser parser, JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_TRUE) {
+            return Boolean.TRUE;
+        } else if (token == JsonToken.VALUE_FALSE) {
+            return Boolean.FALSE;
+        } else if (token == JsonToken.VALUE_STRING) {
+            String text = parser.getText();
+            if (text.equalsIgnoreCase("true")) {
+                return Boolean.TRUE;
+            } else if (text.equalsIgnoreCase("false")) {
+                return Boolean.FALSE;
+            }
+        }
+        parser.skipChildren();
+        return null;
+    }
+
+    /**
+     * Reads an integer value. Strings containing an integer are also accepted.
+     * Returns null if the value is not an integer.
+     */
+    private static Integer readInt(JsonParser parser, JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_NUMBER_INT) {
+            return parser.getIntValue();
+        } else if (token == JsonToken.VALUE_STRING) {
+            try {
+                return Integer.parseInt(parser.getText().trim());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        parser.skipChildren();
+        return null;
+    }
+}
@@ -0,0 +1,58 @@
+package server.util;
+
+import server.SecretHitlerServer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The commands that can be sent by a user over a websocket connection.
+ */
+public enum CommandType {
+    PING(SecretHitlerServer.COMMAND_PING),
+    START_GAME(SecretHitlerServer.COMMAND_START_GAME),
+    GET_STATE(SecretHitlerServer.COMMAND_GET_STATE),
+    SELECT_ICON(SecretHitlerServer.COMMAND_SELECT_ICON),
+    NOMINATE_CHANCELLOR(SecretHitlerServer.COMMAND_NOMINATE_CHANCELLOR),
+    REGISTER_VOTE(SecretHitlerServer.COMMAND_REGISTER_VOTE),
+    REGISTER_PRESIDENT_CHOICE(SecretHitlerServer.COMMAND_REGISTER_PRESIDENT_CHOICE),
+    REGISTER_CHANCELLOR_CHOICE(SecretHitlerServer.COMMAND_REGISTER_CHANCELLOR_CHOICE),
+    REGISTER_CHANCELLOR_VETO(SecretHitlerServer.COMMAND_REGISTER_CHANCELLOR_VETO),
+    REGISTER_PRESIDENT_VETO(SecretHitlerServer.COMMAND_REGISTER_PRESIDENT_VETO),
+    REGISTER_EXECUTION(SecretHitlerServer.COMMAND_REGISTER_EXECUTION),
+    REGISTER_SPECIAL_ELECTION(SecretHitlerServer.COMMAND_REGISTER_SPECIAL_ELECTION),
+    GET_INVESTIGATION(SecretHitlerServer.COMMAND_GET_INVESTIGATION),
+    REGISTER_PEEK(SecretHitlerServer.COMMAND_REGISTER_PEEK),
+    END_TERM(SecretHitlerServer.COMMAND_END_TERM);
+
+    private static final Map<String, CommandType> byName = new HashMap<>();
+
+    static {
+        for (CommandType type : values()) {
+            byName.put(type.commandName, type);
+        }
+    }
+
+    private final String commandName;
+
+    CommandType(String commandName) {
+        this.commandName = commandName;
+    }
+
+    /**
+     * Gets the name of this command, as sent in the {@code command} parameter.
+     */
+    public String getCommandName() {
+        return commandName;
+    }
+
+    /**
+     * Looks up a command by name.
+     *
+     * @param commandName the value of the {@code command} parameter.
+     * @return the CommandType with the given name, or null if there is none.
+     */
+    public static CommandType fromName(String commandName) {
+        return byName.get(commandName);
+    }
+}
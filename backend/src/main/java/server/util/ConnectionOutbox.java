@@ -0,0 +1,227 @@
+package server.util;
+
+import io.javalin.websocket.WsContext;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import server.ApplicationConfig;
+import server.SecretHitlerServer;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * The queue of packets waiting to be sent to a single websocket connection.
+ *
+ * Packets are sent asynchronously, one at a time, so a slow client never
+ * blocks the lobby that is sending to it. Game/lobby state snapshots are only
+ * encoded (by the connection's DeltaEncoder) when they reach the front of the
+ * queue, so each delta is always relative to the packet the client actually
+ * received last.
+ *
+ * If a client falls behind and its queue reaches the high-water mark
+ * ({@code ApplicationConfig.OUTBOX_HIGH_WATER_MARK}), the state snapshots
+ * waiting in the queue are replaced by the newest one, since only the latest
+ * state matters to a client that has fallen behind. Other packets (such as
+ * investigation results) are never dropped.
+ */
+public class ConnectionOutbox {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConnectionOutbox.class);
+
+    private final WsContext ctx;
+    private final int protocolVersion;
+    private final DeltaEncoder encoder;
+
+    // Each entry is either a PacketSnapshot (a state update) or a
+    // PacketWriter.Body (any other packet).
+    private final ArrayDeque<Object> queue;
+    private boolean sending;
+    private boolean closed;
+    // The thread running pump()'s loop while it starts a write, so that a write
+    // completed on the same stack continues the loop instead of recursing.
+    private Thread pumpingThread;
+
+    /**
+     * Constructs a new ConnectionOutbox.
+     *
+     * @param ctx             the websocket connection to send packets to.
+     * @param protocolVersion the packet protocol version supported by the
+     *                        connection.
+     */
+    public ConnectionOutbox(WsContext ctx, int protocolVersion) {
+        this.ctx = ctx;
+        this.protocolVersion = protocolVersion;
+        this.encoder = new DeltaEncoder(protocolVersion >= SecretHitlerServer.PROTOCOL_DELTA);
+        this.queue = new ArrayDeque<>();
+        this.sending = false;
+        this.closed = false;
+    }
+
+    /**
+     * Gets the packet protocol version supported by the connection.
+     */
+    public int getProtocolVersion() {
+        return protocolVersion;
+    }
+
+    /**
+     * Queues a state update to send to the connection.
+     *
+     * @param snapshot the full state to send.
+     * @modifies this
+     * @effects if the queue is at the high-water mark, removes every state
+     *          update already waiting in the queue. Then adds
+     *          {@code snapshot} to the end of the queue and starts sending if
+     *          no packet is in flight.
+     */
+    public void sendState(PacketSnapshot snapshot) {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            if (queue.size() >= ApplicationConfig.OUTBOX_HIGH_WATER_MARK) {
+                int coalesced = 0;
+                Iterator<Object> itr = queue.iterator();
+                while (itr.hasNext()) {
+                    if (itr.next() instanceof PacketSnapshot) {
+                        itr.remove();
+                        coalesced++;
+                    }
+                }
+                FanoutMetrics.onDequeued(coalesced);
+                FanoutMetrics.onCoalesced(coalesced);
+            }
+            queue.add(snapshot);
+            FanoutMetrics.onQueued();
+        }
+        pump();
+    }
+
+    /**
+     * Queues a packet to send to the connection.
+     *
+     * @param body writes the contents of the packet.
+     * @modifies this
+     * @effects adds the packet to the end of the queue and starts sending if no
+     *          packet is in flight.
+     */
+    public void sendPacket(PacketWriter.Body body) {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            queue.add(body);
+            FanoutMetrics.onQueued();
+        }
+        pump();
+    }
+
+    /**
+     * Forces the next state update to be sent in full.
+     *
+     * @modifies this
+     */
+    public void resync() {
+        // Under the same lock that pump() encodes with.
+        synchronized (this) {
+            encoder.reset();
+        }
+    }
+
+    /**
+     * Gets the number of packets waiting to be sent, not counting any packet
+     * currently being written.
+     */
+    synchronized public int getQueuedPacketCount() {
+        return queue.size();
+    }
+
+    /**
+     * Discards all queued packets and stops sending.
+     *
+     * @modifies this
+     */
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            FanoutMetrics.onDequeued(queue.size());
+            queue.clear();
+        }
+    }
+
+    /**
+     * Sends the queued packets, one at a time, until the queue is empty or a
+     * packet is in flight.
+     */
+    private void pump() {
+        while (true) {
+            PacketWriter.Frame frame;
+            synchronized (this) {
+                if (sending || closed || queue.isEmpty()) {
+                    return;
+                }
+                Object next = queue.poll();
+                FanoutMetrics.onDequeued(1);
+                if (next instanceof PacketSnapshot) {
+                    PacketSnapshot snapshot = (PacketSnapshot) next;
+                    frame = PacketWriter.encode(protocolVersion, generator -> encoder.encode(snapshot, generator));
+                } else {
+                    frame = PacketWriter.encode(protocolVersion, (PacketWriter.Body) next);
+                }
+                sending = true;
+                pumpingThread = Thread.currentThread();
+            }
+
+            send(frame);
+
+            synchronized (this) {
+                if (pumpingThread == Thread.currentThread()) {
+                    pumpingThread = null;
+                }
+                if (sending) {
+                    return; // the write's callback continues.
+                }
+            }
+        }
+    }
+
+    private void send(PacketWriter.Frame frame) {
+        int length = frame.getLength();
+        try {
+            frame.sendAsync(ctx, new WriteCallback() {
+                @Override
+                public void writeSuccess() {
+                    frame.release();
+                    FanoutMetrics.onSent(length);
+                    onWriteComplete();
+                }
+
+                @Override
+                public void writeFailed(Throwable cause) {
+                    frame.release();
+                    FanoutMetrics.onSendFailed();
+                    logger.debug("Failed to send a packet to a websocket.", cause);
+                    close();
+                    onWriteComplete();
+                }
+            });
+        } catch (RuntimeException e) {
+            // The session is not open.
+            frame.release();
+            FanoutMetrics.onSendFailed();
+            close();
+            onWriteComplete();
+        }
+    }
+
+    private void onWriteComplete() {
+        synchronized (this) {
+            sending = false;
+            if (pumpingThread == Thread.currentThread()) {
+                return; // completed inline, so pump() sends the next packet.
+            }
+        }
+        pump();
+    }
+}
@@ -0,0 +1,156 @@
+package server.util;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import server.SecretHitlerServer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes the packets sent to a single websocket connection as deltas of the
+ * last packet that connection received.
+ *
+ * Every packet is stamped with a sequence number ({@code seq}). A delta packet
+ * has the following properties:
+ * - {@code type}: always {@code SecretHitlerServer.PACKET_DELTA}.
+ * - {@code seq}: the sequence number of this packet. Deltas can only be applied
+ * on top of the packet with sequence number {@code seq - 1}.
+ * - {@code set}: a map of every top-level field that was added or changed.
+ * - {@code unset}: an array of every top-level field that was removed.
+ *
+ * Clients that detect a gap in sequence numbers request a resync, which causes
+ * the next packet to be sent in full ({@code reset()}).
+ */
+public class DeltaEncoder {
+
+    // The length of a delta packet's fields other than the sequence number and
+    // the contents of "set" and "unset".
+    private static final int DELTA_OVERHEAD = (SecretHitlerServer.PARAM_PACKET_TYPE.length() + 3
+            + SecretHitlerServer.PACKET_DELTA.length() + 3) + (SecretHitlerServer.PARAM_DELTA_SET.length() + 6)
+            + (SecretHitlerServer.PARAM_DELTA_UNSET.length() + 6);
+
+    private final boolean deltasEnabled;
+    private PacketSnapshot lastSent;
+    private long sequence;
+
+    /**
+     * Constructs a new DeltaEncoder.
+     *
+     * @param deltasEnabled whether the connection supports delta packets. If
+     *                      false, every packet is sent in full.
+     */
+    public DeltaEncoder(boolean deltasEnabled) {
+        this.deltasEnabled = deltasEnabled;
+        this.lastSent = null;
+        this.sequence = 0;
+    }
+
+    /**
+     * Forces the next packet to be sent in full.
+     *
+     * @modifies this
+     * @effects clears the last sent snapshot.
+     */
+    synchronized public void reset() {
+        lastSent = null;
+    }
+
+    /**
+     * Gets the sequence number of the last encoded packet.
+     *
+     * @return the sequence number, or 0 if no packets have been encoded yet.
+     */
+    synchronized public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Encodes a snapshot as the next packet for this connection.
+     *
+     * @param snapshot the full packet to send.
+     * @modifies this
+     * @effects advances the sequence number and stores {@code snapshot} as the
+     *          last sent packet.
+     * @return the JSON text of either the full packet or a delta packet,
+     *         whichever is shorter. The full packet is always returned if there
+     *         is no previous packet or if deltas are disabled.
+     */
+    synchronized public String encode(PacketSnapshot snapshot) {
+        return PacketWriter.write(generator -> encode(snapshot, generator));
+    }
+
+    /**
+     * Encodes a snapshot as the next packet for this connection.
+     *
+     * @param snapshot  the full packet to send.
+     * @param generator the generator to write the packet to.
+     * @throws IOException if the generator cannot be written to.
+     * @modifies this, generator
+     * @effects advances the sequence number, stores {@code snapshot} as the
+     *          last sent packet, and writes either the full packet or a delta
+     *          packet to {@code generator} (see {@code encode(snapshot)}).
+     */
+    synchronized public void encode(PacketSnapshot snapshot, JsonGenerator generator) throws IOException {
+        sequence++;
+        String seq = Long.toString(sequence);
+        PacketSnapshot previous = deltasEnabled ? lastSent : null;
+        lastSent = snapshot;
+
+        if (previous != null) {
+            Map<String, String> previousFields = previous.getFields();
+            Map<String, String> currentFields = snapshot.getFields();
+
+            // Estimate the length of the delta without building it. The
+            // sequence number is in both packets, so it is left out.
+            int deltaLength = DELTA_OVERHEAD;
+            List<String> changed = new ArrayList<>();
+            for (Map.Entry<String, String> entry : currentFields.entrySet()) {
+                if (!entry.getValue().equals(previousFields.get(entry.getKey()))) {
+                    changed.add(entry.getKey());
+                    deltaLength += PacketSnapshot.getFieldLength(entry.getKey(), entry.getValue()) + 1;
+                }
+            }
+            List<String> removed = new ArrayList<>();
+            for (String key : previousFields.keySet()) {
+                if (!currentFields.containsKey(key)) {
+                    removed.add(key);
+                    deltaLength += key.length() + 3;
+                }
+            }
+
+            if (deltaLength < snapshot.getLength()) {
+                writeDelta(generator, currentFields, changed, removed, seq);
+                return;
+            }
+        }
+        snapshot.writeTo(generator, SecretHitlerServer.PARAM_SEQUENCE, seq);
+    }
+
+    /**
+     * Writes a delta packet that sets the {@code changed} fields to their
+     * values in {@code currentFields} and removes the {@code removed} fields.
+     */
+    private static void writeDelta(JsonGenerator generator, Map<String, String> currentFields, List<String> changed,
+            List<String> removed, String seq) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField(SecretHitlerServer.PARAM_PACKET_TYPE, SecretHitlerServer.PACKET_DELTA);
+        generator.writeFieldName(SecretHitlerServer.PARAM_SEQUENCE);
+        generator.writeRawValue(seq);
+
+        generator.writeObjectFieldStart(SecretHitlerServer.PARAM_DELTA_SET);
+        for (String key : changed) {
+            generator.writeFieldName(key);
+            generator.writeRawValue(currentFields.get(key));
+        }
+        generator.writeEndObject();
+
+        generator.writeArrayFieldStart(SecretHitlerServer.PARAM_DELTA_UNSET);
+        for (String key : removed) {
+            generator.writeString(key);
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+    }
+}
@@ -0,0 +1,74 @@
+package server.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Server-wide counters for outbound websocket traffic (see ConnectionOutbox).
+ */
+public class FanoutMetrics {
+
+    private static final LongAdder framesSent = new LongAdder();
+    private static final LongAdder bytesSent = new LongAdder();
+    private static final LongAdder sendFailures = new LongAdder();
+    private static final LongAdder snapshotsCoalesced = new LongAdder();
+    private static final AtomicLong queuedPackets = new AtomicLong();
+    private static final AtomicLong maxQueuedPackets = new AtomicLong();
+
+    static void onQueued() {
+        long queued = queuedPackets.incrementAndGet();
+        maxQueuedPackets.accumulateAndGet(queued, Math::max);
+    }
+
+    static void onDequeued(int count) {
+        queuedPackets.addAndGet(-count);
+    }
+
+    static void onSent(int length) {
+        framesSent.increment();
+        bytesSent.add(length);
+    }
+
+    static void onSendFailed() {
+        sendFailures.increment();
+    }
+
+    static void onCoalesced(int count) {
+        snapshotsCoalesced.add(count);
+    }
+
+    public static long getFramesSent() {
+        return framesSent.sum();
+    }
+
+    public static long getBytesSent() {
+        return bytesSent.sum();
+    }
+
+    public static long getSendFailures() {
+        return sendFailures.sum();
+    }
+
+    public static long getSnapshotsCoalesced() {
+        return snapshotsCoalesced.sum();
+    }
+
+    /**
+     * Gets the number of packets waiting in all outboxes.
+     */
+    public static long getQueuedPackets() {
+        return queuedPackets.get();
+    }
+
+    /**
+     * Describes the metrics in a single line, for logging.
+     *
+     * @return a summary of every counter. The maximum queue size is reset, so
+     *         each summary reports the peak since the previous one.
+     */
+    public static String describe() {
+        return "frames sent=" + getFramesSent() + ", bytes sent=" + getBytesSent() + ", send failures="
+                + getSendFailures() + ", snapshots coalesced=" + getSnapshotsCoalesced() + ", queued="
+                + getQueuedPackets() + ", peak queued=" + maxQueuedPackets.getAndSet(getQueuedPackets());
+    }
+}
@@ -0,0 +1,235 @@
+package server.util;
+
+import game.GameEvent;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An append-only log of a lobby's game events, stored in a memory-mapped file
+ * on local disk, so that a game can be recovered after a crash without losing
+ * the moves made since the last database backup.
+ *
+ * The log starts with a checkpoint (a LobbyCodec snapshot of the lobby),
+ * followed by every GameEvent accepted since. Writing a new checkpoint
+ * atomically replaces the file. Events are written to the mapped buffer, so
+ * they survive the process crashing as soon as they are appended; they are
+ * not forced to disk, so they may be lost if the machine itself fails.
+ *
+ * File layout (big-endian):
+ * <pre>
+ *   int   MAGIC
+ *   short FORMAT_VERSION
+ *   int   checkpoint length, followed by the checkpoint bytes
+ *   event records, each EVENT_RECORD_SIZE bytes:
+ *     byte  RECORD_EVENT (written last, so a torn record is ignored)
+ *     long  lobby version after the event
+ *     byte  event type, byte seat, byte value
+ *   zero bytes after the last record
+ * </pre>
+ *
+ * A GameJournal is not thread-safe; it is only used by its lobby's tasks.
+ */
+public class GameJournal implements Closeable {
+
+    // "SHJL"
+    private static final int MAGIC = 0x53484A4C;
+    private static final short FORMAT_VERSION = 1;
+    private static final byte RECORD_EVENT = 1;
+    static final int EVENT_RECORD_SIZE = 1 + Long.BYTES + 3;
+    private static final int HEADER_SIZE = Integer.BYTES + Short.BYTES + Integer.BYTES;
+    // Space reserved for events when a checkpoint is written. The mapping is
+    // doubled whenever it fills up.
+    private static final int INITIAL_EVENT_CAPACITY = 256 * EVENT_RECORD_SIZE;
+
+    /**
+     * The contents of a journal file.
+     *
+     * @param checkpoint the snapshot the journal starts from.
+     * @param events     the events recorded after the checkpoint, in order.
+     * @param versions   the lobby version after each event.
+     */
+    public record Contents(byte[] checkpoint, List<GameEvent> events, List<Long> versions) {
+    }
+
+    private final Path file;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int eventCount;
+
+    private GameJournal(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Creates a journal, replacing any existing file.
+     *
+     * @param file       the path of the journal file.
+     * @param checkpoint the snapshot to start the journal from.
+     * @throws IOException if the file cannot be written.
+     * @return a journal containing only {@code checkpoint}.
+     */
+    public static GameJournal create(Path file, byte[] checkpoint) throws IOException {
+        GameJournal journal = new GameJournal(file);
+        journal.checkpoint(checkpoint);
+        return journal;
+    }
+
+    /**
+     * Replaces the journal with a new checkpoint and no events.
+     *
+     * @param checkpoint the snapshot to start the journal from.
+     * @throws IOException if the file cannot be written. The previous contents
+     *                     of the journal are kept in that case.
+     * @modifies this
+     * @effects the file is written to a temporary path and then moved over the
+     *          journal, so a crash of the process leaves either the old or the
+     *          new journal. Like events, it is not forced to disk.
+     */
+    public void checkpoint(byte[] checkpoint) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        int size = HEADER_SIZE + checkpoint.length + INITIAL_EVENT_CAPACITY;
+        try (FileChannel tempChannel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer tempBuffer = tempChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            tempBuffer.putInt(MAGIC);
+            tempBuffer.putShort(FORMAT_VERSION);
+            tempBuffer.putInt(checkpoint.length);
+            tempBuffer.put(checkpoint);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        closeChannel();
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        buffer.position(HEADER_SIZE + checkpoint.length);
+        eventCount = 0;
+    }
+
+    /**
+     * Appends an event to the journal.
+     *
+     * @param version the lobby version after the event.
+     * @param event   the event to append.
+     * @throws IOException if the file cannot be extended.
+     * @throws IllegalStateException if the journal is closed.
+     * @modifies this
+     * @effects writes the event after the last one, growing the file if needed.
+     */
+    public void append(long version, GameEvent event) throws IOException {
+        if (buffer == null) {
+            throw new IllegalStateException("The journal is closed.");
+        }
+        if (buffer.remaining() < EVENT_RECORD_SIZE + 1) {
+            int position = buffer.position();
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) buffer.capacity() * 2);
+            buffer.position(position);
+        }
+        int position = buffer.position();
+        // Write the body first and the marker last, so that a record torn by a
+        // crash is not read back.
+        buffer.putLong(position + 1, version);
+        buffer.put(position + 1 + Long.BYTES, (byte) event.type().ordinal());
+        buffer.put(position + 2 + Long.BYTES, (byte) event.seat());
+        buffer.put(position + 3 + Long.BYTES, (byte) event.value());
+        buffer.put(position, RECORD_EVENT);
+        buffer.position(position + EVENT_RECORD_SIZE);
+        eventCount++;
+    }
+
+    /**
+     * Gets the number of events appended since the last checkpoint.
+     */
+    public int getEventCount() {
+        return eventCount;
+    }
+
+    /**
+     * Gets the path of the journal file.
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Reads a journal file.
+     *
+     * @param file the path of the journal file.
+     * @throws IOException if the file cannot be read, or is not a journal.
+     * @return the checkpoint and every complete event record in the file.
+     */
+    public static Contents read(Path file) throws IOException {
+        try (FileChannel readChannel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer in = readChannel.map(FileChannel.MapMode.READ_ONLY, 0, readChannel.size());
+            if (in.remaining() < HEADER_SIZE || in.getInt() != MAGIC) {
+                throw new IOException(file + " is not a game journal.");
+            }
+            short formatVersion = in.getShort();
+            if (formatVersion != FORMAT_VERSION) {
+                throw new IOException("Unsupported game journal version " + formatVersion + ".");
+            }
+            int checkpointLength = in.getInt();
+            if (checkpointLength < 0 || checkpointLength > in.remaining()) {
+                throw new IOException("Invalid checkpoint length " + checkpointLength + ".");
+            }
+            byte[] checkpoint = new byte[checkpointLength];
+            in.get(checkpoint);
+
+            List<GameEvent> events = new ArrayList<>();
+            List<Long> versions = new ArrayList<>();
+            GameEvent.Type[] types = GameEvent.Type.values();
+            try {
+                while (in.remaining() >= EVENT_RECORD_SIZE && in.get() == RECORD_EVENT) {
+                    long version = in.getLong();
+                    int type = in.get();
+                    int seat = in.get();
+                    int value = in.get();
+                    if (type < 0 || type >= types.length) {
+                        throw new IOException("Invalid event type " + type + ".");
+                    }
+                    events.add(new GameEvent(types[type], seat, value));
+                    versions.add(version);
+                }
+            } catch (BufferUnderflowException e) {
+                // A torn record at the end of the file; ignore it.
+            }
+            return new Contents(checkpoint, events, versions);
+        }
+    }
+
+    /**
+     * Closes the journal, leaving the file in place.
+     */
+    @Override
+    public void close() throws IOException {
+        closeChannel();
+    }
+
+    /**
+     * Closes the journal and deletes its file.
+     *
+     * @throws IOException if the file could not be deleted.
+     */
+    public void delete() throws IOException {
+        closeChannel();
+        Files.deleteIfExists(file);
+    }
+
+    private void closeChannel() throws IOException {
+        // The mapping itself is released when the buffer is garbage collected.
+        buffer = null;
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+}
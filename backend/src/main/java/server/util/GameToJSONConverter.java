@@ -7,12 +7,39 @@ import game.datastructures.Player;
 import game.datastructures.Policy;
 import org.json.JSONObject;
 
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Converts a SecretHitlerGame to a JSONObject that represents the game state.
  */
 public class GameToJSONConverter {
+
+    /**
+     * The set of player roles a user is allowed to see.
+     */
+    public enum Visibility {
+        OWN_ROLE, // Liberals (and Hitler in 7+ player games) only see their own role.
+        ALL_ROLES // Fascists, Hitler in 5-6 player games, and everyone once the game ends.
+    }
+
+    /**
+     * Determines which player roles a user can see.
+     *
+     * @param game     the SecretHitlerGame.
+     * @param userName the name of the user.
+     * @return ALL_ROLES if the game has finished, if the user is fascist, or if
+     *         the user is Hitler and there are 6 or fewer players. Otherwise,
+     *         returns OWN_ROLE.
+     */
+    public static Visibility getVisibility(SecretHitlerGame game, String userName) {
+        Identity role = game.getPlayer(userName).getIdentity();
+        boolean showAllRoles = game.hasGameFinished() || role == Identity.FASCIST
+                || (role == Identity.HITLER && game.getPlayerList().size() <= 6);
+        return showAllRoles ? Visibility.ALL_ROLES : Visibility.OWN_ROLE;
+    }
+
     /**
      * Creates a JSON object from a SecretHitlerGame that represents its state.
      * 
@@ -47,8 +74,9 @@ public class GameToJSONConverter {
      *         - {@code discard-size}: The size of the discard deck.
      *         - {@code fascist-policies}: The number of passed fascist policies.
      *         - {@code liberal-policies}: The number of passed liberal policies.:
-     *         - {@code user-votes}: A map from each user to their vote from the
-     *         last chancellor nomination.
+     *         - {@code voted-seats}: A bit mask of the seats (indices in
+     *         {@code player-order}) that voted on the last chancellor nomination.
+     *         - {@code yes-seats}: A bit mask of the seats that voted yes.
      *         - {@code president-choices}: The choices for the president during the
      *         legislative session (only if in
      *         game state LEGISLATIVE_PRESIDENT).
@@ -65,15 +93,11 @@ public class GameToJSONConverter {
 
         JSONObject out = new JSONObject();
         JSONObject playerData = new JSONObject();
-        String[] playerOrder = new String[game.getPlayerList().size()];
         List<Player> playerList = game.getPlayerList();
+        String[] playerOrder = new String[playerList.size()];
 
         // Players should only be shown all roles under specific circumstances.
-        Identity role = game.getPlayer(userName).getIdentity();
-        boolean showAllRoles = game.hasGameFinished() || role == Identity.FASCIST
-                || (role == Identity.HITLER && game.getPlayerList().size() <= 6);
-
-        System.out.println("Show all roles: " + showAllRoles);
+        boolean showAllRoles = getVisibility(game, userName) == Visibility.ALL_ROLES;
 
         for (int i = 0; i < playerList.size(); i++) {
             JSONObject playerObj = new JSONObject();
@@ -112,7 +136,8 @@ public class GameToJSONConverter {
         out.put("discardSize", game.getDiscardSize());
         out.put("fascistPolicies", game.getNumFascistPolicies());
         out.put("liberalPolicies", game.getNumLiberalPolicies());
-        out.put("userVotes", game.getVotes());
+        out.put("votedSeats", game.getVotedSeats());
+        out.put("yesSeats", game.getYesSeats());
         out.put("vetoOccurred", game.didVetoOccurThisTurn());
 
         if (game.getState() == GameState.LEGISLATIVE_PRESIDENT) {
@@ -128,6 +153,209 @@ public class GameToJSONConverter {
         return out;
     }
 
+    /**
+     * Serializes the parts of a game's state that are shared between users.
+     * 
+     * @param game the SecretHitlerGame to convert.
+     * @throws NullPointerException if {@code game} is null.
+     * @return a SharedGameState that produces the same fields as
+     *         {@code convert()} for any user in the game.
+     */
+    public static SharedGameState prepare(SecretHitlerGame game) {
+        if (game == null) {
+            throw new NullPointerException();
+        }
+        return new SharedGameState(game);
+    }
+
+    /**
+     * The serialized state of a game at a single point in time, shared between
+     * every user it is sent to.
+     *
+     * Only the {@code players} field depends on the user, and only through the
+     * user's visibility class ({@code Visibility}). Every other field is
+     * serialized once when the SharedGameState is constructed. The player data
+     * for each visibility class is serialized on first use and cached, so a
+     * broadcast to N users costs one serialization rather than N.
+     *
+     * A SharedGameState does not observe later changes to the game, so a new
+     * one must be prepared whenever the game changes.
+     */
+    public static class SharedGameState {
+        private final SecretHitlerGame game;
+        private final List<Player> playerList;
+
+        // Serialized fields, excluding "players".
+        private final Map<String, String> publicFields;
+
+        // Serialized "players" field with all roles shown.
+        private String allRolesPlayers;
+
+        // Serialized "userVotes" field for legacy clients, built on first use.
+        private String userVotes;
+
+        // Serialized entries of the "players" map for OWN_ROLE users, with and
+        // without each player's role. Index i corresponds to playerList.get(i).
+        private String[] hiddenRolePlayerEntries;
+        private String[] shownRolePlayerEntries;
+
+        private SharedGameState(SecretHitlerGame game) {
+            this.game = game;
+            this.playerList = game.getPlayerList();
+
+            JSONObject out = new JSONObject();
+            String[] playerOrder = new String[playerList.size()];
+            for (int i = 0; i < playerList.size(); i++) {
+                playerOrder[i] = playerList.get(i).getUsername();
+            }
+            out.put("playerOrder", playerOrder);
+
+            out.put("president", game.getCurrentPresident());
+            out.put("chancellor", game.getCurrentChancellor());
+            out.put("state", game.getState().toString());
+            out.put("lastState", game.getLastState().toString());
+            out.put("lastPresident", game.getLastPresident());
+            out.put("lastChancellor", game.getLastChancellor());
+            out.put("targetUser", game.getTarget());
+
+            out.put("electionTracker", game.getElectionTracker());
+            out.put("electionTrackerAdvanced", game.didElectionTrackerAdvance());
+
+            out.put("lastPolicy", game.getLastEnactedPolicy().toString().toUpperCase());
+
+            out.put("drawSize", game.getDrawSize());
+            out.put("discardSize", game.getDiscardSize());
+            out.put("fascistPolicies", game.getNumFascistPolicies());
+            out.put("liberalPolicies", game.getNumLiberalPolicies());
+            out.put("votedSeats", game.getVotedSeats());
+            out.put("yesSeats", game.getYesSeats());
+            out.put("vetoOccurred", game.didVetoOccurThisTurn());
+
+            if (game.getState() == GameState.LEGISLATIVE_PRESIDENT) {
+                out.put("presidentChoices", convertPolicyListToStringArray(game.getPresidentLegislativeChoices()));
+            }
+            if (game.getState() == GameState.LEGISLATIVE_CHANCELLOR) {
+                out.put("chancellorChoices", convertPolicyListToStringArray(game.getChancellorLegislativeChoices()));
+            }
+            if (game.getState() == GameState.PRESIDENTIAL_POWER_PEEK) {
+                out.put("peek", convertPolicyListToStringArray(game.getPeek()));
+            }
+
+            publicFields = PacketSnapshot.of(out).getFields();
+        }
+
+        /**
+         * Writes the serialized game state for a user into a map of fields.
+         *
+         * @param userName the name of the user to serialize the state for.
+         * @param fields   the map to write the fields to.
+         * @modifies fields
+         * @effects puts each top-level field of the state, serialized as JSON
+         *          text, into {@code fields}. The fields have the same values as
+         *          the JSONObject returned by {@code convert(game, userName)}.
+         */
+        public void writeFields(String userName, Map<String, String> fields) {
+            if (getVisibility(game, userName) == Visibility.ALL_ROLES) {
+                fields.put("players", getAllRolesPlayers());
+            } else {
+                fields.put("players", getOwnRolePlayers(userName));
+            }
+            fields.putAll(publicFields);
+        }
+
+        /**
+         * Writes the fields only sent to clients on the legacy protocol, which
+         * predate the vote masks.
+         *
+         * @param fields the map to write the fields to.
+         * @modifies fields
+         * @effects puts {@code userVotes}, a map from each user who voted in the
+         *          last chancellor nomination to their vote, into {@code fields}.
+         */
+        public void writeLegacyFields(Map<String, String> fields) {
+            if (userVotes == null) {
+                JSONObject votes = new JSONObject();
+                int votedSeats = game.getVotedSeats();
+                int yesSeats = game.getYesSeats();
+                for (int seat = 0; seat < playerList.size(); seat++) {
+                    if ((votedSeats & (1 << seat)) != 0) {
+                        votes.put(playerList.get(seat).getUsername(), (yesSeats & (1 << seat)) != 0);
+                    }
+                }
+                userVotes = votes.toString();
+            }
+            fields.put("userVotes", userVotes);
+        }
+
+        /**
+         * Gets the serialized game state for a user.
+         *
+         * @param userName the name of the user to serialize the state for.
+         * @return a map from each top-level field name to its serialized value.
+         */
+        public Map<String, String> getFields(String userName) {
+            Map<String, String> fields = new LinkedHashMap<>();
+            writeFields(userName, fields);
+            return fields;
+        }
+
+        private String getAllRolesPlayers() {
+            if (allRolesPlayers == null) {
+                StringBuilder builder = new StringBuilder();
+                builder.append('{');
+                for (int i = 0; i < playerList.size(); i++) {
+                    if (i > 0) {
+                        builder.append(',');
+                    }
+                    writePlayerEntry(builder, playerList.get(i), true);
+                }
+                builder.append('}');
+                allRolesPlayers = builder.toString();
+            }
+            return allRolesPlayers;
+        }
+
+        private String getOwnRolePlayers(String userName) {
+            if (hiddenRolePlayerEntries == null) {
+                hiddenRolePlayerEntries = new String[playerList.size()];
+                shownRolePlayerEntries = new String[playerList.size()];
+                for (int i = 0; i < playerList.size(); i++) {
+                    StringBuilder builder = new StringBuilder();
+                    writePlayerEntry(builder, playerList.get(i), false);
+                    hiddenRolePlayerEntries[i] = builder.toString();
+                    builder.setLength(0);
+                    writePlayerEntry(builder, playerList.get(i), true);
+                    shownRolePlayerEntries[i] = builder.toString();
+                }
+            }
+
+            // Splice in the user's own role.
+            StringBuilder builder = new StringBuilder();
+            builder.append('{');
+            for (int i = 0; i < playerList.size(); i++) {
+                if (i > 0) {
+                    builder.append(',');
+                }
+                if (playerList.get(i).getUsername().equals(userName)) {
+                    builder.append(shownRolePlayerEntries[i]);
+                } else {
+                    builder.append(hiddenRolePlayerEntries[i]);
+                }
+            }
+            builder.append('}');
+            return builder.toString();
+        }
+
+        private static void writePlayerEntry(StringBuilder builder, Player player, boolean showRole) {
+            builder.append(JSONObject.quote(player.getUsername()))
+                    .append(":{\"alive\":").append(player.isAlive());
+            if (showRole) {
+                builder.append(",\"id\":").append(JSONObject.quote(player.getIdentity().toString()));
+            }
+            builder.append(",\"investigated\":").append(player.hasBeenInvestigated()).append('}');
+        }
+    }
+
     /**
      * Converts a list of policies into a string array.
      * 
@@ -1,21 +1,29 @@
 package server.util;
 
 import game.CpuPlayer;
-import game.GameState;
+import game.GameEvent;
 import game.SecretHitlerGame;
+import game.datastructures.Identity;
+import game.datastructures.Player;
+import game.util.GameRandom;
 import io.javalin.websocket.WsContext;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import server.ApplicationConfig;
 import server.SecretHitlerServer;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.io.Serializable;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ScheduledFuture;
 import java.util.stream.Collectors;
 
 /**
@@ -24,6 +32,13 @@ import java.util.stream.Collectors;
  * It maintains the game that the connections are associated with.
  *
  * A user is defined as an active websocket connection.
+ *
+ * Each Lobby behaves as an actor: its state is only changed by tasks run
+ * through its mailbox ({@code execute()} and {@code offer()}), which runs them
+ * one at a time. Methods that change the lobby must be called from such a
+ * task (or from a single thread, as in tests). Other threads should read the
+ * lobby's membership through {@code getSnapshot()}, which is republished after
+ * every change and never blocks.
  */
 public class Lobby implements Serializable {
 
@@ -33,6 +48,9 @@ public class Lobby implements Serializable {
     // users.
     transient private ConcurrentHashMap<WsContext, String> userToUsername;
     transient private Queue<String> activeUsernames;
+    // The queue of outgoing packets for each connection, which also tracks
+    // the last packet sent so updates can be sent as deltas.
+    transient private ConcurrentHashMap<WsContext, ConnectionOutbox> userToOutbox;
 
     final private Set<String> usersInGame;
     final private ConcurrentHashMap<String, String> usernameToIcon;
@@ -45,13 +63,32 @@ public class Lobby implements Serializable {
     public static long LOBBY_TIMEOUT_DURATION_IN_MIN = 10;
     public static float PLAYER_TIMEOUT_IN_SEC = 3;
     public static float CPU_ACTION_DELAY_IN_SEC = 4;
-    private long timeout;
+    private volatile long timeout;
+    // Increases whenever the lobby changes, so that LobbyStore only writes
+    // lobbies that changed since they were last stored.
+    private volatile long version;
 
     private static Logger logger = LoggerFactory.getLogger(Lobby.class);
 
-    private static int MAX_TIMER_SCHEDULING_ATTEMPTS = 2;
-    transient private Timer userTimeoutTimer = new Timer();
-    transient private Timer cpuTickTimer = new Timer();
+    // Pending removals of disconnected users, by username. Run on the shared
+    // LobbyScheduler.
+    transient private ConcurrentHashMap<String, ScheduledFuture<?>> userRemovalTasks;
+    // Chooses and applies the CpuPlayers' actions (see BotScheduler).
+    transient private BotScheduler botScheduler;
+    // Number of moves applied to the current game, so that CPU actions chosen
+    // for an earlier state are not applied.
+    transient private long moveCount;
+    // Set when the lobby has changed but the change has not been broadcast yet
+    // (see requestBroadcast()).
+    transient private boolean broadcastPending;
+    transient private ScheduledFuture<?> broadcastTask;
+    // Runs this lobby's work one task at a time (see LobbyExecutors).
+    transient private SerialExecutor executor;
+    transient private volatile LobbySnapshot snapshot;
+    // Records the game's events for crash recovery, if enabled.
+    transient private GameJournal journal;
+    // Number of events after which the journal is replaced by a new checkpoint.
+    static final int JOURNAL_CHECKPOINT_INTERVAL = 64;
 
     static String DEFAULT_ICON = "p_default";
 
@@ -61,11 +98,17 @@ public class Lobby implements Serializable {
     public Lobby() {
         userToUsername = new ConcurrentHashMap<WsContext, String>();
         activeUsernames = new ConcurrentLinkedQueue<>();
+        userToOutbox = new ConcurrentHashMap<>();
+        userRemovalTasks = new ConcurrentHashMap<>();
+        executor = LobbyExecutors.newLobbyExecutor();
+        botScheduler = new BotScheduler(this);
         usersInGame = new ConcurrentSkipListSet<>();
         usernameToIcon = new ConcurrentHashMap<>();
         usernameToPreferredIcon = new ConcurrentHashMap<>();
         cpuPlayers = new ConcurrentSkipListSet<>();
+        version = 1;
         resetTimeout();
+        publishSnapshot();
     }
 
     /**
@@ -73,18 +116,28 @@ public class Lobby implements Serializable {
      * 
      * @effects The lobby will time out in {@code TIMEOUT_DURATION_MS} ms from now.
      */
-    synchronized public void resetTimeout() {
+    public void resetTimeout() {
         // The timeout duration for the server. (currently 30 minutes)
         long MS_PER_MINUTE = 1000 * 60;
         timeout = System.currentTimeMillis() + MS_PER_MINUTE * LOBBY_TIMEOUT_DURATION_IN_MIN;
     }
 
+    /**
+     * Returns the version of the lobby. Safe to call from any thread.
+     *
+     * @return a number that is greater than any previously returned value if
+     *         the lobby has changed since.
+     */
+    public long getVersion() {
+        return version;
+    }
+
     /**
      * Returns whether the lobby has timed out.
      * 
      * @return true if the Lobby has timed out.
      */
-    synchronized public boolean hasTimedOut() {
+    public boolean hasTimedOut() {
         return timeout <= System.currentTimeMillis();
     }
 
@@ -94,7 +147,7 @@ public class Lobby implements Serializable {
      * @return a set of WsContexts, where each context is a user connected to the
      *         Lobby.
      */
-    synchronized public Set<WsContext> getConnections() {
+    public Set<WsContext> getConnections() {
         return userToUsername.keySet();
     }
 
@@ -102,7 +155,7 @@ public class Lobby implements Serializable {
      * Returns the list of usernames currently in the lobby or game. Includes
      * bot names if the game is running and has bots.
      */
-    synchronized public List<String> getUserNames() {
+    public List<String> getUserNames() {
         if (game != null) {
             return game.getPlayerList().stream().map(player -> player.getUsername()).collect(Collectors.toList());
         } else {
@@ -110,6 +163,54 @@ public class Lobby implements Serializable {
         }
     }
 
+    /**
+     * Runs a task through this lobby's mailbox, even if the mailbox is full.
+     * Used for internal events (disconnects, timeouts, CPU ticks) that must not
+     * be dropped.
+     *
+     * @param task the task to run.
+     * @effects runs {@code task} after every task previously submitted to this
+     *          lobby. Depending on {@code ApplicationConfig.EXECUTION_MODE}, the
+     *          task may run on the calling thread or on another thread.
+     */
+    public void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    /**
+     * Runs a task through this lobby's mailbox if the mailbox is not full. Used
+     * for work requested by users.
+     *
+     * @param task the task to run.
+     * @return true if the task was accepted, or false if the lobby already has
+     *         {@code ApplicationConfig.LOBBY_MAILBOX_SIZE} tasks queued.
+     * @effects if accepted, runs {@code task} as in {@code execute()}.
+     */
+    public boolean offer(Runnable task) {
+        return executor.offer(task);
+    }
+
+    /**
+     * Returns the most recently published view of this lobby's membership.
+     * Safe to call from any thread.
+     *
+     * @return a LobbySnapshot reflecting the lobby as of its last change.
+     */
+    public LobbySnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Publishes a new snapshot of the lobby's membership.
+     *
+     * @modifies this
+     * @effects {@code getSnapshot()} reflects the current state of the lobby.
+     */
+    private void publishSnapshot() {
+        snapshot = new LobbySnapshot(game != null, new HashSet<>(activeUsernames),
+                new HashSet<>(userToUsername.values()), new HashSet<>(usersInGame), getUserNames());
+    }
+
     /////// User Management
     // <editor-fold desc="User Management">
 
@@ -119,7 +220,7 @@ public class Lobby implements Serializable {
      * @param context the Websocket context of a user.
      * @return true iff the {@code context} is in this lobby.
      */
-    synchronized public boolean hasUser(WsContext context) {
+    public boolean hasUser(WsContext context) {
         return userToUsername.containsKey(context);
     }
 
@@ -131,7 +232,7 @@ public class Lobby implements Serializable {
      * @return true iff {@code context} is a user in the lobby with the name
      *         {@code name}.
      */
-    synchronized public boolean hasUser(WsContext context, String name) {
+    public boolean hasUser(WsContext context, String name) {
         return userToUsername.containsKey(context) && userToUsername.get(context).equals(name);
     }
 
@@ -141,7 +242,7 @@ public class Lobby implements Serializable {
      * @param name the username to check the Lobby for.
      * @return true iff the username {@code name} is in this lobby.
      */
-    synchronized public boolean hasUserWithName(String name) {
+    public boolean hasUserWithName(String name) {
         return userToUsername.values().contains(name);
     }
 
@@ -154,7 +255,7 @@ public class Lobby implements Serializable {
      *         removed from the lobby.
      *
      */
-    synchronized public boolean canAddUserDuringGame(String name) {
+    public boolean canAddUserDuringGame(String name) {
         return (usersInGame.contains(name) && !activeUsernames.contains(name)); // the user was in the game but was
                                                                                 // disconnected.
     }
@@ -165,7 +266,7 @@ public class Lobby implements Serializable {
      * @return Returns true if the number of players in the lobby is {@literal >= }
      *         {@code SecretHitlerGame.MAX_PLAYERS}.
      */
-    synchronized public boolean isFull() {
+    public boolean isFull() {
         return activeUsernames.size() >= SecretHitlerGame.MAX_PLAYERS;
     }
 
@@ -185,14 +286,34 @@ public class Lobby implements Serializable {
      *          player with the name {@name} was
      *          previously in the same game but was removed.
      */
-    synchronized public void addUser(WsContext context, String name) {
+    public void addUser(WsContext context, String name) {
+        addUser(context, name, SecretHitlerServer.PROTOCOL_LEGACY);
+    }
+
+    /**
+     * Adds a user (websocket connection) to the lobby.
+     *
+     * @param context         the websocket connection context.
+     * @param name            the name of the player to be added.
+     * @param protocolVersion the packet protocol version supported by the
+     *                        user. If at least
+     *                        {@code SecretHitlerServer.PROTOCOL_DELTA}, updates
+     *                        are sent as deltas of the previous update.
+     * @throws IllegalArgumentException under the same conditions as
+     *                                  {@code addUser(context, name)}.
+     * @modifies this
+     * @effects adds the given user to the lobby.
+     */
+    public void addUser(WsContext context, String name, int protocolVersion) {
         if (userToUsername.containsKey(context)) {
             throw new IllegalArgumentException("Duplicate websockets cannot be added to a lobby.");
         } else {
             if (isInGame()) {
                 if (canAddUserDuringGame(name)) { // This username is in the game but is not currently connected.
                     // allow the user to be connected.
+                    LobbyScheduler.cancel(userRemovalTasks.remove(name));
                     userToUsername.put(context, name);
+                    userToOutbox.put(context, new ConnectionOutbox(context, protocolVersion));
 
                     usernameToIcon.put(name, DEFAULT_ICON); // load default icon
                     // Try setting the player's icon using their previous choice
@@ -206,7 +327,9 @@ public class Lobby implements Serializable {
             } else {
                 if (!isFull()) {
                     if (!hasUserWithName(name)) { // This is a new user with a new name, so we add them to the Lobby.
+                        LobbyScheduler.cancel(userRemovalTasks.remove(name));
                         userToUsername.put(context, name);
+                        userToOutbox.put(context, new ConnectionOutbox(context, protocolVersion));
                         if (!activeUsernames.contains(name)) {
                             activeUsernames.add(name);
                         }
@@ -225,6 +348,7 @@ public class Lobby implements Serializable {
                 }
             }
         }
+        publishSnapshot();
     }
 
     /**
@@ -237,65 +361,98 @@ public class Lobby implements Serializable {
      * @effects removes the user context (websocket connection) of the player from
      *          the lobby.
      */
-    synchronized public void removeUser(WsContext context) {
+    public void removeUser(WsContext context) {
         if (!hasUser(context)) {
             throw new IllegalArgumentException("Cannot remove a websocket that is not in the Lobby.");
         } else {
-            // Delay removing players from the list by adding it to a timer.
-            int delay_in_ms = (int) (PLAYER_TIMEOUT_IN_SEC * 1000);
+            // Delay removing players from the list, in case they reconnect.
+            long delay_in_ms = (long) (PLAYER_TIMEOUT_IN_SEC * 1000);
             final String username = userToUsername.get(context);
-
-            int timerSchedulingAttempts = 0;
-            while (timerSchedulingAttempts < MAX_TIMER_SCHEDULING_ATTEMPTS) {
-                try {
-                    userTimeoutTimer.schedule(new RemoveUserTask(username), delay_in_ms);
-                    break; // exit loop if successful
-                } catch (IllegalStateException e) {
-                    // Timer hit an error state and must be reset.
-                    userTimeoutTimer.cancel();
-                    userTimeoutTimer = new Timer();
-                    timerSchedulingAttempts++;
-                }
-            }
-            if (timerSchedulingAttempts == MAX_TIMER_SCHEDULING_ATTEMPTS) {
-                System.out.println("Failed to schedule removal of the user '" + username + "'.");
-            }
+            ScheduledFuture<?> removal = LobbyScheduler.schedule(() -> execute(() -> removeInactiveUser(username)),
+                    delay_in_ms);
+            LobbyScheduler.cancel(userRemovalTasks.put(username, removal));
 
             userToUsername.remove(context);
+            ConnectionOutbox outbox = userToOutbox.remove(context);
+            if (outbox != null) {
+                outbox.close();
+            }
+            publishSnapshot();
         }
     }
 
     /**
-     * Small helper class for removing users from the active users queue.
+     * Returns the packet protocol version supported by a user.
+     *
+     * @param context the websocket connection context of the user.
+     * @return the protocol version given when the user was added, or
+     *         {@code SecretHitlerServer.PROTOCOL_LEGACY} if the user is not in
+     *         the lobby.
      */
-    class RemoveUserTask extends TimerTask {
-        private final String username;
+    public int getProtocolVersion(WsContext context) {
+        ConnectionOutbox outbox = userToOutbox.get(context);
+        return outbox != null ? outbox.getProtocolVersion() : SecretHitlerServer.PROTOCOL_LEGACY;
+    }
 
-        RemoveUserTask(String username) {
-            this.username = username;
+    /**
+     * Queues a packet to be sent to a user.
+     *
+     * @param context the websocket connection context of the user.
+     * @param body    writes the contents of the packet.
+     * @effects the packet is sent asynchronously, after any packets already
+     *          queued for the user. Does nothing if the user is not in the
+     *          lobby.
+     */
+    public void sendPacket(WsContext context, PacketWriter.Body body) {
+        ConnectionOutbox outbox = userToOutbox.get(context);
+        if (outbox != null) {
+            outbox.sendPacket(body);
         }
+    }
 
-        public void run() {
-            // If the user is still disconnected when the task runs, mark them as inactive
-            // and
-            // remove them from the lobby.
-            if (!userToUsername.values().contains(username) && activeUsernames.contains(username)) {
-                activeUsernames.remove(username);
+    /**
+     * Removes a disconnected user from the active users queue.
+     *
+     * @param username the name of the user.
+     * @effects If the user is still disconnected, marks them as inactive and
+     *          removes them from the lobby.
+     */
+    private void removeInactiveUser(String username) {
+        userRemovalTasks.remove(username);
+        if (!userToUsername.values().contains(username) && activeUsernames.contains(username)) {
+            activeUsernames.remove(username);
 
-                if (usernameToIcon.containsKey(username)) {
-                    usernameToIcon.remove(username); // possible for users to disconnect before choosing icon
-                }
-                updateAllUsers();
+            if (usernameToIcon.containsKey(username)) {
+                usernameToIcon.remove(username); // possible for users to disconnect before choosing icon
             }
+            publishSnapshot();
+            requestBroadcast();
         }
     }
 
+    /**
+     * Cancels any pending user removals and CPU actions.
+     *
+     * @modifies this
+     * @effects no scheduled tasks for this lobby will run after this call.
+     *          Should be called when the lobby is discarded.
+     */
+    public void cancelScheduledTasks() {
+        for (ScheduledFuture<?> removal : userRemovalTasks.values()) {
+            LobbyScheduler.cancel(removal);
+        }
+        userRemovalTasks.clear();
+        botScheduler.cancel();
+        LobbyScheduler.cancel(broadcastTask);
+        broadcastTask = null;
+    }
+
     /**
      * Returns the number of active users connected to the Lobby.
      * 
      * @return the number of active websocket connections currently in the lobby.
      */
-    synchronized public int getUserCount() {
+    public int getUserCount() {
         return activeUsernames.size();
     }
 
@@ -303,74 +460,64 @@ public class Lobby implements Serializable {
      * Sends a message to every connected user with the current game state.
      * 
      * @effects a message containing a JSONObject representing the state of the
-     *          SecretHitlerGame is sent
-     *          to each connected WsContext.
-     *          ({@code GameToJSONConverter.convert()}). Also
-     *          updates all connected CpuPlayers after a set amount of time.
+     *          SecretHitlerGame is queued
+     *          for each connected WsContext and sent asynchronously
+     *          ({@code GameToJSONConverter.convert()}, {@code ConnectionOutbox}).
+     *          Also starts choosing the CpuPlayers' next actions, which are
+     *          applied later ({@code BotScheduler}).
      */
-    synchronized public void updateAllUsers() {
+    public void updateAllUsers() {
+        broadcastPending = false; // any pending broadcast is sent now.
+        version++; // only written by tasks on this lobby's executor.
+
+        // Serialize the shared parts of the update once for every user.
+        GameToJSONConverter.SharedGameState sharedState = isInGame() ? GameToJSONConverter.prepare(game) : null;
+        Map<String, String> sharedFields = getSharedUpdateFields();
         for (Entry<WsContext, String> entry : userToUsername.entrySet()) {
-            updateUser(entry.getKey(), entry.getValue());
+            sendUpdate(entry.getKey(), entry.getValue(), sharedState, sharedFields);
         }
 
         // Check if the game ended.
         if (game != null && game.hasGameFinished()) {
             game = null;
             cpuPlayers.clear();
+            publishSnapshot();
+            checkpointJournal();
         }
 
-        // Update all the CpuPlayers so they can act
-        boolean didCpuUpdateState = false;
-        if (isInGame()) {
-            // Update all CPUs before allowing them to start acting
-            for (CpuPlayer cpu : cpuPlayers) {
-                cpu.update(game);
-            }
-            for (CpuPlayer cpu : cpuPlayers) {
-                if (game.getState() == GameState.CHANCELLOR_VOTING) {
-                    // We're in a voting step, so it doesn't matter if the CPU is
-                    // acting unless the gamestate changes.
-                    boolean stateUpdated = cpu.act(game);
-                    // Did acting cause voting to end?
-                    if (stateUpdated && game.getState() != GameState.CHANCELLOR_VOTING) {
-                        didCpuUpdateState = true;
-                        break;
-                    }
-                } else {
-                    if (cpu.act(game)) {
-                        didCpuUpdateState = true;
-                        break;
-                    }
-                }
-            }
-        }
+        botScheduler.requestTurn();
+    }
 
-        if (didCpuUpdateState) {
-            int delay_in_ms = (int) (CPU_ACTION_DELAY_IN_SEC * 1000);
-            int timerSchedulingAttempts = 0;
-            // Make multiple attempts to schedule the timer.
-            while (timerSchedulingAttempts < MAX_TIMER_SCHEDULING_ATTEMPTS) {
-                try {
-                    cpuTickTimer.schedule(new updateUsersTask(), delay_in_ms);
-                    break;
-                } catch (IllegalStateException e) {
-                    // Timer hit an error state and must be reset.
-                    cpuTickTimer.cancel();
-                    cpuTickTimer = new Timer();
-                    timerSchedulingAttempts++;
-                }
-            }
-            if (timerSchedulingAttempts == MAX_TIMER_SCHEDULING_ATTEMPTS) {
-                logger.error("Failed to schedule timer for CPU ticks.");
-            }
+    /**
+     * Marks the lobby as changed, so that the new state is sent to every user
+     * at the end of the current broadcast interval.
+     *
+     * @modifies this
+     * @effects If {@code ApplicationConfig.BROADCAST_INTERVAL_MS} is 0, calls
+     *          {@code updateAllUsers()} immediately. Otherwise, schedules a
+     *          single call to {@code updateAllUsers()} for the end of the
+     *          interval, if one is not already scheduled. Every change
+     *          requested within the interval is sent in that one broadcast.
+     */
+    public void requestBroadcast() {
+        version++;
+        if (ApplicationConfig.BROADCAST_INTERVAL_MS <= 0) {
+            updateAllUsers();
+            return;
+        }
+        broadcastPending = true;
+        if (broadcastTask == null) {
+            broadcastTask = LobbyScheduler.schedule(() -> execute(this::flushBroadcast),
+                    ApplicationConfig.BROADCAST_INTERVAL_MS);
         }
     }
 
     /**
-     * Small helper class for removing users from the active users queue.
+     * Sends the pending broadcast, if there is one.
      */
-    class updateUsersTask extends TimerTask {
-        public void run() {
+    private void flushBroadcast() {
+        broadcastTask = null;
+        if (broadcastPending) {
             updateAllUsers();
         }
     }
@@ -380,24 +527,165 @@ public class Lobby implements Serializable {
      * 
      * @param ctx the WsContext websocket context.
      * @effects a message containing a JSONObject representing the state of the
-     *          SecretHitlerGame is sent
-     *          to the specified WsContext. ({@code GameToJSONConverter.convert()})
+     *          SecretHitlerGame is queued
+     *          for the specified WsContext. ({@code GameToJSONConverter.convert()})
+     *          If the user supports deltas and has received a previous update,
+     *          only the fields that changed are sent (see {@code DeltaEncoder}).
+     */
+    public void updateUser(WsContext ctx, String userName) {
+        GameToJSONConverter.SharedGameState sharedState = isInGame() ? GameToJSONConverter.prepare(game) : null;
+        sendUpdate(ctx, userName, sharedState, getSharedUpdateFields());
+    }
+
+    /**
+     * Serializes the fields of an update that are the same for every user.
+     *
+     * @return a map from field names to serialized JSON values, containing the
+     *         packet type, the user icons, and (if not in a game) the list of
+     *         usernames.
      */
-    synchronized public void updateUser(WsContext ctx, String userName) {
-        JSONObject message;
+    private Map<String, String> getSharedUpdateFields() {
+        JSONObject message = new JSONObject();
         if (isInGame()) {
-            message = GameToJSONConverter.convert(game, userName); // sends the game state
             message.put(SecretHitlerServer.PARAM_PACKET_TYPE, SecretHitlerServer.PACKET_GAME_STATE);
         } else {
-            message = new JSONObject();
             message.put(SecretHitlerServer.PARAM_PACKET_TYPE, SecretHitlerServer.PACKET_LOBBY);
             message.put("usernames", activeUsernames.toArray());
         }
         // Add user icons to the update message
         JSONObject icons = new JSONObject(usernameToIcon);
         message.put("icon", icons);
+        return PacketSnapshot.of(message).getFields();
+    }
+
+    /**
+     * Queues an update for a single user.
+     *
+     * @param ctx          the WsContext websocket context.
+     * @param userName     the name of the user.
+     * @param sharedState  the serialized game state, or null if not in a game.
+     * @param sharedFields the serialized fields shared by every user
+     *                     ({@code getSharedUpdateFields()}).
+     */
+    private void sendUpdate(WsContext ctx, String userName, GameToJSONConverter.SharedGameState sharedState,
+            Map<String, String> sharedFields) {
+        ConnectionOutbox outbox = userToOutbox.computeIfAbsent(ctx,
+                c -> new ConnectionOutbox(c, SecretHitlerServer.PROTOCOL_LEGACY));
+
+        Map<String, String> fields = new LinkedHashMap<>(sharedFields);
+        if (sharedState != null) {
+            sharedState.writeFields(userName, fields); // sends the game state
+            if (outbox.getProtocolVersion() == SecretHitlerServer.PROTOCOL_LEGACY) {
+                sharedState.writeLegacyFields(fields); // legacy clients read userVotes
+            }
+        }
+
+        outbox.sendState(new PacketSnapshot(fields));
+    }
+
+    /**
+     * Sends the full current state to the specified user, regardless of what
+     * they were previously sent.
+     *
+     * @param ctx      the WsContext websocket context.
+     * @param userName the name of the user.
+     * @effects the next update sent to {@code ctx} is a full snapshot, and is
+     *          sent immediately. ({@code updateUser()})
+     */
+    public void resyncUser(WsContext ctx, String userName) {
+        ConnectionOutbox outbox = userToOutbox.get(ctx);
+        if (outbox != null) {
+            outbox.resync();
+        }
+        updateUser(ctx, userName);
+    }
 
-        ctx.send(message.toString());
+    /**
+     * Writes the lobby in the compact binary snapshot format (see
+     * {@code LobbyCodec}). Connections and scheduled tasks are not written,
+     * just as with Java serialization.
+     *
+     * @param out the stream to write to.
+     * @throws IOException if the stream cannot be written to.
+     */
+    void writeSnapshot(DataOutput out) throws IOException {
+        out.writeLong(version);
+        out.writeLong(timeout);
+        writeStrings(out, usersInGame);
+        writeStringMap(out, usernameToIcon);
+        writeStringMap(out, usernameToPreferredIcon);
+
+        out.writeBoolean(game != null);
+        List<Player> seats = Collections.emptyList();
+        if (game != null) {
+            game.writeSnapshot(out);
+            seats = game.getPlayerList();
+        }
+        out.writeByte(cpuPlayers.size());
+        for (CpuPlayer cpu : cpuPlayers) {
+            cpu.writeSnapshot(out, seats);
+        }
+    }
+
+    /**
+     * Reads a lobby written by {@code writeSnapshot()}.
+     *
+     * @param in       the stream to read from.
+     * @param schemaId the schema ID of the snapshot.
+     * @throws IOException if the stream cannot be read or is malformed.
+     * @return a new Lobby with no connected users, in the same state as the
+     *         lobby that was written.
+     */
+    static Lobby readSnapshot(DataInput in, int schemaId) throws IOException {
+        Lobby lobby = new Lobby();
+        lobby.version = in.readLong();
+        lobby.timeout = in.readLong();
+        readStrings(in, lobby.usersInGame);
+        readStringMap(in, lobby.usernameToIcon);
+        readStringMap(in, lobby.usernameToPreferredIcon);
+
+        List<Player> seats = Collections.emptyList();
+        if (in.readBoolean()) {
+            lobby.game = SecretHitlerGame.readSnapshot(in, schemaId);
+            seats = lobby.game.getPlayerList();
+        }
+        int cpuCount = in.readByte();
+        for (int i = 0; i < cpuCount; i++) {
+            CpuPlayer cpu = CpuPlayer.readSnapshot(in, seats, schemaId);
+            cpu.setSearch(LobbyExecutors.getBotSearch());
+            lobby.cpuPlayers.add(cpu);
+        }
+        lobby.publishSnapshot();
+        return lobby;
+    }
+
+    private static void writeStrings(DataOutput out, Collection<String> strings) throws IOException {
+        out.writeShort(strings.size());
+        for (String string : strings) {
+            out.writeUTF(string);
+        }
+    }
+
+    private static void readStrings(DataInput in, Collection<String> strings) throws IOException {
+        int size = in.readUnsignedShort();
+        for (int i = 0; i < size; i++) {
+            strings.add(in.readUTF());
+        }
+    }
+
+    private static void writeStringMap(DataOutput out, Map<String, String> map) throws IOException {
+        out.writeShort(map.size());
+        for (Entry<String, String> entry : map.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeUTF(entry.getValue());
+        }
+    }
+
+    private static void readStringMap(DataInput in, Map<String, String> map) throws IOException {
+        int size = in.readUnsignedShort();
+        for (int i = 0; i < size; i++) {
+            map.put(in.readUTF(), in.readUTF());
+        }
     }
 
     /**
@@ -414,8 +702,17 @@ public class Lobby implements Serializable {
         in.defaultReadObject();
         userToUsername = new ConcurrentHashMap<>();
         activeUsernames = new ConcurrentLinkedQueue<>();
-        userTimeoutTimer = new Timer();
-        cpuTickTimer = new Timer();
+        userToOutbox = new ConcurrentHashMap<>();
+        userRemovalTasks = new ConcurrentHashMap<>();
+        executor = LobbyExecutors.newLobbyExecutor();
+        botScheduler = new BotScheduler(this);
+        for (CpuPlayer cpu : cpuPlayers) {
+            cpu.setSearch(LobbyExecutors.getBotSearch());
+        }
+        if (version == 0) { // stored before lobbies were versioned.
+            version = 1;
+        }
+        publishSnapshot();
     }
 
     /**
@@ -429,7 +726,7 @@ public class Lobby implements Serializable {
      *          to {@code iconID}. (exception is for the default value.)
      * @throws IllegalArgumentException if {@code user} is not in the game.
      */
-    synchronized public void trySetUserIcon(String iconID, WsContext user) {
+    public void trySetUserIcon(String iconID, WsContext user) {
         // Verify that the user exists.
         if (!hasUser(user)) {
             throw new IllegalArgumentException("User is not in this lobby.");
@@ -459,7 +756,7 @@ public class Lobby implements Serializable {
      * 
      * @return true iff the Lobby has a currently active game.
      */
-    synchronized public boolean isInGame() {
+    public boolean isInGame() {
         return game != null;
     }
 
@@ -477,7 +774,22 @@ public class Lobby implements Serializable {
      *          The usernames of all active users are added to the game in a
      *          randomized order.
      */
-    synchronized public void startNewGame() {
+    public void startNewGame() {
+        startNewGame(new GameRandom().getState());
+    }
+
+    /**
+     * Starts a new SecretHitlerGame with the connected users as players, using
+     * a fixed random seed.
+     * 
+     * @param seed the seed for the seat order, the game and every CpuPlayer.
+     *             Lobbies with the same users that start a game with the same
+     *             seed (and receive the same moves) play identical games.
+     * @throws RuntimeException see {@code startNewGame()}.
+     * @modifies this
+     * @effects see {@code startNewGame()}.
+     */
+    public void startNewGame(long seed) {
         if (activeUsernames.size() > SecretHitlerGame.MAX_PLAYERS) {
             throw new RuntimeException("Too many users to start a game.");
         } else if (isInGame()) {
@@ -494,6 +806,8 @@ public class Lobby implements Serializable {
         usersInGame.clear();
         usersInGame.addAll(userToUsername.values());
 
+        GameRandom random = new GameRandom(seed);
+
         // Generate CpuPlayers if the lobby size has not been met
         List<String> cpuNames = new ArrayList<>();
         cpuPlayers.clear();
@@ -504,7 +818,7 @@ public class Lobby implements Serializable {
                 String botName = "Bot " + i;
                 if (!userToUsername.containsValue(botName)) {
                     cpuNames.add(botName);
-                    cpuPlayers.add(new CpuPlayer(botName));
+                    cpuPlayers.add(new CpuPlayer(botName, random.split()));
                     numCpuPlayersToGenerate--;
                 }
                 i++;
@@ -514,13 +828,19 @@ public class Lobby implements Serializable {
         // Initialize the new game
         List<String> playerNames = new ArrayList<>(activeUsernames);
         playerNames.addAll(cpuNames);
-        Collections.shuffle(playerNames);
+        Collections.shuffle(playerNames, random);
 
-        game = new SecretHitlerGame(playerNames);
+        game = new SecretHitlerGame(playerNames, random.nextLong());
 
         // Initialize all of the CpuPlayers
         for (CpuPlayer cpu : cpuPlayers) {
             cpu.initialize(game);
+            cpu.setSearch(LobbyExecutors.getBotSearch());
+        }
+        publishSnapshot();
+        if (journal != null) {
+            game.setEventListener(this::onGameEvent);
+            checkpointJournal();
         }
     }
 
@@ -531,7 +851,7 @@ public class Lobby implements Serializable {
      *                          ({@code !this.isInGame()}).
      * @return the SecretHitlerGame for this lobby.
      */
-    synchronized public SecretHitlerGame game() {
+    public SecretHitlerGame game() {
         if (game == null) {
             throw new RuntimeException();
         } else {
@@ -539,6 +859,286 @@ public class Lobby implements Serializable {
         }
     }
 
+    /**
+     * Makes a move in the current game on behalf of a player. Used for the
+     * moves of both users and CpuPlayers.
+     *
+     * @param name    the name of the player making the move.
+     * @param command the move. Must be a game command, such as
+     *                {@code NominateChancellor} or {@code RegisterVote}.
+     * @throws RuntimeException if there is no game, if the move is not allowed
+     *                          in the current state, if the move can only be
+     *                          made by the president or chancellor and
+     *                          {@code name} is not them, or if
+     *                          {@code command} is not a game command.
+     * @return the party of the investigated player for
+     *         {@code GetInvestigation}, otherwise null.
+     * @modifies this
+     * @effects applies the move to the game. Does not broadcast the change
+     *          ({@code requestBroadcast()}).
+     */
+    public Identity applyCommand(String name, Command command) {
+        Identity result = null;
+        switch (command.type()) {
+            case NOMINATE_CHANCELLOR:
+                verifyIsPresident(name);
+                game().nominateChancellor(((Command.NominateChancellor) command).target());
+                break;
+
+            case REGISTER_VOTE:
+                game().registerVote(name, ((Command.RegisterVote) command).vote());
+                break;
+
+            case REGISTER_PRESIDENT_CHOICE:
+                verifyIsPresident(name);
+                game().presidentDiscardPolicy(((Command.RegisterPresidentChoice) command).choice());
+                break;
+
+            case REGISTER_CHANCELLOR_CHOICE:
+                verifyIsChancellor(name);
+                game().chancellorEnactPolicy(((Command.RegisterChancellorChoice) command).choice());
+                break;
+
+            case REGISTER_CHANCELLOR_VETO:
+                verifyIsChancellor(name);
+                game().chancellorVeto();
+                break;
+
+            case REGISTER_PRESIDENT_VETO:
+                verifyIsPresident(name);
+                game().presidentialVeto(((Command.RegisterPresidentVeto) command).veto());
+                break;
+
+            case REGISTER_EXECUTION:
+                verifyIsPresident(name);
+                game().executePlayer(((Command.RegisterExecution) command).target());
+                break;
+
+            case REGISTER_SPECIAL_ELECTION:
+                verifyIsPresident(name);
+                game().electNextPresident(((Command.RegisterSpecialElection) command).target());
+                break;
+
+            case GET_INVESTIGATION:
+                verifyIsPresident(name);
+                result = game().investigatePlayer(((Command.GetInvestigation) command).target());
+                break;
+
+            case REGISTER_PEEK:
+                verifyIsPresident(name);
+                game().endPeek();
+                break;
+
+            case END_TERM:
+                verifyIsPresident(name);
+                game().endPresidentialTerm();
+                break;
+
+            default:
+                throw new RuntimeException("Not a game command: " + command.type().getCommandName());
+        }
+        moveCount++;
+        return result;
+    }
+
+    // TODO: This is bad. This is bad code practice. Exceptions should not be
+    // used for control flow.
+
+    /**
+     * Verifies that the user is the president.
+     * 
+     * @param name String name of the user.
+     * @throws RuntimeException if the user is not the president.
+     */
+    private void verifyIsPresident(String name) {
+        if (!game().getCurrentPresident().equals(name)) {
+            throw new RuntimeException("The player '" + name + "' is not currently president.");
+        }
+    }
+
+    /**
+     * Verifies that the user is the chancellor.
+     * 
+     * @param name String name of the user.
+     * @throws RuntimeException if the user is not the chancellor.
+     */
+    private void verifyIsChancellor(String name) {
+        if (!game().getCurrentChancellor().equals(name)) {
+            throw new RuntimeException("The player '" + name + "' is not currently chancellor.");
+        }
+    }
+
+    /**
+     * Sets how long CpuPlayers wait before each of their actions is applied.
+     * Safe to call from any thread.
+     *
+     * @param delayMs the delay in milliseconds, or a negative number to wait
+     *                {@code CPU_ACTION_DELAY_IN_SEC} if the game has human
+     *                players and not at all otherwise (the default).
+     * @modifies this
+     */
+    public void setCpuActionDelay(long delayMs) {
+        botScheduler.setDelay(delayMs < 0 ? BotScheduler.AUTOMATIC_DELAY : delayMs);
+    }
+
+    /**
+     * Returns whether any user was in the lobby when the current game started.
+     */
+    boolean hasHumanPlayers() {
+        return !usersInGame.isEmpty();
+    }
+
+    /**
+     * Returns the number of moves applied with {@code applyCommand()}.
+     */
+    long getMoveCount() {
+        return moveCount;
+    }
+
+    /**
+     * Returns the CpuPlayers in the current game, ordered by name.
+     */
+    Set<CpuPlayer> getCpuPlayers() {
+        return cpuPlayers;
+    }
+
+    /**
+     * Replaces the CpuPlayers in the current game.
+     *
+     * @param cpus the new CpuPlayers, linked to the current game's players.
+     * @modifies this
+     */
+    void setCpuPlayers(Collection<CpuPlayer> cpus) {
+        cpuPlayers.clear();
+        cpuPlayers.addAll(cpus);
+    }
+
+    // </editor-fold>
+
+    /////// Journal
+    // <editor-fold desc="Journal">
+
+    /**
+     * Starts recording this lobby's game events to a journal file.
+     *
+     * @param file the path of the journal file. Any existing file is replaced.
+     * @modifies this
+     * @effects writes a checkpoint of the lobby to {@code file}, then appends
+     *          every event of the current and future games to it. If the file
+     *          cannot be written, the error is logged and no journal is kept.
+     */
+    public void openJournal(Path file) {
+        closeJournal(false);
+        try {
+            journal = GameJournal.create(file, LobbyCodec.encode(this));
+        } catch (IOException e) {
+            logger.error("Failed to create game journal " + file + ".", e);
+            return;
+        }
+        if (game != null) {
+            game.setEventListener(this::onGameEvent);
+        }
+    }
+
+    /**
+     * Stops recording game events.
+     *
+     * @param delete if true, also deletes the journal file.
+     * @modifies this
+     */
+    public void closeJournal(boolean delete) {
+        if (journal == null) {
+            return;
+        }
+        if (game != null) {
+            game.setEventListener(null);
+        }
+        try {
+            if (delete) {
+                journal.delete();
+            } else {
+                journal.close();
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to close game journal " + journal.getFile() + ".", e);
+        }
+        journal = null;
+    }
+
+    /**
+     * Records an accepted game event in the journal.
+     */
+    private void onGameEvent(GameEvent event) {
+        version++;
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.append(version, event);
+        } catch (IOException e) {
+            logger.error("Failed to append to game journal " + journal.getFile() + ".", e);
+            closeJournal(false);
+            return;
+        }
+        if (journal.getEventCount() >= JOURNAL_CHECKPOINT_INTERVAL) {
+            checkpointJournal();
+        }
+    }
+
+    /**
+     * Replaces the journal with a checkpoint of the current state, if there is
+     * a journal.
+     */
+    void checkpointJournal() {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.checkpoint(LobbyCodec.encode(this));
+        } catch (IOException e) {
+            logger.error("Failed to checkpoint game journal " + journal.getFile() + ".", e);
+            closeJournal(false);
+        }
+    }
+
+    /**
+     * Recovers a lobby from a journal file.
+     *
+     * @param file the path of the journal file.
+     * @throws IOException if the file or its checkpoint cannot be read.
+     * @return the lobby from the journal's checkpoint, with every recorded event
+     *         replayed on its game. If an event cannot be replayed, the error is
+     *         logged and the events after it are ignored. The CpuPlayers
+     *         observe each replayed event ({@code CpuPlayer.update()} and
+     *         {@code CpuPlayer.replay()}), so their beliefs are rebuilt, but
+     *         their random state is as of the checkpoint.
+     */
+    public static Lobby recoverFromJournal(Path file) throws IOException {
+        GameJournal.Contents contents = GameJournal.read(file);
+        Lobby lobby = LobbyCodec.decode(contents.checkpoint());
+        List<GameEvent> events = contents.events();
+        for (int i = 0; i < events.size(); i++) {
+            try {
+                if (lobby.game == null) {
+                    throw new IllegalStateException("No game is in progress.");
+                }
+                lobby.game.apply(events.get(i));
+                if (!lobby.game.hasGameFinished()) {
+                    for (CpuPlayer cpu : lobby.cpuPlayers) {
+                        cpu.update(lobby.game);
+                        cpu.replay(lobby.game, events.get(i));
+                    }
+                }
+            } catch (RuntimeException e) {
+                logger.warn("Stopped replaying " + file + " at event " + i + " of " + events.size() + ".", e);
+                break;
+            }
+            lobby.version = contents.versions().get(i);
+        }
+        lobby.publishSnapshot();
+        return lobby;
+    }
+
     // </editor-fold>
 
 }
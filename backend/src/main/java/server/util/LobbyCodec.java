@@ -0,0 +1,93 @@
+package server.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Encodes lobbies in a compact binary snapshot format, used to store them in
+ * the database.
+ *
+ * Unlike Java serialization, the format carries no class descriptors: each
+ * class writes its own fields ({@code writeSnapshot()}) in a fixed order.
+ * Players are referred to by seat index rather than by name, decks are packed
+ * as bits, and CPU role beliefs are stored as arrays of floats.
+ *
+ * Every snapshot starts with {@code MAGIC} and {@code SCHEMA_ID}. The schema
+ * ID must be incremented whenever the layout changes, and older layouts should
+ * either be kept readable or rejected explicitly by {@code decode()}.
+ */
+public class LobbyCodec {
+
+    // "SHLB"; cannot be mistaken for a Java serialization stream (0xACED).
+    static final int MAGIC = 0x53484C42;
+    // 1: initial layout.
+    // 2: adds the state of the game's random number generator.
+    // 3: adds the state of each CpuPlayer's random number generator.
+    // 4: replaces CpuPlayer reputations with role beliefs.
+    public static final int SCHEMA_ID = 4;
+    private static final int MIN_SCHEMA_ID = 1;
+
+    /**
+     * Encodes a lobby as a binary snapshot.
+     *
+     * @param lobby the lobby to encode.
+     * @throws IOException if the lobby cannot be encoded.
+     * @return the snapshot of the lobby, starting with the magic number and
+     *         schema ID.
+     */
+    public static byte[] encode(Lobby lobby) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeShort(SCHEMA_ID);
+            lobby.writeSnapshot(out);
+        } catch (RuntimeException e) {
+            throw new IOException("Failed to encode lobby.", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes a lobby from a binary snapshot.
+     *
+     * @param bytes a snapshot returned by {@code encode()}.
+     * @throws IOException if {@code bytes} is not a snapshot, has an
+     *                     unsupported schema ID, or is malformed.
+     * @return a new Lobby in the state that was encoded, with no connected
+     *         users.
+     */
+    public static Lobby decode(byte[] bytes) throws IOException {
+        if (!isSnapshot(bytes)) {
+            throw new IOException("Data is not a lobby snapshot.");
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            in.readInt(); // magic
+            int schemaId = in.readUnsignedShort();
+            if (schemaId < MIN_SCHEMA_ID || schemaId > SCHEMA_ID) {
+                throw new IOException("Unsupported lobby snapshot schema " + schemaId + ".");
+            }
+            Lobby lobby = Lobby.readSnapshot(in, schemaId);
+            if (in.available() > 0) {
+                throw new IOException("Unexpected data after lobby snapshot.");
+            }
+            return lobby;
+        } catch (RuntimeException e) {
+            throw new IOException("Malformed lobby snapshot.", e);
+        }
+    }
+
+    /**
+     * Checks whether data was written by {@code encode()}.
+     *
+     * @param bytes the data to check.
+     * @return true if {@code bytes} starts with the snapshot magic number.
+     */
+    public static boolean isSnapshot(byte[] bytes) {
+        return bytes.length >= 6
+                && ((bytes[0] & 0xFF) << 24 | (bytes[1] & 0xFF) << 16 | (bytes[2] & 0xFF) << 8
+                        | (bytes[3] & 0xFF)) == MAGIC;
+    }
+}
@@ -0,0 +1,163 @@
+package server.util;
+
+import game.DeterminizedSearch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import server.ApplicationConfig;
+import server.ApplicationConfig.ExecutionMode;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the mailboxes that lobby work (websocket commands, updates and CPU
+ * ticks) runs through, according to {@code ApplicationConfig.EXECUTION_MODE}.
+ * Every lobby gets its own SerialExecutor with a mailbox of
+ * {@code ApplicationConfig.LOBBY_MAILBOX_SIZE} tasks; the mode decides which
+ * threads run it.
+ *
+ * - DIRECT: work runs on the submitting thread (the Jetty websocket thread, or
+ * the scheduler thread for CPU ticks). If another thread is already running
+ * the lobby's work, the task is left for that thread to run.
+ * - PLATFORM: each lobby gets a SerialExecutor backed by a shared fixed pool
+ * of {@code ApplicationConfig.LOBBY_THREADS} platform threads.
+ * - VIRTUAL: each lobby gets a SerialExecutor backed by virtual threads. If
+ * the JVM does not support virtual threads (Java 20 and older), falls back to
+ * PLATFORM, with a warning logged at startup ({@code start()}).
+ *
+ * CPU players choose their actions on a separate pool, so that a lobby keeps
+ * handling commands while its CPUs think (see {@code getBotExecutor()} and
+ * BotScheduler). CPU player search runs its rollouts on another pool, so a
+ * lobby with a searching CPU only waits out the search's time budget rather
+ * than competing with other lobbies for threads (see {@code getBotSearch()}).
+ */
+public class LobbyExecutors {
+
+    private static final Logger logger = LoggerFactory.getLogger(LobbyExecutors.class);
+
+    private static final Executor DIRECT_EXECUTOR = Runnable::run;
+
+    // Created on first use, so that DIRECT mode never starts any threads.
+    private static Executor sharedBacking;
+
+    // Created on first use, if enabled.
+    private static DeterminizedSearch botSearch;
+
+    // Created on first use.
+    private static Executor botExecutor;
+
+    /**
+     * Creates an executor for a single lobby.
+     *
+     * @return an executor that runs the lobby's tasks one at a time, in the
+     *         order they were submitted.
+     */
+    public static SerialExecutor newLobbyExecutor() {
+        Executor backing = ApplicationConfig.EXECUTION_MODE == ExecutionMode.DIRECT ? DIRECT_EXECUTOR
+                : getSharedBacking();
+        return new SerialExecutor(backing, ApplicationConfig.LOBBY_MAILBOX_SIZE);
+    }
+
+    /**
+     * Gets the search shared by every CpuPlayer.
+     *
+     * Rollouts run on a pool of {@code ApplicationConfig.BOT_SEARCH_THREADS}
+     * low-priority threads, separate from the threads that run lobby work. The
+     * pool only queues a few decisions' worth of rollouts, and rejects more, so
+     * CPU players fall back to their heuristics instead of queueing up when
+     * many bot lobbies are searching at once.
+     *
+     * @return the search, or null if search is disabled.
+     */
+    synchronized public static DeterminizedSearch getBotSearch() {
+        if (botSearch == null && ApplicationConfig.BOT_SEARCH_THREADS > 0) {
+            int threads = ApplicationConfig.BOT_SEARCH_THREADS;
+            AtomicInteger threadCount = new AtomicInteger();
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(threads * 2), runnable -> {
+                        Thread thread = new Thread(runnable, "bot-search-" + threadCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        thread.setPriority(Thread.MIN_PRIORITY);
+                        return thread;
+                    });
+            botSearch = new DeterminizedSearch(pool, threads, ApplicationConfig.BOT_SEARCH_BUDGET_MS);
+        }
+        return botSearch;
+    }
+
+    /**
+     * Gets the executor that CPU players choose their actions on, shared by
+     * every lobby.
+     *
+     * Runs tasks on a fixed pool of {@code ApplicationConfig.BOT_THREADS}
+     * daemon threads, in every execution mode, so that choosing an action
+     * never runs on (or recurses into) the lobby's own executor.
+     *
+     * @return the executor.
+     */
+    synchronized public static Executor getBotExecutor() {
+        if (botExecutor == null) {
+            AtomicInteger threadCount = new AtomicInteger();
+            botExecutor = Executors.newFixedThreadPool(Math.max(1, ApplicationConfig.BOT_THREADS), runnable -> {
+                Thread thread = new Thread(runnable, "bot-turn-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return botExecutor;
+    }
+
+    /**
+     * Creates the threads for lobby work, if the execution mode uses a shared
+     * pool. Called at startup, so that a fallback from VIRTUAL to PLATFORM is
+     * logged before any lobby is created.
+     */
+    public static void start() {
+        if (ApplicationConfig.EXECUTION_MODE != ExecutionMode.DIRECT) {
+            getSharedBacking();
+        }
+    }
+
+    synchronized private static Executor getSharedBacking() {
+        if (sharedBacking == null) {
+            if (ApplicationConfig.EXECUTION_MODE == ExecutionMode.VIRTUAL) {
+                sharedBacking = tryCreateVirtualThreadExecutor();
+            }
+            if (sharedBacking == null) {
+                sharedBacking = createPlatformThreadExecutor();
+            }
+        }
+        return sharedBacking;
+    }
+
+    private static ExecutorService createPlatformThreadExecutor() {
+        AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newFixedThreadPool(ApplicationConfig.LOBBY_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "lobby-worker-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Creates a virtual-thread-per-task executor, which requires Java 21 or
+     * newer. Looked up reflectively so that the server still builds and runs on
+     * older JVMs.
+     *
+     * @return the executor, or null if virtual threads are not available.
+     */
+    private static ExecutorService tryCreateVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            logger.warn("Virtual threads are not supported by this JVM ({}). Using platform threads instead.",
+                    System.getProperty("java.version"));
+            return null;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package server.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import server.ApplicationConfig;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A single scheduler shared by every lobby and the server, used for delayed
+ * and periodic tasks (user timeouts, CPU ticks, lobby cleanup).
+ *
+ * Tasks are run on a small fixed pool of daemon threads
+ * ({@code ApplicationConfig.SCHEDULER_THREADS}), so the number of threads does
+ * not grow with the number of lobbies. Each scheduled task returns a
+ * ScheduledFuture that can be cancelled; cancelled tasks are removed from the
+ * queue immediately.
+ */
+public class LobbyScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(LobbyScheduler.class);
+
+    private static final ScheduledThreadPoolExecutor executor = createExecutor();
+
+    private static ScheduledThreadPoolExecutor createExecutor() {
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "lobby-scheduler-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(ApplicationConfig.SCHEDULER_THREADS,
+                threadFactory);
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    /**
+     * Runs a task once after a delay.
+     *
+     * @param task    the task to run.
+     * @param delayMs the delay before running the task, in milliseconds.
+     * @return a handle that can be used to cancel the task.
+     */
+    public static ScheduledFuture<?> schedule(Runnable task, long delayMs) {
+        return executor.schedule(logExceptions(task), delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Runs a task repeatedly at a fixed rate.
+     *
+     * @param task     the task to run.
+     * @param delayMs  the delay before the first run, in milliseconds.
+     * @param periodMs the time between the start of each run, in milliseconds.
+     * @return a handle that can be used to cancel the task.
+     * @effects if a run of the task throws an exception, the exception is
+     *          logged and later runs still take place.
+     */
+    public static ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long delayMs, long periodMs) {
+        return executor.scheduleAtFixedRate(logExceptions(task), delayMs, periodMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Cancels a scheduled task if it has not run yet.
+     *
+     * @param handle the handle returned when the task was scheduled. Ignored if
+     *               null.
+     */
+    public static void cancel(ScheduledFuture<?> handle) {
+        if (handle != null) {
+            handle.cancel(false);
+        }
+    }
+
+    /**
+     * Wraps a task so that exceptions are logged rather than silently
+     * cancelling it.
+     */
+    private static Runnable logExceptions(Runnable task) {
+        return () -> {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                logger.error("Scheduled task failed.", e);
+            }
+        };
+    }
+}
@@ -0,0 +1,75 @@
+package server.util;
+
+import game.SecretHitlerGame;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An immutable view of the membership of a Lobby, published by the lobby after
+ * every change so that it can be read from any thread without locking (for
+ * example, by HTTP login checks).
+ *
+ * The snapshot may be slightly out of date; decisions that must be exact (such
+ * as actually adding a user) are made again by the lobby itself.
+ */
+public class LobbySnapshot {
+
+    private final boolean inGame;
+    private final Set<String> activeUsernames;
+    private final Set<String> connectedUsernames;
+    private final Set<String> usersInGame;
+    private final List<String> userNames;
+
+    LobbySnapshot(boolean inGame, Set<String> activeUsernames, Set<String> connectedUsernames,
+            Set<String> usersInGame, List<String> userNames) {
+        this.inGame = inGame;
+        this.activeUsernames = Collections.unmodifiableSet(activeUsernames);
+        this.connectedUsernames = Collections.unmodifiableSet(connectedUsernames);
+        this.usersInGame = Collections.unmodifiableSet(usersInGame);
+        this.userNames = Collections.unmodifiableList(userNames);
+    }
+
+    /**
+     * See {@code Lobby.isInGame()}.
+     */
+    public boolean isInGame() {
+        return inGame;
+    }
+
+    /**
+     * See {@code Lobby.isFull()}.
+     */
+    public boolean isFull() {
+        return activeUsernames.size() >= SecretHitlerGame.MAX_PLAYERS;
+    }
+
+    /**
+     * See {@code Lobby.hasUserWithName()}.
+     */
+    public boolean hasUserWithName(String name) {
+        return connectedUsernames.contains(name);
+    }
+
+    /**
+     * See {@code Lobby.canAddUserDuringGame()}.
+     */
+    public boolean canAddUserDuringGame(String name) {
+        return usersInGame.contains(name) && !activeUsernames.contains(name);
+    }
+
+    /**
+     * See {@code Lobby.getUserCount()}.
+     */
+    public int getUserCount() {
+        return activeUsernames.size();
+    }
+
+    /**
+     * See {@code Lobby.getUserNames()}.
+     */
+    public List<String> getUserNames() {
+        return userNames;
+    }
+}
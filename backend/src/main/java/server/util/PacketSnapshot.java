@@ -0,0 +1,112 @@
+package server.util;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An immutable copy of an outbound packet, where each top-level field has
+ * already been serialized to JSON text.
+ *
+ * Snapshots are compared field-by-field by the {@code DeltaEncoder} to find
+ * which parts of the game state changed since the last packet a user received.
+ */
+public class PacketSnapshot {
+
+    // Maps each top-level field to its serialized JSON value. Insertion order
+    // is preserved so full packets are written in a stable order.
+    private final Map<String, String> fields;
+
+    /**
+     * Constructs a new PacketSnapshot from the given serialized fields.
+     *
+     * @param fields a map from each top-level field name to its value, already
+     *               serialized as JSON text.
+     */
+    public PacketSnapshot(Map<String, String> fields) {
+        this.fields = Collections.unmodifiableMap(new LinkedHashMap<>(fields));
+    }
+
+    /**
+     * Creates a snapshot from a JSONObject.
+     *
+     * @param packet the packet to copy.
+     * @return a PacketSnapshot with one entry for each top-level key of
+     *         {@code packet}.
+     */
+    public static PacketSnapshot of(JSONObject packet) {
+        Map<String, String> fields = new LinkedHashMap<>();
+        for (String key : packet.keySet()) {
+            fields.put(key, JSONObject.valueToString(packet.opt(key)));
+        }
+        return new PacketSnapshot(fields);
+    }
+
+    /**
+     * Gets the serialized fields of this snapshot.
+     *
+     * @return an unmodifiable map from field names to serialized JSON values.
+     */
+    public Map<String, String> getFields() {
+        return fields;
+    }
+
+    /**
+     * Serializes the full snapshot as a JSON object.
+     *
+     * @param extraKey   the name of an additional field to append. Ignored if
+     *                   null.
+     * @param extraValue the serialized JSON value of the additional field.
+     * @return the snapshot as JSON text.
+     */
+    public String toJSON(String extraKey, String extraValue) {
+        return PacketWriter.write(generator -> writeTo(generator, extraKey, extraValue));
+    }
+
+    /**
+     * Writes the full snapshot as a JSON object.
+     *
+     * @param generator  the generator to write to.
+     * @param extraKey   the name of an additional field to append. Ignored if
+     *                   null.
+     * @param extraValue the serialized JSON value of the additional field.
+     * @throws IOException if the generator cannot be written to.
+     */
+    public void writeTo(JsonGenerator generator, String extraKey, String extraValue) throws IOException {
+        generator.writeStartObject();
+        for (Map.Entry<String, String> entry : fields.entrySet()) {
+            generator.writeFieldName(entry.getKey());
+            generator.writeRawValue(entry.getValue());
+        }
+        if (extraKey != null) {
+            generator.writeFieldName(extraKey);
+            generator.writeRawValue(extraValue);
+        }
+        generator.writeEndObject();
+    }
+
+    /**
+     * Gets the approximate length of this snapshot as JSON text.
+     *
+     * @return the number of characters in the serialized snapshot, assuming no
+     *         field names need to be escaped.
+     */
+    public int getLength() {
+        int length = 2; // {}
+        for (Map.Entry<String, String> entry : fields.entrySet()) {
+            length += getFieldLength(entry.getKey(), entry.getValue()) + 1;
+        }
+        return length;
+    }
+
+    /**
+     * Gets the approximate length of a single {@code "key":value} pair.
+     */
+    static int getFieldLength(String key, String value) {
+        return key.length() + 3 + value.length();
+    }
+}
@@ -0,0 +1,189 @@
+package server.util;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import io.javalin.websocket.WsContext;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import server.SecretHitlerServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Writes outbound packets as UTF-8 JSON directly into a reusable byte buffer,
+ * using a streaming Jackson {@code JsonGenerator}.
+ *
+ * Buffers are pooled and reused between packets, so sending a packet does not
+ * allocate an intermediate JSONObject or String. Clients that support
+ * {@code SecretHitlerServer.PROTOCOL_BINARY} are sent the buffer as a binary
+ * frame. Older clients are sent the same bytes as a text frame.
+ *
+ * Packets are encoded into a Frame ({@code encode()}), which is sent
+ * asynchronously by the connection's ConnectionOutbox.
+ */
+public class PacketWriter {
+
+    /**
+     * Writes the body of a packet.
+     */
+    public interface Body {
+        /**
+         * Writes a complete JSON value to the generator.
+         *
+         * @param generator the generator to write the packet to.
+         * @throws IOException if the generator cannot be written to.
+         */
+        void write(JsonGenerator generator) throws IOException;
+    }
+
+    private static final JsonFactory FACTORY = new JsonFactory()
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+    // Buffers larger than this are not returned to the pool, so that a single
+    // large packet does not hold on to memory indefinitely.
+    private static final int MAX_POOLED_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_POOLED_BUFFERS = 32;
+    private static final Queue<Buffer> pool = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Writes a packet into a Frame that can be sent asynchronously.
+     *
+     * @param protocolVersion the packet protocol version supported by the
+     *                        connection the frame will be sent to.
+     * @param body            writes the contents of the packet.
+     * @throws UncheckedIOException if the packet could not be written.
+     * @return a binary Frame if {@code protocolVersion} is at least
+     *         {@code SecretHitlerServer.PROTOCOL_BINARY}, and a text Frame
+     *         otherwise. The frame must be released once it has been sent.
+     */
+    public static Frame encode(int protocolVersion, Body body) {
+        Buffer buffer = acquire();
+        try {
+            writeTo(buffer, body);
+        } catch (RuntimeException e) {
+            release(buffer);
+            throw e;
+        }
+        if (protocolVersion >= SecretHitlerServer.PROTOCOL_BINARY) {
+            return new Frame(buffer, null);
+        }
+        String text = buffer.toString(StandardCharsets.UTF_8);
+        release(buffer);
+        return new Frame(null, text);
+    }
+
+    /**
+     * Writes a packet to a String.
+     *
+     * @param body writes the contents of the packet.
+     * @throws UncheckedIOException if the packet could not be written.
+     * @return the JSON text of the packet.
+     */
+    public static String write(Body body) {
+        Buffer buffer = acquire();
+        try {
+            writeTo(buffer, body);
+            return buffer.toString(StandardCharsets.UTF_8);
+        } finally {
+            release(buffer);
+        }
+    }
+
+    private static void writeTo(Buffer buffer, Body body) {
+        try (JsonGenerator generator = FACTORY.createGenerator(buffer, JsonEncoding.UTF8)) {
+            body.write(generator);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write packet.", e);
+        }
+    }
+
+    private static Buffer acquire() {
+        Buffer buffer = pool.poll();
+        if (buffer == null) {
+            buffer = new Buffer();
+        }
+        buffer.reset();
+        return buffer;
+    }
+
+    private static void release(Buffer buffer) {
+        // The size check is approximate under contention, which only means the
+        // pool may briefly hold a few extra buffers.
+        if (buffer.capacity() <= MAX_POOLED_BUFFER_SIZE && pool.size() < MAX_POOLED_BUFFERS) {
+            pool.offer(buffer);
+        }
+    }
+
+    /**
+     * An encoded packet waiting to be sent. Binary frames hold a pooled buffer
+     * until they are released.
+     */
+    public static class Frame {
+        private Buffer buffer;
+        private final String text;
+
+        private Frame(Buffer buffer, String text) {
+            this.buffer = buffer;
+            this.text = text;
+        }
+
+        /**
+         * Gets the size of the frame's payload.
+         *
+         * @return the number of bytes in a binary frame, or the number of
+         *         characters in a text frame.
+         */
+        public int getLength() {
+            return buffer != null ? buffer.size() : text.length();
+        }
+
+        /**
+         * Sends the frame without blocking.
+         *
+         * @param ctx      the websocket connection to send the frame to.
+         * @param callback notified when the frame has been written or the write
+         *                 has failed. May be called before this method returns.
+         */
+        public void sendAsync(WsContext ctx, WriteCallback callback) {
+            if (buffer != null) {
+                ctx.session.getRemote().sendBytes(buffer.asByteBuffer(), callback);
+            } else {
+                ctx.session.getRemote().sendString(text, callback);
+            }
+        }
+
+        /**
+         * Returns the frame's buffer to the pool. The frame cannot be sent
+         * afterward.
+         */
+        public void release() {
+            if (buffer != null) {
+                PacketWriter.release(buffer);
+                buffer = null;
+            }
+        }
+    }
+
+    /**
+     * A byte array output stream that exposes its contents without copying.
+     */
+    private static class Buffer extends ByteArrayOutputStream {
+        Buffer() {
+            super(1024);
+        }
+
+        ByteBuffer asByteBuffer() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+
+        int capacity() {
+            return buf.length;
+        }
+    }
+}
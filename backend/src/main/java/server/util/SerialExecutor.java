@@ -0,0 +1,163 @@
+package server.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An executor that runs tasks one at a time, in the order they were submitted,
+ * on threads borrowed from a shared backing executor.
+ *
+ * A SerialExecutor holds no thread of its own, so one can be created for every
+ * lobby. A thread is only used while the executor has queued tasks. If the
+ * backing executor runs tasks on the calling thread, the first thread to submit
+ * a task runs the queue, and threads that submit while it is running only
+ * enqueue their task. That thread keeps running the queue until it is empty,
+ * without growing its stack.
+ *
+ * The queue (mailbox) has a soft capacity: {@code offer()} refuses tasks once
+ * it is full, while {@code execute()} always accepts them. This lets callers
+ * shed external load without dropping internal events.
+ */
+public class SerialExecutor implements Executor {
+
+    // The maximum number of tasks run before the thread is handed back to the
+    // backing executor, so that a busy lobby cannot starve the others.
+    private static final int MAX_TASKS_PER_RUN = 64;
+
+    private static final Logger logger = LoggerFactory.getLogger(SerialExecutor.class);
+
+    // The SerialExecutor whose drain() is running on the current thread, if any.
+    private static final ThreadLocal<SerialExecutor> draining = new ThreadLocal<>();
+
+    private final Executor backing;
+    private final Queue<Runnable> tasks;
+    private final AtomicBoolean scheduled;
+    private final AtomicInteger queuedTaskCount;
+    private final int capacity;
+    // Set when the backing executor ran drain() inline, from the end of a
+    // drain() on the same thread. Only accessed by the draining thread.
+    private boolean drainRequested;
+
+    /**
+     * Constructs a new SerialExecutor with an unbounded mailbox.
+     *
+     * @param backing the executor that tasks are run on.
+     */
+    public SerialExecutor(Executor backing) {
+        this(backing, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Constructs a new SerialExecutor.
+     *
+     * @param backing  the executor that tasks are run on.
+     * @param capacity the number of queued tasks at which {@code offer()}
+     *                 starts refusing tasks.
+     */
+    public SerialExecutor(Executor backing, int capacity) {
+        this.backing = backing;
+        this.tasks = new ConcurrentLinkedQueue<>();
+        this.scheduled = new AtomicBoolean(false);
+        this.queuedTaskCount = new AtomicInteger();
+        this.capacity = capacity;
+    }
+
+    /**
+     * Queues a task to run after every previously submitted task, regardless of
+     * the capacity of the mailbox.
+     *
+     * @param task the task to run.
+     * @effects if the task throws an exception, it is logged and later tasks
+     *          still run.
+     */
+    @Override
+    public void execute(Runnable task) {
+        queuedTaskCount.incrementAndGet();
+        tasks.add(task);
+        scheduleDrain();
+    }
+
+    /**
+     * Queues a task to run after every previously submitted task, if the
+     * mailbox is not full.
+     *
+     * @param task the task to run.
+     * @return true if the task was queued, or false if the mailbox already held
+     *         {@code capacity} or more tasks.
+     */
+    public boolean offer(Runnable task) {
+        if (queuedTaskCount.incrementAndGet() > capacity) {
+            queuedTaskCount.decrementAndGet();
+            return false;
+        }
+        tasks.add(task);
+        scheduleDrain();
+        return true;
+    }
+
+    /**
+     * Gets the number of tasks waiting to run.
+     */
+    public int getQueuedTaskCount() {
+        return queuedTaskCount.get();
+    }
+
+    private void scheduleDrain() {
+        if (scheduled.compareAndSet(false, true)) {
+            try {
+                backing.execute(this::drain);
+            } catch (RuntimeException e) {
+                scheduled.set(false);
+                throw e;
+            }
+        }
+    }
+
+    private void drain() {
+        SerialExecutor outer = draining.get();
+        if (outer == this) {
+            // The backing executor runs tasks inline, and was called from the
+            // end of drain() below: let that call loop instead of recursing.
+            drainRequested = true;
+            return;
+        }
+        draining.set(this);
+        try {
+            do {
+                drainRequested = false;
+                runTasks();
+            } while (drainRequested);
+        } finally {
+            draining.set(outer);
+        }
+    }
+
+    private void runTasks() {
+        try {
+            for (int i = 0; i < MAX_TASKS_PER_RUN; i++) {
+                Runnable task = tasks.poll();
+                if (task == null) {
+                    break;
+                }
+                queuedTaskCount.decrementAndGet();
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    logger.error("Lobby task failed.", e);
+                }
+            }
+        } finally {
+            scheduled.set(false);
+            // Tasks may have been added after the last poll.
+            if (!tasks.isEmpty()) {
+                scheduleDrain();
+            }
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package game;
+
+import game.datastructures.Player;
+import game.util.GameRandom;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Helpers shared by the tests that play and compare games.
+ */
+public class GameTestUtil {
+
+    /**
+     * Gets the binary snapshot of a game ({@code SecretHitlerGame.writeSnapshot()}),
+     * for comparing games.
+     */
+    public static byte[] snapshotOf(SecretHitlerGame game) throws IOException {
+        // getState() records policy victories, so games that are otherwise
+        // identical only match once it has been called.
+        game.getState();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            game.writeSnapshot(out);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Creates a seeded CpuPlayer for every player of a game, so that the game
+     * can be played with {@code CpuPlayer.playMove()} or
+     * {@code CpuPlayer.playOut()}. The same seed on the same game gives the
+     * same moves.
+     */
+    public static List<CpuPlayer> makeCpus(SecretHitlerGame game, long seed) {
+        GameRandom random = new GameRandom(seed);
+        List<CpuPlayer> cpus = new ArrayList<>();
+        for (Player player : game.getPlayerList()) {
+            CpuPlayer cpu = new CpuPlayer(player.getUsername(), random.split());
+            cpu.initialize(game);
+            cpus.add(cpu);
+        }
+        return cpus;
+    }
+}
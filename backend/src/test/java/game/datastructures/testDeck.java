@@ -0,0 +1,88 @@
+package game.datastructures;
+
+import game.util.GameRandom;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static junit.framework.TestCase.*;
+
+public class testDeck {
+
+    private static Policy.Type typeOf(int i) {
+        return i % 3 == 0 ? Policy.Type.LIBERAL : Policy.Type.FASCIST;
+    }
+
+    private static List<Policy.Type> typesOf(Deck deck) {
+        List<Policy.Type> types = new ArrayList<>();
+        for (int i = 0; i < deck.getSize(); i++) {
+            types.add(deck.peek(i).getType());
+        }
+        return types;
+    }
+
+    @Test
+    public void testAddAndRemoveFromTop() {
+        Deck deck = new Deck();
+        assertTrue(deck.isEmpty());
+        for (int i = 0; i < 17; i++) {
+            deck.add(Policy.of(typeOf(i)));
+            assertEquals(typeOf(i), deck.peek(0).getType());
+        }
+        assertEquals(17, deck.getSize());
+        assertEquals(6, deck.getLiberalCount());
+        assertEquals(11, deck.getFascistCount());
+
+        for (int i = 16; i >= 0; i--) {
+            assertEquals(typeOf(i), deck.remove().getType());
+        }
+        assertTrue(deck.isEmpty());
+        try {
+            deck.remove();
+            fail("Removing from an empty deck should fail.");
+        } catch (IndexOutOfBoundsException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testAddAllMatchesMovingOneAtATime() {
+        Deck draw = new Deck();
+        Deck discard = new Deck();
+        Deck expected = new Deck();
+        for (int i = 0; i < 5; i++) {
+            draw.add(Policy.of(typeOf(i)));
+            expected.add(Policy.of(typeOf(i)));
+        }
+        for (int i = 0; i < 7; i++) {
+            discard.add(Policy.of(typeOf(i + 1)));
+        }
+        Deck discardCopy = new Deck(discard);
+        while (!discardCopy.isEmpty()) {
+            expected.add(discardCopy.remove());
+        }
+
+        draw.addAll(discard);
+        assertTrue(discard.isEmpty());
+        assertEquals(typesOf(expected), typesOf(draw));
+    }
+
+    @Test
+    public void testShuffleMatchesCollectionsShuffle() {
+        Deck deck = new Deck();
+        List<Policy.Type> list = new ArrayList<>();
+        for (int i = 0; i < 17; i++) {
+            deck.add(Policy.of(typeOf(i)));
+        }
+        list.addAll(typesOf(deck));
+
+        for (long seed = 0; seed < 20; seed++) {
+            deck.shuffle(new GameRandom(seed));
+            Collections.shuffle(list, new GameRandom(seed));
+            assertEquals(list, typesOf(deck));
+            assertEquals(6, deck.getLiberalCount());
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package game.simulation;
+
+import game.GameState;
+import game.SecretHitlerGame;
+import org.junit.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static junit.framework.TestCase.*;
+
+public class testGameSimulator {
+
+    @Test
+    public void testSameGameForSameSeed() {
+        for (long seed = 0; seed < 50; seed++) {
+            GameSimulator.GameResult first = GameSimulator.playGame(7, seed);
+            assertTrue(first.outcome().ordinal() >= GameState.LIBERAL_VICTORY_POLICY.ordinal());
+            assertEquals(first, GameSimulator.playGame(7, seed));
+        }
+    }
+
+    @Test
+    public void testReportDoesNotDependOnThreadCount() {
+        int games = 600;
+        ForkJoinPool single = new ForkJoinPool(1);
+        ForkJoinPool parallel = new ForkJoinPool(4);
+        try {
+            SimulationReport first = GameSimulator.simulate(single, games, SecretHitlerGame.MIN_PLAYERS,
+                    SecretHitlerGame.MAX_PLAYERS, 99);
+            SimulationReport second = GameSimulator.simulate(parallel, games, SecretHitlerGame.MIN_PLAYERS,
+                    SecretHitlerGame.MAX_PLAYERS, 99);
+
+            assertEquals(games, first.getGameCount());
+            assertEquals(first.getMeanMoves(), second.getMeanMoves());
+            assertEquals(first.getMeanRounds(), second.getMeanRounds());
+            long roundTotal = 0;
+            for (int rounds = 0; rounds <= SimulationReport.MAX_ROUNDS; rounds++) {
+                assertEquals(first.getRoundCount(rounds), second.getRoundCount(rounds));
+                roundTotal += first.getRoundCount(rounds);
+            }
+            assertEquals(games, roundTotal);
+
+            for (int players = SecretHitlerGame.MIN_PLAYERS; players <= SecretHitlerGame.MAX_PLAYERS; players++) {
+                assertEquals(games / 6, first.getGameCount(players));
+                long outcomeTotal = 0;
+                for (GameState state : GameState.values()) {
+                    assertEquals(first.getOutcomeCount(players, state), second.getOutcomeCount(players, state));
+                    outcomeTotal += first.getOutcomeCount(players, state);
+                }
+                assertEquals(first.getGameCount(players), outcomeTotal);
+            }
+        } finally {
+            single.shutdown();
+            parallel.shutdown();
+        }
+    }
+}
@@ -2,6 +2,7 @@ package game;
 
 import game.datastructures.Identity;
 import game.datastructures.Player;
+import game.util.GameRandom;
 import org.junit.Test;
 import org.junit.Rule;
 import org.junit.rules.Timeout;
@@ -211,4 +212,40 @@ public class testCpuPlayer {
         + (winTypes.get(state) * 1f / ITERATIONS * 100f) + "%");
     }
   }
+
+  private List<GameEvent> playSeededGame(long seed) {
+    List<String> players = makePlayers(7);
+    SecretHitlerGame game = new SecretHitlerGame(players, seed);
+    List<GameEvent> events = new ArrayList<>();
+    game.setEventListener(events::add);
+
+    GameRandom random = new GameRandom(seed);
+    List<CpuPlayer> cpus = new ArrayList<>();
+    for (String player : players) {
+      CpuPlayer cpu = new CpuPlayer(player, random.split());
+      cpu.initialize(game);
+      cpus.add(cpu);
+    }
+
+    while (!game.hasGameFinished()) {
+      for (CpuPlayer cpu : cpus) {
+        cpu.update(game);
+      }
+      for (CpuPlayer cpu : cpus) {
+        if (cpu.act(game)) {
+          break;
+        }
+      }
+    }
+    return events;
+  }
+
+  @Test
+  public void testSeededGameIsReproducible() {
+    for (long seed = 0; seed < 100; seed++) {
+      List<GameEvent> first = playSeededGame(seed);
+      assertFalse(first.isEmpty());
+      assertEquals(first, playSeededGame(seed));
+    }
+  }
 }
@@ -0,0 +1,79 @@
+package game;
+
+import game.datastructures.Player;
+import game.util.GameRandom;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static junit.framework.TestCase.*;
+
+public class testDeterminizedSearch {
+
+    private static List<String> makePlayers(int numPlayers) {
+        List<String> out = new ArrayList<>();
+        for (int i = 0; i < numPlayers; i++) {
+            out.add(Integer.toString(i));
+        }
+        return out;
+    }
+
+    /**
+     * Plays a game to the end, with CpuPlayers that use the given search.
+     */
+    private static void playWithSearch(SecretHitlerGame game, DeterminizedSearch search) {
+        GameRandom random = new GameRandom(7);
+        List<CpuPlayer> cpus = new ArrayList<>();
+        for (Player player : game.getPlayerList()) {
+            CpuPlayer cpu = new CpuPlayer(player.getUsername(), random.split());
+            cpu.initialize(game);
+            cpu.setSearch(search);
+            cpus.add(cpu);
+        }
+        for (int moves = 0; !game.hasGameFinished(); moves++) {
+            assertTrue("The game did not end.", moves < 1000);
+            for (CpuPlayer cpu : cpus) {
+                cpu.update(game);
+            }
+            boolean acted = false;
+            for (CpuPlayer cpu : cpus) {
+                if (cpu.act(game)) {
+                    acted = true;
+                    break;
+                }
+            }
+            assertTrue(acted || game.hasGameFinished());
+        }
+    }
+
+    @Test
+    public void testCpuPlayersWithSearchFinishGame() {
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            DeterminizedSearch search = new DeterminizedSearch(pool, 2, 2);
+            SecretHitlerGame game = new SecretHitlerGame(makePlayers(7), 11);
+            playWithSearch(game, search);
+            assertTrue(game.hasGameFinished());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFallsBackToHeuristicsWhenPoolRejects() {
+        ExecutorService pool = Executors.newFixedThreadPool(1);
+        pool.shutdown(); // rejects every task
+        DeterminizedSearch search = new DeterminizedSearch(pool, 1, 50);
+        SecretHitlerGame game = new SecretHitlerGame(makePlayers(5), 2);
+        CpuPlayer cpu = new CpuPlayer("0", new GameRandom(1));
+        cpu.initialize(game);
+
+        assertEquals(-1, search.search(game, cpu, 2, (fork, i) -> {
+        }));
+        playWithSearch(game, search);
+        assertTrue(game.hasGameFinished());
+    }
+}
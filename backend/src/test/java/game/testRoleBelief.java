@@ -0,0 +1,143 @@
+package game;
+
+import game.datastructures.Identity;
+import game.datastructures.Policy;
+import game.util.GameRandom;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import static junit.framework.TestCase.*;
+
+public class testRoleBelief {
+
+    private static final float EPSILON = 0.0001f;
+
+    @Test
+    public void testUniformBeliefMatchesRoleCounts() {
+        assertEquals(20, new RoleBelief(5).getAssignmentCount());
+        assertEquals(840, new RoleBelief(10).getAssignmentCount());
+
+        for (int players = SecretHitlerGame.MIN_PLAYERS; players <= SecretHitlerGame.MAX_PLAYERS; players++) {
+            RoleBelief belief = new RoleBelief(players);
+            float fascists = 0;
+            float hitlers = 0;
+            for (int seat = 0; seat < players; seat++) {
+                assertEquals(belief.getPriorFascistProbability(), belief.getFascistProbability(seat), EPSILON);
+                fascists += belief.getFascistProbability(seat);
+                hitlers += belief.getHitlerProbability(seat);
+            }
+            assertEquals(SecretHitlerGame.NUM_FASCISTS_FOR_PLAYERS[players] + 1, fascists, EPSILON);
+            assertEquals(1, hitlers, EPSILON);
+        }
+    }
+
+    @Test
+    public void testSampledRolesAreConsistentWithKnownRoles() {
+        RoleBelief belief = new RoleBelief(9);
+        belief.observeRole(0, Identity.LIBERAL);
+        belief.observeParty(4, true); // from an investigation, so may be Hitler
+        belief.observeNotHitler(7);
+        belief.weigh(2, 1, 0.1f);
+
+        GameRandom random = new GameRandom(1);
+        int seat2Fascist = 0;
+        int seat4Hitler = 0;
+        for (int i = 0; i < 500; i++) {
+            Identity[] roles = belief.sample(random);
+            int hitlers = 0;
+            int fascists = 0;
+            for (Identity role : roles) {
+                if (role == Identity.HITLER) {
+                    hitlers++;
+                } else if (role == Identity.FASCIST) {
+                    fascists++;
+                }
+            }
+            assertEquals(1, hitlers);
+            assertEquals(SecretHitlerGame.NUM_FASCISTS_FOR_PLAYERS[9], fascists);
+            assertEquals(Identity.LIBERAL, roles[0]);
+            assertTrue(roles[4] == Identity.FASCIST || roles[4] == Identity.HITLER);
+            assertTrue(roles[7] != Identity.HITLER);
+            if (roles[2] != Identity.LIBERAL) {
+                seat2Fascist++;
+            }
+            if (roles[4] == Identity.HITLER) {
+                seat4Hitler++;
+            }
+        }
+        // Seat 2 is ten times as likely to be fascist as liberal.
+        assertTrue(seat2Fascist > 250);
+        assertTrue(seat4Hitler > 0);
+    }
+
+    @Test
+    public void testPoliciesAndVotesShiftSuspicion() {
+        RoleBelief belief = new RoleBelief(7);
+        float prior = belief.getPriorFascistProbability();
+
+        // A fascist policy from a full deck is more likely from a fascist.
+        belief.observePolicy(1, 2, Policy.Type.FASCIST, SecretHitlerGame.NUM_FASCIST_POLICIES,
+                SecretHitlerGame.NUM_LIBERAL_POLICIES);
+        assertTrue(belief.getFascistProbability(1) > prior);
+        assertTrue(belief.getFascistProbability(2) > prior);
+        assertTrue(belief.getFascistProbability(3) < prior);
+
+        // Voting for a known fascist is suspicious.
+        belief.observeParty(5, true);
+        float before = belief.getFascistProbability(6);
+        belief.observeVotes(1 << 6, 1 << 6, 5, 0);
+        assertTrue(belief.getFascistProbability(6) > before);
+
+        // A liberal policy clears a government somewhat.
+        before = belief.getFascistProbability(3);
+        belief.observePolicy(3, 4, Policy.Type.LIBERAL, 8, 5);
+        assertTrue(belief.getFascistProbability(3) < before);
+    }
+
+    @Test
+    public void testSoftEvidenceDoesNotOverrideKnownRoles() {
+        RoleBelief belief = new RoleBelief(5);
+        belief.observeRole(0, Identity.LIBERAL);
+        belief.observeRole(1, Identity.HITLER);
+        belief.weigh(0, 1, 0);
+        belief.observePolicy(0, 2, Policy.Type.FASCIST, 2, 5);
+
+        assertEquals(0, belief.getFascistProbability(0), EPSILON);
+        assertEquals(1, belief.getFascistProbability(1), EPSILON);
+        assertEquals(1, belief.getHitlerProbability(1), EPSILON);
+    }
+
+    @Test
+    public void testCopyAndSnapshotRoundTrip() throws IOException {
+        RoleBelief belief = new RoleBelief(8);
+        belief.observeParty(3, false);
+        belief.observeVotes(0xFF, 0x0F, 1, 2);
+        RoleBelief copy = belief.copy();
+        copy.observeRole(5, Identity.HITLER);
+        assertEquals(1, copy.getHitlerProbability(5), EPSILON);
+        assertTrue(belief.getHitlerProbability(5) < 0.5f);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            belief.writeSnapshot(out);
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            RoleBelief restored = RoleBelief.readSnapshot(in, 8);
+            for (int seat = 0; seat < 8; seat++) {
+                assertEquals(belief.getFascistProbability(seat), restored.getFascistProbability(seat), EPSILON);
+                assertEquals(belief.getHitlerProbability(seat), restored.getHitlerProbability(seat), EPSILON);
+            }
+            assertEquals(0, in.available());
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            RoleBelief.readSnapshot(in, 9);
+            fail("Expected a belief for another player count to be rejected.");
+        } catch (IOException e) {
+        }
+    }
+}
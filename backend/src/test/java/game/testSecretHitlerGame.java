@@ -3,7 +3,9 @@ package game;
 import game.datastructures.Player;
 import org.junit.Test;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import static junit.framework.TestCase.*;
@@ -47,4 +49,102 @@ public class testSecretHitlerGame {
         game.nominateChancellor("2");
         assertEquals(game.getState(), GameState.CHANCELLOR_VOTING);
     }
+
+    @Test
+    public void testPlayersAreReferencedBySeat() {
+        SecretHitlerGame game = new SecretHitlerGame(makePlayers(7));
+        List<Player> playerList = game.getPlayerList();
+        for (int seat = 0; seat < playerList.size(); seat++) {
+            assertEquals(seat, game.getSeat(Integer.toString(seat)));
+            assertSame(playerList.get(seat), game.getPlayer(Integer.toString(seat)));
+        }
+        assertEquals(SecretHitlerGame.NO_SEAT, game.getSeat("stranger"));
+        assertEquals(SecretHitlerGame.NO_SEAT, game.getSeat(null));
+        assertFalse(game.hasPlayer("stranger"));
+        try {
+            playerList.remove(0);
+            fail("The player list should not be modifiable.");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+
+        assertEquals(0, game.getCurrentPresidentSeat());
+        assertEquals(SecretHitlerGame.NO_SEAT, game.getCurrentChancellorSeat());
+        try {
+            game.nominateChancellor("stranger");
+            fail("Nominating a player that is not in the game should fail.");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        game.nominateChancellor("3");
+        assertEquals(3, game.getCurrentChancellorSeat());
+        assertEquals("3", game.getCurrentChancellor());
+
+        game.registerVote("3", true);
+        assertTrue(game.hasPlayerVoted("3"));
+        assertFalse(game.hasPlayerVoted("4"));
+        assertFalse(game.hasPlayerVoted("stranger"));
+        assertEquals(1 << 3, game.getVotedSeats());
+        assertEquals(1 << 3, game.getYesSeats());
+    }
+
+    @Test
+    public void testVotesAreTalliedBySeat() {
+        SecretHitlerGame game = new SecretHitlerGame(makePlayers(6));
+        game.nominateChancellor("2");
+        for (int seat = 0; seat < 6; seat++) {
+            game.registerVote(Integer.toString(seat), seat % 2 == 0);
+            if (seat < 5) {
+                assertEquals(GameState.CHANCELLOR_VOTING, game.getState());
+            }
+        }
+        assertEquals(0b111111, game.getVotedSeats());
+        assertEquals(0b010101, game.getYesSeats());
+        // A tie is not a majority.
+        assertEquals(1, game.getElectionTracker());
+        assertEquals(GameState.POST_LEGISLATIVE, game.getState());
+
+        game.endPresidentialTerm();
+        game.nominateChancellor("3");
+        assertEquals(0, game.getVotedSeats());
+        assertEquals(0, game.getYesSeats());
+        for (int seat = 0; seat < 6; seat++) {
+            game.registerVote(Integer.toString(seat), seat < 4);
+        }
+        assertEquals(0b001111, game.getYesSeats());
+        assertEquals(GameState.LEGISLATIVE_PRESIDENT, game.getState());
+    }
+
+    /**
+     * Plays a game with seeded CpuPlayers until it ends or {@code maxMoves}
+     * moves have been made.
+     */
+    private static void playWithCpus(SecretHitlerGame game, long seed, int maxMoves) {
+        CpuPlayer.playOut(game, GameTestUtil.makeCpus(game, seed), maxMoves);
+    }
+
+    @Test
+    public void testForkIsIndependentCopy() throws IOException {
+        SecretHitlerGame game = new SecretHitlerGame(makePlayers(9), 5);
+        playWithCpus(game, 1, 20);
+        byte[] before = GameTestUtil.snapshotOf(game);
+
+        SecretHitlerGame fork = game.fork();
+        assertTrue(Arrays.equals(before, GameTestUtil.snapshotOf(fork)));
+        for (int seat = 0; seat < 9; seat++) {
+            assertNotSame(game.getPlayerList().get(seat), fork.getPlayerList().get(seat));
+            assertEquals(seat, fork.getSeat(Integer.toString(seat)));
+        }
+
+        // Playing the fork to the end leaves the original untouched.
+        playWithCpus(fork, 2, 10000);
+        assertTrue(fork.hasGameFinished());
+        assertTrue(Arrays.equals(before, GameTestUtil.snapshotOf(game)));
+
+        // The same moves give the same results in the original and a fork.
+        SecretHitlerGame secondFork = game.fork();
+        playWithCpus(game, 3, 10000);
+        playWithCpus(secondFork, 3, 10000);
+        assertTrue(Arrays.equals(GameTestUtil.snapshotOf(game), GameTestUtil.snapshotOf(secondFork)));
+    }
 }
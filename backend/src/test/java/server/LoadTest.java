@@ -0,0 +1,666 @@
+package server;
+
+import io.javalin.Javalin;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.WebSocket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Measures how the server holds up under many concurrent lobbies.
+ *
+ * Starts the server in this JVM on a free port of localhost, with the database
+ * and game journals disabled. Then creates lobbies with {@code /new-lobby} and
+ * fills each one with simulated users, who log in with {@code /check-login}
+ * and connect to {@code /game} with the same packet protocol as the web client
+ * (binary frames with deltas). The users play game after game with the real
+ * commands, each choosing a random legal move when it is their turn. Lobbies
+ * with fewer than {@code SecretHitlerGame.MIN_PLAYERS} users are filled with
+ * CPU players by the server.
+ *
+ * Every few seconds, prints:
+ * - the time from sending a command to receiving the first state packet that
+ * includes it (p50 and p99),
+ * - the packets received and commands sent per second,
+ * - the heap in use and the number of live threads. The users run in the same
+ * JVM, so these include their threads and memory.
+ *
+ * Run with {@code ./gradlew loadTest --args="<lobbies> <users per lobby>
+ * <seconds> <think time in ms>"}. By default, runs 100 lobbies of 5 users for
+ * 60 seconds, with users waiting 200 ms on average before each move.
+ */
+public class LoadTest {
+    private static final int DEFAULT_LOBBIES = 100;
+    private static final int DEFAULT_USERS_PER_LOBBY = 5;
+    private static final int DEFAULT_DURATION_SECONDS = 60;
+    private static final int DEFAULT_THINK_MS = 200;
+
+    private static final long REPORT_INTERVAL_MS = 5000;
+    // Matches the interval used by the web client.
+    private static final long PING_INTERVAL_MS = 50000;
+    private static final double YES_VOTE_PROBABILITY = 0.7;
+    // The icon of users that have not chosen one (see Lobby.DEFAULT_ICON).
+    private static final String DEFAULT_ICON = "p_default";
+
+    public static void main(String[] args) throws Exception {
+        int numLobbies = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_LOBBIES;
+        int usersPerLobby = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_USERS_PER_LOBBY;
+        int durationSeconds = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_DURATION_SECONDS;
+        int thinkMs = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_THINK_MS;
+
+        // Must be set before the server creates its loggers, or every
+        // connection and lobby is logged.
+        System.setProperty("org.slf4j.simpleLogger.defaultLogLevel",
+                System.getProperty("org.slf4j.simpleLogger.defaultLogLevel", "warn"));
+        ApplicationConfig.DATABASE_URI = null;
+        ApplicationConfig.GAME_LOG_DIR = null;
+
+        Javalin app = SecretHitlerServer.start("localhost", 0);
+        String httpUrl = "http://localhost:" + app.port();
+        String wsUrl = "ws://localhost:" + app.port();
+        System.out.printf("Server started on port %d. Connecting %d lobbies of %d users...%n", app.port(),
+                numLobbies, usersPerLobby);
+
+        HttpClient http = HttpClient.newHttpClient();
+        ScheduledExecutorService timer = Executors.newScheduledThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "load-test-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Metrics metrics = new Metrics();
+        List<Client> clients = new ArrayList<>();
+
+        long rampStart = System.nanoTime();
+        for (int i = 0; i < numLobbies; i++) {
+            String code = get(http, httpUrl + "/new-lobby");
+            List<CompletableFuture<WebSocket>> connections = new ArrayList<>();
+            for (int j = 0; j < usersPerLobby; j++) {
+                String name = "user" + j;
+                String login = "?" + SecretHitlerServer.PARAM_LOBBY + "=" + code + "&"
+                        + SecretHitlerServer.PARAM_NAME + "=" + name;
+                get(http, httpUrl + "/check-login" + login);
+
+                Client client = new Client(code, name, j, usersPerLobby, thinkMs, metrics, timer);
+                clients.add(client);
+                URI uri = URI.create(wsUrl + "/game" + login + "&" + SecretHitlerServer.PARAM_PROTOCOL + "="
+                        + SecretHitlerServer.PROTOCOL_BINARY);
+                connections.add(http.newWebSocketBuilder().buildAsync(uri, client));
+            }
+            CompletableFuture.allOf(connections.toArray(new CompletableFuture[0])).join();
+        }
+        System.out.printf("Connected %d users in %.1f s.%n%n", clients.size(),
+                (System.nanoTime() - rampStart) / 1e9);
+
+        System.out.printf("%6s %6s %9s %8s %9s %9s %6s %8s %7s %6s%n", "time", "open", "packets/s", "cmds/s",
+                "p50 (ms)", "p99 (ms)", "games", "heap(MB)", "threads", "errors");
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(durationSeconds);
+        long lastPackets = 0;
+        long lastCommands = 0;
+        long lastReport = start;
+        long peakHeap = 0;
+        while (System.nanoTime() < end) {
+            Thread.sleep(Math.min(REPORT_INTERVAL_MS, TimeUnit.NANOSECONDS.toMillis(end - System.nanoTime()) + 1));
+            long now = System.nanoTime();
+            double seconds = (now - lastReport) / 1e9;
+            long packets = metrics.packetsReceived.sum();
+            long commands = metrics.commandsSent.sum();
+            Histogram window = metrics.window.getAndSet(new Histogram());
+            long heap = memory.getHeapMemoryUsage().getUsed();
+            peakHeap = Math.max(peakHeap, heap);
+            System.out.printf("%5.0fs %6d %9.0f %8.0f %9.2f %9.2f %6d %8.1f %7d %6d%n", (now - start) / 1e9,
+                    metrics.openConnections.get(), (packets - lastPackets) / seconds,
+                    (commands - lastCommands) / seconds, window.percentileMs(50), window.percentileMs(99),
+                    metrics.gamesFinished.sum(), heap / 1e6, threads.getThreadCount(), metrics.errors.sum());
+            lastPackets = packets;
+            lastCommands = commands;
+            lastReport = now;
+        }
+
+        double totalSeconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%nLatency (command to broadcast): p50 %.2f ms, p99 %.2f ms, over %d commands%n",
+                metrics.total.percentileMs(50), metrics.total.percentileMs(99), metrics.total.getCount());
+        System.out.printf("Throughput: %.0f packets/s received, %.0f commands/s sent, %d games finished%n",
+                metrics.packetsReceived.sum() / totalSeconds, metrics.commandsSent.sum() / totalSeconds,
+                metrics.gamesFinished.sum());
+        System.out.printf("Peak heap %.1f MB, peak threads %d, %d errors, %d of %d connections open%n",
+                peakHeap / 1e6, threads.getPeakThreadCount(), metrics.errors.sum(), metrics.openConnections.get(),
+                clients.size());
+
+        for (Client client : clients) {
+            client.close();
+        }
+        app.stop();
+        System.exit(0);
+    }
+
+    /**
+     * Sends a GET request to the server.
+     *
+     * @param http the client to send the request with.
+     * @param url  the URL to request.
+     * @return the body of the response.
+     * @throws IllegalStateException if the response does not have status 200.
+     */
+    private static String get(HttpClient http, String url) throws Exception {
+        HttpResponse<String> response = http.send(HttpRequest.newBuilder(URI.create(url)).GET().build(),
+                HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("GET " + url + " failed with status " + response.statusCode() + ": "
+                    + response.body());
+        }
+        return response.body();
+    }
+
+    /**
+     * The counters shared by every client.
+     */
+    private static class Metrics {
+        final LongAdder packetsReceived = new LongAdder();
+        final LongAdder commandsSent = new LongAdder();
+        final LongAdder gamesFinished = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final AtomicInteger openConnections = new AtomicInteger();
+        // The latencies since the last report, and since the start.
+        final AtomicReference<Histogram> window = new AtomicReference<>(new Histogram());
+        final Histogram total = new Histogram();
+
+        void recordLatency(long nanos) {
+            window.get().record(nanos);
+            total.record(nanos);
+        }
+    }
+
+    /**
+     * Counts latencies in buckets that each cover 5% more than the last, so
+     * percentiles are within 5% of the exact value whatever the range.
+     */
+    private static class Histogram {
+        private static final double GROWTH = 1.05;
+        private static final double LOG_GROWTH = Math.log(GROWTH);
+        // Enough for latencies of up to several hours, in microseconds.
+        private static final int NUM_BUCKETS = 500;
+
+        private final AtomicLongArray counts = new AtomicLongArray(NUM_BUCKETS);
+
+        void record(long nanos) {
+            long micros = Math.max(1, nanos / 1000);
+            int bucket = (int) Math.min(NUM_BUCKETS - 1, Math.log(micros) / LOG_GROWTH);
+            counts.incrementAndGet(bucket);
+        }
+
+        long getCount() {
+            long count = 0;
+            for (int i = 0; i < NUM_BUCKETS; i++) {
+                count += counts.get(i);
+            }
+            return count;
+        }
+
+        /**
+         * @param percentile the percentile to get, from 0 to 100.
+         * @return the upper bound in milliseconds of the bucket that contains
+         *         the percentile, or 0 if nothing was recorded.
+         */
+        double percentileMs(double percentile) {
+            long count = getCount();
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+            long seen = 0;
+            for (int i = 0; i < NUM_BUCKETS; i++) {
+                seen += counts.get(i);
+                if (seen >= rank) {
+                    return Math.pow(GROWTH, i + 1) / 1000;
+                }
+            }
+            return Math.pow(GROWTH, NUM_BUCKETS) / 1000;
+        }
+    }
+
+    /**
+     * A simulated user, connected to a lobby over a websocket.
+     *
+     * Rebuilds the state of the lobby from the full and delta packets it
+     * receives, as the web client does, and sends a command whenever the state
+     * shows that it is the user's turn. The first user of each lobby is its
+     * host, and starts a new game whenever the lobby is ready.
+     *
+     * Only one command that changes the game is in flight at a time. The
+     * client waits for its "ok" packet, then for the next state packet, which
+     * is the first to include the command, before choosing another.
+     */
+    private static class Client implements WebSocket.Listener {
+        private final String lobby;
+        private final String name;
+        private final int index;
+        private final int lobbySize;
+        private final int thinkMs;
+        private final Metrics metrics;
+        private final ScheduledExecutorService timer;
+        private final Random random = new Random();
+
+        private WebSocket socket;
+        private CompletableFuture<?> lastSend = CompletableFuture.completedFuture(null);
+        private final StringBuilder textFrames = new StringBuilder();
+        private final ByteArrayOutputStream binaryFrames = new ByteArrayOutputStream();
+        private volatile boolean closing;
+
+        // The state rebuilt from the packets received so far.
+        private JSONObject state;
+        private long lastSequence;
+        private boolean awaitingResync;
+        private boolean iconSelected;
+
+        // For each command awaiting its "ok" packet, in the order sent, whether
+        // it was a command that changes the game.
+        private final Deque<Boolean> pendingOks = new ArrayDeque<>();
+        // Set from when a move is chosen until its "ok" packet is received.
+        private boolean awaitingOk;
+        // Set from when a move's "ok" packet is received until the next state.
+        private boolean awaitingUpdate;
+        private long moveSentNanos;
+
+        Client(String lobby, String name, int index, int lobbySize, int thinkMs, Metrics metrics,
+                ScheduledExecutorService timer) {
+            this.lobby = lobby;
+            this.name = name;
+            this.index = index;
+            this.lobbySize = lobbySize;
+            this.thinkMs = thinkMs;
+            this.metrics = metrics;
+            this.timer = timer;
+        }
+
+        private boolean isHost() {
+            return index == 0;
+        }
+
+        @Override
+        public synchronized void onOpen(WebSocket webSocket) {
+            socket = webSocket;
+            metrics.openConnections.incrementAndGet();
+            timer.scheduleAtFixedRate(() -> {
+                if (!closing) {
+                    send(command(SecretHitlerServer.COMMAND_PING), null);
+                }
+            }, PING_INTERVAL_MS, PING_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            webSocket.request(1);
+        }
+
+        @Override
+        public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+            textFrames.append(data);
+            if (last) {
+                String message = textFrames.toString();
+                textFrames.setLength(0);
+                onMessage(message);
+            }
+            webSocket.request(1);
+            return null;
+        }
+
+        @Override
+        public CompletionStage<?> onBinary(WebSocket webSocket, ByteBuffer data, boolean last) {
+            byte[] bytes = new byte[data.remaining()];
+            data.get(bytes);
+            binaryFrames.write(bytes, 0, bytes.length);
+            if (last) {
+                String message = binaryFrames.toString(StandardCharsets.UTF_8);
+                binaryFrames.reset();
+                onMessage(message);
+            }
+            webSocket.request(1);
+            return null;
+        }
+
+        @Override
+        public CompletionStage<?> onClose(WebSocket webSocket, int statusCode, String reason) {
+            onDisconnect("closed by the server (" + statusCode + " " + reason + ")");
+            return null;
+        }
+
+        @Override
+        public void onError(WebSocket webSocket, Throwable error) {
+            onDisconnect("failed: " + error);
+        }
+
+        private void onDisconnect(String reason) {
+            metrics.openConnections.decrementAndGet();
+            if (!closing) {
+                closing = true;
+                metrics.errors.increment();
+                System.err.println("Connection of " + name + " in lobby " + lobby + " " + reason);
+            }
+        }
+
+        /**
+         * Closes the connection without counting it as an error.
+         */
+        void close() {
+            closing = true;
+            WebSocket webSocket = socket;
+            if (webSocket != null && !webSocket.isOutputClosed()) {
+                webSocket.sendClose(WebSocket.NORMAL_CLOSURE, "The load test has ended.");
+            }
+        }
+
+        /**
+         * Handles a complete packet from the server.
+         */
+        private synchronized void onMessage(String message) {
+            metrics.packetsReceived.increment();
+            JSONObject packet = new JSONObject(message);
+            switch (packet.getString(SecretHitlerServer.PARAM_PACKET_TYPE)) {
+                case SecretHitlerServer.PACKET_OK:
+                    Boolean changesGame = pendingOks.poll();
+                    if (changesGame != null && changesGame) {
+                        awaitingOk = false;
+                        awaitingUpdate = true;
+                    }
+                    return;
+
+                case SecretHitlerServer.PACKET_DELTA:
+                    long sequence = packet.getLong(SecretHitlerServer.PARAM_SEQUENCE);
+                    if (awaitingResync) {
+                        return;
+                    }
+                    if (state == null || sequence != lastSequence + 1) {
+                        metrics.errors.increment();
+                        awaitingResync = true;
+                        send(command(SecretHitlerServer.COMMAND_GET_STATE), false);
+                        return;
+                    }
+                    JSONObject set = packet.getJSONObject(SecretHitlerServer.PARAM_DELTA_SET);
+                    for (String key : set.keySet()) {
+                        state.put(key, set.get(key));
+                    }
+                    JSONArray unset = packet.getJSONArray(SecretHitlerServer.PARAM_DELTA_UNSET);
+                    for (int i = 0; i < unset.length(); i++) {
+                        state.remove(unset.getString(i));
+                    }
+                    lastSequence = sequence;
+                    break;
+
+                case SecretHitlerServer.PACKET_GAME_STATE:
+                case SecretHitlerServer.PACKET_LOBBY:
+                    state = packet;
+                    lastSequence = packet.optLong(SecretHitlerServer.PARAM_SEQUENCE);
+                    awaitingResync = false;
+                    break;
+
+                default: // pongs and investigation results need no response.
+                    return;
+            }
+            onStateChanged();
+        }
+
+        /**
+         * Records the latency of the last move if this is the first state to
+         * include it, then chooses the next move, if any.
+         */
+        private void onStateChanged() {
+            if (awaitingUpdate) {
+                metrics.recordLatency(System.nanoTime() - moveSentNanos);
+                awaitingUpdate = false;
+            }
+            if (awaitingOk || closing) {
+                return;
+            }
+            if (SecretHitlerServer.PACKET_LOBBY.equals(state.getString(SecretHitlerServer.PARAM_PACKET_TYPE))) {
+                onLobbyState();
+            } else {
+                onGameState();
+            }
+        }
+
+        private void onLobbyState() {
+            if (!iconSelected) {
+                iconSelected = true;
+                JSONObject selectIcon = command(SecretHitlerServer.COMMAND_SELECT_ICON);
+                selectIcon.put(SecretHitlerServer.PARAM_ICON, "p" + (index + 1));
+                send(selectIcon, false);
+                return;
+            }
+            if (!isHost()) {
+                return;
+            }
+            JSONArray usernames = state.getJSONArray("usernames");
+            JSONObject icons = state.getJSONObject("icon");
+            if (usernames.length() < lobbySize) {
+                return;
+            }
+            for (int i = 0; i < usernames.length(); i++) {
+                if (icons.optString(usernames.getString(i), DEFAULT_ICON).equals(DEFAULT_ICON)) {
+                    return;
+                }
+            }
+            move(command(SecretHitlerServer.COMMAND_START_GAME));
+        }
+
+        private void onGameState() {
+            String gameState = state.getString("state");
+            if (gameState.contains("VICTORY")) {
+                if (isHost()) {
+                    metrics.gamesFinished.increment();
+                    move(command(SecretHitlerServer.COMMAND_START_GAME));
+                }
+                return;
+            }
+
+            JSONObject players = state.getJSONObject("players");
+            if (!players.getJSONObject(name).getBoolean("alive")) {
+                return;
+            }
+            boolean isPresident = name.equals(state.optString("president"));
+            boolean isChancellor = name.equals(state.optString("chancellor"));
+            JSONObject move;
+            switch (gameState) {
+                case "CHANCELLOR_NOMINATION":
+                    if (!isPresident) {
+                        return;
+                    }
+                    String lastChancellor = state.optString("lastChancellor");
+                    String lastPresident = state.optString("lastPresident");
+                    boolean termLimitsPresident = countLivingPlayers() > 5;
+                    move = targetCommand(SecretHitlerServer.COMMAND_NOMINATE_CHANCELLOR,
+                            player -> !player.equals(lastChancellor)
+                                    && !(termLimitsPresident && player.equals(lastPresident)));
+                    break;
+
+                case "CHANCELLOR_VOTING":
+                    int seat = indexOf(state.getJSONArray("playerOrder"), name);
+                    if ((state.getLong("votedSeats") & (1L << seat)) != 0) {
+                        return;
+                    }
+                    move = command(SecretHitlerServer.COMMAND_REGISTER_VOTE);
+                    move.put(SecretHitlerServer.PARAM_VOTE, random.nextDouble() < YES_VOTE_PROBABILITY);
+                    break;
+
+                case "LEGISLATIVE_PRESIDENT":
+                    if (!isPresident) {
+                        return;
+                    }
+                    move = command(SecretHitlerServer.COMMAND_REGISTER_PRESIDENT_CHOICE);
+                    move.put(SecretHitlerServer.PARAM_CHOICE,
+                            random.nextInt(state.getJSONArray("presidentChoices").length()));
+                    break;
+
+                case "LEGISLATIVE_CHANCELLOR":
+                    if (!isChancellor) {
+                        return;
+                    }
+                    move = command(SecretHitlerServer.COMMAND_REGISTER_CHANCELLOR_CHOICE);
+                    move.put(SecretHitlerServer.PARAM_CHOICE,
+                            random.nextInt(state.getJSONArray("chancellorChoices").length()));
+                    break;
+
+                case "LEGISLATIVE_PRESIDENT_VETO":
+                    if (!isPresident) {
+                        return;
+                    }
+                    move = command(SecretHitlerServer.COMMAND_REGISTER_PRESIDENT_VETO);
+                    move.put(SecretHitlerServer.PARAM_VETO, false);
+                    break;
+
+                case "PRESIDENTIAL_POWER_PEEK":
+                    if (!isPresident) {
+                        return;
+                    }
+                    move = command(SecretHitlerServer.COMMAND_REGISTER_PEEK);
+                    break;
+
+                case "PRESIDENTIAL_POWER_INVESTIGATE":
+                    if (!isPresident) {
+                        return;
+                    }
+                    move = targetCommand(SecretHitlerServer.COMMAND_GET_INVESTIGATION,
+                            player -> !players.getJSONObject(player).getBoolean("investigated"));
+                    break;
+
+                case "PRESIDENTIAL_POWER_EXECUTION":
+                    if (!isPresident) {
+                        return;
+                    }
+                    move = targetCommand(SecretHitlerServer.COMMAND_REGISTER_EXECUTION, player -> true);
+                    break;
+
+                case "PRESIDENTIAL_POWER_ELECTION":
+                    if (!isPresident) {
+                        return;
+                    }
+                    move = targetCommand(SecretHitlerServer.COMMAND_REGISTER_SPECIAL_ELECTION, player -> true);
+                    break;
+
+                case "POST_LEGISLATIVE":
+                    if (!isPresident) {
+                        return;
+                    }
+                    move = command(SecretHitlerServer.COMMAND_END_TERM);
+                    break;
+
+                default:
+                    return;
+            }
+            if (move != null) {
+                move(move);
+            }
+        }
+
+        private int countLivingPlayers() {
+            JSONObject players = state.getJSONObject("players");
+            int count = 0;
+            for (String player : players.keySet()) {
+                if (players.getJSONObject(player).getBoolean("alive")) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        private static int indexOf(JSONArray array, String value) {
+            for (int i = 0; i < array.length(); i++) {
+                if (array.getString(i).equals(value)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Builds a command targeting a random living player other than this
+         * user.
+         *
+         * @param commandName the name of the command.
+         * @param eligible    which of the other living players may be targeted.
+         * @return the command, or null if no player can be targeted.
+         */
+        private JSONObject targetCommand(String commandName, Predicate<String> eligible) {
+            JSONObject players = state.getJSONObject("players");
+            List<String> targets = new ArrayList<>();
+            for (String player : players.keySet()) {
+                if (!player.equals(name) && players.getJSONObject(player).getBoolean("alive")
+                        && eligible.test(player)) {
+                    targets.add(player);
+                }
+            }
+            if (targets.isEmpty()) {
+                return null;
+            }
+            JSONObject command = command(commandName);
+            command.put(SecretHitlerServer.PARAM_TARGET, targets.get(random.nextInt(targets.size())));
+            return command;
+        }
+
+        private JSONObject command(String commandName) {
+            JSONObject command = new JSONObject();
+            command.put(SecretHitlerServer.PARAM_LOBBY, lobby);
+            command.put(SecretHitlerServer.PARAM_NAME, name);
+            command.put(SecretHitlerServer.PARAM_COMMAND, commandName);
+            return command;
+        }
+
+        /**
+         * Sends a command that changes the game after a random think time of
+         * up to twice {@code thinkMs}, and waits for it to take effect.
+         */
+        private void move(JSONObject command) {
+            awaitingOk = true;
+            if (thinkMs > 0) {
+                timer.schedule(() -> send(command, true), random.nextInt(2 * thinkMs), TimeUnit.MILLISECONDS);
+            } else {
+                send(command, true);
+            }
+        }
+
+        /**
+         * Queues a command to be sent once the previous ones have been.
+         *
+         * @param command     the command to send.
+         * @param changesGame whether the command changes the game, or null if
+         *                    the server does not respond with an "ok" packet.
+         */
+        private synchronized void send(JSONObject command, Boolean changesGame) {
+            if (closing) {
+                return;
+            }
+            if (changesGame != null) {
+                pendingOks.add(changesGame);
+            }
+            if (changesGame == Boolean.TRUE) {
+                moveSentNanos = System.nanoTime();
+            }
+            metrics.commandsSent.increment();
+            String text = command.toString();
+            lastSend = lastSend.thenCompose(ignored -> socket.sendText(text, true));
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package server;
+
+import org.junit.Test;
+
+import java.sql.SQLException;
+
+import static junit.framework.TestCase.*;
+
+public class testConnectionPool {
+
+    @Test
+    public void testUnconfiguredPoolFailsWithoutConnecting() {
+        String[] invalidUris = { null, "not a uri", "postgres://missing-credentials@localhost:5432/db" };
+        for (String uri : invalidUris) {
+            ConnectionPool pool = new ConnectionPool(uri, 2);
+            try {
+                pool.withConnection(c -> {
+                    fail("Work should not run without a connection.");
+                    return null;
+                });
+                fail("Expected an SQLException for " + uri);
+            } catch (SQLException e) {
+                // expected
+            }
+            pool.close();
+        }
+    }
+}
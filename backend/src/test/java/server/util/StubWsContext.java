@@ -0,0 +1,198 @@
+package server.util;
+
+import io.javalin.websocket.WsContext;
+import org.eclipse.jetty.websocket.api.RemoteEndpoint;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A websocket context that is not connected to a real socket. Messages sent to
+ * it are counted and discarded.
+ */
+public class StubWsContext extends WsContext {
+
+    /**
+     * Records what is sent to a stub connection.
+     */
+    private static class Recorder {
+        final AtomicLong messagesSent = new AtomicLong();
+        final AtomicLong bytesSent = new AtomicLong();
+        final AtomicLong binaryMessagesSent = new AtomicLong();
+        final List<String> messages = new ArrayList<>();
+        final List<WriteCallback> heldCallbacks = new ArrayList<>();
+        boolean recordMessages;
+        boolean holdSends;
+
+        synchronized void onSend(Object payload, WriteCallback callback) {
+            messagesSent.incrementAndGet();
+            String text = null;
+            if (payload instanceof String) {
+                text = (String) payload;
+                bytesSent.addAndGet(text.length());
+            } else if (payload instanceof ByteBuffer) {
+                ByteBuffer buffer = (ByteBuffer) payload;
+                binaryMessagesSent.incrementAndGet();
+                bytesSent.addAndGet(buffer.remaining());
+                if (recordMessages) {
+                    text = StandardCharsets.UTF_8.decode(buffer.duplicate()).toString();
+                }
+            }
+            if (recordMessages) {
+                messages.add(text);
+            }
+            notifyAll();
+            if (callback != null) {
+                if (holdSends) {
+                    heldCallbacks.add(callback);
+                } else {
+                    callback.writeSuccess();
+                }
+            }
+        }
+    }
+
+    private final Recorder recorder;
+
+    private StubWsContext(String sessionId, Session session, Recorder recorder) {
+        super(sessionId, session);
+        this.recorder = recorder;
+    }
+
+    /**
+     * Creates a new StubWsContext.
+     *
+     * @param sessionId a unique ID for the context.
+     * @return a WsContext whose session is always open and discards all
+     *         messages. Asynchronous sends complete immediately unless
+     *         {@code setHoldSends(true)} is called.
+     */
+    public static StubWsContext create(String sessionId) {
+        Recorder recorder = new Recorder();
+
+        RemoteEndpoint remote = (RemoteEndpoint) Proxy.newProxyInstance(StubWsContext.class.getClassLoader(),
+                new Class<?>[] { RemoteEndpoint.class }, (proxy, method, args) -> {
+                    if (method.getName().startsWith("send") && args != null && args.length > 0) {
+                        WriteCallback callback = args[args.length - 1] instanceof WriteCallback
+                                ? (WriteCallback) args[args.length - 1]
+                                : null;
+                        recorder.onSend(args[0], callback);
+                    }
+                    return defaultValue(method.getReturnType());
+                });
+
+        Session session = (Session) Proxy.newProxyInstance(StubWsContext.class.getClassLoader(),
+                new Class<?>[] { Session.class }, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getRemote":
+                            return remote;
+                        case "isOpen":
+                            return true;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        case "toString":
+                            return "StubSession[" + sessionId + "]";
+                        default:
+                            return defaultValue(method.getReturnType());
+                    }
+                });
+
+        return new StubWsContext(sessionId, session, recorder);
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        }
+        return null;
+    }
+
+    public long getMessagesSent() {
+        return recorder.messagesSent.get();
+    }
+
+    public long getBytesSent() {
+        return recorder.bytesSent.get();
+    }
+
+    public long getBinaryMessagesSent() {
+        return recorder.binaryMessagesSent.get();
+    }
+
+    /**
+     * Waits until at least a number of messages have been sent.
+     *
+     * @param count     the number of messages to wait for.
+     * @param timeoutMs the maximum time to wait, in milliseconds.
+     * @return true if {@code count} messages were sent before the timeout.
+     */
+    public boolean awaitMessagesSent(long count, long timeoutMs) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutMs * 1000000;
+        synchronized (recorder) {
+            while (recorder.messagesSent.get() < count) {
+                long remainingMs = (deadline - System.nanoTime()) / 1000000;
+                if (remainingMs <= 0) {
+                    return false;
+                }
+                recorder.wait(remainingMs);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Keeps the text of every message sent from now on (see
+     * {@code getMessages()}).
+     */
+    public void recordMessages() {
+        synchronized (recorder) {
+            recorder.recordMessages = true;
+        }
+    }
+
+    /**
+     * Gets the text of every message sent since {@code recordMessages()} was
+     * called.
+     */
+    public List<String> getMessages() {
+        synchronized (recorder) {
+            return new ArrayList<>(recorder.messages);
+        }
+    }
+
+    /**
+     * Sets whether asynchronous sends are left pending (as if the client were
+     * slow) until {@code completeHeldSends()} is called.
+     */
+    public void setHoldSends(boolean holdSends) {
+        synchronized (recorder) {
+            recorder.holdSends = holdSends;
+        }
+    }
+
+    /**
+     * Completes every pending asynchronous send.
+     */
+    public void completeHeldSends() {
+        List<WriteCallback> callbacks;
+        synchronized (recorder) {
+            callbacks = new ArrayList<>(recorder.heldCallbacks);
+            recorder.heldCallbacks.clear();
+        }
+        for (WriteCallback callback : callbacks) {
+            callback.writeSuccess();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package server.util;
+
+import org.junit.Test;
+
+import static junit.framework.TestCase.*;
+
+public class testCommandDecoder {
+
+    @Test
+    public void testDecodeCommandWithoutParameters() {
+        CommandDecoder.CommandMessage message = CommandDecoder
+                .decode("{\"lobby\":\"ABCD\",\"name\":\"Alice\",\"command\":\"ping\"}");
+
+        assertEquals("ABCD", message.lobby());
+        assertEquals("Alice", message.name());
+        assertEquals(CommandType.PING, message.command().type());
+    }
+
+    @Test
+    public void testDecodeCommandParameters() {
+        Command vote = CommandDecoder
+                .decode("{\"command\":\"register-vote\",\"vote\":false,\"lobby\":\"ABCD\",\"name\":\"Alice\"}")
+                .command();
+        assertEquals(new Command.RegisterVote(false), vote);
+
+        Command choice = CommandDecoder
+                .decode("{\"lobby\":\"ABCD\",\"name\":\"Alice\",\"command\":\"register-president-choice\",\"choice\":2}")
+                .command();
+        assertEquals(new Command.RegisterPresidentChoice(2), choice);
+
+        Command nomination = CommandDecoder
+                .decode("{\"lobby\":\"ABCD\",\"name\":\"Alice\",\"command\":\"nominate-chancellor\",\"target\":\"Bob\"}")
+                .command();
+        assertEquals(new Command.NominateChancellor("Bob"), nomination);
+    }
+
+    @Test
+    public void testUnknownParametersAreSkipped() {
+        Command command = CommandDecoder.decode("{\"lobby\":\"ABCD\",\"extra\":{\"a\":[1,2,{\"b\":null}]},"
+                + "\"name\":\"Alice\",\"command\":\"select-icon\",\"icon\":\"p1\"}").command();
+        assertEquals(new Command.SelectIcon("p1"), command);
+    }
+
+    @Test
+    public void testInvalidMessagesAreRejected() {
+        String[] invalidMessages = {
+                "not json",
+                "[]",
+                "{\"name\":\"Alice\",\"command\":\"ping\"}", // missing lobby
+                "{\"lobby\":\"ABCD\",\"name\":\"Alice\",\"command\":\"fly\"}", // unknown command
+                "{\"lobby\":\"ABCD\",\"name\":\"Alice\",\"command\":\"register-vote\"}", // missing vote
+                "{\"lobby\":\"ABCD\",\"name\":\"Alice\",\"command\":\"register-vote\",\"vote\":3}", // wrong type
+        };
+        for (String message : invalidMessages) {
+            try {
+                CommandDecoder.decode(message);
+                fail("Expected '" + message + "' to be rejected.");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+}
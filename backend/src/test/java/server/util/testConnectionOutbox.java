@@ -0,0 +1,136 @@
+package server.util;
+
+import org.json.JSONObject;
+import org.junit.Test;
+import server.ApplicationConfig;
+import server.SecretHitlerServer;
+
+import java.util.List;
+
+import static junit.framework.TestCase.*;
+
+public class testConnectionOutbox {
+
+    private PacketSnapshot makeState(int drawSize) {
+        JSONObject packet = new JSONObject();
+        packet.put(SecretHitlerServer.PARAM_PACKET_TYPE, SecretHitlerServer.PACKET_GAME_STATE);
+        packet.put("drawSize", drawSize);
+        return PacketSnapshot.of(packet);
+    }
+
+    @Test
+    public void testPacketsAreSentInOrder() {
+        StubWsContext ctx = StubWsContext.create("ctx");
+        ctx.recordMessages();
+        ConnectionOutbox outbox = new ConnectionOutbox(ctx, SecretHitlerServer.PROTOCOL_BINARY);
+
+        outbox.sendState(makeState(17));
+        outbox.sendPacket(generator -> {
+            generator.writeStartObject();
+            generator.writeStringField(SecretHitlerServer.PARAM_PACKET_TYPE, SecretHitlerServer.PACKET_OK);
+            generator.writeEndObject();
+        });
+        outbox.sendState(makeState(16));
+
+        List<String> messages = ctx.getMessages();
+        assertEquals(3, messages.size());
+        assertEquals(3, ctx.getBinaryMessagesSent());
+        assertEquals(17, new JSONObject(messages.get(0)).getInt("drawSize"));
+        assertEquals(SecretHitlerServer.PACKET_OK,
+                new JSONObject(messages.get(1)).getString(SecretHitlerServer.PARAM_PACKET_TYPE));
+        assertEquals(2, new JSONObject(messages.get(2)).getLong(SecretHitlerServer.PARAM_SEQUENCE));
+    }
+
+    @Test
+    public void testBinaryFramesAreOnlySentIfSupported() {
+        PacketWriter.Body pong = generator -> {
+            generator.writeStartObject();
+            generator.writeStringField(SecretHitlerServer.PARAM_PACKET_TYPE, SecretHitlerServer.PACKET_PONG);
+            generator.writeEndObject();
+        };
+
+        StubWsContext legacy = StubWsContext.create("legacy");
+        new ConnectionOutbox(legacy, SecretHitlerServer.PROTOCOL_DELTA).sendPacket(pong);
+        assertEquals(1, legacy.getMessagesSent());
+        assertEquals(0, legacy.getBinaryMessagesSent());
+
+        StubWsContext binary = StubWsContext.create("binary");
+        new ConnectionOutbox(binary, SecretHitlerServer.PROTOCOL_BINARY).sendPacket(pong);
+        assertEquals(1, binary.getMessagesSent());
+        assertEquals(1, binary.getBinaryMessagesSent());
+        assertEquals(PacketWriter.write(pong).length(), binary.getBytesSent());
+    }
+
+    @Test
+    public void testOnlyOnePacketIsInFlight() {
+        StubWsContext ctx = StubWsContext.create("ctx");
+        ctx.setHoldSends(true);
+        ConnectionOutbox outbox = new ConnectionOutbox(ctx, SecretHitlerServer.PROTOCOL_LEGACY);
+
+        outbox.sendState(makeState(17));
+        outbox.sendState(makeState(16));
+        assertEquals(1, ctx.getMessagesSent());
+        assertEquals(1, outbox.getQueuedPacketCount());
+
+        ctx.completeHeldSends();
+        assertEquals(2, ctx.getMessagesSent());
+        assertEquals(0, outbox.getQueuedPacketCount());
+    }
+
+    @Test
+    public void testStatesAreCoalescedAtHighWaterMark() {
+        StubWsContext ctx = StubWsContext.create("ctx");
+        ctx.recordMessages();
+        ctx.setHoldSends(true);
+        ConnectionOutbox outbox = new ConnectionOutbox(ctx, SecretHitlerServer.PROTOCOL_DELTA);
+
+        outbox.sendState(makeState(100)); // in flight
+        int numQueued = ApplicationConfig.OUTBOX_HIGH_WATER_MARK + 5;
+        for (int i = 0; i < numQueued; i++) {
+            outbox.sendState(makeState(i));
+            assertTrue(outbox.getQueuedPacketCount() <= ApplicationConfig.OUTBOX_HIGH_WATER_MARK);
+        }
+
+        // Drain the queue as a slow client would.
+        ctx.setHoldSends(false);
+        ctx.completeHeldSends();
+        List<String> messages = ctx.getMessages();
+        assertTrue(messages.size() < numQueued + 1);
+
+        // The last state is always delivered, and sequence numbers have no gaps.
+        JSONObject last = new JSONObject(messages.get(messages.size() - 1));
+        assertEquals(messages.size(), last.getLong(SecretHitlerServer.PARAM_SEQUENCE));
+        if (last.has(SecretHitlerServer.PARAM_DELTA_SET)) {
+            assertEquals(numQueued - 1, last.getJSONObject(SecretHitlerServer.PARAM_DELTA_SET).getInt("drawSize"));
+        } else {
+            assertEquals(numQueued - 1, last.getInt("drawSize"));
+        }
+    }
+
+    @Test
+    public void testWritesCompletedInlineDoNotGrowStack() {
+        StubWsContext ctx = StubWsContext.create("ctx");
+        ctx.setHoldSends(true);
+        ConnectionOutbox outbox = new ConnectionOutbox(ctx, SecretHitlerServer.PROTOCOL_BINARY);
+
+        // Packets other than states are never coalesced, so all of them queue.
+        int numPackets = 10000;
+        int[] stackDepths = new int[numPackets];
+        for (int i = 0; i < numPackets; i++) {
+            int index = i;
+            outbox.sendPacket(generator -> {
+                stackDepths[index] = Thread.currentThread().getStackTrace().length;
+                generator.writeStartObject();
+                generator.writeStringField(SecretHitlerServer.PARAM_PACKET_TYPE, SecretHitlerServer.PACKET_OK);
+                generator.writeEndObject();
+            });
+        }
+
+        // From now on, every write completes before sendAsync() returns.
+        ctx.setHoldSends(false);
+        ctx.completeHeldSends();
+        assertEquals(numPackets, ctx.getMessagesSent());
+        assertEquals(0, outbox.getQueuedPacketCount());
+        assertTrue(stackDepths[numPackets - 1] <= stackDepths[1] + 5);
+    }
+}
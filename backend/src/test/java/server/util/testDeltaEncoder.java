@@ -0,0 +1,78 @@
+package server.util;
+
+import org.json.JSONObject;
+import org.junit.Test;
+import server.SecretHitlerServer;
+
+import static junit.framework.TestCase.*;
+
+public class testDeltaEncoder {
+
+    private JSONObject makePacket(String state, boolean vote) {
+        JSONObject packet = new JSONObject();
+        packet.put(SecretHitlerServer.PARAM_PACKET_TYPE, SecretHitlerServer.PACKET_GAME_STATE);
+        packet.put("state", state);
+        packet.put("playerOrder", new String[] { "a", "b", "c", "d", "e" });
+        JSONObject votes = new JSONObject();
+        votes.put("a", vote);
+        packet.put("userVotes", votes);
+        return packet;
+    }
+
+    @Test
+    public void testFirstPacketIsFull() {
+        DeltaEncoder encoder = new DeltaEncoder(true);
+        JSONObject out = new JSONObject(encoder.encode(PacketSnapshot.of(makePacket("CHANCELLOR_VOTING", true))));
+
+        assertEquals(SecretHitlerServer.PACKET_GAME_STATE, out.getString(SecretHitlerServer.PARAM_PACKET_TYPE));
+        assertEquals(1, out.getLong(SecretHitlerServer.PARAM_SEQUENCE));
+        assertEquals("CHANCELLOR_VOTING", out.getString("state"));
+    }
+
+    @Test
+    public void testDeltaOnlyContainsChangedFields() {
+        DeltaEncoder encoder = new DeltaEncoder(true);
+        encoder.encode(PacketSnapshot.of(makePacket("CHANCELLOR_VOTING", true)));
+        JSONObject out = new JSONObject(encoder.encode(PacketSnapshot.of(makePacket("CHANCELLOR_VOTING", false))));
+
+        assertEquals(SecretHitlerServer.PACKET_DELTA, out.getString(SecretHitlerServer.PARAM_PACKET_TYPE));
+        assertEquals(2, out.getLong(SecretHitlerServer.PARAM_SEQUENCE));
+        JSONObject set = out.getJSONObject(SecretHitlerServer.PARAM_DELTA_SET);
+        assertEquals(1, set.length());
+        assertFalse(set.getJSONObject("userVotes").getBoolean("a"));
+        assertTrue(out.getJSONArray(SecretHitlerServer.PARAM_DELTA_UNSET).isEmpty());
+    }
+
+    @Test
+    public void testDeltaListsRemovedFields() {
+        DeltaEncoder encoder = new DeltaEncoder(true);
+        JSONObject first = makePacket("CHANCELLOR_VOTING", true);
+        first.put("chancellor", "b");
+        encoder.encode(PacketSnapshot.of(first));
+        JSONObject out = new JSONObject(encoder.encode(PacketSnapshot.of(makePacket("CHANCELLOR_VOTING", true))));
+
+        assertEquals(SecretHitlerServer.PACKET_DELTA, out.getString(SecretHitlerServer.PARAM_PACKET_TYPE));
+        assertEquals("chancellor", out.getJSONArray(SecretHitlerServer.PARAM_DELTA_UNSET).getString(0));
+    }
+
+    @Test
+    public void testResetSendsFullPacket() {
+        DeltaEncoder encoder = new DeltaEncoder(true);
+        encoder.encode(PacketSnapshot.of(makePacket("CHANCELLOR_VOTING", true)));
+        encoder.reset();
+        JSONObject out = new JSONObject(encoder.encode(PacketSnapshot.of(makePacket("CHANCELLOR_VOTING", false))));
+
+        assertEquals(SecretHitlerServer.PACKET_GAME_STATE, out.getString(SecretHitlerServer.PARAM_PACKET_TYPE));
+        assertEquals(2, out.getLong(SecretHitlerServer.PARAM_SEQUENCE));
+    }
+
+    @Test
+    public void testLegacyConnectionsAlwaysReceiveFullPackets() {
+        DeltaEncoder encoder = new DeltaEncoder(false);
+        encoder.encode(PacketSnapshot.of(makePacket("CHANCELLOR_VOTING", true)));
+        JSONObject out = new JSONObject(encoder.encode(PacketSnapshot.of(makePacket("CHANCELLOR_VOTING", false))));
+
+        assertEquals(SecretHitlerServer.PACKET_GAME_STATE, out.getString(SecretHitlerServer.PARAM_PACKET_TYPE));
+        assertEquals("CHANCELLOR_VOTING", out.getString("state"));
+    }
+}
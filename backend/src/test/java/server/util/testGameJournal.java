@@ -0,0 +1,225 @@
+package server.util;
+
+import game.CpuPlayer;
+import game.GameEvent;
+import game.GameState;
+import game.GameTestUtil;
+import game.SecretHitlerGame;
+import game.datastructures.Identity;
+import game.datastructures.Player;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import server.ApplicationConfig;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.TestCase.*;
+
+public class testGameJournal {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // Seed of the CpuPlayers that choose the users' moves.
+    private static final long MOVE_SEED = 0;
+    // A game that takes more moves than this is assumed to be stuck.
+    private static final int MAX_MOVES = 1000;
+
+    /**
+     * Makes the next move in a lobby's game through {@code applyCommand()}, if
+     * it is a user's move. The move is chosen by playing it on a fork of the
+     * game with a CpuPlayer for every player.
+     *
+     * @return false if it is a CPU player's move, or nobody can move.
+     */
+    private static boolean playUserMove(Lobby lobby) {
+        SecretHitlerGame game = lobby.game();
+        SecretHitlerGame fork = game.fork();
+        List<GameEvent> events = new ArrayList<>();
+        fork.setEventListener(events::add);
+        CpuPlayer mover = CpuPlayer.playMove(fork, GameTestUtil.makeCpus(fork, MOVE_SEED));
+        if (mover == null || isCpu(lobby, mover.myName)) {
+            return false;
+        }
+        lobby.applyCommand(mover.myName, BotScheduler.toCommand(events.get(0), game.getPlayerList()));
+        lobby.requestBroadcast();
+        return true;
+    }
+
+    private static boolean isCpu(Lobby lobby, String name) {
+        for (CpuPlayer cpu : lobby.getCpuPlayers()) {
+            if (cpu.myName.equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<Identity> knownRolesOf(CpuPlayer cpu, SecretHitlerGame game) {
+        List<Identity> roles = new ArrayList<>();
+        for (Player player : game.getPlayerList()) {
+            roles.add(cpu.getKnownRole(player.getUsername()));
+        }
+        return roles;
+    }
+
+    private Lobby makeLobbyInGame(long seed) {
+        Lobby lobby = new Lobby();
+        for (int i = 0; i < SecretHitlerGame.MIN_PLAYERS; i++) {
+            StubWsContext ctx = StubWsContext.create("user" + i);
+            lobby.addUser(ctx, "user" + i);
+            lobby.trySetUserIcon("p" + (i + 1), ctx);
+        }
+        lobby.startNewGame(seed);
+        return lobby;
+    }
+
+    @Test
+    public void testGamesWithSameSeedAreIdentical() throws IOException {
+        List<String> players = Arrays.asList("a", "b", "c", "d", "e", "f", "g");
+        SecretHitlerGame first = new SecretHitlerGame(players, 42);
+        SecretHitlerGame second = new SecretHitlerGame(players, 42);
+        int moves = CpuPlayer.playOut(first, GameTestUtil.makeCpus(first, 1), 40);
+        assertEquals(moves, CpuPlayer.playOut(second, GameTestUtil.makeCpus(second, 1), 40));
+        assertTrue(Arrays.equals(GameTestUtil.snapshotOf(first), GameTestUtil.snapshotOf(second)));
+    }
+
+    @Test
+    public void testRecoverReplaysEventsOnCheckpoint() throws IOException {
+        // Several seeds, so that some of the games end in a policy victory.
+        boolean policyVictory = false;
+        for (long seed = 1; seed <= 10; seed++) {
+            Path file = folder.getRoot().toPath().resolve("ABCD" + seed + ".log");
+            Lobby lobby = makeLobbyInGame(seed);
+            lobby.openJournal(file);
+
+            // Play to the end, which takes most games past a checkpoint.
+            SecretHitlerGame game = lobby.game();
+            List<CpuPlayer> cpus = GameTestUtil.makeCpus(game, seed);
+            for (int i = 0; i < MAX_MOVES && CpuPlayer.playMove(game, cpus) != null; i++) {
+                Lobby recovered = Lobby.recoverFromJournal(file);
+                assertTrue("Mismatch after move " + i + " with seed " + seed,
+                        Arrays.equals(GameTestUtil.snapshotOf(game), GameTestUtil.snapshotOf(recovered.game())));
+                assertEquals(lobby.getVersion(), recovered.getVersion());
+            }
+            GameState end = game.getState();
+            policyVictory |= end == GameState.LIBERAL_VICTORY_POLICY || end == GameState.FASCIST_VICTORY_POLICY;
+
+            lobby.closeJournal(true);
+            assertFalse(Files.exists(file));
+        }
+        assertTrue(policyVictory);
+    }
+
+    @Test
+    public void testTornRecordIsIgnored() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("EFGH.log");
+        GameJournal journal = GameJournal.create(file, new byte[] { 1, 2, 3 });
+        journal.append(7, new GameEvent(GameEvent.Type.NOMINATE_CHANCELLOR, 2, 0));
+        journal.append(8, new GameEvent(GameEvent.Type.REGISTER_VOTE, 3, 1));
+        journal.close();
+
+        GameJournal.Contents contents = GameJournal.read(file);
+        assertTrue(Arrays.equals(new byte[] { 1, 2, 3 }, contents.checkpoint()));
+        assertEquals(2, contents.events().size());
+        assertEquals(new GameEvent(GameEvent.Type.REGISTER_VOTE, 3, 1), contents.events().get(1));
+        assertEquals(Long.valueOf(8), contents.versions().get(1));
+
+        // Truncate the file in the middle of the second record.
+        long size = 4 + 2 + 4 + 3 + GameJournal.EVENT_RECORD_SIZE + 5;
+        try (java.nio.channels.FileChannel channel = java.nio.channels.FileChannel.open(file,
+                StandardOpenOption.WRITE)) {
+            channel.truncate(size);
+        }
+        contents = GameJournal.read(file);
+        assertEquals(new ArrayList<>(List.of(new GameEvent(GameEvent.Type.NOMINATE_CHANCELLOR, 2, 0))),
+                contents.events());
+    }
+
+    @Test
+    public void testRecoverCpuPresidentAfterUserMoves() throws Exception {
+        int previousInterval = ApplicationConfig.BROADCAST_INTERVAL_MS;
+        ApplicationConfig.BROADCAST_INTERVAL_MS = 0;
+        Path file = folder.getRoot().toPath().resolve("IJKL.log");
+        Lobby lobby = new Lobby();
+        for (int i = 0; i < SecretHitlerGame.MIN_PLAYERS - 1; i++) {
+            StubWsContext ctx = StubWsContext.create("user" + i);
+            lobby.addUser(ctx, "user" + i);
+            lobby.trySetUserIcon("p" + (i + 1), ctx);
+        }
+        lobby.setCpuActionDelay(0);
+        lobby.openJournal(file);
+        try {
+            long[] seed = { 1 };
+            lobby.execute(() -> {
+                lobby.startNewGame(seed[0]);
+                lobby.requestBroadcast();
+            });
+
+            // Play until the CPU president has passed two policies to a user,
+            // then hold the CPU player's next move once the user enacts one.
+            long deadline = System.currentTimeMillis() + 10000;
+            while (true) {
+                CompletableFuture<Boolean> reached = new CompletableFuture<>();
+                lobby.execute(() -> {
+                    try {
+                        if (!lobby.isInGame()) {
+                            // Ended before the CPU player was president.
+                            lobby.startNewGame(++seed[0]);
+                            lobby.requestBroadcast();
+                            reached.complete(false);
+                            return;
+                        }
+                        SecretHitlerGame game = lobby.game();
+                        SecretHitlerGame next = game.fork();
+                        CpuPlayer.playMove(next, GameTestUtil.makeCpus(next, MOVE_SEED));
+                        boolean holdCpu = game.getState() == GameState.LEGISLATIVE_CHANCELLOR
+                                && next.getState() == GameState.POST_LEGISLATIVE
+                                && isCpu(lobby, game.getCurrentPresident());
+                        if (holdCpu) {
+                            lobby.setCpuActionDelay(TimeUnit.HOURS.toMillis(1));
+                        }
+                        reached.complete(playUserMove(lobby) && holdCpu);
+                    } catch (Throwable e) {
+                        reached.completeExceptionally(e);
+                    }
+                });
+                if (reached.get(10, TimeUnit.SECONDS)) {
+                    break;
+                }
+                assertTrue(System.currentTimeMillis() < deadline);
+                Thread.sleep(1);
+            }
+
+            CompletableFuture<List<Identity>> liveRoles = new CompletableFuture<>();
+            lobby.execute(() -> liveRoles.complete(knownRolesOf(lobby.getCpuPlayers().iterator().next(),
+                    lobby.game())));
+
+            Lobby recovered = Lobby.recoverFromJournal(file);
+            SecretHitlerGame game = recovered.game();
+            assertEquals(GameState.POST_LEGISLATIVE, game.getState());
+            CpuPlayer president = recovered.getCpuPlayers().iterator().next();
+            assertEquals(game.getCurrentPresident(), president.myName);
+            // The CpuPlayer's moves since the checkpoint are replayed, not
+            // played, so only what it learned from them is recovered.
+            assertEquals(liveRoles.get(10, TimeUnit.SECONDS), knownRolesOf(president, game));
+
+            president.update(game);
+            assertTrue(president.act(game));
+            assertEquals(GameState.CHANCELLOR_NOMINATION, game.getState());
+        } finally {
+            lobby.cancelScheduledTasks();
+            lobby.closeJournal(true);
+            ApplicationConfig.BROADCAST_INTERVAL_MS = previousInterval;
+        }
+    }
+}
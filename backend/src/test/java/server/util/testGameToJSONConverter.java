@@ -0,0 +1,74 @@
+package server.util;
+
+import game.CpuPlayer;
+import game.SecretHitlerGame;
+import game.datastructures.Player;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static junit.framework.TestCase.*;
+
+public class testGameToJSONConverter {
+
+    private ArrayList<String> makePlayers(int numPlayers) {
+        ArrayList<String> out = new ArrayList<>();
+        for (int i = 0; i < numPlayers; i++) {
+            out.add(Integer.toString(i));
+        }
+        return out;
+    }
+
+    /**
+     * Checks that the shared serialization matches convert() for every user.
+     */
+    private void assertSharedStateMatches(SecretHitlerGame game) {
+        // getState() updates lastState once a policy victory is reached, so
+        // settle it before comparing.
+        game.getState();
+        game.getState();
+        GameToJSONConverter.SharedGameState sharedState = GameToJSONConverter.prepare(game);
+        for (Player player : game.getPlayerList()) {
+            String name = player.getUsername();
+            JSONObject expected = new JSONObject(GameToJSONConverter.convert(game, name).toString());
+            JSONObject actual = new JSONObject(new PacketSnapshot(sharedState.getFields(name)).toJSON(null, null));
+            assertTrue("Mismatched state for player " + name + ": " + actual + " vs. " + expected,
+                    expected.similar(actual));
+        }
+    }
+
+    @Test
+    public void testSharedStateMatchesConvert() {
+        for (int numPlayers = SecretHitlerGame.MIN_PLAYERS; numPlayers <= SecretHitlerGame.MAX_PLAYERS; numPlayers++) {
+            SecretHitlerGame game = new SecretHitlerGame(makePlayers(numPlayers));
+            assertSharedStateMatches(game);
+        }
+    }
+
+    @Test
+    public void testSharedStateMatchesConvertThroughoutGame() {
+        List<String> players = makePlayers(10);
+        SecretHitlerGame game = new SecretHitlerGame(players);
+        List<CpuPlayer> cpus = new ArrayList<>();
+        for (String player : players) {
+            CpuPlayer cpu = new CpuPlayer(player);
+            cpu.initialize(game);
+            cpus.add(cpu);
+        }
+
+        while (!game.hasGameFinished()) {
+            assertSharedStateMatches(game);
+            for (CpuPlayer cpu : cpus) {
+                cpu.update(game);
+            }
+            for (CpuPlayer cpu : cpus) {
+                if (cpu.act(game)) {
+                    break;
+                }
+            }
+        }
+        assertSharedStateMatches(game);
+    }
+}
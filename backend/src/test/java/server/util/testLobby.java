@@ -0,0 +1,222 @@
+package server.util;
+
+import game.CpuPlayer;
+import game.DeterminizedSearch;
+import game.SecretHitlerGame;
+import org.json.JSONObject;
+import org.junit.Test;
+import server.ApplicationConfig;
+import server.SecretHitlerServer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static junit.framework.TestCase.*;
+
+public class testLobby {
+
+    @Test
+    public void testSnapshotIsPublishedAfterChanges() {
+        Lobby lobby = new Lobby();
+        LobbySnapshot empty = lobby.getSnapshot();
+        assertFalse(empty.hasUserWithName("Alice"));
+        assertEquals(0, empty.getUserCount());
+
+        StubWsContext alice = StubWsContext.create("alice");
+        lobby.addUser(alice, "Alice");
+        LobbySnapshot snapshot = lobby.getSnapshot();
+        assertTrue(snapshot.hasUserWithName("Alice"));
+        assertEquals(1, snapshot.getUserCount());
+        assertFalse(snapshot.isInGame());
+        assertFalse(snapshot.isFull());
+
+        // Old snapshots are not changed.
+        assertFalse(empty.hasUserWithName("Alice"));
+
+        lobby.removeUser(alice);
+        assertFalse(lobby.getSnapshot().hasUserWithName("Alice"));
+    }
+
+    @Test
+    public void testSnapshotAllowsRejoiningGame() {
+        Lobby lobby = new Lobby();
+        StubWsContext[] users = new StubWsContext[5];
+        for (int i = 0; i < users.length; i++) {
+            users[i] = StubWsContext.create("user" + i);
+            lobby.addUser(users[i], "user" + i);
+            lobby.trySetUserIcon("p" + i, users[i]);
+        }
+        lobby.startNewGame();
+        assertTrue(lobby.getSnapshot().isInGame());
+        assertFalse(lobby.getSnapshot().canAddUserDuringGame("user0")); // still active
+        assertFalse(lobby.getSnapshot().canAddUserDuringGame("stranger"));
+    }
+
+    @Test
+    public void testOnlyLegacyClientsAreSentUserVotes() {
+        Lobby lobby = new Lobby();
+        StubWsContext[] users = new StubWsContext[5];
+        for (int i = 0; i < users.length; i++) {
+            users[i] = StubWsContext.create("user" + i);
+            int protocol = i == 0 ? SecretHitlerServer.PROTOCOL_LEGACY : SecretHitlerServer.PROTOCOL_DELTA;
+            lobby.addUser(users[i], "user" + i, protocol);
+            lobby.trySetUserIcon("p" + i, users[i]);
+        }
+        lobby.startNewGame(1234);
+
+        SecretHitlerGame game = lobby.game();
+        String chancellor = game.getCurrentPresident().equals("user1") ? "user2" : "user1";
+        game.nominateChancellor(chancellor);
+        game.registerVote("user3", true);
+        game.registerVote("user4", false);
+        users[0].recordMessages();
+        users[1].recordMessages();
+        lobby.updateAllUsers();
+
+        JSONObject legacy = new JSONObject(users[0].getMessages().get(0));
+        JSONObject votes = legacy.getJSONObject("userVotes");
+        assertEquals(2, votes.length());
+        assertTrue(votes.getBoolean("user3"));
+        assertFalse(votes.getBoolean("user4"));
+
+        assertFalse(users[1].getMessages().get(0).contains("userVotes"));
+    }
+
+    @Test
+    public void testSeededGamesStartIdentically() throws IOException {
+        byte[][] snapshots = new byte[2][];
+        for (int i = 0; i < snapshots.length; i++) {
+            Lobby lobby = new Lobby();
+            for (int j = 0; j < 2; j++) {
+                StubWsContext user = StubWsContext.create("user" + j);
+                lobby.addUser(user, "user" + j);
+                lobby.trySetUserIcon("p" + j, user);
+            }
+            lobby.startNewGame(1234);
+            byte[] bytes = LobbyCodec.encode(lobby);
+            // Skip the header, version and timeout, which depend on the clock.
+            snapshots[i] = Arrays.copyOfRange(bytes, 4 + 2 + 8 + 8, bytes.length);
+        }
+        assertTrue(Arrays.equals(snapshots[0], snapshots[1]));
+    }
+
+    @Test
+    public void testBroadcastsAreCoalesced() throws InterruptedException {
+        int previousInterval = ApplicationConfig.BROADCAST_INTERVAL_MS;
+        ApplicationConfig.BROADCAST_INTERVAL_MS = 50;
+        try {
+            Lobby lobby = new Lobby();
+            StubWsContext alice = StubWsContext.create("alice");
+            lobby.addUser(alice, "Alice");
+
+            // The broadcast runs on the lobby's executor, so it cannot be sent
+            // while this task is running, however long the task takes.
+            long[] sentBeforeInterval = { -1 };
+            lobby.execute(() -> {
+                for (int i = 0; i < 10; i++) {
+                    lobby.requestBroadcast();
+                }
+                sentBeforeInterval[0] = alice.getMessagesSent();
+            });
+            assertEquals(0, sentBeforeInterval[0]);
+
+            assertTrue(alice.awaitMessagesSent(1, 10000));
+            assertEquals(1, alice.getMessagesSent());
+        } finally {
+            ApplicationConfig.BROADCAST_INTERVAL_MS = previousInterval;
+        }
+    }
+
+    @Test
+    public void testCpuOnlyGameRunsWithoutDelay() throws InterruptedException {
+        int previousInterval = ApplicationConfig.BROADCAST_INTERVAL_MS;
+        ApplicationConfig.BROADCAST_INTERVAL_MS = 0;
+        try {
+            // With no users, every player is a CPU, so they never wait.
+            Lobby lobby = new Lobby();
+            lobby.execute(() -> {
+                lobby.startNewGame(1234);
+                lobby.requestBroadcast();
+            });
+            assertTrue(lobby.getSnapshot().isInGame());
+
+            long deadline = System.currentTimeMillis() + 10000;
+            while (lobby.getSnapshot().isInGame() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertFalse(lobby.getSnapshot().isInGame());
+            // Every game has at least three elections, each a nomination and
+            // a vote from each of the five players.
+            assertTrue(lobby.getMoveCount() >= 3 * 6);
+            lobby.cancelScheduledTasks();
+        } finally {
+            ApplicationConfig.BROADCAST_INTERVAL_MS = previousInterval;
+        }
+    }
+
+    @Test
+    public void testFailedCpuTurnsAreRetried() throws InterruptedException {
+        int previousInterval = ApplicationConfig.BROADCAST_INTERVAL_MS;
+        ApplicationConfig.BROADCAST_INTERVAL_MS = 0;
+        try {
+            // The first two nominations throw from inside CpuPlayer.act().
+            AtomicInteger nominations = new AtomicInteger();
+            DeterminizedSearch search = new DeterminizedSearch(null, 1, 0) {
+                @Override
+                public int chooseChancellor(SecretHitlerGame game, CpuPlayer cpu, int excludedSeats) {
+                    if (nominations.incrementAndGet() <= 2) {
+                        throw new IllegalStateException("Search failed.");
+                    }
+                    return SecretHitlerGame.NO_SEAT;
+                }
+
+                @Override
+                public Boolean chooseVote(SecretHitlerGame game, CpuPlayer cpu) {
+                    return null;
+                }
+            };
+            Lobby lobby = new Lobby();
+            lobby.execute(() -> {
+                lobby.startNewGame(1234);
+                for (CpuPlayer cpu : lobby.getCpuPlayers()) {
+                    cpu.setSearch(search);
+                }
+                lobby.requestBroadcast();
+            });
+
+            long deadline = System.currentTimeMillis() + 10000;
+            while (lobby.getSnapshot().isInGame() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertFalse(lobby.getSnapshot().isInGame());
+            assertTrue(nominations.get() > 2);
+            lobby.cancelScheduledTasks();
+        } finally {
+            ApplicationConfig.BROADCAST_INTERVAL_MS = previousInterval;
+        }
+    }
+
+    @Test
+    public void testVersionSurvivesSerialization() throws Exception {
+        Lobby lobby = new Lobby();
+        long initial = lobby.getVersion();
+        lobby.updateAllUsers();
+        assertTrue(lobby.getVersion() > initial);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(lobby);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(
+                new ByteArrayInputStream(bytes.toByteArray()))) {
+            Lobby restored = (Lobby) in.readObject();
+            // Restoring a lobby does not make it look changed.
+            assertEquals(lobby.getVersion(), restored.getVersion());
+        }
+    }
+}
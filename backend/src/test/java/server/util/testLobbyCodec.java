@@ -0,0 +1,178 @@
+package server.util;
+
+import game.CpuPlayer;
+import game.SecretHitlerGame;
+import game.datastructures.Deck;
+import game.datastructures.Player;
+import game.datastructures.Policy;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import static junit.framework.TestCase.*;
+
+public class testLobbyCodec {
+
+    /**
+     * Creates a lobby with three users and two bots, in the middle of a vote.
+     */
+    private Lobby makeLobbyInGame() {
+        Lobby lobby = new Lobby();
+        for (int i = 0; i < 3; i++) {
+            StubWsContext ctx = StubWsContext.create("user" + i);
+            lobby.addUser(ctx, "user" + i);
+            lobby.trySetUserIcon("p" + (i + 1), ctx);
+        }
+        lobby.startNewGame();
+
+        SecretHitlerGame game = lobby.game();
+        List<Player> players = game.getPlayerList();
+        game.nominateChancellor(players.get(1).getUsername());
+        game.registerVote(players.get(0).getUsername(), true);
+        game.registerVote(players.get(2).getUsername(), false);
+        return lobby;
+    }
+
+    @Test
+    public void testLobbyRoundTrip() throws IOException {
+        Lobby lobby = makeLobbyInGame();
+        byte[] bytes = LobbyCodec.encode(lobby);
+        assertTrue(LobbyCodec.isSnapshot(bytes));
+
+        Lobby restored = LobbyCodec.decode(bytes);
+        assertEquals(lobby.getVersion(), restored.getVersion());
+        assertTrue(restored.isInGame());
+        assertTrue(restored.getSnapshot().canAddUserDuringGame("user0"));
+
+        SecretHitlerGame game = lobby.game();
+        SecretHitlerGame restoredGame = restored.game();
+        assertEquals(game.getDrawSize(), restoredGame.getDrawSize());
+        for (Player player : game.getPlayerList()) {
+            String name = player.getUsername();
+            Player restoredPlayer = restoredGame.getPlayer(name);
+            assertEquals(player.getIdentity(), restoredPlayer.getIdentity());
+            assertEquals(player.isCpu(), restoredPlayer.isCpu());
+            assertEquals(game.hasPlayerVoted(name), restoredGame.hasPlayerVoted(name));
+
+            JSONObject expected = new JSONObject(GameToJSONConverter.convert(game, name).toString());
+            JSONObject actual = new JSONObject(GameToJSONConverter.convert(restoredGame, name).toString());
+            assertTrue("Mismatched state for player " + name + ": " + actual + " vs. " + expected,
+                    expected.similar(actual));
+        }
+
+        // The snapshot is much smaller than the Java-serialized lobby.
+        ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(serialized)) {
+            out.writeObject(lobby);
+        }
+        assertTrue(bytes.length * 4 < serialized.size());
+        assertFalse(LobbyCodec.isSnapshot(serialized.toByteArray()));
+    }
+
+    @Test
+    public void testDeckAndCpuRoundTrip() throws IOException {
+        Lobby lobby = makeLobbyInGame();
+        SecretHitlerGame game = lobby.game();
+        List<Player> seats = game.getPlayerList();
+        CpuPlayer cpu = null;
+        for (Player player : seats) {
+            if (player.isCpu()) {
+                cpu = new CpuPlayer(player.getUsername());
+                cpu.initialize(game);
+                break;
+            }
+        }
+        assertNotNull(cpu);
+        cpu.updateReputation(seats.get(0).getUsername(), -3);
+
+        Deck deck = new Deck();
+        for (int i = 0; i < SecretHitlerGame.NUM_FASCIST_POLICIES + SecretHitlerGame.NUM_LIBERAL_POLICIES; i++) {
+            deck.add(new Policy(i % 3 == 0 ? Policy.Type.LIBERAL : Policy.Type.FASCIST));
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            deck.writeSnapshot(out);
+            cpu.writeSnapshot(out, seats);
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            Deck restoredDeck = Deck.readSnapshot(in);
+            assertEquals(deck.getSize(), restoredDeck.getSize());
+            for (int i = 0; i < deck.getSize(); i++) {
+                assertEquals(deck.peek(i).getType(), restoredDeck.peek(i).getType());
+            }
+
+            CpuPlayer restoredCpu = CpuPlayer.readSnapshot(in, seats, LobbyCodec.SCHEMA_ID);
+            assertEquals(cpu.myName, restoredCpu.myName);
+            for (Player player : seats) {
+                assertEquals(cpu.getReputation(player.getUsername()), restoredCpu.getReputation(player.getUsername()));
+                assertEquals(cpu.getKnownRole(player.getUsername()), restoredCpu.getKnownRole(player.getUsername()));
+            }
+            for (Player player : seats) {
+                assertEquals(cpu.getFascistProbability(player.getUsername()),
+                        restoredCpu.getFascistProbability(player.getUsername()), 0f);
+            }
+            if (cpu.getKnownRole(seats.get(0).getUsername()) == null) {
+                assertTrue(restoredCpu.getReputation(seats.get(0).getUsername()) < 0);
+            }
+            assertSame(cpu.myPlayerData, restoredCpu.myPlayerData);
+            assertEquals(0, in.available());
+        }
+    }
+
+    @Test
+    public void testRejectsMalformedSnapshots() throws IOException {
+        byte[] bytes = LobbyCodec.encode(makeLobbyInGame());
+
+        byte[] truncated = Arrays.copyOf(bytes, bytes.length / 2);
+        try {
+            LobbyCodec.decode(truncated);
+            fail("Expected truncated snapshot to be rejected.");
+        } catch (IOException e) {
+            // expected
+        }
+
+        byte[] wrongSchema = bytes.clone();
+        wrongSchema[5] = (byte) (LobbyCodec.SCHEMA_ID + 1);
+        try {
+            LobbyCodec.decode(wrongSchema);
+            fail("Expected unknown schema to be rejected.");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testRejectsInvalidGameState() throws IOException {
+        SecretHitlerGame game = makeLobbyInGame().game();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        game.writeSnapshot(new DataOutputStream(bytes));
+        byte[] snapshot = bytes.toByteArray();
+
+        // Find the state, which follows the players, board (3 bytes), draw and
+        // discard decks (5 bytes each) and election tracker.
+        ByteArrayOutputStream playerBytes = new ByteArrayOutputStream();
+        for (Player player : game.getPlayerList()) {
+            player.writeSnapshot(new DataOutputStream(playerBytes));
+        }
+        int stateOffset = 1 + playerBytes.size() + 3 + 5 + 5 + 1;
+        assertEquals(game.getState().ordinal(), snapshot[stateOffset]);
+
+        snapshot[stateOffset] = Byte.MAX_VALUE;
+        try {
+            SecretHitlerGame.readSnapshot(new DataInputStream(new ByteArrayInputStream(snapshot)),
+                    LobbyCodec.SCHEMA_ID);
+            fail("Expected invalid game state to be rejected.");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
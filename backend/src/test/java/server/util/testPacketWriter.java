@@ -0,0 +1,36 @@
+package server.util;
+
+import org.json.JSONObject;
+import org.junit.Test;
+import server.SecretHitlerServer;
+
+import static junit.framework.TestCase.*;
+
+public class testPacketWriter {
+
+    private static final PacketWriter.Body PONG = generator -> {
+        generator.writeStartObject();
+        generator.writeStringField(SecretHitlerServer.PARAM_PACKET_TYPE, SecretHitlerServer.PACKET_PONG);
+        generator.writeEndObject();
+    };
+
+    @Test
+    public void testWrite() {
+        JSONObject out = new JSONObject(PacketWriter.write(PONG));
+        assertEquals(SecretHitlerServer.PACKET_PONG, out.getString(SecretHitlerServer.PARAM_PACKET_TYPE));
+        assertEquals(1, out.length());
+    }
+
+    @Test
+    public void testSnapshotRoundTrip() {
+        JSONObject packet = new JSONObject();
+        packet.put("state", "CHANCELLOR_VOTING");
+        packet.put("name", "\u00e9\"quoted\"");
+        packet.put("drawSize", 11);
+        JSONObject out = new JSONObject(PacketSnapshot.of(packet).toJSON(SecretHitlerServer.PARAM_SEQUENCE, "4"));
+
+        assertEquals("\u00e9\"quoted\"", out.getString("name"));
+        assertEquals(11, out.getInt("drawSize"));
+        assertEquals(4, out.getLong(SecretHitlerServer.PARAM_SEQUENCE));
+    }
+}
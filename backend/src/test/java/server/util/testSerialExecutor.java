@@ -0,0 +1,93 @@
+package server.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static junit.framework.TestCase.*;
+
+public class testSerialExecutor {
+
+    @Test
+    public void testTasksRunInOrderOneAtATime() throws InterruptedException {
+        ExecutorService backing = Executors.newFixedThreadPool(4);
+        SerialExecutor executor = new SerialExecutor(backing);
+        int numTasks = 1000;
+        List<Integer> order = new ArrayList<>(); // only safe if tasks never overlap
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(numTasks);
+
+        for (int i = 0; i < numTasks; i++) {
+            final int index = i;
+            executor.execute(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                order.add(index);
+                running.decrementAndGet();
+                done.countDown();
+            });
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        backing.shutdown();
+        assertEquals(1, maxRunning.get());
+        for (int i = 0; i < numTasks; i++) {
+            assertEquals(i, (int) order.get(i));
+        }
+    }
+
+    @Test
+    public void testFailingTaskDoesNotStopLaterTasks() throws InterruptedException {
+        SerialExecutor executor = new SerialExecutor(Runnable::run);
+        CountDownLatch done = new CountDownLatch(1);
+        executor.execute(() -> {
+            throw new RuntimeException("expected");
+        });
+        executor.execute(done::countDown);
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        assertEquals(0, executor.getQueuedTaskCount());
+    }
+
+    @Test
+    public void testOfferRefusesTasksWhenMailboxIsFull() {
+        // Tasks are queued while the executor is already running a task.
+        SerialExecutor executor = new SerialExecutor(Runnable::run, 2);
+        int[] accepted = new int[1];
+        executor.execute(() -> {
+            for (int i = 0; i < 4; i++) {
+                if (executor.offer(() -> {
+                })) {
+                    accepted[0]++;
+                }
+            }
+        });
+        assertEquals(2, accepted[0]);
+        assertEquals(0, executor.getQueuedTaskCount());
+    }
+
+    @Test
+    public void testInlineBackingDoesNotGrowStack() {
+        // Tasks queued while a direct executor is running are run by the same
+        // thread, in batches, which used to recurse once per batch.
+        SerialExecutor executor = new SerialExecutor(Runnable::run);
+        int numTasks = 100000;
+        int[] stackDepths = new int[2];
+        int[] ran = new int[1];
+        executor.execute(() -> {
+            stackDepths[0] = Thread.currentThread().getStackTrace().length;
+            for (int i = 0; i < numTasks; i++) {
+                executor.execute(() -> ran[0]++);
+            }
+            executor.execute(() -> stackDepths[1] = Thread.currentThread().getStackTrace().length);
+        });
+        assertEquals(numTasks, ran[0]);
+        assertEquals(0, executor.getQueuedTaskCount());
+        assertTrue(stackDepths[1] <= stackDepths[0] + 5);
+    }
+}
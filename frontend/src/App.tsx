@@ -50,6 +50,12 @@ import {
   SERVER_PING,
   PARAM_ICON,
   PARAM_INVESTIGATION,
+  PACKET_DELTA,
+  PARAM_SEQUENCE,
+  PARAM_DELTA_SET,
+  PARAM_DELTA_UNSET,
+  PARAM_PROTOCOL,
+  PROTOCOL_VERSION,
 } from "./constants";
 
 import PlayerDisplay, {
@@ -93,6 +99,7 @@ import {
   WSCommand,
   WSCommandType,
 } from "./types";
+import { decodeVotes } from "./utils";
 
 const EVENT_BAR_FADE_OUT_DURATION = 500;
 const CUSTOM_ALERT_FADE_DURATION = 1000;
@@ -113,6 +120,8 @@ const DEFAULT_GAME_STATE: GameState = {
   lastChancellor: "",
   lastPresident: "",
   electionTrackerAdvanced: false,
+  votedSeats: 0,
+  yesSeats: 0,
   userVotes: {},
   presidentChoices: [],
   chancellorChoices: [],
@@ -196,6 +205,7 @@ const defaultAppState: AppState = {
 
 class App extends Component<{}, AppState> {
   websocket?: WebSocket = undefined;
+  packetDecoder: TextDecoder = new TextDecoder("utf-8");
   failedConnections: number = 0;
   pingInterval?: NodeJS.Timeout = undefined;
   reconnectOnConnectionClosed: boolean = true;
@@ -204,6 +214,10 @@ class App extends Component<{}, AppState> {
   okMessageListeners: (() => void)[] = [];
   allAnimationsFinished: boolean = true;
   gameOver: boolean = false;
+  /* The last full (or reconstructed) packet received, used to apply deltas. */
+  lastPacket?: any = undefined;
+  lastSequence: number = 0;
+  awaitingResync: boolean = false;
 
   // noinspection DuplicatedCode
   constructor(props: any) {
@@ -298,7 +312,11 @@ class App extends Component<{}, AppState> {
       "?name=" +
       encodeURIComponent(name) +
       "&lobby=" +
-      encodeURIComponent(lobby);
+      encodeURIComponent(lobby) +
+      "&" +
+      PARAM_PROTOCOL +
+      "=" +
+      PROTOCOL_VERSION;
     if (DEBUG) {
       console.trace("TryOpenWebsocket URL: " + url);
     }
@@ -311,7 +329,14 @@ class App extends Component<{}, AppState> {
       this.websocket = undefined;
     }
 
+    // Sequence numbers are tracked per connection.
+    this.lastPacket = undefined;
+    this.lastSequence = 0;
+    this.awaitingResync = false;
+
     let ws = new WebSocket(url);
+    // Packets are sent as binary frames of UTF-8 JSON (PROTOCOL_VERSION 3).
+    ws.binaryType = "arraybuffer";
     if (ws.OPEN) {
       console.log("Websocket opened successfully to " + url);
       this.websocket = ws;
@@ -416,9 +441,53 @@ class App extends Component<{}, AppState> {
     }
   }
 
+  /**
+   * Reconstructs a full packet from a sequenced (game or lobby) packet.
+   * @param message the parsed packet, which must have a sequence number.
+   * @return the full packet, or undefined if the packet was a delta that could
+   *         not be applied. In that case, a resync is requested from the server.
+   */
+  applySequencedPacket(message: any) {
+    const sequence: number = message[PARAM_SEQUENCE];
+    if (message[PARAM_PACKET_TYPE] !== PACKET_DELTA) {
+      this.lastPacket = message;
+      this.lastSequence = sequence;
+      this.awaitingResync = false;
+      return message;
+    }
+
+    if (this.lastPacket === undefined || sequence !== this.lastSequence + 1) {
+      // Missed an update, so the delta cannot be applied. Ask for a full packet.
+      if (!this.awaitingResync) {
+        this.awaitingResync = true;
+        this.sendWSCommand({ command: WSCommandType.GET_STATE });
+      }
+      return undefined;
+    }
+
+    const packet = { ...this.lastPacket, ...message[PARAM_DELTA_SET] };
+    for (const key of message[PARAM_DELTA_UNSET]) {
+      delete packet[key];
+    }
+    packet[PARAM_SEQUENCE] = sequence;
+    this.lastPacket = packet;
+    this.lastSequence = sequence;
+    return packet;
+  }
+
   async onWebSocketMessage(msg: MessageEvent) {
     this.failedConnections = 0;
-    let message = JSON.parse(msg.data);
+    const text =
+      typeof msg.data === "string"
+        ? msg.data
+        : this.packetDecoder.decode(msg.data as ArrayBuffer);
+    let message = JSON.parse(text);
+    if (message[PARAM_SEQUENCE] !== undefined) {
+      message = this.applySequencedPacket(message);
+      if (message === undefined) {
+        return;
+      }
+    }
     // Decode message contents as communication is encoded
     if (DEBUG) {
       console.log(message);
@@ -437,6 +506,14 @@ class App extends Component<{}, AppState> {
         break;
 
       case PACKET_GAME_STATE:
+        message = {
+          ...message,
+          userVotes: decodeVotes(
+            message.playerOrder,
+            message.votedSeats,
+            message.yesSeats
+          ),
+        };
         if (message !== this.state.gameState) {
           this.onGameStateChanged(message);
         }
@@ -24,6 +24,10 @@ export const MAX_FAILED_CONNECTIONS = 5;
 export const LOBBY_CODE_LENGTH = 4;
 export const SERVER_TIMEOUT = 4000;
 export const PING_INTERVAL = 50000;
+// The packet protocol version this client supports. Version 2 receives game
+// updates as deltas of the previous update, and version 3 also receives
+// packets as binary frames.
+export const PROTOCOL_VERSION = 3;
 
 //////// Game Constants
 export const MIN_PLAYERS = 5;
@@ -39,12 +43,19 @@ export const PACKET_GAME_STATE = "game";
 export const PACKET_LOBBY = "lobby";
 export const PACKET_OK = "ok";
 export const PACKET_PONG = "pong";
+export const PACKET_DELTA = "delta";
+
+// Delta packets
+export const PARAM_SEQUENCE = "seq";
+export const PARAM_DELTA_SET = "set";
+export const PARAM_DELTA_UNSET = "unset";
 
 // Commands
 //<editor-fold desc="Commands">
 export const PARAM_COMMAND = "command";
 export const PARAM_NAME = "name";
 export const PARAM_LOBBY = "lobby";
+export const PARAM_PROTOCOL = "protocol";
 export const PARAM_ICON = "icon"; // id of the selected portrait.
 export const PARAM_VOTE = "vote";
 export const PARAM_VETO = "veto"; // the veto decision (yes/no)
@@ -35,6 +35,9 @@ export type GameState = {
   lastPresident: string;
   electionTracker: number;
   electionTrackerAdvanced: boolean;
+  // Bit masks over seats in playerOrder, decoded into userVotes on receipt.
+  votedSeats: number;
+  yesSeats: number;
   userVotes: Record<string, boolean>;
   liberalPolicies: number;
   fascistPolicies: number;
@@ -16,3 +16,22 @@ export const isVictoryState = (lobbyState: LobbyState): boolean => {
 export const doesHitlerKnowFascists = (gameState: GameState): boolean => {
   return gameState.playerOrder.length <= 6;
 };
+
+/**
+ * Decodes the votes in a game state packet. The server sends votes as two bit
+ * masks over seats (indices in playerOrder): votedSeats and yesSeats.
+ * @return a map from each player who has voted to their vote.
+ */
+export const decodeVotes = (
+  playerOrder: string[],
+  votedSeats: number,
+  yesSeats: number
+): Record<string, boolean> => {
+  const votes: Record<string, boolean> = {};
+  playerOrder.forEach((name, seat) => {
+    if ((votedSeats & (1 << seat)) !== 0) {
+      votes[name] = (yesSeats & (1 << seat)) !== 0;
+    }
+  });
+  return votes;
+};